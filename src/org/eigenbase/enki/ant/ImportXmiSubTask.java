@@ -28,6 +28,7 @@ import javax.jmi.reflect.*;
 import org.apache.tools.ant.*;
 import org.eigenbase.enki.ant.EnkiTask.*;
 import org.eigenbase.enki.mdr.*;
+import org.eigenbase.enki.util.*;
 import org.netbeans.api.xmi.*;
 
 /**
@@ -51,6 +52,12 @@ import org.netbeans.api.xmi.*;
  *   <td>XMI metamodel to import.</td>
  *   <td>Yes</td>
  * </tr>
+ * <tr>
+ *   <td>streaming</td>
+ *   <td>If true, the file is imported with the repository's 
+ *       {@link StreamingXmiReader} rather than the NetBeans XMI reader.</td>
+ *   <td>No (defaults to false)</td>
+ * </tr>
  * </table>
  * 
  * @author Stephan Zuercher
@@ -59,6 +66,7 @@ public class ImportXmiSubTask extends SubTask
 {
     private String file;
     private String extent;
+    private boolean streaming;
     
     public ImportXmiSubTask(String name)
     {
@@ -75,6 +83,11 @@ public class ImportXmiSubTask extends SubTask
         this.extent = extent;
     }
     
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+    
     @Override
     protected void execute() throws BuildException
     {
@@ -104,13 +117,19 @@ public class ImportXmiSubTask extends SubTask
                     "Extent '" + extent + "' does not exist");
             }
             
-            XMIReader xmiReader = 
-                XMIReaderFactory.getDefault().createXMIReader();
-    
             repos.beginTrans(true);
             boolean rollback = true;
             try {
-                xmiReader.read(xmiFile.toURL().toString(), refPackage);
+                String uri = xmiFile.toURL().toString();
+                if (streaming) {
+                    StreamingXmiReader xmiReader = 
+                        repos.createStreamingXmiReader();
+                    xmiReader.read(uri, refPackage);
+                } else {
+                    XMIReader xmiReader = 
+                        XMIReaderFactory.getDefault().createXMIReader();
+                    xmiReader.read(uri, refPackage);
+                }
                 rollback = false;
             } catch (Exception e) {
                 throw new BuildException(e);
@@ -28,6 +28,7 @@ import java.util.*;
 import javax.jmi.model.*;
 import javax.jmi.reflect.*;
 
+import org.eigenbase.enki.jmi.impl.*;
 import org.eigenbase.enki.util.*;
 
 /**
@@ -204,6 +205,9 @@ public abstract class JavaHandlerBase
     public static final JavaClassReference WRONG_SIZE_EXCEPTION_CLASS =
         new JavaClassReference(WrongSizeException.class, false);
 
+    public static final JavaClassReference REF_FEATURE_INDEX_CLASS =
+        new JavaClassReference(RefFeatureIndex.class, false);
+
     private boolean displayHeaderWarning = true;
     
     protected void setDisplayHeaderWarning(boolean displayHeaderWarning)
@@ -1441,6 +1445,111 @@ public abstract class JavaHandlerBase
             ";");
     }
     
+    /**
+     * Generates overrides of 
+     * {@link RefFeaturedBase#refGetFeatureValue(String)} and 
+     * {@link RefFeaturedBase#refSetFeatureValue(String, Object)} which
+     * dispatch to the accessors and mutators of the given features via a
+     * {@link RefFeatureIndex}.  Features are dispatched by their model 
+     * names.  Mutators are invoked only for single-valued, changeable 
+     * features.
+     * 
+     * @param features a class instance's attributes and references, 
+     *                 including those of its supertypes
+     */
+    protected void writeRefFeatureDispatch(
+        Collection<? extends StructuralFeature> features)
+    {
+        Map<String, StructuralFeature> featureMap = 
+            new LinkedHashMap<String, StructuralFeature>();
+        for(StructuralFeature feature: features) {
+            if (feature.getMultiplicity().getUpper() == 0 ||
+                featureMap.containsKey(feature.getName()))
+            {
+                continue;
+            }
+            
+            featureMap.put(feature.getName(), feature);
+        }
+        
+        if (featureMap.isEmpty()) {
+            return;
+        }
+        
+        newLine();
+        writeln("// Reflective Feature Dispatch");
+        writeln(
+            "private static final ", REF_FEATURE_INDEX_CLASS, " _features =");
+        increaseIndent();
+        writeln("new ", REF_FEATURE_INDEX_CLASS, "(");
+        increaseIndent();
+        writeln("new String[] {");
+        increaseIndent();
+        for(String featureName: featureMap.keySet()) {
+            writeln(QUOTE, featureName, QUOTE, ",");
+        }
+        decreaseIndent();
+        writeln("});");
+        decreaseIndent();
+        decreaseIndent();
+        newLine();
+        
+        startBlock("protected Object refGetFeatureValue(String featureName)");
+        startBlock("switch(_features.indexOf(featureName))");
+        int index = 0;
+        for(StructuralFeature feature: featureMap.values()) {
+            writeln("case ", index++, ":");
+            increaseIndent();
+            writeln(
+                "return ", 
+                CodeGenUtils.getAccessorName(generator, feature), 
+                "();");
+            decreaseIndent();
+        }
+        writeln("default:");
+        increaseIndent();
+        writeln("return super.refGetFeatureValue(featureName);");
+        decreaseIndent();
+        endBlock();
+        endBlock();
+        newLine();
+        
+        startBlock(
+            "protected boolean refSetFeatureValue(", 
+            "String featureName, Object value)");
+        startBlock("switch(_features.indexOf(featureName))");
+        index = 0;
+        for(StructuralFeature feature: featureMap.values()) {
+            int i = index++;
+            if (feature.getMultiplicity().getUpper() != 1 ||
+                !feature.isChangeable())
+            {
+                continue;
+            }
+            
+            String typeName = CodeGenUtils.getTypeName(feature);
+            if (Primitives.isPrimitiveType(typeName)) {
+                typeName = 
+                    Primitives.convertPrimitiveToTypeName(typeName, false);
+            }
+            
+            writeln("case ", i, ":");
+            increaseIndent();
+            startConditionalBlock(
+                CondType.IF, "value instanceof ", typeName);
+            writeln(
+                CodeGenUtils.getMutatorName(generator, feature), 
+                "((", typeName, ")value);");
+            writeln("return true;");
+            endBlock();
+            writeln("break;");
+            decreaseIndent();
+        }
+        endBlock();
+        writeln("return super.refSetFeatureValue(featureName, value);");
+        endBlock();
+    }
+    
     protected void writeCheckConstraints()
     {
         startCheckConstraints();
@@ -293,6 +293,8 @@ public abstract class TransientImplementationHandler
                 endBlock();
             }
 
+            generateCustomAssociationMethods(assoc);
+            
             writeEntityFooter();
         }
         finally {
@@ -318,6 +320,17 @@ public abstract class TransientImplementationHandler
     {
     }
     
+    /**
+     * Allows subclasses to generate additional methods for association
+     * proxy objects.
+     * 
+     * @param assoc Association proxy being generated
+     */
+    protected void generateCustomAssociationMethods(Association assoc)
+        throws GenerationException
+    {
+    }
+    
     private void generateAssociationEndAccessor(
         Association assoc,
         AssociationInfo assocInfo,
@@ -677,6 +690,9 @@ public abstract class TransientImplementationHandler
                 if (upper == 1) {
                     newLine();
                     startAccessorBlock(attrib, true);
+                    if (attrib.isChangeable()) {
+                        generateCustomClassInstanceAccessor(cls, attrib);
+                    }
                     if (primitiveConversionRequired) {
                         startConditionalBlock(
                             CondType.IF, fieldName, " == null");
@@ -703,6 +719,8 @@ public abstract class TransientImplementationHandler
                     startAccessorBlock(attrib, true);
                     
                     if (attrib.isChangeable()) {
+                        generateCustomClassInstanceCollectionAccessor(
+                            cls, attrib);
                         writeln("return ", fieldName, ";");
                     } else {
                         if (attrib.getMultiplicity().isOrdered()) {
@@ -887,6 +905,11 @@ public abstract class TransientImplementationHandler
                 endBlock();                
             }
             
+            List<StructuralFeature> instanceFeatures = 
+                new ArrayList<StructuralFeature>(instanceAttributes);
+            instanceFeatures.addAll(instanceReferences);
+            writeRefFeatureDispatch(instanceFeatures);
+            
             newLine();
             writeCheckConstraints(instanceAttributes, instanceReferences);
             
@@ -1070,6 +1093,21 @@ public abstract class TransientImplementationHandler
     {
     }
     
+    /**
+     * Allows subclasses to generate additional code for class instance 
+     * accessor methods of changeable, single-valued attributes.  The code 
+     * precedes the return of the attribute's field and may declare a local
+     * variable with the field's name to return a different value.
+     * 
+     * @param cls class instance being generated
+     * @param attrib attribute for which an accessor is being generated
+     */
+    protected void generateCustomClassInstanceAccessor(
+        MofClass cls, Attribute attrib)
+    throws GenerationException
+    {
+    }
+    
     /**
      * Allows subclasses to generate additional code for class instance mutator
      * methods. 
@@ -1083,6 +1121,22 @@ public abstract class TransientImplementationHandler
     {
     }
 
+    /**
+     * Allows subclasses to generate additional code for class instance 
+     * accessor methods that return a modifiable collection.  The code 
+     * precedes the return of the attribute's field and may declare a local
+     * variable with the field's name to return a different collection.
+     * 
+     * @param cls class instance being generated
+     * @param attrib multi-valued attribute for which an accessor is being 
+     *               generated
+     */
+    protected void generateCustomClassInstanceCollectionAccessor(
+        MofClass cls, Attribute attrib)
+    throws GenerationException
+    {
+    }
+
     /**
      * Allows subclasses to generate additional methods for class instance
      * objects.
@@ -0,0 +1,518 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import java.io.*;
+import java.math.*;
+import java.util.*;
+
+/**
+ * BinaryBackupFormat reads and writes the binary backup data format used by
+ * {@link HibernateBackupRestoreUtil} when 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_BACKUP_FORMAT} is 
+ * {@value HibernateMDRepository#BACKUP_FORMAT_BINARY}.
+ * 
+ * <p>A binary data entry begins with the four {@link #MAGIC} bytes and a
+ * version byte, followed by any number of blocks and an end marker:
+ * 
+ * <pre>
+ * entry := MAGIC version block* 0x00
+ * block := 0x01 length:int32 body
+ * body  := table:string numCols:varint column:string{numCols} 
+ *          numRows:varint row{numRows}
+ * row   := value{numCols}
+ * </pre>
+ * 
+ * Each value is a tag byte followed by a tag-specific encoding.  MOF IDs
+ * are unsigned varints and other integers are zig-zag encoded varints.
+ * Short strings are dictionary encoded: the first occurrence of a string
+ * in a block is written in full and assigned the next dictionary index, 
+ * later occurrences are written as that index.  Since each block carries 
+ * its own length and dictionary, blocks may be skipped or decoded
+ * independently.  The first byte of a text backup entry is never zero, so
+ * the two formats are distinguished by {@link #isBinary(InputStream)}.
+ * 
+ * @author Stephan Zuercher
+ */
+class BinaryBackupFormat
+{
+    /** Leading bytes of a binary backup data entry. */
+    static final byte[] MAGIC = { 0x00, 'E', 'K', 'B' };
+    
+    /** Current format version. */
+    static final int VERSION = 1;
+    
+    /** Maximum number of rows per block. */
+    static final int BLOCK_ROWS = 4096;
+
+    /** Longest string eligible for the dictionary. */
+    private static final int MAX_DICTIONARY_STRING_LEN = 128;
+    
+    /** Maximum number of dictionary entries per block. */
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+    
+    private static final String ENCODING = "UTF-8";
+    
+    private static final int MARKER_END = 0;
+    private static final int MARKER_BLOCK = 1;
+    
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_STRING_NEW = 2;
+    private static final int TAG_STRING_REF = 3;
+    private static final int TAG_MOFID = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_INT = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_DOUBLE = 8;
+    private static final int TAG_BIG_DECIMAL = 9;
+    private static final int TAG_BIG_INTEGER = 10;
+    private static final int TAG_FALSE = 11;
+    private static final int TAG_TRUE = 12;
+    
+    private BinaryBackupFormat()
+    {
+    }
+    
+    /**
+     * Tests whether the given stream contains binary backup data.  The
+     * stream must support {@link InputStream#mark(int)}; its position is
+     * not changed.
+     * 
+     * @param in input stream
+     * @return true if the stream starts with {@link #MAGIC}
+     * @throws IOException on I/O error
+     */
+    static boolean isBinary(InputStream in) throws IOException
+    {
+        assert(in.markSupported());
+        
+        in.mark(MAGIC.length);
+        try {
+            for(int i = 0; i < MAGIC.length; i++) {
+                if (in.read() != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+    
+    /**
+     * Writer writes binary backup data.  Rows are buffered until a block 
+     * is complete.
+     */
+    static class Writer
+    {
+        private final DataOutputStream output;
+        private final ByteArrayOutputStream blockBytes;
+        private final DataOutputStream block;
+        private final Map<String, Integer> dictionary;
+        
+        private String table;
+        private String[] columnNames;
+        private int numRows;
+        private int column;
+        
+        /**
+         * Constructs a Writer and writes the entry header.
+         * 
+         * @param output output stream
+         * @throws IOException on I/O error
+         */
+        Writer(OutputStream output) throws IOException
+        {
+            this.output = new DataOutputStream(output);
+            this.blockBytes = new ByteArrayOutputStream(16384);
+            this.block = new DataOutputStream(blockBytes);
+            this.dictionary = new HashMap<String, Integer>();
+            
+            this.output.write(MAGIC);
+            this.output.write(VERSION);
+        }
+        
+        /**
+         * Starts writing rows for a table.
+         * 
+         * @param table table name
+         * @param columnNames column names
+         */
+        void startTable(String table, String[] columnNames)
+        {
+            assert(this.table == null);
+            
+            this.table = table;
+            this.columnNames = columnNames;
+        }
+        
+        /**
+         * Writes the next value of the current row.
+         * 
+         * @param value value, possibly null
+         * @param isMofId whether the value is a MOF ID
+         * @throws IOException on I/O error
+         */
+        void writeValue(Object value, boolean isMofId) throws IOException
+        {
+            if (value == null) {
+                block.write(TAG_NULL);
+            } else if (value instanceof String) {
+                writeDictionaryString((String)value);
+            } else if (value instanceof Long) {
+                long v = ((Long)value).longValue();
+                if (isMofId) {
+                    block.write(TAG_MOFID);
+                    writeVarLong(block, v);
+                } else {
+                    block.write(TAG_LONG);
+                    writeVarLong(block, zigZag(v));
+                }
+            } else if (value instanceof Integer) {
+                block.write(TAG_INT);
+                writeVarLong(block, zigZag(((Integer)value).longValue()));
+            } else if (value instanceof Boolean) {
+                block.write(
+                    ((Boolean)value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Float) {
+                block.write(TAG_FLOAT);
+                block.writeFloat(((Float)value).floatValue());
+            } else if (value instanceof Double) {
+                block.write(TAG_DOUBLE);
+                block.writeDouble(((Double)value).doubleValue());
+            } else if (value instanceof BigDecimal) {
+                block.write(TAG_BIG_DECIMAL);
+                writeString(block, value.toString());
+            } else if (value instanceof BigInteger) {
+                block.write(TAG_BIG_INTEGER);
+                writeString(block, value.toString());
+            } else {
+                throw new IllegalArgumentException(
+                    "Unknown type mapping for: " + value.getClass().getName());
+            }
+            
+            if (++column == columnNames.length) {
+                column = 0;
+                if (++numRows == BLOCK_ROWS) {
+                    flushBlock();
+                }
+            }
+        }
+        
+        /**
+         * Ends the current table, writing any buffered rows.
+         * 
+         * @throws IOException on I/O error
+         */
+        void endTable() throws IOException
+        {
+            assert(column == 0);
+            
+            flushBlock();
+            table = null;
+            columnNames = null;
+        }
+        
+        /**
+         * Writes the end marker and flushes the underlying stream.  Does 
+         * not close the stream.
+         * 
+         * @throws IOException on I/O error
+         */
+        void finish() throws IOException
+        {
+            assert(table == null);
+            
+            output.write(MARKER_END);
+            output.flush();
+        }
+        
+        private void writeDictionaryString(String s) throws IOException
+        {
+            if (s.length() > MAX_DICTIONARY_STRING_LEN) {
+                block.write(TAG_STRING);
+                writeString(block, s);
+                return;
+            }
+            
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                block.write(TAG_STRING_REF);
+                writeVarLong(block, index.intValue());
+            } else if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.put(s, dictionary.size());
+                block.write(TAG_STRING_NEW);
+                writeString(block, s);
+            } else {
+                block.write(TAG_STRING);
+                writeString(block, s);
+            }
+        }
+        
+        private void flushBlock() throws IOException
+        {
+            if (numRows == 0) {
+                return;
+            }
+            
+            block.flush();
+            
+            ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+            DataOutputStream headerOutput = new DataOutputStream(header);
+            writeString(headerOutput, table);
+            writeVarLong(headerOutput, columnNames.length);
+            for(String columnName: columnNames) {
+                writeString(headerOutput, columnName);
+            }
+            writeVarLong(headerOutput, numRows);
+            headerOutput.flush();
+            
+            output.write(MARKER_BLOCK);
+            output.writeInt(header.size() + blockBytes.size());
+            header.writeTo(output);
+            blockBytes.writeTo(output);
+            
+            blockBytes.reset();
+            dictionary.clear();
+            numRows = 0;
+        }
+    }
+    
+    /**
+     * Reader reads binary backup data one block at a time.
+     */
+    static class Reader
+    {
+        private final DataInputStream input;
+        
+        /**
+         * Constructs a Reader and reads the entry header.
+         * 
+         * @param input input stream positioned at the start of an entry
+         * @throws IOException on I/O error or unsupported version
+         */
+        Reader(InputStream input) throws IOException
+        {
+            this.input = new DataInputStream(input);
+            
+            for(int i = 0; i < MAGIC.length; i++) {
+                if (this.input.readByte() != MAGIC[i]) {
+                    throw new IOException("Not a binary backup entry");
+                }
+            }
+            
+            int version = this.input.read();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(
+                    "Unsupported binary backup version: " + version);
+            }
+        }
+        
+        /**
+         * Reads the next block.
+         * 
+         * @return the next block or null at the end of the entry
+         * @throws IOException on I/O error or malformed data
+         */
+        Block nextBlock() throws IOException
+        {
+            int marker = input.read();
+            if (marker == MARKER_END) {
+                return null;
+            } else if (marker != MARKER_BLOCK) {
+                throw new IOException(
+                    marker < 0 
+                        ? "Premature end of data file" 
+                        : "Invalid block marker: " + marker);
+            }
+            
+            int length = input.readInt();
+            byte[] body = new byte[length];
+            input.readFully(body);
+            
+            return new Block(body);
+        }
+    }
+    
+    /**
+     * Block is a single, self-contained block of rows from one table.  
+     * Blocks are not thread-safe, but different blocks may be decoded 
+     * concurrently.
+     */
+    static class Block
+    {
+        private final DataInputStream input;
+        private final String table;
+        private final String[] columnNames;
+        private final int numRows;
+        private final List<String> dictionary;
+        
+        private Block(byte[] body) throws IOException
+        {
+            this.input = 
+                new DataInputStream(new ByteArrayInputStream(body));
+            this.table = readString(input);
+            int numCols = (int)readVarLong(input);
+            this.columnNames = new String[numCols];
+            for(int i = 0; i < numCols; i++) {
+                columnNames[i] = readString(input);
+            }
+            this.numRows = (int)readVarLong(input);
+            this.dictionary = new ArrayList<String>();
+        }
+        
+        String getTable()
+        {
+            return table;
+        }
+        
+        String[] getColumnNames()
+        {
+            return columnNames;
+        }
+        
+        int getNumRows()
+        {
+            return numRows;
+        }
+        
+        /**
+         * Reads the next row of the block.
+         * 
+         * @param values receives the row's values
+         * @param isMofId receives whether each value is a MOF ID
+         * @throws IOException on malformed data
+         */
+        void readRow(Object[] values, boolean[] isMofId) throws IOException
+        {
+            for(int i = 0; i < columnNames.length; i++) {
+                int tag = input.read();
+                
+                Object v;
+                boolean mofId = false;
+                switch(tag) {
+                case TAG_NULL:
+                    v = null;
+                    break;
+                case TAG_STRING:
+                    v = readString(input);
+                    break;
+                case TAG_STRING_NEW:
+                    v = readString(input);
+                    dictionary.add((String)v);
+                    break;
+                case TAG_STRING_REF:
+                    v = dictionary.get((int)readVarLong(input));
+                    break;
+                case TAG_MOFID:
+                    v = readVarLong(input);
+                    mofId = true;
+                    break;
+                case TAG_LONG:
+                    v = unZigZag(readVarLong(input));
+                    break;
+                case TAG_INT:
+                    v = (int)unZigZag(readVarLong(input));
+                    break;
+                case TAG_FLOAT:
+                    v = input.readFloat();
+                    break;
+                case TAG_DOUBLE:
+                    v = input.readDouble();
+                    break;
+                case TAG_BIG_DECIMAL:
+                    v = new BigDecimal(readString(input));
+                    break;
+                case TAG_BIG_INTEGER:
+                    v = new BigInteger(readString(input));
+                    break;
+                case TAG_FALSE:
+                    v = Boolean.FALSE;
+                    break;
+                case TAG_TRUE:
+                    v = Boolean.TRUE;
+                    break;
+                default:
+                    throw new IOException(
+                        tag < 0 
+                            ? "Premature end of block" 
+                            : "Invalid value tag: " + tag);
+                }
+                
+                values[i] = v;
+                isMofId[i] = mofId;
+            }
+        }
+    }
+    
+    private static long zigZag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+    
+    private static long unZigZag(long v)
+    {
+        return (v >>> 1) ^ -(v & 1);
+    }
+    
+    private static void writeVarLong(DataOutputStream output, long v)
+        throws IOException
+    {
+        while((v & ~0x7FL) != 0) {
+            output.write((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        output.write((int)v);
+    }
+    
+    private static long readVarLong(DataInputStream input) throws IOException
+    {
+        long v = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private static void writeString(DataOutputStream output, String s)
+        throws IOException
+    {
+        byte[] bytes = s.getBytes(ENCODING);
+        writeVarLong(output, bytes.length);
+        output.write(bytes);
+    }
+    
+    private static String readString(DataInputStream input) 
+        throws IOException
+    {
+        byte[] bytes = new byte[(int)readVarLong(input)];
+        input.readFully(bytes);
+        return new String(bytes, ENCODING);
+    }
+}
+
+// End BinaryBackupFormat.java
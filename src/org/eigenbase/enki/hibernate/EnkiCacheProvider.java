@@ -0,0 +1,515 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import java.util.*;
+import java.util.logging.*;
+
+import org.eigenbase.enki.hibernate.config.*;
+import org.hibernate.cache.*;
+
+/**
+ * EnkiCacheProvider is a Hibernate second-level {@link CacheProvider} that
+ * stores the cached data of all regions in a single, bounded LRU map.  It 
+ * allows objects committed by one repository session to be read by others
+ * without reloading them from the database.  The generated mappings for all
+ * metamodels already declare their entity, collection and query cache 
+ * regions, so this provider only needs to be enabled (see
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_SHARED_CACHE_SIZE}).
+ * 
+ * <p>Cache consistency is left to Hibernate: entity and collection regions
+ * use the <code>read-write</code> strategy, which invalidates an entry when
+ * a transaction modifies the object and versions entries by commit 
+ * timestamp.  Cached query results are invalidated by table at commit via 
+ * the update timestamps region.  That region is never subject to eviction,
+ * since losing a table's update timestamp would allow stale query results
+ * to be returned.
+ * 
+ * @author Stephan Zuercher
+ */
+@SuppressWarnings("deprecation")
+public class EnkiCacheProvider implements CacheProvider
+{
+    private static final Logger log = 
+        Logger.getLogger(EnkiCacheProvider.class.getName());
+    
+    /** Lock timeout for cached entries, in {@link Timestamper} units. */
+    private static final int TIMEOUT = Timestamper.ONE_MS * 60000;
+    
+    private Store store;
+    
+    public EnkiCacheProvider()
+    {
+    }
+    
+    public void start(Properties properties) throws CacheException
+    {
+        int maxSize = 
+            PropertyUtil.readStorageProperty(
+                properties,
+                log,
+                HibernateMDRepository.PROPERTY_STORAGE_SHARED_CACHE_SIZE,
+                HibernateMDRepository.DEFAULT_SHARED_CACHE_SIZE,
+                Integer.class);
+        if (maxSize <= 0) {
+            throw new CacheException(
+                "invalid shared cache size: " + maxSize);
+        }
+        
+        store = new Store(maxSize);
+        
+        log.fine("Started shared cache (max entries: " + maxSize + ")");
+    }
+    
+    public void stop()
+    {
+        if (store != null) {
+            store.clear(null);
+        }
+    }
+    
+    public Cache buildCache(String regionName, Properties properties)
+        throws CacheException
+    {
+        if (store == null) {
+            throw new CacheException("cache provider not started");
+        }
+        
+        if (regionName.endsWith(UpdateTimestampsCache.REGION_NAME)) {
+            return new TimestampsRegion(regionName);
+        }
+        
+        return new Region(regionName, store);
+    }
+
+    public long nextTimestamp()
+    {
+        return Timestamper.next();
+    }
+
+    public boolean isMinimalPutsEnabledByDefault()
+    {
+        return false;
+    }
+
+    /**
+     * Discards all cached entities, collections and query results.  
+     * Required after the database is modified without Hibernate's
+     * knowledge (e.g., by mass deletion or restore).  Update timestamps
+     * are retained.
+     */
+    public void clear()
+    {
+        store.clear(null);
+    }
+    
+    /**
+     * Returns a snapshot of this provider's statistics.
+     * 
+     * @return cache statistics
+     */
+    public Statistics getStatistics()
+    {
+        return store.getStatistics();
+    }
+    
+    /**
+     * Store is the bounded, access-ordered map shared by all data regions.
+     */
+    private static class Store
+    {
+        private final int maxSize;
+        private final LinkedHashMap<RegionKey, Object> map;
+        
+        private long hits;
+        private long misses;
+        private long puts;
+        private long evictions;
+        
+        Store(int maxSize)
+        {
+            this.maxSize = maxSize;
+            this.map = 
+                new LinkedHashMap<RegionKey, Object>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 
+                        -3206417958436519235L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                        Map.Entry<RegionKey, Object> eldest)
+                    {
+                        if (size() <= Store.this.maxSize) {
+                            return false;
+                        }
+                        
+                        eldest.getKey().region.count--;
+                        evictions++;
+                        return true;
+                    }
+                };
+        }
+        
+        synchronized Object get(Region region, Object key)
+        {
+            Object value = map.get(new RegionKey(region, key));
+            if (value != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return value;
+        }
+        
+        synchronized void put(Region region, Object key, Object value)
+        {
+            puts++;
+            if (map.put(new RegionKey(region, key), value) == null) {
+                region.count++;
+            }
+        }
+        
+        synchronized void remove(Region region, Object key)
+        {
+            if (map.remove(new RegionKey(region, key)) != null) {
+                region.count--;
+            }
+        }
+        
+        /**
+         * Removes all entries for the given region, or all entries if
+         * region is null.
+         */
+        synchronized void clear(Region region)
+        {
+            Iterator<RegionKey> iter = map.keySet().iterator();
+            while(iter.hasNext()) {
+                RegionKey key = iter.next();
+                if (region == null || key.region == region) {
+                    key.region.count--;
+                    iter.remove();
+                }
+            }
+        }
+        
+        synchronized Map<Object, Object> toMap(Region region)
+        {
+            Map<Object, Object> result = new HashMap<Object, Object>();
+            for(Map.Entry<RegionKey, Object> entry: map.entrySet()) {
+                if (entry.getKey().region == region) {
+                    result.put(entry.getKey().key, entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        synchronized long count(Region region)
+        {
+            return region.count;
+        }
+        
+        synchronized Statistics getStatistics()
+        {
+            return new Statistics(
+                hits, misses, puts, evictions, map.size(), maxSize);
+        }
+    }
+    
+    /**
+     * RegionKey combines a region and a key within the region.  Regions are
+     * compared by identity.
+     */
+    private static class RegionKey
+    {
+        private final Region region;
+        private final Object key;
+        
+        RegionKey(Region region, Object key)
+        {
+            this.region = region;
+            this.key = key;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(region) * 31 + key.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof RegionKey)) {
+                return false;
+            }
+            
+            RegionKey that = (RegionKey)o;
+            return region == that.region && key.equals(that.key);
+        }
+    }
+    
+    /**
+     * AbstractRegion implements the portions of {@link Cache} common to
+     * all regions.
+     */
+    private static abstract class AbstractRegion implements Cache
+    {
+        private final String regionName;
+        
+        AbstractRegion(String regionName)
+        {
+            this.regionName = regionName;
+        }
+        
+        public String getRegionName()
+        {
+            return regionName;
+        }
+        
+        public Object read(Object key) throws CacheException
+        {
+            return get(key);
+        }
+
+        public void update(Object key, Object value) throws CacheException
+        {
+            put(key, value);
+        }
+
+        public void destroy() throws CacheException
+        {
+            clear();
+        }
+        
+        public void lock(Object key) throws CacheException
+        {
+            // Locking is handled by Hibernate's concurrency strategy.
+        }
+
+        public void unlock(Object key) throws CacheException
+        {
+        }
+
+        public long nextTimestamp()
+        {
+            return Timestamper.next();
+        }
+
+        public int getTimeout()
+        {
+            return TIMEOUT;
+        }
+        
+        public long getSizeInMemory()
+        {
+            return -1;
+        }
+
+        public long getElementCountOnDisk()
+        {
+            return 0;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "EnkiCache(" + regionName + ")";
+        }
+    }
+    
+    /**
+     * Region is a data region (entities, collections or query results) 
+     * whose entries are kept in the shared {@link Store}.
+     */
+    private static class Region extends AbstractRegion
+    {
+        private final Store store;
+        
+        /** Number of entries in the store for this region. */
+        private long count;
+        
+        Region(String regionName, Store store)
+        {
+            super(regionName);
+            
+            this.store = store;
+        }
+
+        public Object get(Object key) throws CacheException
+        {
+            return store.get(this, key);
+        }
+
+        public void put(Object key, Object value) throws CacheException
+        {
+            store.put(this, key, value);
+        }
+
+        public void remove(Object key) throws CacheException
+        {
+            store.remove(this, key);
+        }
+
+        public void clear() throws CacheException
+        {
+            store.clear(this);
+        }
+
+        public long getElementCountInMemory()
+        {
+            return store.count(this);
+        }
+
+        public Map<Object, Object> toMap()
+        {
+            return store.toMap(this);
+        }
+    }
+    
+    /**
+     * TimestampsRegion holds the update timestamps region.  It has one entry
+     * per table and is not bounded.
+     */
+    private static class TimestampsRegion extends AbstractRegion
+    {
+        private final Map<Object, Object> map;
+        
+        TimestampsRegion(String regionName)
+        {
+            super(regionName);
+            
+            this.map = 
+                Collections.synchronizedMap(new HashMap<Object, Object>());
+        }
+        
+        public Object get(Object key) throws CacheException
+        {
+            return map.get(key);
+        }
+
+        public void put(Object key, Object value) throws CacheException
+        {
+            map.put(key, value);
+        }
+
+        public void remove(Object key) throws CacheException
+        {
+            map.remove(key);
+        }
+
+        public void clear() throws CacheException
+        {
+            map.clear();
+        }
+
+        public long getElementCountInMemory()
+        {
+            return map.size();
+        }
+
+        public Map<Object, Object> toMap()
+        {
+            synchronized(map) {
+                return new HashMap<Object, Object>(map);
+            }
+        }
+    }
+    
+    /**
+     * Statistics is a snapshot of {@link EnkiCacheProvider} statistics.
+     */
+    public static class Statistics
+    {
+        private final long hitCount;
+        private final long missCount;
+        private final long putCount;
+        private final long evictionCount;
+        private final int size;
+        private final int maxSize;
+        
+        private Statistics(
+            long hitCount, 
+            long missCount, 
+            long putCount,
+            long evictionCount,
+            int size, 
+            int maxSize)
+        {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.putCount = putCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+        
+        /** @return number of lookups that found an entry */
+        public long getHitCount()
+        {
+            return hitCount;
+        }
+        
+        /** @return number of lookups that found no entry */
+        public long getMissCount()
+        {
+            return missCount;
+        }
+        
+        /** 
+         * @return fraction of lookups that found an entry, or 0 if there
+         *         have been no lookups 
+         */
+        public double getHitRatio()
+        {
+            long lookups = hitCount + missCount;
+            if (lookups == 0) {
+                return 0.0;
+            }
+            return (double)hitCount / (double)lookups;
+        }
+        
+        /** @return number of entries stored */
+        public long getPutCount()
+        {
+            return putCount;
+        }
+        
+        /** @return number of entries evicted to stay within the size bound */
+        public long getEvictionCount()
+        {
+            return evictionCount;
+        }
+        
+        /** @return current number of entries */
+        public int getSize()
+        {
+            return size;
+        }
+        
+        /** @return maximum number of entries */
+        public int getMaxSize()
+        {
+            return maxSize;
+        }
+    }
+}
+
+// End EnkiCacheProvider.java
@@ -0,0 +1,62 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import java.util.*;
+
+/**
+ * EnkiOptimisticLockException is thrown when the commit of a write 
+ * transaction fails because another transaction modified or deleted one of 
+ * its objects first.  Only thrown when 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_OPTIMISTIC_WRITES} is 
+ * enabled.  By the time this exception is thrown the transaction has been 
+ * rolled back and the repository session's cached objects discarded, so the
+ * caller may simply retry the transaction.
+ * 
+ * @author Stephan Zuercher
+ */
+public class EnkiOptimisticLockException extends EnkiHibernateException
+{
+    private static final long serialVersionUID = -3197623470928511045L;
+
+    private final List<String> mofIds;
+    
+    public EnkiOptimisticLockException(
+        String message, List<String> mofIds, Throwable cause)
+    {
+        super(message, cause);
+        
+        this.mofIds = Collections.unmodifiableList(mofIds);
+    }
+    
+    /**
+     * Returns the MOF IDs of the conflicting objects, if known.
+     * 
+     * @return list of MOF IDs, possibly empty
+     */
+    public List<String> getConflictingMofIds()
+    {
+        return mofIds;
+    }
+}
+
+// End EnkiOptimisticLockException.java
@@ -26,6 +26,8 @@ import java.lang.reflect.*;
 import java.math.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 import java.util.zip.*;
 
@@ -39,7 +41,9 @@ import org.eigenbase.enki.hibernate.storage.*;
 import org.eigenbase.enki.mdr.*;
 import org.eigenbase.enki.util.*;
 import org.hibernate.*;
+import org.hibernate.connection.*;
 import org.hibernate.dialect.*;
+import org.hibernate.engine.SessionFactoryImplementor;
 
 /**
  * HibernateBackupRestoreUtil implements backup/restore of repository extents
@@ -82,10 +86,23 @@ public class HibernateBackupRestoreUtil
      */
     public static final String PROP_PACKAGE_VERSION = 
         "enki.backup.packageVersion";
+    
+    /** 
+     * Backup descriptor property holding the format of the backup data
+     * (see {@link HibernateMDRepository#PROPERTY_STORAGE_BACKUP_FORMAT}).
+     * Informational only: restore detects the format of each data entry.
+     */
+    public static final String PROP_DATA_FORMAT = "enki.backup.dataFormat";
 
     public static final String FILE_BACKUP_DESCRIPTOR = "enki/backup.desc";
     public static final String FILE_BACKUP_DATA = "enki/backup.data";
     
+    /** 
+     * Suffix of compressed backup data entries.  Such entries are stored
+     * in the ZIP stream as GZIP data.
+     */
+    public static final String FILE_COMPRESSED_SUFFIX = ".gz";
+    
     private static final String DATA_ENCODING = "UTF-8";
     private static final int BUFFER_SIZE = 16384;
     
@@ -93,6 +110,12 @@ public class HibernateBackupRestoreUtil
     
     private static final int BATCH_SIZE = 500;
     
+    /**
+     * Tables with more rows than this are split into MOF ID ranges by 
+     * parallel backups.
+     */
+    private static final int PARTITION_ROWS = 50000;
+    
     private static final String MOF_ID_COLUMN_NAME = 
         HibernateMappingHandler.MOF_ID_COLUMN_NAME;
     
@@ -102,18 +125,37 @@ public class HibernateBackupRestoreUtil
     private final HibernateMDRepository repos;
     private final Dialect dialect;
     private final String tablePrefix;
+    private final int backupThreads;
+    private final boolean backupCompress;
+    private final boolean backupBinary;
+    private final int restoreThreads;
+    private final int restoreBatchSize;
+    
+    /** 
+     * Tables of a parallel restore whose deletion of the extent's existing
+     * data has been committed; null otherwise.
+     */
+    private RestoreTables committedTables;
     
     HibernateBackupRestoreUtil(HibernateMDRepository repos)
     {
         this.repos = repos;
         this.dialect = repos.getSqlDialect();
         this.tablePrefix = repos.getTablePrefix();
+        this.backupThreads = repos.getBackupThreads();
+        this.backupCompress = repos.getBackupCompress();
+        this.backupBinary = repos.getBackupBinary();
+        this.restoreThreads = repos.getRestoreThreads();
+        this.restoreBatchSize = computeRestoreBatchSize();
     }
     
     /**
      * Backs up the given repository into the given OutputStream.  Writes an
      * uncompressed ZIP stream into the output stream containing a backup
-     * descriptor (properties) file and a data file.
+     * descriptor (properties) file and a data file.  If 
+     * {@link HibernateMDRepository#PROPERTY_STORAGE_BACKUP_THREADS} is 
+     * greater than one, delegates to {@link #parallelBackup}, which writes
+     * multiple data files.
      * 
      * @param extentDesc ExtentDescriptor for the extent to back up
      * @param stream output stream
@@ -141,6 +183,30 @@ public class HibernateBackupRestoreUtil
         backupProps.put(PROP_METAMODEL, extentDesc.modelDescriptor.name);
         backupProps.put(
             PROP_PACKAGE_VERSION, HibernateMDRepository.PACKAGE_VERSION);
+        backupProps.put(
+            PROP_DATA_FORMAT,
+            backupBinary 
+                ? HibernateMDRepository.BACKUP_FORMAT_BINARY 
+                : HibernateMDRepository.BACKUP_FORMAT_TEXT);
+        
+        if (backupThreads > 1) {
+            if (!repos.hasUncommittedChanges()) {
+                // Each scan reads committed data over its own connection.
+                // Keep other writers from committing until this 
+                // transaction ends, or the scans could see different 
+                // states of the extent.
+                repos.lockForSchemaChange();
+                
+                parallelBackup(extentDesc, backupProps, stream);
+                
+                log.info("Backed up extent '" + extentDesc.name + "'");
+                return;
+            }
+            
+            log.fine(
+                "Transaction contains uncommitted changes; "
+                + "using serial backup");
+        }
         
         File propsFile = null;
         File dataFile = null;
@@ -156,7 +222,7 @@ public class HibernateBackupRestoreUtil
         
         try {
             LongRangeWrapper mofIdRange = 
-                dumpData(dataFile, extentDesc.extent);
+                dumpData(dataFile, extentDesc.getExtent());
             
             backupProps.put(PROP_MIN_MOF_ID, String.valueOf(mofIdRange.min));
             backupProps.put(
@@ -209,19 +275,27 @@ public class HibernateBackupRestoreUtil
     {
         log.fine("Dumping extent data");
         
-        BufferedWriter output = null;
+        OutputStream output = null;
+        File tempFile = null;
         try {
-            output = new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(dataFile),
-                    DATA_ENCODING));
+            output = 
+                new BufferedOutputStream(
+                    new FileOutputStream(dataFile), BUFFER_SIZE);
+            
+            BackupWriter writer;
+            if (backupBinary) {
+                writer = new BinaryBackupWriter(output);
+            } else {
+                tempFile = makeTempFile();
+                writer = new TextBackupWriter(output, tempFile);
+            }
             
-            LongRangeWrapper mofIdRange = dumpData(output, extent);
+            LongRangeWrapper mofIdRange = dumpData(writer, extent);
             
-            output.flush();
-            BufferedWriter w = output;
+            writer.finish();
+            OutputStream o = output;
             output = null;
-            w.close();
+            o.close();
             
             return mofIdRange;
         } catch(Exception e) {
@@ -234,6 +308,10 @@ public class HibernateBackupRestoreUtil
             }
             
             throw new EnkiBackupFailedException(e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
         }
     }
     
@@ -246,18 +324,52 @@ public class HibernateBackupRestoreUtil
      * @throws IOException on write error
      * @throws SQLException on database error
      */
-    private LongRangeWrapper dumpData(BufferedWriter output, RefPackage extent)
+    private LongRangeWrapper dumpData(BackupWriter output, RefPackage extent)
         throws IOException, SQLException
     {
-        Set<HibernateAssociation.Kind> assocTypesSeen = 
-            new HashSet<HibernateAssociation.Kind>();
-        
         List<String> assocTables = new ArrayList<String>();
         HashMultiMap<String, String> assocTableMofIdCols =
             new HashMultiMap<String, String>();
         List<String> objectTables = new ArrayList<String>();
         HashMultiMap<String, String> objectTableMofIdCols =
             new HashMultiMap<String, String>();
+
+        collectTables(
+            extent, 
+            assocTables, 
+            assocTableMofIdCols, 
+            objectTables, 
+            objectTableMofIdCols);
+        
+        LongRangeWrapper assocMofIdRange =
+            dumpTables(output, assocTables, assocTableMofIdCols);
+        LongRangeWrapper objectMofIdRange =
+            dumpTables(output, objectTables, objectTableMofIdCols);
+        
+        return assocMofIdRange.union(objectMofIdRange);
+    }
+    
+    /**
+     * Collects the names of the tables that store the given extent's 
+     * associations and objects along with the names of their MOF ID 
+     * columns.
+     * 
+     * @param extent extent to dump
+     * @param assocTables receives association table names
+     * @param assocTableMofIdCols receives association table MOF ID columns
+     * @param objectTables receives object table names
+     * @param objectTableMofIdCols receives object table MOF ID columns
+     */
+    private void collectTables(
+        RefPackage extent,
+        List<String> assocTables,
+        HashMultiMap<String, String> assocTableMofIdCols,
+        List<String> objectTables,
+        HashMultiMap<String, String> objectTableMofIdCols)
+    {
+        Set<HibernateAssociation.Kind> assocTypesSeen = 
+            new HashSet<HibernateAssociation.Kind>();
+        
         LinkedList<HibernateRefPackage> pkgs = 
             new LinkedList<HibernateRefPackage>();
         pkgs.add((HibernateRefPackage)extent);
@@ -323,20 +435,10 @@ public class HibernateBackupRestoreUtil
                 }
             }
         }
-        
-        LongRangeWrapper assocMofIdRange =
-            dumpTables(output, assocTables, assocTableMofIdCols);
-        LongRangeWrapper objectMofIdRange =
-            dumpTables(output, objectTables, objectTableMofIdCols);
-        
-        return assocMofIdRange.union(objectMofIdRange);
     }
     
     /**
-     * Dumps data from the given tables into the output writer.  This method
-     * creates a temporary file and stores data in that file before copying
-     * it into the output writer.  The temporary file is deleted before the
-     * method exits.
+     * Dumps data from the given tables into the output writer.
      * 
      * @param output output writer for the backup
      * @param tables list of table names, ready for dialect-specific quoting,
@@ -348,115 +450,134 @@ public class HibernateBackupRestoreUtil
      * @throws SQLException on database error
      */
     private LongRangeWrapper dumpTables(
-        BufferedWriter output, 
+        BackupWriter output, 
         List<String> tables, 
         HashMultiMap<String, String> tableMofIdCols)
     throws IOException, SQLException
     {
-        long minMofId = Long.MAX_VALUE;
-        long maxMofId = Long.MIN_VALUE;
+        LongRangeWrapper mofIdRange = 
+            new LongRangeWrapper(Long.MAX_VALUE, Long.MIN_VALUE);
         
-        File tempFile = makeTempFile();
+        Session session = repos.getCurrentSession();
         
+        Connection conn = session.connection();
+
+        Statement stmt = conn.createStatement();
         try {
-            Session session = repos.getCurrentSession();
-            
-            Connection conn = session.connection();
+            for(String table: tables) {
+                Collection<String> mofIdCols = 
+                    tableMofIdCols.getValues(table);
+                
+                ResultSet rset = 
+                    stmt.executeQuery(
+                        "select * from " 
+                        + HibernateDialectUtil.quote(dialect, table));
+                try {
+                    String[] columnNames = getColumnNames(rset);
+                    
+                    boolean[] isMofIdCol = 
+                        findMofIdColumns(columnNames, mofIdCols);
+                    
+                    output.writeTable(
+                        table, columnNames, rset, isMofIdCol, mofIdRange);
+                } finally {
+                    rset.close();
+                }
+            }
+        } finally {
+            stmt.close();
+        }
+        
+        return mofIdRange;
+    }
     
-            Statement stmt = conn.createStatement();
-            
-            try {
-                for(String table: tables) {
-                    BufferedWriter tempOutput = 
-                        new BufferedWriter(
-                            new OutputStreamWriter(
-                                new FileOutputStream(tempFile, false),
-                                DATA_ENCODING));
+    /**
+     * Returns the column names of the given result set.
+     * 
+     * @param rset result set
+     * @return column names in result set order
+     * @throws SQLException on database error
+     */
+    private static String[] getColumnNames(ResultSet rset) 
+        throws SQLException
+    {
+        ResultSetMetaData metadata = rset.getMetaData();
+        int numCols = metadata.getColumnCount();
+        String[] columnNames = new String[numCols];
+        for(int i = 1; i <= numCols; i++) {
+            columnNames[i - 1] = metadata.getColumnName(i);
+        }
+        return columnNames;
+    }
     
-                    StringBuilder tableHeader = new StringBuilder(table);
-                    int numRows = 0;
-
-                    Collection<String> mofIdCols = 
-                        tableMofIdCols.getValues(table);
-                    
-                    ResultSet rset = 
-                        stmt.executeQuery(
-                            "select * from " 
-                            + HibernateDialectUtil.quote(dialect, table));
-                    try {
-                        ResultSetMetaData metadata = rset.getMetaData();
-                        int numCols = metadata.getColumnCount();
-                        String[] columnNames = new String[numCols];
-                        for(int i = 1; i <= numCols; i++) {
-                            String columnName = metadata.getColumnName(i);
+    /**
+     * Determines which of the given columns contain MOF IDs.
+     * 
+     * @param columnNames column names in result set order
+     * @param mofIdCols names of MOF ID columns
+     * @return array of flags, in result set order
+     */
+    private static boolean[] findMofIdColumns(
+        String[] columnNames, Collection<String> mofIdCols)
+    {
+        boolean[] isMofIdCol = new boolean[columnNames.length];
+        for(int i = 0; i < columnNames.length; i++) {
+            isMofIdCol[i] = mofIdCols.contains(columnNames[i]);
+        }
+        return isMofIdCol;
+    }
     
-                            tableHeader.append(',').append(columnName);
-                            columnNames[i - 1] = columnName;
-                        }
-                        
-                        while(rset.next()) {
-                            for(int i = 1; i <= numCols; i++) {
-                                Object value = rset.getObject(i);
-                                Type type = Type.fromObject(value);
-                                if (type == Type.LONG && 
-                                    mofIdCols.contains(columnNames[i - 1]))
-                                {
-                                    long mofId = rset.getLong(i);
-                                    minMofId = Math.min(minMofId, mofId);
-                                    maxMofId = Math.max(maxMofId, mofId);
-                                    type = Type.MOFID;
-                                }
-                                
-                                if (i != 1) {
-                                    tempOutput.write(',');
-                                }
-                                tempOutput.write(type.encode(value));
-                            }
-                            tempOutput.newLine();
-                            numRows++;
-                        }
-                        
-                        tempOutput.flush();
-                        tempOutput.close();
-                    } finally {
-                        rset.close();
-                    }
-                    
-                    if (numRows > 0) {
-                        output.write(tableHeader.toString());
-                        output.newLine();
-                        output.write(String.valueOf(numRows));
-                        output.newLine();
-                        append(output, tempFile);
-                    }
+    /**
+     * Writes the current row of the given result set as a line of backup
+     * data.
+     * 
+     * @param rset result set positioned on a row
+     * @param isMofIdCol flags indicating which columns contain MOF IDs
+     * @param output output writer
+     * @param mofIdRange if not null, updated with the row's MOF IDs
+     * @throws IOException on write error
+     * @throws SQLException on database error
+     */
+    private static void writeRow(
+        ResultSet rset, 
+        boolean[] isMofIdCol, 
+        BufferedWriter output, 
+        LongRangeWrapper mofIdRange)
+    throws IOException, SQLException
+    {
+        for(int i = 1; i <= isMofIdCol.length; i++) {
+            Object value = rset.getObject(i);
+            Type type = Type.fromObject(value);
+            if (type == Type.LONG && isMofIdCol[i - 1]) {
+                if (mofIdRange != null) {
+                    long mofId = rset.getLong(i);
+                    mofIdRange.min = Math.min(mofIdRange.min, mofId);
+                    mofIdRange.max = Math.max(mofIdRange.max, mofId);
                 }
-            } finally {
-                stmt.close();
+                type = Type.MOFID;
             }
             
-            return new LongRangeWrapper(minMofId, maxMofId);
-        } finally {
-            tempFile.delete();
+            if (i != 1) {
+                output.write(',');
+            }
+            output.write(type.encode(value));
         }
+        output.newLine();
     }
     
     /**
      * Appends the contents of the given file to the given output.
      * 
-     * @param output writer to append data to 
+     * @param output stream to append data to 
      * @param tempFile source of data
      * @throws IOException on I/O error
      */
-    private void append(BufferedWriter output, File tempFile)
+    private void append(OutputStream output, File tempFile)
         throws IOException
     {
-        BufferedReader input = 
-            new BufferedReader(
-                new InputStreamReader(
-                    new FileInputStream(tempFile), DATA_ENCODING));
-     
+        InputStream input = new FileInputStream(tempFile);
         try {
-            char[] buffer = new char[BUFFER_SIZE];
+            byte[] buffer = new byte[BUFFER_SIZE];
             int len;
             while((len = input.read(buffer)) > 0) {
                 output.write(buffer, 0, len);
@@ -510,9 +631,204 @@ public class HibernateBackupRestoreUtil
 
     }
     
+    /**
+     * Backs up the given extent using multiple threads, each with its own
+     * JDBC connection.  Tables are first scanned (concurrently) for their
+     * row counts and MOF ID ranges, which allows the backup descriptor to
+     * be written first.  Tables are then read concurrently.  Tables with 
+     * more than {@link #PARTITION_ROWS} rows are split into MOF ID ranges.
+     * Each table or range is written to its own data entry, named 
+     * {@link #FILE_BACKUP_DATA} plus a sequence number, directly from 
+     * memory.  Entries are written in table order and only a few entries 
+     * per thread are buffered at any time.  If compression is enabled, 
+     * each entry's data is GZIP-compressed by the thread that read it and
+     * its name receives the {@link #FILE_COMPRESSED_SUFFIX} suffix.
+     * 
+     * <p>The additional connections only see committed data.  Callers must
+     * ensure the current transaction contains no changes and that no other
+     * transaction can commit changes until the backup is complete.
+     * 
+     * @param extentDesc ExtentDescriptor for the extent to back up
+     * @param backupProps backup descriptor properties; MOF ID range 
+     *                    properties are added by this method
+     * @param stream output stream
+     * @throws EnkiBackupFailedException if there's an error backing up the
+     *                                   extent
+     */
+    private void parallelBackup(
+        HibernateMDRepository.ExtentDescriptor extentDesc, 
+        Properties backupProps,
+        OutputStream stream)
+    throws EnkiBackupFailedException
+    {
+        List<String> tables = new ArrayList<String>();
+        HashMultiMap<String, String> tableMofIdCols =
+            new HashMultiMap<String, String>();
+        List<String> objectTables = new ArrayList<String>();
+        collectTables(
+            extentDesc.getExtent(), 
+            tables,
+            tableMofIdCols, 
+            objectTables,
+            tableMofIdCols);
+        tables.addAll(objectTables);
+        
+        ConnectionProvider connectionProvider = 
+            ((SessionFactoryImplementor)
+                repos.getCurrentSession().getSessionFactory())
+                .getConnectionProvider();
+
+        log.fine(
+            "Dumping extent data with " + backupThreads + " threads");
+
+        ExecutorService executor = 
+            Executors.newFixedThreadPool(
+                backupThreads, 
+                new ThreadFactory() {
+                    private int count = 0;
+                    
+                    public synchronized Thread newThread(Runnable r)
+                    {
+                        Thread t = 
+                            new Thread(r, "Enki Backup Thread " + ++count);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            List<Future<TableScan>> scans = 
+                new ArrayList<Future<TableScan>>();
+            for(String table: tables) {
+                scans.add(
+                    executor.submit(
+                        new TableScan(
+                            connectionProvider,
+                            table, 
+                            tableMofIdCols.getValues(table))));
+            }
+            
+            LongRangeWrapper mofIdRange = 
+                new LongRangeWrapper(Long.MAX_VALUE, Long.MIN_VALUE);
+            List<Partition> partitions = new ArrayList<Partition>();
+            for(Future<TableScan> scan: scans) {
+                TableScan tableScan = getResult(scan);
+                mofIdRange = mofIdRange.union(tableScan.mofIdRange);
+                tableScan.partition(partitions);
+            }
+            
+            backupProps.put(PROP_MIN_MOF_ID, String.valueOf(mofIdRange.min));
+            backupProps.put(
+                PROP_MOF_ID_COUNT, 
+                String.valueOf(mofIdRange.max - mofIdRange.min));
+
+            ByteArrayOutputStream propsStream = new ByteArrayOutputStream();
+            backupProps.storeToXML(
+                propsStream, 
+                "Enki/Hibernate Backup: " + new java.util.Date().toString(),
+                "UTF-8");
+            
+            ZipOutputStream zipStream = new ZipOutputStream(stream);
+            zipStream.setMethod(ZipOutputStream.STORED);
+            
+            writeZipEntry(
+                zipStream, 
+                FILE_BACKUP_DESCRIPTOR, 
+                new EntryData(propsStream));
+            
+            // Keep a bounded number of partitions in flight and write them
+            // in order.
+            LinkedList<Future<EntryData>> pending = 
+                new LinkedList<Future<EntryData>>();
+            Iterator<Partition> iter = partitions.iterator();
+            int entryNum = 0;
+            while(iter.hasNext() || !pending.isEmpty()) {
+                while(iter.hasNext() && pending.size() < backupThreads * 2) {
+                    pending.add(executor.submit(iter.next()));
+                }
+                
+                EntryData data = getResult(pending.removeFirst());
+                if (data == null) {
+                    continue;
+                }
+                
+                String entryName = FILE_BACKUP_DATA + "." + entryNum++;
+                if (backupCompress) {
+                    entryName += FILE_COMPRESSED_SUFFIX;
+                }
+                writeZipEntry(zipStream, entryName, data);
+            }
+            
+            // Do not close zipStream: it will close the underlying stream.
+            // Instead, just clean up and let the caller close.
+            zipStream.finish();
+            zipStream.flush();
+            
+            log.fine("Wrote " + entryNum + " data entries");
+        } catch(IOException e) {
+            throw new EnkiBackupFailedException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Waits for the result of a backup task.
+     * 
+     * @param future future result of the task
+     * @return the task's result
+     * @throws EnkiBackupFailedException if the task failed or the current
+     *                                   thread was interrupted
+     */
+    private static <T> T getResult(Future<T> future)
+        throws EnkiBackupFailedException
+    {
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            throw new EnkiBackupFailedException(e.getCause());
+        } catch(InterruptedException e) {
+            throw new EnkiBackupFailedException(e);
+        }
+    }
+    
+    /**
+     * Writes an in-memory entry to the given {@link ZipOutputStream}.
+     * 
+     * @param zipStream ZIP output stream
+     * @param entryName name of entry in ZIP output stream
+     * @param data entry data
+     * @throws IOException on I/O error
+     */
+    private void writeZipEntry(
+        ZipOutputStream zipStream, String entryName, EntryData data)
+    throws IOException
+    {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setSize(data.bytes.length);
+        entry.setCrc(data.crc);
+        
+        zipStream.putNextEntry(entry);
+        zipStream.write(data.bytes);
+        zipStream.closeEntry();
+    }
+    
     /**
      * Restores the backup stored in the given input stream into an existing
-     * extent. 
+     * extent.  Accepts backups with a single data entry as well as those
+     * with multiple, optionally compressed, data entries written by
+     * {@link #parallelBackup}.
+     * 
+     * <p>If {@link HibernateMDRepository#PROPERTY_STORAGE_RESTORE_THREADS} 
+     * is greater than one, this thread parses the backup data and hands
+     * batches of rows to insert threads, each with its own JDBC connection.
+     * Association tables, association collection tables and object tables
+     * are loaded in that order (with a pause between each phase) to satisfy
+     * foreign key constraints.  Parallel restores are not atomic: the 
+     * extent's existing data is deleted and committed before loading 
+     * begins, and each batch is committed as it is inserted.  If a parallel
+     * restore fails after the deletion was committed, the partially restored
+     * data is removed and the extent is left empty.  Use a single restore
+     * thread when atomicity is required.
      *
      * @param extentDesc
      * @param stream
@@ -522,6 +838,71 @@ public class HibernateBackupRestoreUtil
         ExtentDescriptor extentDesc,
         InputStream stream) 
     throws EnkiRestoreFailedException
+    {
+        try {
+            restoreData(extentDesc, stream);
+        } catch(EnkiRestoreFailedException e) {
+            if (committedTables == null) {
+                throw e;
+            }
+            throw abandonRestore(extentDesc, e);
+        } catch(RuntimeException e) {
+            if (committedTables == null) {
+                throw e;
+            }
+            throw abandonRestore(extentDesc, e);
+        }
+    }
+    
+    /**
+     * Removes the data loaded by a failed parallel restore.  The extent's
+     * previous contents were deleted (and committed) before loading began,
+     * so they cannot be recovered: the extent is left empty.
+     * 
+     * @param extentDesc extent being restored
+     * @param cause restore failure
+     * @return exception describing the state of the extent
+     */
+    private EnkiRestoreFailedException abandonRestore(
+        ExtentDescriptor extentDesc, Exception cause)
+    {
+        String msg = 
+            "Parallel restore of extent '" + extentDesc.name 
+            + "' failed after its previous contents were deleted; ";
+        try {
+            repos.getCurrentSession().clear();
+            deleteExtentData(committedTables);
+            repos.commitAndContinue();
+            
+            msg += "the extent has been left empty";
+        } catch(Exception e) {
+            log.log(
+                Level.SEVERE, 
+                "Unable to remove partially restored data from extent '" 
+                + extentDesc.name + "'",
+                e);
+            
+            msg += "the extent may contain partially restored data";
+        }
+        
+        log.severe(msg);
+        
+        EnkiRestoreFailedException ex = new EnkiRestoreFailedException(msg);
+        ex.initCause(cause);
+        return ex;
+    }
+    
+    /**
+     * Performs the work of {@link #restore}.
+     * 
+     * @param extentDesc
+     * @param stream
+     * @throws EnkiRestoreFailedException
+     */
+    private void restoreData(
+        ExtentDescriptor extentDesc,
+        InputStream stream) 
+    throws EnkiRestoreFailedException
     {
         log.info("Restoring extent '" + extentDesc.name + "'");
         
@@ -530,6 +911,13 @@ public class HibernateBackupRestoreUtil
 
         ZipInputStream zipStream = new ZipInputStream(stream);
         
+        RestoreProgress progress = 
+            new RestoreProgress(
+                extentDesc.name, restoreThreads, restoreBatchSize);
+        repos.setRestoreProgress(progress);
+        
+        BatchLoader loader = null;
+        Level indexRebuildLevel = null;
         boolean throwing = true;
         try {
             // Load backup descriptor.
@@ -562,14 +950,69 @@ public class HibernateBackupRestoreUtil
                     + "' prior to restoring this backup");
             }
             
-            // Load backup data.
-            readZipEntry(zipStream, FILE_BACKUP_DATA);
+            RestoreTables tables = prepareSchema(extentDesc);
+            
+            long offset = allocateMofIds(minMofId, mofIdCount);
+            
+            if (restoreThreads > 1) {
+                // Insert threads use their own connections: make the 
+                // deletions visible to them and release any locks.
+                repos.commitAndContinue();
+                committedTables = tables;
+                
+                indexRebuildLevel = dropIndexes(extentDesc);
+                
+                loader = new ParallelBatchLoader(progress);
+            } else {
+                loader = new SerialBatchLoader(progress);
+            }
 
-            BufferedReader reader = makeReader(zipStream);
+            // Load backup data.
+            log.fine("Restore backup data");
+            
+            ZipEntry entry = zipStream.getNextEntry();
+            while(entry != null && 
+                  entry.getName().startsWith(FILE_BACKUP_DATA))
+            {
+                InputStream data = zipStream;
+                if (entry.getName().endsWith(FILE_COMPRESSED_SUFFIX)) {
+                    data = 
+                        new GZIPInputStream(
+                            new UncloseableInputStream(zipStream), 
+                            BUFFER_SIZE);
+                }
+                data = new BufferedInputStream(data, BUFFER_SIZE);
+                
+                if (BinaryBackupFormat.isBinary(data)) {
+                    loadData(
+                        new BinaryBackupFormat.Reader(data), 
+                        offset, 
+                        tables, 
+                        loader);
+                } else {
+                    loadData(makeReader(data), offset, tables, loader);
+                }
+                
+                zipStream.closeEntry();
+                entry = zipStream.getNextEntry();
+            }
+            
+            if (entry != null) {
+                log.warning(
+                    "Ignoring unexpected backup stream entry '" 
+                    + entry.getName() 
+                    + "'");
+            }
+            
+            loader.finish();
+            loader.close();
+            loader = null;
             
-            Map<String, Class<? extends RefObject>> tableClassMap = 
-                prepareSchema(extentDesc);
-            loadData(reader, minMofId, mofIdCount, tableClassMap);
+            if (indexRebuildLevel != null) {
+                Level level = indexRebuildLevel;
+                indexRebuildLevel = null;
+                rebuildIndexes(extentDesc, level);
+            }
 
             repos.setAnnotation(extentDesc.name, extentAnnotation);
             
@@ -579,6 +1022,20 @@ public class HibernateBackupRestoreUtil
         } catch(SQLException e) {
             throw new EnkiRestoreFailedException(e);
         } finally {
+            if (loader != null) {
+                try {
+                    loader.close();
+                } catch(SQLException e) {
+                    log.log(Level.FINE, "error closing restore loader", e);
+                }
+            }
+            
+            if (indexRebuildLevel != null) {
+                rebuildIndexes(extentDesc, indexRebuildLevel);
+            }
+            
+            progress.finish(!throwing);
+            
             try {
                 zipStream.closeEntry();
                 
@@ -600,7 +1057,9 @@ public class HibernateBackupRestoreUtil
             }
         }
         
-        log.info("Restored extent '" + extentDesc.name + "'");
+        log.info(
+            "Restored extent '" + extentDesc.name + "' (" 
+            + progress.getStatistics().getRowsLoaded() + " rows)");
     }
 
     /**
@@ -656,11 +1115,11 @@ public class HibernateBackupRestoreUtil
      * metamodel-related values from the type-lookup mapping table.
      * 
      * @param extentDesc extent to prepare
-     * @return map of table names to instance classes
+     * @return the extent's tables
      * @throws SQLException on database error
      * @throws IOException on I/O error reading metamodel DDL files
      */
-    private Map<String, Class<? extends RefObject>> prepareSchema(
+    private RestoreTables prepareSchema(
         ExtentDescriptor extentDesc)
     throws SQLException, IOException
     {
@@ -673,7 +1132,7 @@ public class HibernateBackupRestoreUtil
         
         LinkedList<HibernateRefPackage> queue = 
             new LinkedList<HibernateRefPackage>();
-        queue.add((HibernateRefPackage)extentDesc.extent);
+        queue.add((HibernateRefPackage)extentDesc.getExtent());
         while(!queue.isEmpty()) {
             HibernateRefPackage pkg = queue.removeFirst();
             
@@ -711,9 +1170,27 @@ public class HibernateBackupRestoreUtil
             }
         }
 
-        Session session = repos.getCurrentSession();
+        RestoreTables tables = 
+            new RestoreTables(tableClassMap, assocTables, assocChildTables);
         
-        Connection conn = session.connection();
+        deleteExtentData(tables);
+        
+        return tables;
+    }
+    
+    /**
+     * Deletes all rows from the given extent tables and the extent's 
+     * type-lookup mappings, and evicts the extent's classes from the 
+     * second-level cache.
+     * 
+     * @param tables the extent's tables
+     * @throws SQLException on database error
+     */
+    private void deleteExtentData(RestoreTables tables) throws SQLException
+    {
+        Session session = repos.getCurrentSession();
+        
+        Connection conn = session.connection();
 
         String deleteMechanism = "truncate table ";
         if (dialect instanceof HSQLDialect) {
@@ -722,19 +1199,19 @@ public class HibernateBackupRestoreUtil
         
         Statement stmt = conn.createStatement();
         try {
-            for(String table: tableClassMap.keySet()) {
+            for(String table: tables.tableClassMap.keySet()) {
                 stmt.execute(
                     deleteMechanism +
                     HibernateDialectUtil.quote(dialect, table));
             }
             
-            for(String table: assocChildTables) {
+            for(String table: tables.assocChildTables) {
                 stmt.execute(
                     deleteMechanism +
                     HibernateDialectUtil.quote(dialect, table));
             }
             
-            for(String table: assocTables) {
+            for(String table: tables.assocTables) {
                 stmt.execute(
                     deleteMechanism +
                     HibernateDialectUtil.quote(dialect, table));
@@ -756,12 +1233,14 @@ public class HibernateBackupRestoreUtil
                 " = ?");
         try {
             int batchSize = 0;
-            for(Class<? extends RefObject> cls: tableClassMap.values()) {
+            for(Class<? extends RefObject> cls: 
+                    tables.tableClassMap.values())
+            {
                 // Evict these from the cache; we've just deleted them all.
                 sessionFactory.evict(cls);
                 
-                typeLookupStmt.setString(1, cls.getName());
-                typeLookupStmt.setString(2, tablePrefix);
+                typeLookupStmt.setString(1, tablePrefix);
+                typeLookupStmt.setString(2, cls.getName());
                 typeLookupStmt.addBatch();
                 batchSize++;
                 
@@ -780,27 +1259,17 @@ public class HibernateBackupRestoreUtil
             typeLookupStmt.close();
         }
         
-        return tableClassMap;
+        repos.clearTypeLookupCache();
     }
     
     /**
-     * Restores backed up data to metamodel tables given a reader on a backup 
-     * data file.  MOF IDs are automatically mapped to values available in
-     * target database.
+     * Allocates MOF IDs for the restored data.
      * 
-     * @param data BufferedReader on the backed up data
      * @param minMofId minimum MOF ID in the backed up data
      * @param mofIdCount the number of MOF IDs to allocate
-     * @param tableClassMap map of table name to instance class
-     * @throws IOException on I/O error reading the backup data
-     * @throws SQLException on database error
+     * @return offset to add to backed up MOF IDs
      */
-    private void loadData(
-        BufferedReader data, 
-        long minMofId,
-        long mofIdCount,
-        Map<String, Class<? extends RefObject>> tableClassMap)
-    throws IOException, SQLException
+    private long allocateMofIds(long minMofId, long mofIdCount)
     {
         MofIdGenerator mofIdGenerator = repos.getMofIdGenerator();
         
@@ -808,162 +1277,289 @@ public class HibernateBackupRestoreUtil
         
         long baseMofId = mofIdGenerator.allocate(mofIdCount);
         
-        log.fine("Restore backup data");
-        
         // Offset may be negative.
-        final long offset = baseMofId - minMofId;
-        
-        Session session = repos.getCurrentSession();
-        
-        Connection conn = session.connection();
-        
-        PreparedStatement typeLookupStmt = 
-            conn.prepareStatement(
-                "insert into "
-                + HibernateDialectUtil.quote(dialect, "ENKI_TYPE_LOOKUP")
-                + " ("
-                + HibernateDialectUtil.quote(dialect, MOF_ID_COLUMN_NAME)
-                + ", "
-                + HibernateDialectUtil.quote(dialect, "tablePrefix")
-                + ", "
-                + HibernateDialectUtil.quote(dialect, "typeName")
-                + ") values (?, ?, ?)");
-        try {
-            String line;
-            while((line = data.readLine()) != null) {
-                String[] descriptor = line.split(",");
-                
-                String numRowsStr = data.readLine();
-                if (numRowsStr == null) {
+        return baseMofId - minMofId;
+    }
+    
+    /**
+     * Restores backed up data to metamodel tables given a reader on a backup 
+     * data file.  MOF IDs are automatically mapped to values available in
+     * target database.  Rows are parsed into {@link TableBatch batches} of 
+     * up to {@link #restoreBatchSize} rows and handed to the given loader.
+     * 
+     * @param data BufferedReader on the backed up data
+     * @param offset offset to add to backed up MOF IDs (see 
+     *               {@link #allocateMofIds(long, long)})
+     * @param tables information about the extent's tables
+     * @param loader loader that inserts the batches
+     * @throws IOException on I/O error reading the backup data
+     * @throws SQLException on database error
+     */
+    private void loadData(
+        BufferedReader data, 
+        long offset,
+        RestoreTables tables,
+        BatchLoader loader)
+    throws IOException, SQLException
+    {
+        String line;
+        while((line = data.readLine()) != null) {
+            String[] descriptor = line.split(",");
+            
+            String numRowsStr = data.readLine();
+            if (numRowsStr == null) {
+                throw new IOException("Premature end of data file");
+            }
+            
+            int numRows;
+            try {
+                numRows = Integer.parseInt(numRowsStr);
+            } catch(NumberFormatException e) {
+                throw new IOException(
+                    "Invalid row count value: " + numRowsStr);
+            }
+            
+            int mofIdCol = -1;
+            for(int i = 1; i < descriptor.length; i++) {
+                if (descriptor[i].equals(MOF_ID_COLUMN_NAME)) {
+                    mofIdCol = i;
+                    break;
+                }
+            }
+            if (mofIdCol < 0) {
+                throw new IOException("Record missing MOF ID column");
+            }
+            
+            int numCols = descriptor.length - 1;
+            
+            TableSection section = newTableSection(descriptor, tables);
+            
+            List<String> values = new ArrayList<String>(numCols);
+            List<Type> types = new ArrayList<Type>(numCols);
+            
+            TableBatch batch = new TableBatch(section, restoreBatchSize);
+            for(int i = 0; i < numRows; i++) {
+                String dataRow = data.readLine();
+                if (dataRow == null) {
                     throw new IOException("Premature end of data file");
                 }
+
+                values.clear();
+                types.clear();
                 
-                int numRows;
-                try {
-                    numRows = Integer.parseInt(numRowsStr);
-                } catch(NumberFormatException e) {
-                    throw new IOException(
-                        "Invalid row count value: " + numRowsStr);
+                Type.split(dataRow, values, types);
+                assert(values.size() == types.size());
+                if (values.size() != numCols) {
+                    throw new IOException("Invalid record size");
                 }
-                
-                String sql = getInsertSql(descriptor);
-                
-                int mofIdCol = -1;
-                for(int i = 1; i < descriptor.length; i++) {
-                    if (descriptor[i].equals(MOF_ID_COLUMN_NAME)) {
-                        mofIdCol = i;
-                        break;
+
+                Object[] row = new Object[numCols];
+                int pos = 1;
+                Iterator<String> valueIter = values.iterator();
+                Iterator<Type> typeIter = types.iterator();
+                while(valueIter.hasNext()) {
+                    String value = valueIter.next();
+                    Type type = typeIter.next();
+                    
+                    Object v = type.decode(value);
+
+                    if (type == Type.MOFID) {
+                        Long mofIdLong = ((Long)v).longValue() + offset;
+                        v = mofIdLong;
+                        
+                        if (pos == mofIdCol) {
+                            batch.mofIds.add(mofIdLong);
+                        }
                     }
-                }
-                if (mofIdCol < 0) {
-                    throw new IOException("Record missing MOF ID column");
+                    
+                    row[pos - 1] = v;
+                    pos++;
                 }
                 
-                int numCols = descriptor.length - 1;
+                batch.rows.add(row);
                 
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                try {
-                    List<String> values = new ArrayList<String>(numCols);
-                    List<Type> types = new ArrayList<Type>(numCols);
-                    
-                    int batchSize = 0;
-                    List<Long> mofIds = new ArrayList<Long>();
-                    for(int i = 0; i < numRows; i++) {
-                        String dataRow = data.readLine();
-                        if (dataRow == null) {
-                            throw new IOException(
-                                "Premature end of data file");
-                        }
-    
-                        values.clear();
-                        types.clear();
-                        
-                        Type.split(dataRow, values, types);
-                        assert(values.size() == types.size());
-                        if (values.size() != numCols) {
-                            throw new IOException("Invalid record size");
-                        }
-    
-                        int pos = 1;
-                        Iterator<String> valueIter = values.iterator();
-                        Iterator<Type> typeIter = types.iterator();
-                        while(valueIter.hasNext()) {
-                            String value = valueIter.next();
-                            Type type = typeIter.next();
-                            
-                            Object v = type.decode(value);
+                if (batch.rows.size() == restoreBatchSize) {
+                    loader.load(batch);
+                    batch = new TableBatch(section, restoreBatchSize);
+                }
+            }
+            
+            if (!batch.rows.isEmpty()) {
+                loader.load(batch);
+            }
+        }
+    }
     
-                            if (type == Type.MOFID) {
-                                Long mofIdLong = 
-                                    ((Long)v).longValue() + offset;
-                                v = mofIdLong;
-                                
-                                if (pos == mofIdCol) {
-                                    mofIds.add(mofIdLong);
-                                }
-                            }
-                            
-                            if (type == Type.CHARACTER) {
-                                String vs = (String)v;
-                                int vsLen = vs.length();
-                                if (vsLen > MAX_UNSTREAMED_STRING_LEN) {
-                                    stmt.setCharacterStream(
-                                        pos,
-                                        new StringReader(vs),
-                                        vsLen);
-                                } else {
-                                    stmt.setString(pos, vs);                                
-                                }
-                            } else {
-                                stmt.setObject(pos, v);
-                            }
-                            pos++;
-                        }
-                        
-                        stmt.addBatch();
-                        batchSize++;
+    /**
+     * Restores backed up data to metamodel tables given a reader on binary
+     * backup data.  Otherwise identical to 
+     * {@link #loadData(BufferedReader, long, RestoreTables, BatchLoader)}.
+     * 
+     * @param data reader on the backed up data
+     * @param offset offset to add to backed up MOF IDs (see 
+     *               {@link #allocateMofIds(long, long)})
+     * @param tables information about the extent's tables
+     * @param loader loader that inserts the batches
+     * @throws IOException on I/O error reading the backup data
+     * @throws SQLException on database error
+     */
+    private void loadData(
+        BinaryBackupFormat.Reader data, 
+        long offset,
+        RestoreTables tables,
+        BatchLoader loader)
+    throws IOException, SQLException
+    {
+        BinaryBackupFormat.Block block;
+        while((block = data.nextBlock()) != null) {
+            String[] columnNames = block.getColumnNames();
+            int numCols = columnNames.length;
+            
+            String[] descriptor = new String[numCols + 1];
+            descriptor[0] = block.getTable();
+            System.arraycopy(columnNames, 0, descriptor, 1, numCols);
+            
+            int mofIdCol = -1;
+            for(int i = 0; i < numCols; i++) {
+                if (columnNames[i].equals(MOF_ID_COLUMN_NAME)) {
+                    mofIdCol = i;
+                    break;
+                }
+            }
+            if (mofIdCol < 0) {
+                throw new IOException("Record missing MOF ID column");
+            }
+            
+            TableSection section = newTableSection(descriptor, tables);
+            
+            boolean[] isMofId = new boolean[numCols];
+            int numRows = block.getNumRows();
+            
+            TableBatch batch = new TableBatch(section, restoreBatchSize);
+            for(int i = 0; i < numRows; i++) {
+                Object[] row = new Object[numCols];
+                block.readRow(row, isMofId);
+                
+                for(int j = 0; j < numCols; j++) {
+                    if (isMofId[j]) {
+                        Long mofIdLong = ((Long)row[j]).longValue() + offset;
+                        row[j] = mofIdLong;
                         
-                        if (batchSize == BATCH_SIZE) {
-                            stmt.executeBatch();
-                            batchSize = 0;
-                        }
-                    }
-                    
-                    if (batchSize > 0) {
-                        stmt.executeBatch();
-                    }
-                    
-                    if (!mofIds.isEmpty()) {
-                        Class<? extends RefObject> cls = 
-                            tableClassMap.get(descriptor[0]);
-                        if (cls != null) {                            
-                            String typeName = cls.getName();
-                            batchSize = 0;
-                            for(Long mofId: mofIds) {
-                                typeLookupStmt.setLong(1, mofId);
-                                typeLookupStmt.setString(2, tablePrefix);
-                                typeLookupStmt.setString(3, typeName);
-                                typeLookupStmt.addBatch();
-                                batchSize++;
-                                
-                                if (batchSize == BATCH_SIZE) {
-                                    typeLookupStmt.executeBatch();
-                                    batchSize = 0;
-                                }
-                            }
-                            
-                            if (batchSize > 0) {
-                                typeLookupStmt.executeBatch();
-                            }
+                        if (j == mofIdCol) {
+                            batch.mofIds.add(mofIdLong);
                         }
                     }
-                } finally {
-                    stmt.close();
+                }
+                
+                batch.rows.add(row);
+                
+                if (batch.rows.size() == restoreBatchSize) {
+                    loader.load(batch);
+                    batch = new TableBatch(section, restoreBatchSize);
                 }
             }
-        } finally {
-            typeLookupStmt.close();
-        }        
+            
+            if (!batch.rows.isEmpty()) {
+                loader.load(batch);
+            }
+        }
+    }
+    
+    /**
+     * Creates a {@link TableSection} given a backup file table descriptor.
+     * 
+     * @param descriptor table descriptor (table name followed by column 
+     *                   names)
+     * @param tables information about the extent's tables
+     * @return a new TableSection
+     */
+    private TableSection newTableSection(
+        String[] descriptor, RestoreTables tables)
+    {
+        Class<? extends RefObject> cls = 
+            tables.tableClassMap.get(descriptor[0]);
+        
+        return new TableSection(
+            descriptor[0],
+            getInsertSql(descriptor),
+            cls != null ? cls.getName() : null,
+            tables.getPhase(descriptor[0]));
+    }
+    
+    /**
+     * Computes the insert batch size for restore operations.
+     * 
+     * @return the configured batch size, if any, or a default for the
+     *         repository's SQL dialect
+     */
+    private int computeRestoreBatchSize()
+    {
+        int batchSize = repos.getRestoreBatchSize();
+        if (batchSize > 0) {
+            return batchSize;
+        }
+        
+        if (dialect instanceof MySQLDialect) {
+            // Connector/J sends large batches efficiently (especially with
+            // rewriteBatchedStatements=true) and splits them according to
+            // max_allowed_packet.
+            return 2000;
+        }
+        
+        return BATCH_SIZE;
+    }
+    
+    /**
+     * Drops the secondary indexes defined in the extent's index mapping
+     * file before a parallel restore, if so configured.  Not used for 
+     * serial restores: rebuilding indexes from another connection while
+     * the session's transaction holds uncommitted rows could block.
+     * 
+     * @param extentDesc extent being restored
+     * @return null if indexes were not dropped, otherwise the level at 
+     *         which {@link #rebuildIndexes(ExtentDescriptor, Level)} should
+     *         log errors
+     */
+    private Level dropIndexes(ExtentDescriptor extentDesc)
+    {
+        if (!repos.getRestoreDeferIndexes()) {
+            return null;
+        }
+        
+        log.fine("Dropping indexes for restore");
+        
+        List<?> exceptions = 
+            repos.executeIndexDdl(extentDesc.modelDescriptor, true);
+        if (exceptions.isEmpty()) {
+            return Level.WARNING;
+        }
+        
+        // The generated drop statements are not valid for every dialect.
+        // Rebuild anyway in case some indexes were dropped, but expect
+        // errors for the rest.
+        log.log(
+            Level.FINE,
+            "Unable to drop " + exceptions.size() + " index(es)",
+            (Throwable)exceptions.get(0));
+        return Level.FINE;
+    }
+    
+    /**
+     * Rebuilds indexes dropped by {@link #dropIndexes(ExtentDescriptor)}.
+     * Errors are logged, but otherwise ignored.
+     * 
+     * @param extentDesc extent being restored
+     * @param level log level for errors
+     */
+    private void rebuildIndexes(ExtentDescriptor extentDesc, Level level)
+    {
+        log.fine("Rebuilding indexes after restore");
+        
+        List<?> exceptions = 
+            repos.executeIndexDdl(extentDesc.modelDescriptor, false);
+        for(Object o: exceptions) {
+            log.log(level, "index rebuild error", (Throwable)o);
+        }
     }
 
     /**
@@ -1306,6 +1902,1046 @@ public class HibernateBackupRestoreUtil
         }
     }
     
+    /**
+     * TableScan determines the row count and MOF ID range of a table for
+     * {@link HibernateBackupRestoreUtil#parallelBackup}.
+     */
+    private class TableScan implements Callable<TableScan>
+    {
+        private final ConnectionProvider connectionProvider;
+        private final String table;
+        private final Collection<String> mofIdCols;
+        
+        private long numRows;
+        private LongRangeWrapper mofIdRange;
+        private LongRangeWrapper primaryKeyRange;
+        
+        TableScan(
+            ConnectionProvider connectionProvider,
+            String table, 
+            Collection<String> mofIdCols)
+        {
+            this.connectionProvider = connectionProvider;
+            this.table = table;
+            this.mofIdCols = mofIdCols;
+            this.mofIdRange = 
+                new LongRangeWrapper(Long.MAX_VALUE, Long.MIN_VALUE);
+        }
+        
+        public TableScan call() throws SQLException
+        {
+            String quotedTable = HibernateDialectUtil.quote(dialect, table);
+            
+            Connection conn = connectionProvider.getConnection();
+            try {
+                Statement stmt = conn.createStatement();
+                try {
+                    // Not every potential MOF ID column exists in every 
+                    // table.
+                    List<String> columns = new ArrayList<String>();
+                    ResultSet rset = 
+                        stmt.executeQuery(
+                            "select * from " + quotedTable + " where 1 = 0");
+                    try {
+                        ResultSetMetaData metadata = rset.getMetaData();
+                        for(int i = 1; i <= metadata.getColumnCount(); i++) {
+                            String columnName = metadata.getColumnName(i);
+                            if (mofIdCols.contains(columnName)) {
+                                columns.add(columnName);
+                            }
+                        }
+                    } finally {
+                        rset.close();
+                    }
+                    
+                    StringBuilder sql = new StringBuilder("select count(*)");
+                    for(String column: columns) {
+                        String quotedColumn = 
+                            HibernateDialectUtil.quote(dialect, column);
+                        sql
+                            .append(", min(")
+                            .append(quotedColumn)
+                            .append("), max(")
+                            .append(quotedColumn)
+                            .append(")");
+                    }
+                    sql.append(" from ").append(quotedTable);
+                    
+                    rset = stmt.executeQuery(sql.toString());
+                    try {
+                        rset.next();
+                        numRows = rset.getLong(1);
+                        
+                        int pos = 2;
+                        for(String column: columns) {
+                            long min = rset.getLong(pos++);
+                            boolean isNull = rset.wasNull();
+                            long max = rset.getLong(pos++);
+                            if (isNull) {
+                                continue;
+                            }
+                            
+                            LongRangeWrapper columnRange = 
+                                new LongRangeWrapper(min, max);
+                            mofIdRange = mofIdRange.union(columnRange);
+                            if (column.equals(MOF_ID_COLUMN_NAME)) {
+                                primaryKeyRange = columnRange;
+                            }
+                        }
+                    } finally {
+                        rset.close();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            } finally {
+                connectionProvider.closeConnection(conn);
+            }
+            
+            return this;
+        }
+        
+        /**
+         * Splits the table into partitions of roughly 
+         * {@link HibernateBackupRestoreUtil#PARTITION_ROWS} rows, assuming
+         * an even distribution of MOF IDs.
+         * 
+         * @param partitions receives the table's partitions, if any
+         */
+        void partition(List<Partition> partitions)
+        {
+            if (numRows == 0) {
+                return;
+            }
+            
+            if (numRows <= PARTITION_ROWS || primaryKeyRange == null) {
+                partitions.add(new Partition(this, 0, 0));
+                return;
+            }
+            
+            long numPartitions = 
+                (numRows + PARTITION_ROWS - 1) / PARTITION_ROWS;
+            long min = primaryKeyRange.min;
+            long max = primaryKeyRange.max;
+            long step = (max - min) / numPartitions + 1;
+            for(long lo = min; lo <= max; lo += step) {
+                partitions.add(
+                    new Partition(this, lo, Math.min(lo + step, max + 1)));
+            }
+        }
+    }
+    
+    /**
+     * Partition reads all rows of a table, or those rows of a table in a 
+     * range of MOF IDs, into an {@link EntryData} for 
+     * {@link HibernateBackupRestoreUtil#parallelBackup}.
+     */
+    private class Partition implements Callable<EntryData>
+    {
+        private final TableScan tableScan;
+        private final long minMofId;
+        private final long limitMofId;
+        
+        /**
+         * Constructs a Partition.  If <code>minMofId</code> and 
+         * <code>limitMofId</code> are equal, the entire table is read.
+         * 
+         * @param tableScan table to read
+         * @param minMofId minimum MOF ID, inclusive
+         * @param limitMofId maximum MOF ID, exclusive
+         */
+        Partition(TableScan tableScan, long minMofId, long limitMofId)
+        {
+            this.tableScan = tableScan;
+            this.minMofId = minMofId;
+            this.limitMofId = limitMofId;
+        }
+        
+        public EntryData call() throws SQLException, IOException
+        {
+            boolean isRange = minMofId != limitMofId;
+            
+            String sql = 
+                "select * from " 
+                + HibernateDialectUtil.quote(dialect, tableScan.table);
+            if (isRange) {
+                String quotedMofIdCol = 
+                    HibernateDialectUtil.quote(dialect, MOF_ID_COLUMN_NAME);
+                sql += 
+                    " where " + quotedMofIdCol + " >= ? and " 
+                    + quotedMofIdCol + " < ?";
+            }
+            
+            Connection conn = tableScan.connectionProvider.getConnection();
+            try {
+                PreparedStatement stmt = conn.prepareStatement(sql);
+                try {
+                    if (isRange) {
+                        stmt.setLong(1, minMofId);
+                        stmt.setLong(2, limitMofId);
+                    }
+                    
+                    ResultSet rset = stmt.executeQuery();
+                    try {
+                        return read(rset);
+                    } finally {
+                        rset.close();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            } finally {
+                tableScan.connectionProvider.closeConnection(conn);
+            }
+        }
+        
+        private EntryData read(ResultSet rset) 
+            throws SQLException, IOException
+        {
+            String[] columnNames = getColumnNames(rset);
+            
+            boolean[] isMofIdCol = 
+                findMofIdColumns(columnNames, tableScan.mofIdCols);
+
+            ByteArrayOutputStream entry = 
+                new ByteArrayOutputStream(BUFFER_SIZE);
+            OutputStream output = entry;
+            if (backupCompress) {
+                output = new GZIPOutputStream(entry, BUFFER_SIZE);
+            }
+            
+            BackupWriter writer;
+            if (backupBinary) {
+                writer = new BinaryBackupWriter(output);
+            } else {
+                writer = new TextBackupWriter(output, null);
+            }
+            
+            int numRows = 
+                writer.writeTable(
+                    tableScan.table, columnNames, rset, isMofIdCol, null);
+            if (numRows == 0) {
+                return null;
+            }
+            
+            writer.finish();
+            output.close();
+            
+            return new EntryData(entry);
+        }
+    }
+    
+    /**
+     * BackupWriter writes backed up tables in one of the backup data 
+     * formats.
+     */
+    private interface BackupWriter
+    {
+        /**
+         * Writes all rows of the given result set.  Tables without rows
+         * are omitted from the backup.
+         * 
+         * @param table table name
+         * @param columnNames column names in result set order
+         * @param rset result set positioned before the first row
+         * @param isMofIdCol flags indicating which columns contain MOF IDs
+         * @param mofIdRange if not null, updated with the rows' MOF IDs
+         * @return number of rows written
+         * @throws IOException on write error
+         * @throws SQLException on database error
+         */
+        public int writeTable(
+            String table,
+            String[] columnNames,
+            ResultSet rset,
+            boolean[] isMofIdCol,
+            LongRangeWrapper mofIdRange)
+        throws IOException, SQLException;
+        
+        /**
+         * Completes the backup data and flushes it to the underlying 
+         * stream, which is not closed.
+         * 
+         * @throws IOException on write error
+         */
+        public void finish() throws IOException;
+    }
+    
+    /**
+     * TextBackupWriter writes the UTF-8 text backup format.  Since each 
+     * table's row count precedes its rows, rows are buffered in a temporary
+     * file or, if none is given, in memory.
+     */
+    private class TextBackupWriter implements BackupWriter
+    {
+        private final OutputStream output;
+        private final File tempFile;
+        
+        TextBackupWriter(OutputStream output, File tempFile)
+        {
+            this.output = output;
+            this.tempFile = tempFile;
+        }
+        
+        public int writeTable(
+            String table,
+            String[] columnNames,
+            ResultSet rset,
+            boolean[] isMofIdCol,
+            LongRangeWrapper mofIdRange)
+        throws IOException, SQLException
+        {
+            ByteArrayOutputStream rowBytes = null;
+            OutputStream rowStream;
+            if (tempFile != null) {
+                rowStream = new FileOutputStream(tempFile, false);
+            } else {
+                rowBytes = new ByteArrayOutputStream(BUFFER_SIZE);
+                rowStream = rowBytes;
+            }
+            
+            BufferedWriter rowOutput = 
+                new BufferedWriter(
+                    new OutputStreamWriter(rowStream, DATA_ENCODING));
+            int numRows = 0;
+            try {
+                while(rset.next()) {
+                    writeRow(rset, isMofIdCol, rowOutput, mofIdRange);
+                    numRows++;
+                }
+                rowOutput.flush();
+            } finally {
+                rowOutput.close();
+            }
+            
+            if (numRows == 0) {
+                return 0;
+            }
+            
+            StringBuilder tableHeader = new StringBuilder(table);
+            for(String columnName: columnNames) {
+                tableHeader.append(',').append(columnName);
+            }
+            
+            BufferedWriter headerOutput = 
+                new BufferedWriter(
+                    new OutputStreamWriter(output, DATA_ENCODING));
+            headerOutput.write(tableHeader.toString());
+            headerOutput.newLine();
+            headerOutput.write(String.valueOf(numRows));
+            headerOutput.newLine();
+            headerOutput.flush();
+            
+            if (rowBytes != null) {
+                rowBytes.writeTo(output);
+            } else {
+                append(output, tempFile);
+            }
+            
+            return numRows;
+        }
+        
+        public void finish() throws IOException
+        {
+            output.flush();
+        }
+    }
+    
+    /**
+     * BinaryBackupWriter writes the {@link BinaryBackupFormat binary backup
+     * format}.
+     */
+    private static class BinaryBackupWriter implements BackupWriter
+    {
+        private final BinaryBackupFormat.Writer output;
+        
+        BinaryBackupWriter(OutputStream output) throws IOException
+        {
+            this.output = new BinaryBackupFormat.Writer(output);
+        }
+        
+        public int writeTable(
+            String table,
+            String[] columnNames,
+            ResultSet rset,
+            boolean[] isMofIdCol,
+            LongRangeWrapper mofIdRange)
+        throws IOException, SQLException
+        {
+            output.startTable(table, columnNames);
+            
+            int numRows = 0;
+            while(rset.next()) {
+                for(int i = 1; i <= isMofIdCol.length; i++) {
+                    Object value = rset.getObject(i);
+                    boolean isMofId = 
+                        isMofIdCol[i - 1] && value instanceof Long;
+                    if (isMofId && mofIdRange != null) {
+                        long mofId = ((Long)value).longValue();
+                        mofIdRange.min = Math.min(mofIdRange.min, mofId);
+                        mofIdRange.max = Math.max(mofIdRange.max, mofId);
+                    }
+                    
+                    output.writeValue(value, isMofId);
+                }
+                numRows++;
+            }
+            
+            output.endTable();
+            
+            return numRows;
+        }
+        
+        public void finish() throws IOException
+        {
+            output.finish();
+        }
+    }
+    
+    /**
+     * EntryData holds the contents of a backup entry and its CRC.
+     */
+    private static class EntryData
+    {
+        private final byte[] bytes;
+        private final long crc;
+        
+        EntryData(ByteArrayOutputStream data)
+        {
+            this.bytes = data.toByteArray();
+            
+            CRC32 crc32 = new CRC32();
+            crc32.update(bytes);
+            this.crc = crc32.getValue();
+        }
+    }
+    
+    /**
+     * RestoreTables describes the tables that store an extent's data for
+     * {@link HibernateBackupRestoreUtil#restore}.
+     */
+    private static class RestoreTables
+    {
+        private final Map<String, Class<? extends RefObject>> tableClassMap;
+        private final Set<String> assocTables;
+        private final Set<String> assocChildTables;
+        
+        RestoreTables(
+            Map<String, Class<? extends RefObject>> tableClassMap,
+            Set<String> assocTables,
+            Set<String> assocChildTables)
+        {
+            this.tableClassMap = tableClassMap;
+            this.assocTables = assocTables;
+            this.assocChildTables = assocChildTables;
+        }
+        
+        /**
+         * Returns the load phase of the given table.  Tables in a lower
+         * phase may be referenced by foreign keys from tables in a higher
+         * phase.
+         * 
+         * @param table table name
+         * @return 0 for association tables, 1 for association collection 
+         *         tables, and 2 for all others
+         */
+        int getPhase(String table)
+        {
+            if (assocTables.contains(table)) {
+                return 0;
+            } else if (assocChildTables.contains(table)) {
+                return 1;
+            }
+            return 2;
+        }
+    }
+    
+    /**
+     * TableSection describes a table's section of a backup data file.
+     */
+    private static class TableSection
+    {
+        private final String table;
+        private final String insertSql;
+        private final String typeName;
+        private final int phase;
+        
+        /**
+         * Constructs a TableSection.
+         * 
+         * @param table table name
+         * @param insertSql insert statement for the section's rows
+         * @param typeName name of the table's instance class or null if the
+         *                 table does not store objects
+         * @param phase load phase (see {@link RestoreTables#getPhase})
+         */
+        TableSection(
+            String table, String insertSql, String typeName, int phase)
+        {
+            this.table = table;
+            this.insertSql = insertSql;
+            this.typeName = typeName;
+            this.phase = phase;
+        }
+    }
+    
+    /**
+     * TableBatch holds decoded rows from a single {@link TableSection}.
+     */
+    private static class TableBatch
+    {
+        private final TableSection section;
+        private final List<Object[]> rows;
+        private final List<Long> mofIds;
+        
+        TableBatch(TableSection section, int size)
+        {
+            this.section = section;
+            this.rows = new ArrayList<Object[]>(size);
+            this.mofIds = new ArrayList<Long>(size);
+        }
+    }
+    
+    /**
+     * BatchInserter inserts {@link TableBatch} instances and their 
+     * type-lookup rows over a single connection.  Prepared statements are
+     * cached until the inserter is closed.
+     */
+    private class BatchInserter
+    {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> stmts;
+        private PreparedStatement typeLookupStmt;
+        
+        BatchInserter(Connection conn)
+        {
+            this.conn = conn;
+            this.stmts = new HashMap<String, PreparedStatement>();
+        }
+        
+        void insert(TableBatch batch) throws SQLException
+        {
+            TableSection section = batch.section;
+            
+            PreparedStatement stmt = stmts.get(section.table);
+            if (stmt == null) {
+                stmt = conn.prepareStatement(section.insertSql);
+                stmts.put(section.table, stmt);
+            }
+            
+            for(Object[] row: batch.rows) {
+                for(int i = 0; i < row.length; i++) {
+                    Object v = row[i];
+                    int pos = i + 1;
+                    if (v instanceof String) {
+                        String vs = (String)v;
+                        int vsLen = vs.length();
+                        if (vsLen > MAX_UNSTREAMED_STRING_LEN) {
+                            stmt.setCharacterStream(
+                                pos, new StringReader(vs), vsLen);
+                        } else {
+                            stmt.setString(pos, vs);
+                        }
+                    } else {
+                        stmt.setObject(pos, v);
+                    }
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            
+            if (section.typeName == null || batch.mofIds.isEmpty()) {
+                return;
+            }
+            
+            if (typeLookupStmt == null) {
+                typeLookupStmt = 
+                    conn.prepareStatement(
+                        "insert into "
+                        + HibernateDialectUtil.quote(
+                            dialect, "ENKI_TYPE_LOOKUP")
+                        + " ("
+                        + HibernateDialectUtil.quote(
+                            dialect, MOF_ID_COLUMN_NAME)
+                        + ", "
+                        + HibernateDialectUtil.quote(dialect, "tablePrefix")
+                        + ", "
+                        + HibernateDialectUtil.quote(dialect, "typeName")
+                        + ") values (?, ?, ?)");
+            }
+            
+            for(Long mofId: batch.mofIds) {
+                typeLookupStmt.setLong(1, mofId);
+                typeLookupStmt.setString(2, tablePrefix);
+                typeLookupStmt.setString(3, section.typeName);
+                typeLookupStmt.addBatch();
+            }
+            typeLookupStmt.executeBatch();
+        }
+        
+        void close() throws SQLException
+        {
+            SQLException ex = null;
+            
+            List<PreparedStatement> all = 
+                new ArrayList<PreparedStatement>(stmts.values());
+            if (typeLookupStmt != null) {
+                all.add(typeLookupStmt);
+            }
+            stmts.clear();
+            typeLookupStmt = null;
+            
+            for(PreparedStatement stmt: all) {
+                try {
+                    stmt.close();
+                } catch(SQLException e) {
+                    if (ex == null) {
+                        ex = e;
+                    }
+                }
+            }
+            
+            if (ex != null) {
+                throw ex;
+            }
+        }
+    }
+    
+    /**
+     * BatchLoader receives {@link TableBatch} instances parsed from backup 
+     * data and inserts them into the database.
+     */
+    private abstract class BatchLoader
+    {
+        protected final RestoreProgress progress;
+        
+        BatchLoader(RestoreProgress progress)
+        {
+            this.progress = progress;
+        }
+        
+        /**
+         * Loads a batch.  The batch may be loaded asynchronously.
+         * 
+         * @param batch batch of rows
+         * @throws SQLException on database error
+         */
+        void load(TableBatch batch) throws SQLException
+        {
+            progress.parsed(batch.rows.size());
+            
+            doLoad(batch);
+        }
+        
+        protected abstract void doLoad(TableBatch batch) throws SQLException;
+        
+        /**
+         * Waits for all previously loaded batches to be inserted.
+         * 
+         * @throws SQLException on database error
+         */
+        abstract void finish() throws SQLException;
+        
+        /**
+         * Releases resources held by this loader.
+         * 
+         * @throws SQLException on database error
+         */
+        abstract void close() throws SQLException;
+    }
+    
+    /**
+     * SerialBatchLoader inserts batches immediately over the current 
+     * session's connection.
+     */
+    private class SerialBatchLoader extends BatchLoader
+    {
+        private final BatchInserter inserter;
+        
+        SerialBatchLoader(RestoreProgress progress)
+        {
+            super(progress);
+            
+            this.inserter = 
+                new BatchInserter(repos.getCurrentSession().connection());
+        }
+        
+        protected void doLoad(TableBatch batch) throws SQLException
+        {
+            inserter.insert(batch);
+            
+            progress.loaded(batch.rows.size());
+        }
+        
+        void finish()
+        {
+        }
+        
+        void close() throws SQLException
+        {
+            inserter.close();
+        }
+    }
+    
+    /**
+     * ParallelBatchLoader queues batches for 
+     * {@link HibernateBackupRestoreUtil#restoreThreads} insert threads.  
+     * Each thread uses its own JDBC connection and commits after each batch.
+     * Before accepting a batch from a new {@link RestoreTables#getPhase 
+     * load phase}, the loader waits for all outstanding batches to be 
+     * inserted.
+     */
+    private class ParallelBatchLoader extends BatchLoader
+    {
+        private final ConnectionProvider connectionProvider;
+        private final BlockingQueue<TableBatch> queue;
+        private final List<Thread> threads;
+        private final TableBatch endOfData;
+        
+        private int phase;
+        private int outstanding;
+        private Throwable error;
+        
+        ParallelBatchLoader(RestoreProgress progress)
+        {
+            super(progress);
+            
+            this.connectionProvider = 
+                ((SessionFactoryImplementor)
+                    repos.getCurrentSession().getSessionFactory())
+                    .getConnectionProvider();
+            this.queue = 
+                new ArrayBlockingQueue<TableBatch>(restoreThreads * 2);
+            this.endOfData = new TableBatch(null, 0);
+            this.phase = -1;
+            
+            log.fine(
+                "Loading extent data with " + restoreThreads 
+                + " threads (batch size " + restoreBatchSize + ")");
+            
+            this.threads = new ArrayList<Thread>();
+            for(int i = 1; i <= restoreThreads; i++) {
+                Thread t = 
+                    new Thread(
+                        new Runnable() {
+                            public void run()
+                            {
+                                insertBatches();
+                            }
+                        },
+                        "Enki Restore Thread " + i);
+                t.setDaemon(true);
+                t.start();
+                threads.add(t);
+            }
+        }
+        
+        protected void doLoad(TableBatch batch) throws SQLException
+        {
+            if (batch.section.phase != phase) {
+                awaitOutstanding();
+                phase = batch.section.phase;
+            }
+            
+            synchronized(this) {
+                checkError();
+                outstanding++;
+            }
+            
+            try {
+                queue.put(batch);
+            } catch(InterruptedException e) {
+                throw newSQLException("interrupted", e);
+            }
+        }
+        
+        void finish() throws SQLException
+        {
+            awaitOutstanding();
+        }
+        
+        void close() throws SQLException
+        {
+            try {
+                for(int i = 0; i < threads.size(); i++) {
+                    queue.put(endOfData);
+                }
+                
+                for(Thread t: threads) {
+                    t.join();
+                }
+            } catch(InterruptedException e) {
+                throw newSQLException("interrupted", e);
+            }
+            
+            synchronized(this) {
+                checkError();
+            }
+        }
+        
+        private synchronized void awaitOutstanding() throws SQLException
+        {
+            try {
+                while(outstanding > 0 && error == null) {
+                    wait();
+                }
+            } catch(InterruptedException e) {
+                throw newSQLException("interrupted", e);
+            }
+            
+            checkError();
+        }
+        
+        private void checkError() throws SQLException
+        {
+            assert(Thread.holdsLock(this));
+            
+            if (error instanceof SQLException) {
+                throw (SQLException)error;
+            } else if (error != null) {
+                throw newSQLException("restore thread failed", error);
+            }
+        }
+        
+        private synchronized void fail(Throwable t)
+        {
+            if (error == null) {
+                error = t;
+            }
+            notifyAll();
+        }
+        
+        private synchronized boolean hasFailed()
+        {
+            return error != null;
+        }
+        
+        private synchronized void done()
+        {
+            outstanding--;
+            notifyAll();
+        }
+        
+        /**
+         * Insert thread body.  After a failure, batches are discarded 
+         * until the end of data so that the parsing thread never blocks on
+         * a full queue.
+         */
+        private void insertBatches()
+        {
+            Connection conn = null;
+            BatchInserter inserter = null;
+            try {
+                conn = connectionProvider.getConnection();
+                conn.setAutoCommit(false);
+                inserter = new BatchInserter(conn);
+            } catch(Throwable t) {
+                fail(t);
+            }
+            
+            try {
+                while(true) {
+                    TableBatch batch = queue.take();
+                    if (batch == endOfData) {
+                        break;
+                    }
+                    
+                    try {
+                        if (inserter != null && !hasFailed()) {
+                            inserter.insert(batch);
+                            conn.commit();
+                            
+                            progress.loaded(batch.rows.size());
+                        }
+                    } catch(Throwable t) {
+                        fail(t);
+                    } finally {
+                        done();
+                    }
+                }
+            } catch(InterruptedException e) {
+                fail(e);
+            } finally {
+                try {
+                    if (inserter != null) {
+                        inserter.close();
+                    }
+                } catch(SQLException e) {
+                    log.log(Level.FINE, "error closing statements", e);
+                }
+                
+                if (conn != null) {
+                    try {
+                        conn.rollback();
+                        connectionProvider.closeConnection(conn);
+                    } catch(SQLException e) {
+                        log.log(Level.FINE, "error closing connection", e);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Creates an SQLException with the given message and cause.
+     * 
+     * @param message exception message
+     * @param cause exception cause
+     * @return a new SQLException
+     */
+    private static SQLException newSQLException(
+        String message, Throwable cause)
+    {
+        SQLException e = new SQLException(message);
+        e.initCause(cause);
+        return e;
+    }
+    
+    /**
+     * RestoreProgress tracks the progress of a single restore operation.
+     * Counters are updated by the parsing and insert threads and read
+     * via {@link #getStatistics()}.
+     */
+    static class RestoreProgress
+    {
+        private final String extentName;
+        private final int threads;
+        private final int batchSize;
+        private final long startTime;
+        private final AtomicLong rowsParsed;
+        private final AtomicLong rowsLoaded;
+        private volatile long endTime;
+        private volatile String state;
+        
+        RestoreProgress(String extentName, int threads, int batchSize)
+        {
+            this.extentName = extentName;
+            this.threads = threads;
+            this.batchSize = batchSize;
+            this.startTime = System.currentTimeMillis();
+            this.rowsParsed = new AtomicLong();
+            this.rowsLoaded = new AtomicLong();
+            this.state = "running";
+        }
+        
+        void parsed(int rows)
+        {
+            rowsParsed.addAndGet(rows);
+        }
+        
+        void loaded(int rows)
+        {
+            rowsLoaded.addAndGet(rows);
+        }
+        
+        void finish(boolean succeeded)
+        {
+            endTime = System.currentTimeMillis();
+            state = succeeded ? "completed" : "failed";
+        }
+        
+        RestoreStatistics getStatistics()
+        {
+            long end = endTime;
+            if (end == 0) {
+                end = System.currentTimeMillis();
+            }
+            
+            return new RestoreStatistics(
+                extentName, 
+                state, 
+                threads, 
+                batchSize, 
+                rowsParsed.get(), 
+                rowsLoaded.get(), 
+                end - startTime);
+        }
+    }
+    
+    /**
+     * RestoreStatistics is a snapshot of the progress of the most recent
+     * restore operation.
+     */
+    public static class RestoreStatistics
+    {
+        private final String extentName;
+        private final String state;
+        private final int threads;
+        private final int batchSize;
+        private final long rowsParsed;
+        private final long rowsLoaded;
+        private final long elapsedMillis;
+        
+        private RestoreStatistics(
+            String extentName,
+            String state,
+            int threads,
+            int batchSize,
+            long rowsParsed,
+            long rowsLoaded,
+            long elapsedMillis)
+        {
+            this.extentName = extentName;
+            this.state = state;
+            this.threads = threads;
+            this.batchSize = batchSize;
+            this.rowsParsed = rowsParsed;
+            this.rowsLoaded = rowsLoaded;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        /** @return name of the extent being restored */
+        public String getExtentName()
+        {
+            return extentName;
+        }
+        
+        /** @return "running", "completed" or "failed" */
+        public String getState()
+        {
+            return state;
+        }
+        
+        /** @return number of insert threads (1 for serial restore) */
+        public int getThreads()
+        {
+            return threads;
+        }
+        
+        /** @return number of rows per insert batch */
+        public int getBatchSize()
+        {
+            return batchSize;
+        }
+        
+        /** @return number of rows read from the backup */
+        public long getRowsParsed()
+        {
+            return rowsParsed;
+        }
+        
+        /** @return number of rows inserted */
+        public long getRowsLoaded()
+        {
+            return rowsLoaded;
+        }
+        
+        /** @return time spent restoring, so far */
+        public long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+        
+        /** @return rows inserted per second, or 0 if no time has elapsed */
+        public double getRowsPerSecond()
+        {
+            if (elapsedMillis == 0) {
+                return 0.0;
+            }
+            return (double)rowsLoaded * 1000.0 / (double)elapsedMillis;
+        }
+    }
+    
     private static class IntWrapper
     {
         public int value;
@@ -24,8 +24,10 @@ package org.eigenbase.enki.hibernate;
 import java.io.*;
 import java.lang.ref.*;
 import java.lang.reflect.*;
+import java.net.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
 import java.util.logging.*;
@@ -47,13 +49,18 @@ import org.eigenbase.enki.jmi.impl.*;
 import org.eigenbase.enki.jmi.model.init.*;
 import org.eigenbase.enki.mbean.*;
 import org.eigenbase.enki.mdr.*;
-import org.eigenbase.enki.mdr.EnkiChangeEventThread.*;
+import org.eigenbase.enki.mdr.EnkiChangeEventDispatcher.*;
 import org.eigenbase.enki.util.*;
 import org.hibernate.*;
+import org.hibernate.cache.RegionFactory;
+import org.hibernate.cache.impl.bridge.RegionFactoryCacheProviderBridge;
 import org.hibernate.cfg.*;
 import org.hibernate.criterion.*;
 import org.hibernate.dialect.*;
 import org.hibernate.dialect.resolver.*;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.stat.*;
 import org.hibernate.tool.hbm2ddl.*;
 import org.netbeans.api.mdr.*;
@@ -103,6 +110,146 @@ import org.netbeans.api.mdr.events.*;
  *     </td>
  *   </tr>
  *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_SIZE}</td>
+ *     <td align="left">
+ *       Controls the maximum number of MOF ID/type lookup entries cached
+ *       by the repository.  Defaults to 
+ *       {@value #DEFAULT_TYPE_LOOKUP_CACHE_SIZE}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_RANGE}</td>
+ *     <td align="left">
+ *       Controls how many neighboring MOF ID/type lookup entries are loaded
+ *       on a cache miss.  Defaults to 
+ *       {@value #DEFAULT_TYPE_LOOKUP_CACHE_RANGE}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">
+ *       {@value #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_PRELOAD}
+ *     </td>
+ *     <td align="left">
+ *       Controls whether the MOF ID/type lookup cache is filled at start up.
+ *       Defaults to {@value #DEFAULT_TYPE_LOOKUP_CACHE_PRELOAD}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_SHARED_CACHE_SIZE}</td>
+ *     <td align="left">
+ *       Enables a second-level cache of committed objects and query results
+ *       shared by all sessions and controls its maximum number of entries.
+ *       Defaults to {@value #DEFAULT_SHARED_CACHE_SIZE} (disabled).
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_EVENT_DISPATCH_THREADS}</td>
+ *     <td align="left">
+ *       Controls the number of threads that deliver change events to
+ *       listeners.  Defaults to {@value #DEFAULT_EVENT_DISPATCH_THREADS}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_EVENT_QUEUE_CAPACITY}</td>
+ *     <td align="left">
+ *       Controls the default number of undelivered change events queued
+ *       per listener.  Defaults to {@value #DEFAULT_EVENT_QUEUE_CAPACITY}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_BACKUP_THREADS}</td>
+ *     <td align="left">
+ *       Controls the number of threads (and JDBC connections) used to back
+ *       up extents.  Defaults to {@value #DEFAULT_BACKUP_THREADS} (serial
+ *       backup).
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_BACKUP_COMPRESS}</td>
+ *     <td align="left">
+ *       Controls whether parallel backups compress their data.  Defaults
+ *       to {@value #DEFAULT_BACKUP_COMPRESS}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_BACKUP_FORMAT}</td>
+ *     <td align="left">
+ *       Controls the format of backup data.  Defaults to 
+ *       {@value #DEFAULT_BACKUP_FORMAT}.  Restore accepts either format.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_RESTORE_THREADS}</td>
+ *     <td align="left">
+ *       Controls the number of threads (and JDBC connections) used to 
+ *       insert restored data.  Defaults to 
+ *       {@value #DEFAULT_RESTORE_THREADS} (serial restore).
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_RESTORE_BATCH_SIZE}</td>
+ *     <td align="left">
+ *       Controls the number of rows per insert batch during restore.
+ *       Defaults to {@value #DEFAULT_RESTORE_BATCH_SIZE} (choose by SQL
+ *       dialect).
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_RESTORE_DEFER_INDEXES}</td>
+ *     <td align="left">
+ *       Controls whether parallel restores drop and rebuild model indexes.
+ *       Defaults to {@value #DEFAULT_RESTORE_DEFER_INDEXES}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_SET_BASED_MASS_DELETE}</td>
+ *     <td align="left">
+ *       Controls whether mass deletion computes the composite closure of
+ *       deleted objects in the database.  Defaults to
+ *       {@value #DEFAULT_SET_BASED_MASS_DELETE}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_CONCURRENT_READS}</td>
+ *     <td align="left">
+ *       Controls whether read transactions proceed while a write 
+ *       transaction is in progress.  Defaults to
+ *       {@value #DEFAULT_CONCURRENT_READS}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_OPTIMISTIC_WRITES}</td>
+ *     <td align="left">
+ *       Controls whether write transactions proceed concurrently and are
+ *       validated at commit.  Defaults to
+ *       {@value #DEFAULT_OPTIMISTIC_WRITES}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_FAST_START}</td>
+ *     <td align="left">
+ *       Controls whether schema validation is skipped for schemas whose
+ *       stored fingerprint matches.  Defaults to 
+ *       {@value #DEFAULT_FAST_START}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_LAZY_EXTENTS}</td>
+ *     <td align="left">
+ *       Controls whether existing extents are instantiated on first use
+ *       rather than at startup.  Defaults to 
+ *       {@value #DEFAULT_LAZY_EXTENTS}.
+ *     </td>
+ *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_STORAGE_LAZY_EXTENT_WARMUP}</td>
+ *     <td align="left">
+ *       Controls whether lazily loaded extents are instantiated by a 
+ *       background thread after startup.  Defaults to 
+ *       {@value #DEFAULT_LAZY_EXTENT_WARMUP}.
+ *     </td>
+ *   </tr>
+ *   <tr>
  *     <td align="left">{@value #PROPERTY_STORAGE_CONNECTION_DATASOURCE}</td>
  *     <td align="left">
  *       See {@link #PROPERTY_STORAGE_CONNECTION_DATASOURCE} for a discussion
@@ -211,7 +358,7 @@ import org.netbeans.api.mdr.events.*;
  */
 public class HibernateMDRepository
     implements MDRepository, EnkiMDRepository, 
-               EnkiChangeEventThread.ListenerSource
+               EnkiChangeEventDispatcher.ListenerSource
 {
     /** 
      * The name of the metamodel-specific Hibernate mapping file. Stored in 
@@ -433,6 +580,396 @@ public class HibernateMDRepository
     public static final String PROPERTY_STORAGE_TYPE_LOOKUP_FLUSH_SIZE =
         "org.eigenbase.enki.hibernate.typeLookupFlushSize";
 
+    /**
+     * Storage property that controls the maximum number of MOF ID/type 
+     * lookup entries cached by the repository.  The cache is shared by all
+     * sessions and avoids querying the MOF ID/type lookup table in
+     * {@link #getByMofId(String)}.  Values less than or equal to 0 disable
+     * the cache.  Defaults to {@link #DEFAULT_TYPE_LOOKUP_CACHE_SIZE}.
+     */
+    public static final String PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_SIZE =
+        "org.eigenbase.enki.hibernate.typeLookupCacheSize";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_SIZE} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_TYPE_LOOKUP_CACHE_SIZE = 100000;
+    
+    /**
+     * Storage property that controls how many MOF ID/type lookup entries
+     * are loaded when the type lookup cache misses.  Entries are loaded for
+     * an aligned range of MOF IDs containing the requested MOF ID.  The value
+     * is rounded up to a power of 2.  Values less than or equal to 1 cause
+     * only the requested entry to be loaded.  Defaults to 
+     * {@link #DEFAULT_TYPE_LOOKUP_CACHE_RANGE}.
+     */
+    public static final String PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_RANGE =
+        "org.eigenbase.enki.hibernate.typeLookupCacheRange";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_RANGE} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_TYPE_LOOKUP_CACHE_RANGE = 64;
+    
+    /**
+     * Storage property that controls whether the MOF ID/type lookup cache is
+     * filled with all of this repository's entries (up to the cache's
+     * capacity) at start up.  Values are converted to boolean via 
+     * {@link Boolean#valueOf(String)}.
+     */
+    public static final String PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_PRELOAD =
+        "org.eigenbase.enki.hibernate.typeLookupCachePreload";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_PRELOAD} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_TYPE_LOOKUP_CACHE_PRELOAD = false;
+    
+    /**
+     * Storage property that enables a repository-wide cache of committed
+     * objects and query results, shared by all sessions, and controls its
+     * maximum number of entries.  The cache is implemented by 
+     * {@link EnkiCacheProvider} as Hibernate's second-level cache, which 
+     * invalidates entries as transactions modify objects and tables.  
+     * Values less than or equal to 0 disable the cache.  Defaults to 
+     * {@link #DEFAULT_SHARED_CACHE_SIZE}.
+     */
+    public static final String PROPERTY_STORAGE_SHARED_CACHE_SIZE =
+        "org.eigenbase.enki.hibernate.sharedCacheSize";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_SHARED_CACHE_SIZE} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_SHARED_CACHE_SIZE = 0;
+    
+    /**
+     * Storage property that controls the number of threads used to deliver
+     * {@link MDRChangeEvent change events} to listeners.  Each listener 
+     * receives its events in order, but listeners are notified 
+     * concurrently, so a slow listener only delays others when all 
+     * threads are busy.  Defaults to {@link #DEFAULT_EVENT_DISPATCH_THREADS}.
+     */
+    public static final String PROPERTY_STORAGE_EVENT_DISPATCH_THREADS =
+        "org.eigenbase.enki.hibernate.eventDispatchThreads";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_EVENT_DISPATCH_THREADS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_EVENT_DISPATCH_THREADS = 4;
+    
+    /**
+     * Storage property that controls the number of undelivered 
+     * {@link MDRChangeEvent change events} queued for each listener, unless
+     * the listener specifies its own capacity via 
+     * {@link EnkiBufferedMDRChangeListener}.  Defaults to
+     * {@link #DEFAULT_EVENT_QUEUE_CAPACITY}.
+     */
+    public static final String PROPERTY_STORAGE_EVENT_QUEUE_CAPACITY =
+        "org.eigenbase.enki.hibernate.eventQueueCapacity";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_EVENT_QUEUE_CAPACITY} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_EVENT_QUEUE_CAPACITY = 
+        EnkiChangeEventDispatcher.DEFAULT_QUEUE_CAPACITY;
+    
+    /**
+     * Storage property that controls the number of threads used by
+     * {@link #backupExtent(String, OutputStream)}.  With more than one 
+     * thread, tables are read concurrently over separate JDBC connections 
+     * and large tables are split into MOF ID ranges, each written to its 
+     * own backup entry without intermediate temporary files.  Because the
+     * additional connections cannot see uncommitted data, backups taken in
+     * a transaction that has made changes are always performed serially.
+     * A parallel backup excludes all other transactions until the 
+     * transaction that performed it ends, so that no changes are committed
+     * between the scans of different tables.
+     * Defaults to {@link #DEFAULT_BACKUP_THREADS}.
+     */
+    public static final String PROPERTY_STORAGE_BACKUP_THREADS =
+        "org.eigenbase.enki.hibernate.backupThreads";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_BACKUP_THREADS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_BACKUP_THREADS = 1;
+    
+    /**
+     * Storage property that controls whether parallel backups (see
+     * {@link #PROPERTY_STORAGE_BACKUP_THREADS}) compress each backup entry.
+     * Compression is performed by the backup threads.  Defaults to 
+     * {@link #DEFAULT_BACKUP_COMPRESS}.
+     */
+    public static final String PROPERTY_STORAGE_BACKUP_COMPRESS =
+        "org.eigenbase.enki.hibernate.backupCompress";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_BACKUP_COMPRESS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_BACKUP_COMPRESS = false;
+    
+    /**
+     * Storage property that controls the format of backup data written by
+     * {@link #backupExtent(String, OutputStream)}.  Valid values are
+     * {@link #BACKUP_FORMAT_TEXT} and {@link #BACKUP_FORMAT_BINARY} 
+     * (case-insensitive).  The binary format is smaller and much faster to
+     * restore, but cannot be read by older versions of Enki.  Restores 
+     * detect the format of each backup data entry, so this property does 
+     * not affect them.  Defaults to {@link #DEFAULT_BACKUP_FORMAT}.
+     */
+    public static final String PROPERTY_STORAGE_BACKUP_FORMAT =
+        "org.eigenbase.enki.hibernate.backupFormat";
+    
+    /**
+     * Value for {@link #PROPERTY_STORAGE_BACKUP_FORMAT} that selects the
+     * UTF-8 text backup format.
+     */
+    public static final String BACKUP_FORMAT_TEXT = "TEXT";
+    
+    /**
+     * Value for {@link #PROPERTY_STORAGE_BACKUP_FORMAT} that selects the
+     * versioned binary backup format, which stores MOF IDs and other 
+     * integers as variable-length values and dictionary-encodes repeated 
+     * strings.
+     */
+    public static final String BACKUP_FORMAT_BINARY = "BINARY";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_BACKUP_FORMAT} storage property.  
+     * The default is {@value}. 
+     */
+    public static final String DEFAULT_BACKUP_FORMAT = BACKUP_FORMAT_TEXT;
+    
+    /**
+     * Storage property that controls the number of threads used by
+     * {@link #restoreExtent(String, String, String, InputStream)} to insert
+     * data.  With more than one thread, the backup is parsed by the calling
+     * thread and batches of rows are inserted concurrently over separate 
+     * JDBC connections, each committing as it goes.  Such restores are not
+     * atomic: the extent's previous contents are deleted before loading 
+     * begins and a failure leaves the extent empty.  Leave this property at
+     * its default when restores must be atomic.  Defaults to 
+     * {@link #DEFAULT_RESTORE_THREADS}.
+     */
+    public static final String PROPERTY_STORAGE_RESTORE_THREADS =
+        "org.eigenbase.enki.hibernate.restoreThreads";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_RESTORE_THREADS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_RESTORE_THREADS = 1;
+    
+    /**
+     * Storage property that controls the number of rows inserted per JDBC
+     * batch during restore.  Values less than or equal to zero select a
+     * size appropriate to the SQL dialect.  Defaults to 
+     * {@link #DEFAULT_RESTORE_BATCH_SIZE}.
+     */
+    public static final String PROPERTY_STORAGE_RESTORE_BATCH_SIZE =
+        "org.eigenbase.enki.hibernate.restoreBatchSize";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_RESTORE_BATCH_SIZE} storage property.  
+     * The default is {@value}. 
+     */
+    public static final int DEFAULT_RESTORE_BATCH_SIZE = 0;
+    
+    /**
+     * Storage property that controls whether parallel restores (see
+     * {@link #PROPERTY_STORAGE_RESTORE_THREADS}) drop the indexes defined
+     * by the model's index mapping before loading data and rebuild them
+     * afterwards.  Defaults to {@link #DEFAULT_RESTORE_DEFER_INDEXES}.
+     */
+    public static final String PROPERTY_STORAGE_RESTORE_DEFER_INDEXES =
+        "org.eigenbase.enki.hibernate.restoreDeferIndexes";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_RESTORE_DEFER_INDEXES} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_RESTORE_DEFER_INDEXES = false;
+    
+    /**
+     * Storage property that controls whether 
+     * {@link #delete(Collection) mass deletion} computes the set of composed
+     * objects and the associations to modify using SQL against temporary
+     * tables rather than by loading each deleted object and its associations
+     * into the session.  Ignored (with a log message) if the SQL dialect
+     * does not support temporary tables.  Defaults to 
+     * {@link #DEFAULT_SET_BASED_MASS_DELETE}.
+     */
+    public static final String PROPERTY_STORAGE_SET_BASED_MASS_DELETE =
+        "org.eigenbase.enki.hibernate.setBasedMassDelete";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_SET_BASED_MASS_DELETE} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_SET_BASED_MASS_DELETE = false;
+    
+    /**
+     * Storage property that controls whether read transactions may proceed
+     * while a write transaction is in progress.  Normally a write 
+     * transaction holds the repository-wide transaction lock exclusively, 
+     * blocking all readers until it commits.  When enabled, write 
+     * transactions are serialized only with respect to each other and 
+     * readers rely on the database's isolation to see the last committed 
+     * state.  Operations that change the repository's schema (creating, 
+     * deleting and restoring extents and dropping extent storage) still 
+     * wait for all readers to finish and block new readers until the
+     * write transaction ends.
+     * 
+     * <p>The database's transaction isolation level must be at least 
+     * READ_COMMITTED.  Note that each repository session's Hibernate session
+     * retains the objects it has loaded: objects loaded by a reader before
+     * a concurrent write commits are not refreshed until the reader begins
+     * a new repository session.  This is unchanged from the behavior of 
+     * separate sessions without this mode.  Defaults to 
+     * {@link #DEFAULT_CONCURRENT_READS}.
+     */
+    public static final String PROPERTY_STORAGE_CONCURRENT_READS =
+        "org.eigenbase.enki.hibernate.concurrentReads";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_CONCURRENT_READS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_CONCURRENT_READS = false;
+    
+    /**
+     * Storage property that enables optimistic write transactions.  If 
+     * enabled, write transactions do not exclude one another (nor readers,
+     * as with {@link #PROPERTY_STORAGE_CONCURRENT_READS}, which this 
+     * property implies).  Instead, conflicts are detected as each 
+     * transaction commits:
+     * 
+     * <ul>
+     * <li>Every object and association modified or deleted by the 
+     *     transaction (its write set) is checked against the version column
+     *     generated by the 
+     *     {@link org.eigenbase.enki.hibernate.codegen.HibernateGenerator#VERSIONED_OPTION}
+     *     option.  Models generated without that option receive no 
+     *     write-write conflict detection.</li>
+     * <li>Objects explicitly added to the transaction's read set via 
+     *     {@link #recordRead(RefObject)} are checked (and locked, if the 
+     *     database supports <code>SELECT ... FOR UPDATE</code>) to 
+     *     ensure that no other transaction has modified or deleted them.</li>
+     * </ul>
+     * 
+     * The first transaction to commit wins.  Later conflicting transactions
+     * are rolled back and {@link #endTrans(boolean)} throws 
+     * {@link EnkiOptimisticLockException}, after which the transaction may
+     * be retried.  Because each repository session retains the objects it
+     * has loaded, a conflict may also be reported against an object loaded
+     * by an earlier transaction in the same session.  Retrying succeeds
+     * since the session's cached objects are discarded when the exception
+     * is thrown.  Schema changes still exclude all other transactions, as
+     * described in {@link #PROPERTY_STORAGE_CONCURRENT_READS}.  
+     * 
+     * <p>The database's transaction isolation level must be at least 
+     * READ_COMMITTED.  Note that Hibernate does not batch updates to 
+     * versioned objects unless <code>hibernate.jdbc.batch_versioned_data
+     * </code> is set and the JDBC driver reports accurate batch update 
+     * counts.  Defaults to {@link #DEFAULT_OPTIMISTIC_WRITES}.
+     */
+    public static final String PROPERTY_STORAGE_OPTIMISTIC_WRITES =
+        "org.eigenbase.enki.hibernate.optimisticWrites";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_OPTIMISTIC_WRITES} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_OPTIMISTIC_WRITES = false;
+    
+    /**
+     * Storage property that enables fast start.  If enabled, the 
+     * repository builds a single Hibernate SessionFactory at start up 
+     * (rather than an additional temporary one to detect the SQL dialect 
+     * and probe for the provider schema) and skips validation of the 
+     * provider schema and of model schemas when a fingerprint of the 
+     * mapping and DDL resources that produced them matches the fingerprint
+     * recorded in the database when they were last created or validated.
+     * Fingerprints are recorded only if 
+     * {@link #PROPERTY_STORAGE_CREATE_SCHEMA} permits schema creation.
+     * Schema changes made to the database by other means than the 
+     * repository are not detected.  Defaults to 
+     * {@link #DEFAULT_FAST_START}.
+     */
+    public static final String PROPERTY_STORAGE_FAST_START =
+        "org.eigenbase.enki.hibernate.fastStart";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_FAST_START} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_FAST_START = false;
+    
+    /**
+     * Storage property that controls whether existing extents are loaded
+     * lazily.  If true, the top-level package of each existing 
+     * (non-metamodel) extent is instantiated, and its model plugins 
+     * stitched to it, the first time the extent is retrieved via 
+     * {@link #getExtent(String)} or one of its classes or associations is
+     * needed, rather than during repository startup.  
+     * {@link #getExtentNames()} does not instantiate extents.  Errors 
+     * instantiating an extent are reported on first use rather than at 
+     * startup.  Defaults to {@link #DEFAULT_LAZY_EXTENTS}.
+     */
+    public static final String PROPERTY_STORAGE_LAZY_EXTENTS =
+        "org.eigenbase.enki.hibernate.lazyExtents";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_LAZY_EXTENTS} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_LAZY_EXTENTS = false;
+    
+    /**
+     * Storage property that controls whether extents loaded lazily (see
+     * {@link #PROPERTY_STORAGE_LAZY_EXTENTS}) are instantiated by a 
+     * background daemon thread once startup completes.  Extents are 
+     * instantiated one at a time, since they share the repository's class
+     * and association registries.  An extent requested before the thread
+     * reaches it is instantiated by the requesting thread.  Ignored unless
+     * lazy extents are enabled.  Defaults to 
+     * {@link #DEFAULT_LAZY_EXTENT_WARMUP}.
+     */
+    public static final String PROPERTY_STORAGE_LAZY_EXTENT_WARMUP =
+        "org.eigenbase.enki.hibernate.lazyExtentWarmup";
+    
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_STORAGE_LAZY_EXTENT_WARMUP} storage property.  
+     * The default is {@value}. 
+     */
+    public static final boolean DEFAULT_LAZY_EXTENT_WARMUP = false;
+    
     /**
      * Hibernate property re-used as a storage property to control the default
      * size of MOF ID/type mapping flushes during transaction commit in
@@ -450,9 +987,10 @@ public class HibernateMDRepository
 
     /**
      * Storage property that configures whether session factory statistics
-     * are periodically logged.  Values of zero or less disable statistics
-     * logging.  Larger values indicate the number of seconds between log
-     * messages.  Default value is {@link #DEFAULT_PERIODIC_STATS_INTERVAL}.
+     * and Enki metrics (see {@link #getMetrics()}) are periodically logged.
+     * Values of zero or less disable statistics logging.  Larger values 
+     * indicate the number of seconds between log messages.  Default value 
+     * is {@link #DEFAULT_PERIODIC_STATS_INTERVAL}.
      */
     public static final String PROPERTY_STORAGE_PERIODIC_STATS =
         "org.eigenbase.enki.hibernate.periodicStats";
@@ -548,8 +1086,27 @@ public class HibernateMDRepository
     
     private static final MdrSessionStack sessionStack = new MdrSessionStack();
     
+    /** Maximum number of parameters in a single IN clause. */
+    private static final int MAX_IN_CLAUSE = 256;
+    
+    /** Name under which the provider schema's fingerprint is stored. */
+    private static final String PROVIDER_SCHEMA_NAME = "ENKI_PROVIDER";
+    
+    /** 
+     * Repository-wide transaction lock.  Normally held by write transactions
+     * in write mode and read transactions in read mode.  If 
+     * {@link #concurrentReads} is enabled, write transactions only hold it
+     * in write mode during schema changes.  If {@link #optimisticWrites} is
+     * also enabled, write transactions otherwise hold it in read mode.
+     */
     private final ReadWriteLock txnLock;
     
+    /** 
+     * Serializes write transactions when {@link #concurrentReads} is 
+     * enabled and {@link #optimisticWrites} is not.  Unused otherwise.
+     */
+    private final Lock writerLock;
+    
     private final AtomicInteger sessionCount;
     
     private final AtomicInteger sessionIdGenerator;
@@ -566,12 +1123,84 @@ public class HibernateMDRepository
     /** Map of extent names to ExtentDescriptor instances. */
     private final Map<String, ExtentDescriptor> extentMap;
     
+    /** 
+     * Initializers of metamodel extents, searched by 
+     * {@link #findMetaByMofId(long)} without locking {@link #extentMap}.
+     * Replaced whenever {@link #extentMap} changes.
+     */
+    private volatile MetamodelInitializer[] metamodelInitializers = 
+        new MetamodelInitializer[0];
+    
     /** Value of {@link #PROPERTY_STORAGE_TYPE_LOOKUP_FLUSH_SIZE}. */
     final int typeLookupFlushSize;
 
     /** Value of hibernate.default.batch_fetch_size. */
     private final int defaultBatchFetchSize;
     
+    /** Repository-wide cache of MOF ID to type name mappings. */
+    private final MofIdTypeLookupCache typeLookupCache;
+    
+    /** Value of {@link #PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_PRELOAD}. */
+    private final boolean preloadTypeLookupCache;
+    
+    /** Value of {@link #PROPERTY_STORAGE_SHARED_CACHE_SIZE}. */
+    private final int sharedCacheSize;
+    
+    /** Value of {@link #PROPERTY_STORAGE_EVENT_DISPATCH_THREADS}. */
+    private final int eventDispatchThreads;
+    
+    /** Value of {@link #PROPERTY_STORAGE_EVENT_QUEUE_CAPACITY}. */
+    private final int eventQueueCapacity;
+    
+    /** Value of {@link #PROPERTY_STORAGE_BACKUP_THREADS}. */
+    private final int backupThreads;
+    
+    /** Value of {@link #PROPERTY_STORAGE_BACKUP_COMPRESS}. */
+    private final boolean backupCompress;
+    
+    /** 
+     * True if {@link #PROPERTY_STORAGE_BACKUP_FORMAT} is 
+     * {@link #BACKUP_FORMAT_BINARY}.
+     */
+    private final boolean backupBinary;
+    
+    /** Value of {@link #PROPERTY_STORAGE_RESTORE_THREADS}. */
+    private final int restoreThreads;
+    
+    /** Value of {@link #PROPERTY_STORAGE_RESTORE_BATCH_SIZE}. */
+    private final int restoreBatchSize;
+    
+    /** Value of {@link #PROPERTY_STORAGE_RESTORE_DEFER_INDEXES}. */
+    private final boolean restoreDeferIndexes;
+    
+    /** Value of {@link #PROPERTY_STORAGE_SET_BASED_MASS_DELETE}. */
+    private final boolean setBasedMassDelete;
+    
+    /** 
+     * Value of {@link #PROPERTY_STORAGE_CONCURRENT_READS}.  Always true if
+     * {@link #optimisticWrites} is.
+     */
+    private final boolean concurrentReads;
+    
+    /** Value of {@link #PROPERTY_STORAGE_OPTIMISTIC_WRITES}. */
+    private final boolean optimisticWrites;
+    
+    /** Value of {@link #PROPERTY_STORAGE_FAST_START}. */
+    private final boolean fastStart;
+    
+    /** Value of {@link #PROPERTY_STORAGE_LAZY_EXTENTS}. */
+    private final boolean lazyExtents;
+    
+    /** Value of {@link #PROPERTY_STORAGE_LAZY_EXTENT_WARMUP}. */
+    private final boolean lazyExtentWarmup;
+    
+    /** Schema fingerprint storage.  Initialized with the SessionFactory. */
+    private HibernateSchemaFingerprintUtil fingerprints;
+    
+    /** Progress of the most recent restore, if any. */
+    private volatile HibernateBackupRestoreUtil.RestoreProgress 
+        restoreProgress;
+    
     private final boolean allowImplicitSessions;
     
     private final boolean trackSessions;
@@ -604,14 +1233,39 @@ public class HibernateMDRepository
     
     private Timer periodicStatsTimer;
     
+    /** 
+     * Enki-level hot path metrics.  Enabled along with Hibernate statistics
+     * (see {@link #setMetricsEnabled(boolean)}).
+     */
+    private final EnkiMetrics metrics;
+    private final EnkiMetrics.Counter byMofIdCacheHits;
+    private final EnkiMetrics.Counter byMofIdCacheMisses;
+    private final EnkiMetrics.Counter allOfCacheHits;
+    private final EnkiMetrics.Counter allOfCacheMisses;
+    private final EnkiMetrics.Counter batchLoadObjects;
+    private final EnkiMetrics.Counter optimisticLockConflicts;
+    private final EnkiMetrics.Histogram batchLoadTime;
+    private final EnkiMetrics.Histogram readLockWaitTime;
+    private final EnkiMetrics.Histogram writeLockWaitTime;
+    private final EnkiMetrics.Histogram commitTime;
+    private final EnkiMetrics.Histogram commitFlushTime;
+    private final EnkiMetrics.Histogram typeMappingDeleteChunkTime;
+    private final EnkiMetrics.Histogram typeMappingInsertTime;
+    
     /** The Hibernate {@link SessionFactory} for this repository. */
     private SessionFactory sessionFactory;
     
     /** The {@link MofIdGenerator} for this repository. */
     private MofIdGenerator mofIdGenerator;
     
-    /** The {@link EnkiChangeEventThread} for this repository. */
-    private EnkiChangeEventThread thread;
+    /** 
+     * The shared cache for this repository, or null if 
+     * {@link #PROPERTY_STORAGE_SHARED_CACHE_SIZE} is not enabled.
+     */
+    private EnkiCacheProvider sharedCache;
+    
+    /** The {@link EnkiChangeEventDispatcher} for this repository. */
+    private EnkiChangeEventDispatcher eventDispatcher;
     
     /** 
      * Map of {@link MDRChangeListener} instances to 
@@ -619,11 +1273,14 @@ public class HibernateMDRepository
      */
     private Map<MDRChangeListener, EnkiMaskedMDRChangeListener> listeners;
     
+    /** True if {@link #listeners} is not empty. */
+    private volatile boolean hasListeners;
+    
     /** Map of unique class identifier to HibernateRefClass. */
-    private final HashMap<String, HibernateRefClass> classRegistry;
+    private final Map<String, HibernateRefClass> classRegistry;
     
     /** Map of unique association identifier to HibernateRefAssociation. */
-    private final HashMap<String, HibernateRefAssociation> assocRegistry;
+    private final Map<String, HibernateRefAssociation> assocRegistry;
     
     /** The SQL dialect in use by the configured database. */
     private Dialect sqlDialect;
@@ -641,14 +1298,35 @@ public class HibernateMDRepository
         ClassLoader classLoader)
     {
         this.txnLock = new ReentrantReadWriteLock();
+        this.writerLock = new ReentrantLock();
+        this.metrics = new EnkiMetrics();
+        this.byMofIdCacheHits = metrics.counter("getByMofId cache hits");
+        this.byMofIdCacheMisses = metrics.counter("getByMofId cache misses");
+        this.allOfCacheHits = metrics.counter("allOfType/Class cache hits");
+        this.allOfCacheMisses = 
+            metrics.counter("allOfType/Class cache misses");
+        this.batchLoadObjects = metrics.counter("batch load objects");
+        this.optimisticLockConflicts = 
+            metrics.counter("optimistic lock conflicts");
+        this.batchLoadTime = metrics.histogram("batch load time");
+        this.readLockWaitTime = metrics.histogram("read lock wait time");
+        this.writeLockWaitTime = metrics.histogram("write lock wait time");
+        this.commitTime = metrics.histogram("commit time");
+        this.commitFlushTime = metrics.histogram("commit flush time");
+        this.typeMappingDeleteChunkTime = 
+            metrics.histogram("commit type mapping delete chunk time");
+        this.typeMappingInsertTime = 
+            metrics.histogram("commit type mapping insert time");
         this.storageProperties = storageProperties;
         this.classLoader = classLoader;
         this.extentMap = new HashMap<String, ExtentDescriptor>();
-        this.thread = null;
+        this.eventDispatcher = null;
         this.listeners = 
             new IdentityHashMap<MDRChangeListener, EnkiMaskedMDRChangeListener>();
-        this.classRegistry = new HashMap<String, HibernateRefClass>();
-        this.assocRegistry = new HashMap<String, HibernateRefAssociation>();
+        this.classRegistry = 
+            new ConcurrentHashMap<String, HibernateRefClass>();
+        this.assocRegistry = 
+            new ConcurrentHashMap<String, HibernateRefAssociation>();
 
         int jdbcBatchSize = 
             readStorageProperty(
@@ -666,6 +1344,114 @@ public class HibernateMDRepository
                 -1,
                 Integer.class);
 
+        this.typeLookupCache =
+            new MofIdTypeLookupCache(
+                readStorageProperty(
+                    PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_SIZE,
+                    DEFAULT_TYPE_LOOKUP_CACHE_SIZE,
+                    Integer.class),
+                readStorageProperty(
+                    PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_RANGE,
+                    DEFAULT_TYPE_LOOKUP_CACHE_RANGE,
+                    Integer.class));
+        this.preloadTypeLookupCache =
+            readStorageProperty(
+                PROPERTY_STORAGE_TYPE_LOOKUP_CACHE_PRELOAD,
+                DEFAULT_TYPE_LOOKUP_CACHE_PRELOAD,
+                Boolean.class);
+        
+        this.sharedCacheSize =
+            readStorageProperty(
+                PROPERTY_STORAGE_SHARED_CACHE_SIZE,
+                DEFAULT_SHARED_CACHE_SIZE,
+                Integer.class);
+        
+        this.eventDispatchThreads =
+            readStorageProperty(
+                PROPERTY_STORAGE_EVENT_DISPATCH_THREADS,
+                DEFAULT_EVENT_DISPATCH_THREADS,
+                Integer.class);
+        this.eventQueueCapacity =
+            readStorageProperty(
+                PROPERTY_STORAGE_EVENT_QUEUE_CAPACITY,
+                DEFAULT_EVENT_QUEUE_CAPACITY,
+                Integer.class);
+        
+        this.backupThreads =
+            readStorageProperty(
+                PROPERTY_STORAGE_BACKUP_THREADS,
+                DEFAULT_BACKUP_THREADS,
+                Integer.class);
+        this.backupCompress =
+            readStorageProperty(
+                PROPERTY_STORAGE_BACKUP_COMPRESS,
+                DEFAULT_BACKUP_COMPRESS,
+                Boolean.class);
+        
+        String backupFormat =
+            readStorageProperty(
+                PROPERTY_STORAGE_BACKUP_FORMAT,
+                DEFAULT_BACKUP_FORMAT,
+                String.class).toUpperCase();
+        if (!backupFormat.equals(BACKUP_FORMAT_BINARY) &&
+            !backupFormat.equals(BACKUP_FORMAT_TEXT))
+        {
+            log.warning(
+                "Value '" + backupFormat + "' for property " 
+                + PROPERTY_STORAGE_BACKUP_FORMAT 
+                + " is invalid; defaulting to " + DEFAULT_BACKUP_FORMAT);
+            backupFormat = DEFAULT_BACKUP_FORMAT;
+        }
+        this.backupBinary = backupFormat.equals(BACKUP_FORMAT_BINARY);
+        
+        this.restoreThreads =
+            readStorageProperty(
+                PROPERTY_STORAGE_RESTORE_THREADS,
+                DEFAULT_RESTORE_THREADS,
+                Integer.class);
+        this.restoreBatchSize =
+            readStorageProperty(
+                PROPERTY_STORAGE_RESTORE_BATCH_SIZE,
+                DEFAULT_RESTORE_BATCH_SIZE,
+                Integer.class);
+        this.restoreDeferIndexes =
+            readStorageProperty(
+                PROPERTY_STORAGE_RESTORE_DEFER_INDEXES,
+                DEFAULT_RESTORE_DEFER_INDEXES,
+                Boolean.class);
+        this.setBasedMassDelete =
+            readStorageProperty(
+                PROPERTY_STORAGE_SET_BASED_MASS_DELETE,
+                DEFAULT_SET_BASED_MASS_DELETE,
+                Boolean.class);
+        this.fastStart =
+            readStorageProperty(
+                PROPERTY_STORAGE_FAST_START,
+                DEFAULT_FAST_START,
+                Boolean.class);
+        this.lazyExtents =
+            readStorageProperty(
+                PROPERTY_STORAGE_LAZY_EXTENTS,
+                DEFAULT_LAZY_EXTENTS,
+                Boolean.class);
+        this.lazyExtentWarmup =
+            lazyExtents &&
+            readStorageProperty(
+                PROPERTY_STORAGE_LAZY_EXTENT_WARMUP,
+                DEFAULT_LAZY_EXTENT_WARMUP,
+                Boolean.class);
+        this.optimisticWrites =
+            readStorageProperty(
+                PROPERTY_STORAGE_OPTIMISTIC_WRITES,
+                DEFAULT_OPTIMISTIC_WRITES,
+                Boolean.class);
+        this.concurrentReads =
+            optimisticWrites ||
+            readStorageProperty(
+                PROPERTY_STORAGE_CONCURRENT_READS,
+                DEFAULT_CONCURRENT_READS,
+                Boolean.class);
+        
         this.allowImplicitSessions = 
             readStorageProperty(
                 PROPERTY_STORAGE_ALLOW_IMPLICIT_SESSIONS, 
@@ -727,8 +1513,17 @@ public class HibernateMDRepository
         this.configurator = 
             new HibernateConfigurator(storageProperties, modelProperties);
         
+        StartupTimer startupTimer = new StartupTimer();
         initModelExtent(MOF_EXTENT, false);
-        initStorage();
+        startupTimer.endPhase("MOF initialization");
+        
+        initStorage(startupTimer);
+        
+        log.info("Repository storage initialized: " + startupTimer);
+        
+        if (lazyExtentWarmup) {
+            startExtentWarmup();
+        }
         
         this.sessionCount = new AtomicInteger(0);  
         this.sessionIdGenerator = new AtomicInteger(0);
@@ -1000,6 +1795,13 @@ public class HibernateMDRepository
             }
             trans = mdrSession.session.beginTransaction();
         } else {
+            if (write && isCommitter && concurrentReads && !optimisticWrites)
+            {
+                // Write nested in an implicit read.  The read lock does not
+                // exclude other writers, so trade it for the writer lock.
+                mdrSession.releaseLock();
+                mdrSession.obtainWriteLock();
+            }
             trans = contexts.getLast().transaction;
         }
         
@@ -1096,10 +1898,17 @@ public class HibernateMDRepository
                         "Cannot rollback read transactions");
                 }
             } else {
+                long commitStart = metrics.startTimer();
                 try {
+                    List<Long> deletedMofIds = Collections.emptyList();
+                    List<MofIdTypeMapping> createdMappings = 
+                        Collections.emptyList();
+                    
                     Session session = mdrSession.session;
                     if (mdrSession.containsWrites) {
+                        long flushStart = metrics.startTimer();
                         session.flush();
+                        commitFlushTime.recordSince(flushStart);
                         
                         if (!mdrSession.mofIdDeleteSet.isEmpty()) {
                             // Update enki type mapping
@@ -1112,18 +1921,26 @@ public class HibernateMDRepository
                             if (flushSize <= 0) {
                                 flushSize = 100;
                             }
+                            deletedMofIds = 
+                                new ArrayList<Long>(mdrSession.mofIdDeleteSet);
                             List<Long> chunk = new ArrayList<Long>();
-                            for(Long mofId: mdrSession.mofIdDeleteSet) {
+                            for(Long mofId: deletedMofIds) {
                                 chunk.add(mofId);
                                 if (chunk.size() >= flushSize) {
+                                    long chunkStart = metrics.startTimer();
                                     query.setParameterList("mofIds", chunk);
                                     query.executeUpdate();
+                                    typeMappingDeleteChunkTime.recordSince(
+                                        chunkStart);
                                     chunk.clear();
                                 }
                             }
                             if (!chunk.isEmpty()) {
+                                long chunkStart = metrics.startTimer();
                                 query.setParameterList("mofIds", chunk);
                                 query.executeUpdate();                            
+                                typeMappingDeleteChunkTime.recordSince(
+                                    chunkStart);
                                 chunk.clear();
                             }
                             
@@ -1134,6 +1951,10 @@ public class HibernateMDRepository
                         }
                         
                         if (!mdrSession.mofIdCreateMap.isEmpty()) {
+                            long insertStart = metrics.startTimer();
+                            createdMappings = 
+                                new ArrayList<MofIdTypeMapping>(
+                                    mdrSession.mofIdCreateMap.size());
                             int i = 0;
                             int flushSize = typeLookupFlushSize;
                             boolean flush = flushSize > 0;
@@ -1149,9 +1970,14 @@ public class HibernateMDRepository
                                 mapping.setTablePrefix(tablePrefix);
                                 mapping.setTypeName(entry.getValue().getName());
                                 mdrSession.session.save(mapping);
+                                
+                                createdMappings.add(mapping);
                             }
                             
                             mdrSession.mofIdCreateMap.clear();
+                            mdrSession.mofIdCreateIndex.clear();
+                            
+                            typeMappingInsertTime.recordSince(insertStart);
                         }
                     }
                     
@@ -1172,10 +1998,20 @@ public class HibernateMDRepository
                     if (!mdrSession.containsWrites) {
                         txn.rollback();
                     } else {
+                        validateReadSet(mdrSession);
+                        
                         txn.commit();
+                        commitTime.recordSince(commitStart);
+                        
+                        typeLookupCache.recordCommit(
+                            deletedMofIds, createdMappings);
                     }
     
                     fireChanges(mdrSession);
+                } catch(StaleStateException e) {
+                    throw optimisticLockFailure(mdrSession, txn, e);
+                } catch(LockAcquisitionException e) {
+                    throw optimisticLockFailure(mdrSession, txn, e);
                 } catch(HibernateException e) {
                     fireCanceledChanges(mdrSession);
                     throw e;
@@ -1208,6 +2044,104 @@ public class HibernateMDRepository
         return mdrSession;
     }
 
+    /**
+     * Verifies that no other transaction has modified or deleted the 
+     * objects in the read set of the session's current transaction.  Does
+     * nothing unless {@link #optimisticWrites} is enabled.
+     * 
+     * @param mdrSession session whose transaction is committing
+     * @throws StaleStateException if a conflict is found
+     */
+    private void validateReadSet(MdrSession mdrSession)
+    {
+        if (!optimisticWrites) {
+            return;
+        }
+        
+        Session session = mdrSession.session;
+        for(HibernateObject obj: mdrSession.readSet.values()) {
+            // Objects deleted by this txn are no longer in the session.
+            if (session.contains(obj)) {
+                // Selects the object's row by MOF ID and version (and 
+                // locks it if the dialect allows).  Throws 
+                // StaleObjectStateException if the row is gone or changed.
+                session.lock(obj, LockMode.UPGRADE);
+            }
+        }
+    }
+    
+    /**
+     * Rolls back a write transaction that failed to commit due to a 
+     * conflict with a concurrent transaction.  Re-throws the given exception 
+     * unless {@link #optimisticWrites} is enabled.
+     * 
+     * @param mdrSession session whose commit failed
+     * @param txn the failed Hibernate transaction
+     * @param e the conflict
+     * @return an exception for the caller to throw
+     */
+    private EnkiOptimisticLockException optimisticLockFailure(
+        MdrSession mdrSession, Transaction txn, HibernateException e)
+    {
+        if (!optimisticWrites) {
+            fireCanceledChanges(mdrSession);
+            throw e;
+        }
+        
+        optimisticLockConflicts.increment();
+        
+        List<String> mofIds = new ArrayList<String>();
+        if (e instanceof StaleObjectStateException) {
+            Serializable id = ((StaleObjectStateException)e).getIdentifier();
+            if (id instanceof Long) {
+                mofIds.add(MofIdUtil.makeMofIdStr((Long)id));
+            }
+        }
+        
+        try {
+            txn.rollback();
+        } catch(HibernateException e2) {
+            log.log(Level.SEVERE, "rollback after conflict failed", e2);
+        }
+        
+        fireCanceledChanges(mdrSession);
+        
+        // Discard objects whose state may be stale so that a retry sees
+        // the committed state of the conflicting transaction.
+        mdrSession.session.clear();
+        
+        log.fine("write transaction conflict: " + e.getMessage());
+        
+        return new EnkiOptimisticLockException(
+            "write transaction conflicts with a concurrent transaction; "
+            + "it was rolled back and may be retried",
+            mofIds,
+            e);
+    }
+    
+    /**
+     * Adds an object to the read set of the current write transaction.  If
+     * {@link #PROPERTY_STORAGE_OPTIMISTIC_WRITES} is enabled, the 
+     * transaction fails to commit if another transaction modifies or 
+     * deletes the object and commits first.  Objects modified by the 
+     * transaction need not be added.  Does nothing if optimistic writes 
+     * are disabled.
+     * 
+     * @param object an object read by the current write transaction
+     * @throws EnkiHibernateException if no write transaction is in progress
+     */
+    public void recordRead(RefObject object)
+    {
+        if (!optimisticWrites) {
+            return;
+        }
+        
+        checkTransaction(true);
+        
+        HibernateObject hibObj = (HibernateObject)object;
+        getMdrSession().readSet.put(hibObj.getMofId(), hibObj);
+    }
+    
     public RefPackage createExtent(String name)
         throws CreationFailedException
     {
@@ -1226,6 +2160,9 @@ public class HibernateMDRepository
         RefPackage[] existingInstances)
     throws CreationFailedException
     {
+        // Lock before synchronizing on extentMap, which readers may need.
+        lockForSchemaChange();
+        
         synchronized(extentMap) {
             ExtentDescriptor extentDesc = extentMap.get(name);
             if (extentDesc != null) {
@@ -1260,7 +2197,7 @@ public class HibernateMDRepository
                 extentDesc = 
                     createExtentStorage(name, metaPackage, existingInstances);
 
-                return extentDesc.extent;
+                return extentDesc.getExtent();
             }
             catch(ProviderInstantiationException e) {
                 throw new EnkiCreationFailedException(
@@ -1286,7 +2223,8 @@ public class HibernateMDRepository
     {
         synchronized(extentMap) {
             for(ExtentDescriptor extentDesc: extentMap.values()) {
-                if (extentDesc.extent.equals(refPackage)) {
+                // Unmaterialized extents cannot match.
+                if (refPackage.equals(extentDesc.extent)) {
                     dropExtentStorage(extentDesc);
                     return;
                 }
@@ -1314,6 +2252,7 @@ public class HibernateMDRepository
                     new ArrayList<String>(extentMap.keySet()))));
         
         extentMap.remove(extentDesc.name);
+        updateMetamodelInitializers();
         
         Session session = mdrSession.session;
         Transaction trans = session.beginTransaction();
@@ -1322,7 +2261,7 @@ public class HibernateMDRepository
             HibernateMassDeletionUtil msdu = 
                 new HibernateMassDeletionUtil(this);
             
-            msdu.massDeleteAll(session, extentDesc.extent);
+            msdu.massDeleteAll(session, extentDesc.getExtent());
             
             Query query = session.getNamedQuery("ExtentByName");
             query.setString(0, extentDesc.name);
@@ -1332,6 +2271,12 @@ public class HibernateMDRepository
 
             trans.commit();
 
+            if (sharedCache != null) {
+                // The extent's rows were deleted without Hibernate's
+                // knowledge.
+                sharedCache.clear();
+            }
+
             fireChanges(mdrSession);
 
             rollback = false;
@@ -1366,12 +2311,12 @@ public class HibernateMDRepository
     {
         Long mofIdLong = MofIdUtil.parseMofIdStr(mofId); 
 
-        return getByMofId(mofIdLong, cls, mofId);
+        return findByMofId(mofIdLong, cls);
     }
     
     public RefObject getByMofId(long mofId, RefClass cls)
     {
-        return getByMofId(mofId, cls, null);
+        return findByMofId(mofId, cls);
     }
     
     public Collection<RefObject> getByMofId(List<Long> mofIds, RefClass cls)
@@ -1429,6 +2374,8 @@ public class HibernateMDRepository
         }
         
         if (!criteriaMofIdList.isEmpty()) {
+            long start = metrics.startTimer();
+            
             Criteria criteria = 
                 getCurrentSession().createCriteria(instanceClass)
                     .add(Restrictions.in("id", criteriaMofIdList))
@@ -1442,6 +2389,9 @@ public class HibernateMDRepository
                 
                 storeByMofId(mdrSession, rob.getMofId(), rob);
             }
+            
+            batchLoadObjects.add(criteriaMofIdList.size());
+            batchLoadTime.recordSince(start);
         }
         
         return result;
@@ -1457,7 +2407,7 @@ public class HibernateMDRepository
      * @param mofId optional string version of MOF ID
      * @return the object requested or null if not found or already deleted
      */
-    private RefObject getByMofId(Long mofIdLong, RefClass cls, String mofId)
+    private RefObject findByMofId(Long mofIdLong, RefClass cls)
     {
         MdrSession mdrSession = getMdrSession();
         
@@ -1468,10 +2418,7 @@ public class HibernateMDRepository
         }
         
         if (isMetamodelMofId(mofIdLong)) {
-            if (mofId == null) {
-                mofId = MofIdUtil.makeMofIdStr(mofIdLong);
-            }
-            RefBaseObject result = findMetaByMofId(mofId);
+            RefBaseObject result = findMetaByMofId(mofIdLong);
             return convertToRefObject(cls, result);
         }
 
@@ -1536,7 +2483,7 @@ public class HibernateMDRepository
         
         RefBaseObject result = null;
         if (isMetamodelMofId(mofIdLong)) {
-            result = findMetaByMofId(mofId);
+            result = findMetaByMofId(mofIdLong);
         } else {
             if (mdrSession.mofIdDeleteSet.contains(mofIdLong)) {
                 return null;
@@ -1550,14 +2497,14 @@ public class HibernateMDRepository
             
             Session session = mdrSession.session;
             
-            Query query = session.getNamedQuery("TypeMappingByMofId");
-            query.setLong("mofId", mofIdLong);
-            
-            MofIdTypeMapping mapping = (MofIdTypeMapping)query.uniqueResult();
-            if (mapping != null) {
-                query = 
+            String typeName = typeLookupCache.lookup(session, mofIdLong);
+            if (typeName != null && sharedCache != null) {
+                // Load by identifier to make use of the shared cache.
+                result = (RefBaseObject)session.get(typeName, mofIdLong);
+            } else if (typeName != null) {
+                Query query = 
                     session.getNamedQuery(
-                        mapping.getTypeName() + "." + 
+                        typeName + "." + 
                         HibernateMappingHandler.QUERY_NAME_BYMOFID);
                 query.setLong("mofId", mofIdLong);
                 
@@ -1572,29 +2519,131 @@ public class HibernateMDRepository
         return result;
     }
     
-    private RefBaseObject findMetaByMofId(String mofId)
+    // Implement EnkiMDRepository
+    public Map<String, RefBaseObject> getByMofId(Collection<String> mofIds)
     {
-        synchronized(extentMap) {
-            for(ExtentDescriptor extentDesc: extentMap.values()) {
-                // Only search in metamodels
-                if (extentDesc.modelDescriptor == null ||
-                    extentDesc.modelDescriptor.name.equals(MOF_EXTENT))
-                {
-                    RefBaseObject result = 
-                        extentDesc.initializer.getByMofId(mofId);
-                    if (result != null) {
-                        return result;
+        MdrSession mdrSession = getMdrSession();
+        
+        Map<Long, RefBaseObject> found = new HashMap<Long, RefBaseObject>();
+        Set<Long> unresolved = new LinkedHashSet<Long>();
+        for(String mofId: mofIds) {
+            Long mofIdLong = MofIdUtil.parseMofIdStr(mofId);
+            if (found.containsKey(mofIdLong)) {
+                continue;
+            }
+            
+            RefBaseObject obj = lookupByMofId(mdrSession, mofIdLong);
+            if (obj == null) {
+                if (isMetamodelMofId(mofIdLong)) {
+                    obj = findMetaByMofId(mofIdLong);
+                } else if (mdrSession.mofIdDeleteSet.contains(mofIdLong)) {
+                    continue;
+                } else {
+                    Class<? extends RefObject> cls = 
+                        mdrSession.mofIdCreateMap.get(mofIdLong);
+                    if (cls == null) {
+                        unresolved.add(mofIdLong);
+                        continue;
+                    }
+                    
+                    obj = getByMofId(mdrSession, mofIdLong, cls);
+                }
+            }
+            
+            if (obj != null) {
+                found.put(mofIdLong, obj);
+            }
+        }
+        
+        if (!unresolved.isEmpty()) {
+            Session session = mdrSession.session;
+            
+            // One IN query per type (per MAX_IN_CLAUSE MOF IDs).
+            HashMultiMap<String, Long> typeMap = 
+                typeLookupCache.lookup(session, unresolved);
+            for(String typeName: typeMap.keySet()) {
+                List<Long> typeMofIds = 
+                    new ArrayList<Long>(typeMap.getValues(typeName));
+                
+                int size = typeMofIds.size();
+                for(int start = 0; start < size; start += MAX_IN_CLAUSE) {
+                    List<Long> chunk = 
+                        typeMofIds.subList(
+                            start, Math.min(start + MAX_IN_CLAUSE, size));
+                    
+                    Criteria criteria = 
+                        session.createCriteria(typeName)
+                            .add(Restrictions.in("id", chunk));
+                    
+                    for(RefObjectBase rob: 
+                            GenericCollections.asTypedList(
+                                criteria.list(), RefObjectBase.class))
+                    {
+                        found.put(rob.getMofId(), rob);
+                        
+                        storeByMofId(mdrSession, rob.getMofId(), rob);
                     }
                 }
             }
         }
         
+        Map<String, RefBaseObject> result = 
+            new LinkedHashMap<String, RefBaseObject>();
+        for(String mofId: mofIds) {
+            RefBaseObject obj = found.get(MofIdUtil.parseMofIdStr(mofId));
+            if (obj != null) {
+                result.put(mofId, obj);
+            }
+        }
+        
+        return result;
+    }
+    
+    private RefBaseObject findMetaByMofId(long mofId)
+    {
+        for(MetamodelInitializer initializer: metamodelInitializers) {
+            RefBaseObject result = initializer.getByMofId(mofId);
+            if (result != null) {
+                return result;
+            }
+        }
+        
         return null;
     }
 
+    /**
+     * Recomputes {@link #metamodelInitializers} from {@link #extentMap}. 
+     * Must be called whenever an extent descriptor is added or removed.
+     */
+    private void updateMetamodelInitializers()
+    {
+        synchronized(extentMap) {
+            List<MetamodelInitializer> inits = 
+                new ArrayList<MetamodelInitializer>();
+            for(ExtentDescriptor extentDesc: extentMap.values()) {
+                // Only search in metamodels
+                if (extentDesc.initializer != null &&
+                    (extentDesc.modelDescriptor == null ||
+                     extentDesc.modelDescriptor.name.equals(MOF_EXTENT)))
+                {
+                    inits.add(extentDesc.initializer);
+                }
+            }
+            
+            metamodelInitializers = 
+                inits.toArray(new MetamodelInitializer[inits.size()]);
+        }
+    }
+    
     private RefBaseObject lookupByMofId(MdrSession mdrSession, Long mofId)
     {
-        return softCacheLookup(mdrSession.byMofIdCache, mofId);
+        RefBaseObject result = softCacheLookup(mdrSession.byMofIdCache, mofId);
+        if (result != null) {
+            byMofIdCacheHits.increment();
+        } else {
+            byMofIdCacheMisses.increment();
+        }
+        return result;
     }
     
     private <V, K> V softCacheLookup(Map<K, SoftReference<V>> cache, K key)
@@ -1640,6 +2689,13 @@ public class HibernateMDRepository
                 "mass deletion API may not be used in transaction with pending modifications");
         }
         
+        if (optimisticWrites) {
+            // Mass deletion modifies rows with raw SQL that neither checks
+            // nor increments object versions, so concurrent optimistic 
+            // writers cannot detect the conflict.  Exclude them instead.
+            lockForSchemaChange();
+        }
+        
         new HibernateMassDeletionUtil(this).massDelete(objects);
     }
 
@@ -1665,9 +2721,15 @@ public class HibernateMDRepository
     
     public void deleteExtentDescriptor(RefPackage refPackage)
     {
+        checkTransaction(true);
+        
+        // Lock before synchronizing on extentMap, which readers may need.
+        lockForSchemaChange();
+        
         synchronized(extentMap) {
             for(ExtentDescriptor extentDesc: extentMap.values()) {
-                if (extentDesc.extent.equals(refPackage)) {
+                // Unmaterialized extents cannot match.
+                if (refPackage.equals(extentDesc.extent)) {
                     deleteExtentDescriptor(extentDesc);
                     return;
                 }
@@ -1678,6 +2740,7 @@ public class HibernateMDRepository
     private void deleteExtentDescriptor(ExtentDescriptor extentDesc)
     {
         extentMap.remove(extentDesc.name);
+        updateMetamodelInitializers();
 
         checkTransaction(true);
         
@@ -1700,7 +2763,7 @@ public class HibernateMDRepository
                 extentDesc.modelDescriptor != null || 
                 extentDesc.name.equals(MOF_EXTENT));
             
-            return extentDesc.extent;
+            return extentDesc.getExtent();
         }
     }
 
@@ -1731,29 +2794,34 @@ public class HibernateMDRepository
         
         synchronized(listeners) {
             listeners.clear();
+            hasListeners = false;
         }
 
         synchronized(extentMap) {
             if (sessionFactory != null) {
                 try {
-                    thread.shutdown();
+                    eventDispatcher.shutdown();
                 }
                 catch(InterruptedException e) {
                     log.log(
                         Level.SEVERE, 
-                        "EnkiChangeEventThread interrupted on shutdown",
+                        "EnkiChangeEventDispatcher interrupted on shutdown",
                         e);
                 }
                 
                 stopPeriodicStats();
                 
+                mofIdGenerator.close();
+                
                 if (sessionFactory.getStatistics().isStatisticsEnabled()) {
                     sessionFactory.getStatistics().logSummary();
                 }
                 
                 try {
+                    // Stops the shared cache, discarding its contents.
                     sessionFactory.close();
                     sessionFactory = null;
+                    sharedCache = null;
                     
                     classRegistry.clear();
                     assocRegistry.clear();
@@ -1781,6 +2849,7 @@ public class HibernateMDRepository
             
             maskedListener = new EnkiMaskedMDRChangeListener(listener, mask);
             listeners.put(listener, maskedListener);
+            hasListeners = true;
         }
     }
 
@@ -1788,6 +2857,7 @@ public class HibernateMDRepository
     {
         synchronized(listeners) {
             listeners.remove(listener);
+            hasListeners = !listeners.isEmpty();
         }
     }
 
@@ -1801,12 +2871,13 @@ public class HibernateMDRepository
                 
                 if (removedAll) {
                     listeners.remove(listener);
+                    hasListeners = !listeners.isEmpty();
                 }
             }
         }
     }
     
-    // Implement EnkiChangeEventThread.ListenerSource
+    // Implement EnkiChangeEventDispatcher.ListenerSource
     public Collection<EnkiMaskedMDRChangeListener> getListeners()
     {
         synchronized(listeners) {
@@ -1902,6 +2973,7 @@ public class HibernateMDRepository
     throws EnkiRestoreFailedException
     {
         checkTransaction(true);
+        lockForSchemaChange();
 
         ExtentDescriptor extentDesc;
         synchronized (extentMap) {
@@ -1934,6 +3006,12 @@ public class HibernateMDRepository
             stream);
     }
 
+    // Implement EnkiMDRepository
+    public StreamingXmiReader createStreamingXmiReader()
+    {
+        return new HibernateStreamingXmiReader(this);
+    }
+
     // Implement EnkiMDRepository
     @Deprecated
     public void setRestoreExtentXmiFilter(Class<? extends InputStream> cls)
@@ -1955,7 +3033,132 @@ public class HibernateMDRepository
     
     public String getTablePrefix()
     {
-        return tablePrefix;
+        return tablePrefix;
+    }
+    
+    /**
+     * Returns the configured number of backup threads.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_BACKUP_THREADS}
+     */
+    int getBackupThreads()
+    {
+        return backupThreads;
+    }
+    
+    /**
+     * Returns whether parallel backups are compressed.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_BACKUP_COMPRESS}
+     */
+    boolean getBackupCompress()
+    {
+        return backupCompress;
+    }
+    
+    /**
+     * Returns whether backups are written in the binary format.
+     * 
+     * @return true if {@link #PROPERTY_STORAGE_BACKUP_FORMAT} is 
+     *         {@link #BACKUP_FORMAT_BINARY}
+     */
+    boolean getBackupBinary()
+    {
+        return backupBinary;
+    }
+    
+    /**
+     * Returns the configured number of restore threads.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_RESTORE_THREADS}
+     */
+    int getRestoreThreads()
+    {
+        return restoreThreads;
+    }
+    
+    /**
+     * Returns the configured restore batch size.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_RESTORE_BATCH_SIZE}
+     */
+    int getRestoreBatchSize()
+    {
+        return restoreBatchSize;
+    }
+    
+    /**
+     * Returns whether parallel restores drop and rebuild indexes.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_RESTORE_DEFER_INDEXES}
+     */
+    boolean getRestoreDeferIndexes()
+    {
+        return restoreDeferIndexes;
+    }
+    
+    /**
+     * Returns whether mass deletion should be performed with set-based SQL.
+     * 
+     * @return value of {@link #PROPERTY_STORAGE_SET_BASED_MASS_DELETE}
+     */
+    boolean getSetBasedMassDelete()
+    {
+        return setBasedMassDelete;
+    }
+    
+    /**
+     * Records the progress object of a restore operation so that its
+     * statistics can be reported by {@link #getRestoreStatistics()}.
+     * 
+     * @param progress restore progress
+     */
+    void setRestoreProgress(HibernateBackupRestoreUtil.RestoreProgress progress)
+    {
+        this.restoreProgress = progress;
+    }
+    
+    /**
+     * Returns a snapshot of the progress of the current or most recent 
+     * extent restore.  Does not require a repository session.
+     * 
+     * @return restore statistics or null if no extent has been restored
+     */
+    public HibernateBackupRestoreUtil.RestoreStatistics getRestoreStatistics()
+    {
+        HibernateBackupRestoreUtil.RestoreProgress progress = 
+            restoreProgress;
+        if (progress == null) {
+            return null;
+        }
+        
+        return progress.getStatistics();
+    }
+    
+    /**
+     * Tests whether the current session's transaction has created, deleted
+     * or modified any objects.  Such changes are only visible via the
+     * session's own JDBC connection.
+     * 
+     * @return true if the current transaction has made changes
+     */
+    boolean hasUncommittedChanges()
+    {
+        MdrSession mdrSession = getMdrSession();
+        if (!mdrSession.mofIdCreateMap.isEmpty() || 
+            !mdrSession.mofIdDeleteSet.isEmpty() ||
+            mdrSession.hasUnqueuedChanges)
+        {
+            return true;
+        }
+        
+        for(MDRChangeEvent event: mdrSession.queuedEvents) {
+            if (!(event instanceof TransactionEvent)) {
+                return true;
+            }
+        }
+        
+        return false;
     }
     
     private MdrSession getMdrSession()
@@ -2009,6 +3212,49 @@ public class HibernateMDRepository
         }
     }
     
+    /**
+     * Excludes readers and other writers for the remainder of the current
+     * write transaction, if any, before the repository's schema is changed,
+     * rows are modified without version checks or extent data is read over
+     * separate connections.  Only has an effect if
+     * {@link #PROPERTY_STORAGE_CONCURRENT_READS} or 
+     * {@link #PROPERTY_STORAGE_OPTIMISTIC_WRITES} is enabled.
+     */
+    void lockForSchemaChange()
+    {
+        MdrSession session = sessionStack.peek(this);
+        if (session != null && isNestedWriteTransaction(session)) {
+            session.obtainExclusiveLock();
+        }
+    }
+
+    /**
+     * Commits the work done so far by the current write transaction and
+     * continues the transaction in a new database transaction.  Makes the
+     * changes visible to other JDBC connections.  Changes committed this way
+     * are not undone if the write transaction is later rolled back.
+     */
+    void commitAndContinue()
+    {
+        MdrSession mdrSession = getMdrSession();
+        if (!isNestedWriteTransaction(mdrSession)) {
+            throw new EnkiHibernateException(
+                "Operation requires write transaction");
+        }
+
+        Transaction oldTxn = mdrSession.context.getLast().transaction;
+        oldTxn.commit();
+
+        Transaction newTxn = mdrSession.session.beginTransaction();
+
+        // Nested contexts share their outer context's transaction.
+        for(Context context: mdrSession.context) {
+            if (context.transaction == oldTxn) {
+                context.transaction = newTxn;
+            }
+        }
+    }
+
     private boolean isNestedWriteTransaction(MdrSession session) 
     {
         LinkedList<Context> contexts = session.context;
@@ -2029,80 +3275,139 @@ public class HibernateMDRepository
         return getMdrSession().getMofIdGenerator();
     }
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns a snapshot of this repository's {@link MofIdGenerator} 
+     * statistics.  Unlike {@link #getMofIdGenerator()}, this method does not
+     * require (or implicitly begin) a repository session.
+     * 
+     * @return MOF ID generator statistics
+     */
+    public MofIdGenerator.Statistics getMofIdGeneratorStatistics()
+    {
+        return mofIdGenerator.getStatistics();
+    }
+    
+    /**
+     * Returns a snapshot of this repository's shared cache statistics.
+     * Does not require a repository session.
+     * 
+     * @return shared cache statistics or null if the shared cache is not 
+     *         enabled
+     * @see #PROPERTY_STORAGE_SHARED_CACHE_SIZE
+     */
+    public EnkiCacheProvider.Statistics getSharedCacheStatistics()
+    {
+        if (sharedCache == null) {
+            return null;
+        }
+        
+        return sharedCache.getStatistics();
+    }
+    
+    /**
+     * Returns a snapshot of the event queue statistics of each 
+     * {@link MDRChangeListener} that has been sent events.  Does not require
+     * a repository session.
+     * 
+     * @return listener statistics
+     */
+    public List<EnkiChangeEventDispatcher.ListenerStatistics> 
+        getListenerStatistics()
+    {
+        return eventDispatcher.getListenerStatistics();
+    }
+    
+    /**
+     * Returns this repository's Enki-level hot path metrics: getByMofId and 
+     * allOfType/allOfClass cache use, batch loads, MOF ID block fetch time,
+     * transaction lock wait time and commit phase timings.  Does not 
+     * require a repository session.
+     * 
+     * @return this repository's metrics registry
+     */
+    public EnkiMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    /**
+     * Enables or disables collection of Hibernate session factory 
+     * statistics and Enki-level {@link #getMetrics() metrics}.
+     * 
+     * @param enabled if true, enable collection
+     */
+    public void setMetricsEnabled(boolean enabled)
+    {
+        sessionFactory.getStatistics().setStatisticsEnabled(enabled);
+        metrics.setEnabled(enabled);
+    }
+    
+    /**
+     * Returns the total number of change events queued for delivery to
+     * all listeners.  Does not require a repository session.
+     * 
+     * @return event queue depth
+     */
+    public int getEventQueueDepth()
+    {
+        int depth = 0;
+        for(EnkiChangeEventDispatcher.ListenerStatistics stats: 
+                eventDispatcher.getListenerStatistics())
+        {
+            depth += stats.getQueueDepth();
+        }
+        return depth;
+    }
+    
     public Collection<?> allOfType(HibernateRefClass cls, String queryName)
     {
         MdrSession mdrSession = getMdrSession();
         checkTransaction(false);
         
-        Collection<?> simpleResult = mdrSession.allOfTypeCache.get(cls);
-        if (simpleResult == null) {
+        AllOfView view = mdrSession.allOfTypeCache.get(cls);
+        if (view != null) {
+            allOfCacheHits.increment();
+        } else {
+            allOfCacheMisses.increment();
+            
             Session session = getCurrentSession();
             
             Query query = session.getNamedQuery(queryName);
             
-            simpleResult = query.list();
+            view = 
+                new AllOfView(
+                    mdrSession, query.list(), cls.getInterfaceClass());
             
-            mdrSession.allOfTypeCache.put(cls, simpleResult);
-        }
-        
-        Set<RefObject> result = new HashSet<RefObject>();
-        for(Object obj: simpleResult) {
-            RefObjectBase b = (RefObjectBase)obj;
-            if (!mdrSession.mofIdDeleteSet.contains(b.getMofId())) {
-                result.add(b);
-            }
-        }
-        
-        Class<?> ifaceClass = cls.getInterfaceClass();
-        for(Map.Entry<Long, Class<? extends RefObject>> e: 
-                mdrSession.mofIdCreateMap.entrySet())
-        {
-            Class<? extends RefObject> createdCls = e.getValue();
-            if (ifaceClass.isAssignableFrom(createdCls)) {
-                result.add(getByMofId(mdrSession, e.getKey(), createdCls));
-            }
+            mdrSession.allOfTypeCache.put(cls, view);
         }
         
-        return Collections.unmodifiableSet(result);
+        return view;
     }
     
-    @SuppressWarnings("unchecked")
     public Collection<?> allOfClass(HibernateRefClass cls, String queryName)
     {
         MdrSession mdrSession = getMdrSession();
         
         checkTransaction(false);
         
-        Collection<?> simpleResult= mdrSession.allOfClassCache.get(cls);
-        if (simpleResult == null) {
+        AllOfView view = mdrSession.allOfClassCache.get(cls);
+        if (view != null) {
+            allOfCacheHits.increment();
+        } else {
+            allOfCacheMisses.increment();
+            
             Session session = getCurrentSession();
             
             Query query = session.getNamedQuery(queryName);
     
-            simpleResult = query.list();
+            view = 
+                new AllOfView(
+                    mdrSession, query.list(), cls.getInstanceClass());
     
-            mdrSession.allOfClassCache.put(cls, simpleResult);
-        }
-        
-        Set<RefObject> result = new HashSet<RefObject>();
-        for(Object obj: simpleResult) {
-            RefObjectBase b = (RefObjectBase)obj;
-            if (!mdrSession.mofIdDeleteSet.contains(b.getMofId())) {
-                result.add(b);
-            }
+            mdrSession.allOfClassCache.put(cls, view);
         }
         
-        Class<? extends RefObject> instanceClass = cls.getInstanceClass();
-        for(Map.Entry<Long, Class<? extends RefObject>> e: 
-                mdrSession.mofIdCreateMap.entrySet())
-        {
-            if (instanceClass.isAssignableFrom(e.getValue())) {
-                result.add(getByMofId(e.getKey(), cls));
-            }
-        }
-        
-        return Collections.unmodifiableSet(result);
+        return view;
     }
     
     /**
@@ -2115,6 +3420,9 @@ public class HibernateMDRepository
     public HibernateRefClass findRefClass(String uid)
     {
         HibernateRefClass refClass = classRegistry.get(uid);
+        if (refClass == null && materializeExtentsFor(classRegistry, uid)) {
+            refClass = classRegistry.get(uid);
+        }
         if (refClass == null) {
             throw new InternalJmiError(
                 "Cannot find HibernateRefClass identified by '" + uid + "'");
@@ -2198,6 +3506,9 @@ public class HibernateMDRepository
     public HibernateRefAssociation findRefAssociation(String uid)
     {
         HibernateRefAssociation refAssoc = assocRegistry.get(uid);
+        if (refAssoc == null && materializeExtentsFor(assocRegistry, uid)) {
+            refAssoc = assocRegistry.get(uid);
+        }
         if (refAssoc == null) {
             throw new InternalJmiError(
                 "Cannot find HibernateRefAssociation identified by '" 
@@ -2286,13 +3597,39 @@ public class HibernateMDRepository
         enqueueEvent(mdrSession, event);
     }
     
+    /**
+     * Tests whether an attribute or association change event should be
+     * constructed and passed to {@link #enqueueEvent(MDRChangeEvent)}.  
+     * Such events are only needed while listeners are registered: changes
+     * made while none are registered are not reported to listeners 
+     * registered later in the same transaction.  If this method returns
+     * false, the change is recorded without an event.
+     * 
+     * @return true if an event should be enqueued for the change
+     * @throws IllegalStateException if no write transaction is in progress
+     */
+    public boolean isChangeEventRequired()
+    {
+        MdrSession mdrSession = getMdrSession();
+        if (!isNestedWriteTransaction(mdrSession)) {
+            throw new IllegalStateException("Not in write transaction");
+        }
+        
+        if (hasListeners) {
+            return true;
+        }
+        
+        mdrSession.hasUnqueuedChanges = true;
+        return false;
+    }
+    
     public void recordObjectCreation(HibernateObject object)
     {
         MdrSession mdrSession = getMdrSession();
 
         long mofId = object.getMofId();
 
-        mdrSession.mofIdCreateMap.put(mofId, object.getClass());
+        mdrSession.recordCreation(mofId, object.getClass());
     }
     
     public void recordObjectDeletion(HibernateObject object)
@@ -2306,16 +3643,92 @@ public class HibernateMDRepository
         long mofId = object.getMofId();
 
         mdrSession.byMofIdCache.remove(mofId);
-        mdrSession.mofIdDeleteSet.add(mofId);
+        mdrSession.recordDeletion(mofId);
     }
 
+    /**
+     * Records an object saved in the current session.  If a bulk batch is
+     * in progress (see {@link #beginBulkBatch()}), the object is evicted by
+     * the next call to {@link #flushAndEvict()}.
+     * 
+     * @param object a newly saved object or association
+     */
+    public void recordObjectSave(HibernateObject object)
+    {
+        MdrSession mdrSession = getMdrSession();
+        if (mdrSession.bulkSaved != null) {
+            mdrSession.bulkSaved.add(object);
+        }
+    }
+    
+    /**
+     * Starts recording the objects and associations saved in the current
+     * write transaction, so that {@link #flushAndEvict()} can evict them.
+     * Used by bulk loaders (see {@link HibernateStreamingXmiReader}) to 
+     * bound session memory.
+     */
+    void beginBulkBatch()
+    {
+        checkTransaction(true);
+        
+        getMdrSession().bulkSaved = new ArrayList<HibernateObject>();
+    }
+    
+    /**
+     * Flushes pending changes in the current write transaction to the 
+     * database and then evicts the objects and associations saved since 
+     * the last call to {@link #beginBulkBatch()} from the Hibernate session
+     * and this session's object cache.  Other objects, including any the
+     * caller obtained earlier in the transaction, remain attached and may
+     * still be modified.  Evicted objects must be re-read by MOF ID before
+     * they are modified.
+     * 
+     * <p>Objects in the read set of an 
+     * {@link #PROPERTY_STORAGE_OPTIMISTIC_WRITES optimistic} transaction 
+     * are flushed but not evicted, since they are validated at commit.
+     */
+    void flushAndEvict()
+    {
+        checkTransaction(true);
+        
+        MdrSession mdrSession = getMdrSession();
+        
+        Session session = mdrSession.session;
+        session.flush();
+        
+        List<HibernateObject> saved = mdrSession.bulkSaved;
+        mdrSession.bulkSaved = null;
+        if (saved == null) {
+            return;
+        }
+        
+        for(HibernateObject object: saved) {
+            long mofId = object.getMofId();
+            if (mdrSession.readSet.containsKey(mofId)) {
+                continue;
+            }
+            
+            session.evict(object);
+            mdrSession.byMofIdCache.remove(mofId);
+        }
+    }
+    
+    /**
+     * Discards all cached MOF ID/type mappings.  Used when type mappings
+     * are modified directly in the database.
+     */
+    void clearTypeLookupCache()
+    {
+        typeLookupCache.clear();
+    }
+    
     void recordObjectDeletions(Collection<Long> mofIds)
     {
         MdrSession mdrSession = getMdrSession();
         
         for(Long mofId: mofIds) {
             mdrSession.byMofIdCache.remove(mofId);
-            mdrSession.mofIdDeleteSet.add(mofId);
+            mdrSession.recordDeletion(mofId);
         }
     }
     
@@ -2329,7 +3742,8 @@ public class HibernateMDRepository
         synchronized(extentMap) {
             String extentName = null;
             for(Map.Entry<String, ExtentDescriptor> entry: extentMap.entrySet()) {
-                if (entry.getValue().extent.equals(pkg)) {
+                // Unmaterialized extents cannot match.
+                if (pkg.equals(entry.getValue().extent)) {
                     extentName = entry.getKey();
                     break;
                 }
@@ -2354,7 +3768,9 @@ public class HibernateMDRepository
     private void enqueueEvent(MdrSession mdrSession, MDRChangeEvent event)
     {
         // Cache event in Context (we'll need to fire it upon commit even if
-        // there are no listeners now.)  For deletion preview, do not
+        // there are no listeners now, though attribute and association 
+        // events are only created while listeners are registered -- see
+        // isChangeEventRequired.)  For deletion preview, do not
         // enqueue anything, since there's no actual effect to be committed
         // or rolled back.
         if (!previewDelete) {
@@ -2402,9 +3818,7 @@ public class HibernateMDRepository
     private void fireChanges(MdrSession mdrSession)
     {
         synchronized(listeners) {
-            for(MDRChangeEvent event: mdrSession.queuedEvents) {
-                thread.enqueueEvent(event);
-            }
+            eventDispatcher.enqueueEvents(mdrSession.queuedEvents);
             mdrSession.queuedEvents.clear();
         }
     }
@@ -2487,69 +3901,213 @@ public class HibernateMDRepository
                     new ExtentDescriptor(extentName);
                 extentDesc.modelDescriptor = modelDesc;
                 extentDesc.annotation = annotation;
+                extentDesc.modelExtentDesc = modelExtentDesc;
+                if (extent.getPlugins() != null) {
+                    extentDesc.pluginNames = 
+                        new HashSet<String>(extent.getPlugins());
+                }
+                
+                if (lazyExtents) {
+                    extentDesc.repos = this;
+                } else {
+                    materializeExtent(extentDesc);
+                }
+                
+                extentMap.put(extentName, extentDesc);
+                updateMetamodelInitializers();
+            }
+        }
+    }
 
-                MetamodelInitializer.setCurrentInitializer(
-                    modelExtentDesc.initializer);
-                try {
-                    extentDesc.extent =
-                        modelDesc.topLevelPkgCons.newInstance(
-                            (Object)null);
-                    
-                    Set<String> pluginNames = extent.getPlugins();
-                    if (pluginNames == null) {
-                        pluginNames = new HashSet<String>();
-                    } else {
-                        pluginNames = new HashSet<String>(pluginNames);
-                    }
+    /**
+     * Instantiates an existing extent's top-level package and stitches its
+     * plugins to it, if not already done.  Synchronizes on 
+     * {@link #extentMap}, which serializes materialization (the class and
+     * association registries and the current {@link MetamodelInitializer}
+     * are shared by all extents).
+     * 
+     * @param extentDesc descriptor of an existing extent
+     * @return the extent's top-level package
+     * @throws ProviderInstantiationException if the extent cannot be loaded
+     */
+    private RefPackage materializeExtent(ExtentDescriptor extentDesc)
+    {
+        synchronized(extentMap) {
+            if (extentDesc.extent != null) {
+                return extentDesc.extent;
+            }
+            
+            String extentName = extentDesc.name;
+            ModelDescriptor modelDesc = extentDesc.modelDescriptor;
+            ExtentDescriptor modelExtentDesc = extentDesc.modelExtentDesc;
+            
+            long start = System.nanoTime();
+            
+            MetamodelInitializer.setCurrentInitializer(
+                modelExtentDesc.initializer);
+            try {
+                RefPackage pkg =
+                    modelDesc.topLevelPkgCons.newInstance((Object)null);
+                
+                Set<String> pluginNames = extentDesc.pluginNames;
+                if (pluginNames == null) {
+                    pluginNames = new HashSet<String>();
+                } else {
+                    pluginNames = new HashSet<String>(pluginNames);
+                }
 
-                    log.fine(
-                        "Configured plugins for extent '" + extentName + "': " 
-                        + pluginNames.toString());
+                log.fine(
+                    "Configured plugins for extent '" + extentName + "': " 
+                    + pluginNames.toString());
+                
+                Iterator<ModelPluginDescriptor> pluginIter = 
+                    modelDesc.plugins.iterator();
+                Iterator<MetamodelInitializer> initializerIter =
+                    modelExtentDesc.pluginInitializers.iterator();
+                while(pluginIter.hasNext() && initializerIter.hasNext()) {
+                    ModelPluginDescriptor plugin = pluginIter.next();
+                    MetamodelInitializer init = initializerIter.next();
                     
-                    Iterator<ModelPluginDescriptor> pluginIter = 
-                        modelDesc.plugins.iterator();
-                    Iterator<MetamodelInitializer> initializerIter =
-                        modelExtentDesc.pluginInitializers.iterator();
-                    while(pluginIter.hasNext() && initializerIter.hasNext()) {
-                        ModelPluginDescriptor plugin = pluginIter.next();
-                        MetamodelInitializer init = initializerIter.next();
+                    if (pluginNames.contains(plugin.name)) {
+                        log.fine(
+                            "Stitching plugin '" + plugin.name 
+                            + "' to extent '" + extentName + "'");
+                        init.stitchPackages(pkg);
                         
-                        if (pluginNames.contains(plugin.name)) {
-                            log.fine(
-                                "Stitching plugin '" + plugin.name 
-                                + "' to extent '" + extentName + "'");
-                            init.stitchPackages(extentDesc.extent);
-                            
-                            pluginNames.remove(plugin.name);
-                        }
-                    }
-                    
-                    // Warn that some plugins that existed during creation
-                    // are now gone.
-                    // REVIEW: SWZ: 2009-01-30: Throw instead?
-                    if (!pluginNames.isEmpty()) {
-                        log.warning(
-                            "Extent '" + extentName 
-                            + "': Missing model plugin(s): " + pluginNames);
+                        pluginNames.remove(plugin.name);
                     }
-                } catch (Exception e) {
-                    throw new ProviderInstantiationException(
-                        "Cannot load extent '" + extentName + "'", e);
-                } finally {
-                    MetamodelInitializer.setCurrentInitializer(null);
                 }
                 
-                extentMap.put(extentName, extentDesc);
+                // Warn that some plugins that existed during creation
+                // are now gone.
+                // REVIEW: SWZ: 2009-01-30: Throw instead?
+                if (!pluginNames.isEmpty()) {
+                    log.warning(
+                        "Extent '" + extentName 
+                        + "': Missing model plugin(s): " + pluginNames);
+                }
+                
+                extentDesc.extent = pkg;
+            } catch (Exception e) {
+                throw new ProviderInstantiationException(
+                    "Cannot load extent '" + extentName + "'", e);
+            } finally {
+                MetamodelInitializer.setCurrentInitializer(null);
+            }
+            
+            if (extentDesc.repos != null) {
+                log.fine(
+                    "Materialized extent '" + extentName + "' in " 
+                    + ((System.nanoTime() - start) / 1000000L) + " ms");
             }
+            
+            extentDesc.modelExtentDesc = null;
+            extentDesc.pluginNames = null;
+            
+            return extentDesc.extent;
         }
     }
-
+    
+    /**
+     * Materializes lazily loaded extents until the given registry contains 
+     * the given key.  Used when a class or association is looked up before
+     * any extent of its model has been materialized.  Extents of models 
+     * for which another extent is already materialized are skipped, since 
+     * all extents of a model share registry entries.
+     * 
+     * @param registry {@link #classRegistry} or {@link #assocRegistry}
+     * @param uid key to find
+     * @return true if any extent was materialized
+     */
+    private boolean materializeExtentsFor(Map<String, ?> registry, String uid)
+    {
+        if (!lazyExtents) {
+            return false;
+        }
+        
+        boolean materialized = false;
+        synchronized(extentMap) {
+            Set<ModelDescriptor> loadedModels = new HashSet<ModelDescriptor>();
+            List<ExtentDescriptor> pending = new ArrayList<ExtentDescriptor>();
+            for(ExtentDescriptor extentDesc: extentMap.values()) {
+                if (extentDesc.extent != null) {
+                    loadedModels.add(extentDesc.modelDescriptor);
+                } else {
+                    pending.add(extentDesc);
+                }
+            }
+            
+            for(ExtentDescriptor extentDesc: pending) {
+                if (registry.containsKey(uid)) {
+                    break;
+                }
+                if (loadedModels.add(extentDesc.modelDescriptor)) {
+                    materializeExtent(extentDesc);
+                    materialized = true;
+                }
+            }
+        }
+        
+        return materialized;
+    }
+    
+    /**
+     * Starts a background thread that materializes all lazily loaded 
+     * extents.
+     */
+    private void startExtentWarmup()
+    {
+        final List<ExtentDescriptor> pending = 
+            new ArrayList<ExtentDescriptor>();
+        synchronized(extentMap) {
+            for(ExtentDescriptor extentDesc: extentMap.values()) {
+                if (extentDesc.extent == null) {
+                    pending.add(extentDesc);
+                }
+            }
+        }
+        
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        Thread warmup = new Thread("Enki Hibernate Extent Warmup") {
+            @Override
+            public void run()
+            {
+                for(ExtentDescriptor extentDesc: pending) {
+                    synchronized(extentMap) {
+                        // Stop if the repository shut down.
+                        if (sessionFactory == null) {
+                            return;
+                        }
+                        
+                        try {
+                            extentDesc.getExtent();
+                        } catch(RuntimeException e) {
+                            log.log(
+                                Level.WARNING, 
+                                "Extent warmup failed for '" 
+                                + extentDesc.name + "'",
+                                e);
+                        }
+                    }
+                }
+                
+                log.fine("Extent warmup complete");
+            }
+        };
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+    
     private ModelDescriptor findModelDescriptor(RefObject metaPackage)
         throws EnkiCreationFailedException
     {
         for(Map.Entry<String, ExtentDescriptor> entry: extentMap.entrySet()) {
             ExtentDescriptor extentDesc = entry.getValue();
             
+            // Metamodel extents are never loaded lazily.
             RefPackage extent = extentDesc.extent;
             if (extent instanceof ModelPackage) {
                 ModelPackage extentModelPkg = (ModelPackage)extent;
@@ -2617,7 +4175,7 @@ public class HibernateMDRepository
             MetamodelInitializer.setCurrentInitializer(null);
         }
 
-        initModelViews(modelDesc, extentDesc.extent);
+        initModelViews(modelDesc, extentDesc.getExtent());
         
         createExtentRecord(
             extentDesc.name, 
@@ -2626,6 +4184,7 @@ public class HibernateMDRepository
             configuredPlugins);
         
         extentMap.put(name, extentDesc);
+        updateMetamodelInitializers();
 
         return extentDesc;
     }
@@ -2652,21 +4211,96 @@ public class HibernateMDRepository
         session.save(extentDbObj);
     }
     
-    private void initStorage()
+    /**
+     * Warns about entity mappings without a version property, for which
+     * {@link #optimisticWrites} cannot detect write-write conflicts.
+     */
+    private void checkVersionedMappings()
+    {
+        Set<String> unversioned = new TreeSet<String>();
+        for(Object o: sessionFactory.getAllClassMetadata().values()) {
+            ClassMetadata metadata = (ClassMetadata)o;
+            Class<?> cls = metadata.getMappedClass(EntityMode.POJO);
+            if (cls != null && 
+                HibernateObject.class.isAssignableFrom(cls) &&
+                !metadata.isVersioned())
+            {
+                unversioned.add(cls.getPackage().getName());
+            }
+        }
+        
+        if (!unversioned.isEmpty()) {
+            log.warning(
+                PROPERTY_STORAGE_OPTIMISTIC_WRITES + " is enabled, but some "
+                + "models were generated without version columns; "
+                + "conflicting writes to them will not be detected: " 
+                + unversioned);
+        }
+    }
+    
+    private void initStorage(StartupTimer startupTimer)
     {
         Configuration config = configurator.newConfiguration(true);
-
-        initProviderStorage(config);
         
-        configurator.addModelConfigurations(config);
+        boolean providerSchemaExists;
+        if (fastStart) {
+            // Build the only SessionFactory now and use it to probe the 
+            // provider schema.  The provider-only configuration is still
+            // used for provider schema validation.
+            Configuration fullConfig = configurator.newConfiguration(true);
+            configurator.addModelConfigurations(fullConfig);
+            configureSharedCache(fullConfig);
+            startupTimer.endPhase("configuration");
+            
+            sessionFactory = fullConfig.buildSessionFactory();
+            startupTimer.endPhase("session factory");
+
+            sqlDialect = 
+                ((SessionFactoryImplementor)sessionFactory).getDialect();
+            fingerprints = 
+                new HibernateSchemaFingerprintUtil(
+                    sessionFactory, sqlDialect, tablePrefix);
+            
+            providerSchemaExists = 
+                probeProviderStorage(sessionFactory, config);
+            updateProviderStorage(config, providerSchemaExists);
+            startupTimer.endPhase("provider schema");
+            
+            config = fullConfig;
+            if (config.getProperty(Environment.DIALECT) == null) {
+                // Re-use the detected dialect (e.g., for MofIdGenerator).
+                config.setProperty(
+                    Environment.DIALECT, sqlDialect.getClass().getName());
+            }
+        } else {
+            initProviderStorage(config);
+            startupTimer.endPhase("provider schema");
+            
+            configurator.addModelConfigurations(config);
+            configureSharedCache(config);
+            startupTimer.endPhase("configuration");
+            
+            sessionFactory = config.buildSessionFactory();
+            startupTimer.endPhase("session factory");
+            
+            fingerprints = 
+                new HibernateSchemaFingerprintUtil(
+                    sessionFactory, sqlDialect, tablePrefix);
+        }
+        
+        sharedCache = findSharedCache();
         
-        sessionFactory = config.buildSessionFactory();
+        if (optimisticWrites) {
+            checkVersionedMappings();
+        }
         
         startPeriodicStats();
         
         mofIdGenerator = 
-            new MofIdGenerator(sessionFactory, config, storageProperties);
+            new MofIdGenerator(
+                sessionFactory, config, storageProperties, metrics);
         mofIdGenerator.configureTable(createSchema);
+        startupTimer.endPhase("MOF ID generator");
 
         List<Extent> extents = null;
         Session session = sessionFactory.getCurrentSession();
@@ -2684,33 +4318,102 @@ public class HibernateMDRepository
             multipleExtentsEnabled = true;
             loadExistingExtents(extents);
             multipleExtentsEnabled = false;            
+            startupTimer.endPhase("extents");
+            
+            if (preloadTypeLookupCache) {
+                int count = typeLookupCache.preload(session, tablePrefix);
+                log.fine("Preloaded " + count + " MOF ID/type mappings");
+                startupTimer.endPhase("type lookup preload");
+            }
         } finally {
             trans.commit();
         }
 
-        thread = new EnkiChangeEventThread(this);
-        thread.start();
+        eventDispatcher = 
+            new EnkiChangeEventDispatcher(
+                this, eventDispatchThreads, eventQueueCapacity);
+    }
+    
+    private void configureSharedCache(Configuration config)
+    {
+        if (sharedCacheSize > 0) {
+            // Generated mappings declare cache regions for all entities, 
+            // collections and queries; just turn the cache on.
+            config.setProperty(
+                Environment.USE_SECOND_LEVEL_CACHE, "true");
+            config.setProperty(
+                Environment.USE_QUERY_CACHE, "true");
+            config.setProperty(
+                Environment.CACHE_PROVIDER, 
+                EnkiCacheProvider.class.getName());
+        }
     }
 
+    @SuppressWarnings("deprecation")
+    private EnkiCacheProvider findSharedCache()
+    {
+        if (sharedCacheSize <= 0) {
+            return null;
+        }
+        
+        RegionFactory regionFactory = 
+            ((SessionFactoryImplementor)sessionFactory)
+                .getSettings().getRegionFactory();
+        if (regionFactory instanceof RegionFactoryCacheProviderBridge) {
+            org.hibernate.cache.CacheProvider cacheProvider = 
+                ((RegionFactoryCacheProviderBridge)regionFactory)
+                    .getCacheProvider();
+            if (cacheProvider instanceof EnkiCacheProvider) {
+                return (EnkiCacheProvider)cacheProvider;
+            }
+        }
+        
+        throw new ProviderInstantiationException(
+            "Shared cache enabled, but cache provider is " 
+            + regionFactory.getClass().getName());
+    }
+    
     private void initProviderStorage(Configuration config)
     {
         SessionFactory tempSessionFactory = config.buildSessionFactory();
 
-        Session session = tempSessionFactory.getCurrentSession();
+        boolean exists;
+        try {
+            exists = probeProviderStorage(tempSessionFactory, config);
+        } finally {
+            tempSessionFactory.close();
+        }
+        
+        updateProviderStorage(config, exists);
+    }
+    
+    /**
+     * Determines whether the provider schema exists and, unless already 
+     * known, the SQL dialect.
+     * 
+     * @param sessionFactory session factory configured with at least the
+     *                       provider mappings
+     * @param config provider configuration
+     * @return true if the provider schema exists
+     */
+    private boolean probeProviderStorage(
+        SessionFactory sessionFactory, Configuration config)
+    {
+        Session session = sessionFactory.getCurrentSession();
 
         boolean exists = false;
         Transaction trans = session.beginTransaction();
         try {
-            try {
-                DatabaseMetaData dbMetadata = 
-                    session.connection().getMetaData();
-                this.sqlDialect = 
-                    DialectFactory.buildDialect(
-                        config.getProperties(),
-                        session.connection());
-            } catch(Exception e) {
-                throw new ProviderInstantiationException(
-                    "Unable to determine appropriate SQL dialect", e);
+            if (sqlDialect == null) {
+                try {
+                    this.sqlDialect = 
+                        DialectFactory.buildDialect(
+                            config.getProperties(),
+                            session.connection());
+                } catch(Exception e) {
+                    throw new ProviderInstantiationException(
+                        "Unable to determine appropriate SQL dialect", e);
+                }
             }
 
             try {
@@ -2723,19 +4426,42 @@ public class HibernateMDRepository
             }
         } finally {
             trans.commit();
-            
-            tempSessionFactory.close();
         }
         
-        if (exists) {
-            if (sqlDialect instanceof HSQLDialect) {
-                // Validator is broken: doesn't quote properly and always 
-                // fails.
-                log.warning(
-                    "Skipping validation of provider schema (HSQLDB)");
+        return exists;
+    }
+    
+    /**
+     * Validates, updates or creates the provider schema as necessary.
+     * 
+     * @param config provider configuration
+     * @param exists whether the provider schema exists
+     */
+    private void updateProviderStorage(Configuration config, boolean exists)
+    {
+        String fingerprint = null;
+        if (fastStart) {
+            fingerprint = 
+                HibernateSchemaFingerprintUtil.compute(
+                    Collections.singletonList(
+                        getClass().getResource(HIBERNATE_STORAGE_MAPPING_XML)),
+                    PACKAGE_VERSION,
+                    sqlDialect.getClass().getName());
+            
+            if (exists && 
+                fingerprints.matches(PROVIDER_SCHEMA_NAME, fingerprint))
+            {
+                log.info(
+                    "Enki Hibernate provider schema fingerprint matches; "
+                    + "skipping validation");
                 return;
             }
-            
+        }
+        
+        if (exists && sqlDialect instanceof HSQLDialect) {
+            // Validator is broken: doesn't quote properly and always fails.
+            log.warning("Skipping validation of provider schema (HSQLDB)");
+        } else if (exists) {
             log.info("Validating Enki Hibernate provider schema");
             
             SchemaValidator validator = new SchemaValidator(config);
@@ -2784,6 +4510,10 @@ public class HibernateMDRepository
                     "Unable to create Enki Hibernate provider schema", e);
             }
         }
+        
+        if (fingerprint != null) {
+            fingerprints.store(PROVIDER_SCHEMA_NAME, fingerprint, createSchema);
+        }
     }
     
     private void initModelStorage(ModelDescriptor modelDesc)
@@ -2797,6 +4527,17 @@ public class HibernateMDRepository
                 + "' (HSQLDB)");
             return;
         }
+        
+        String fingerprint = null;
+        if (fastStart && modelDesc.mappingUrl != null) {
+            fingerprint = computeModelFingerprint(modelDesc);
+            if (fingerprints.matches(modelDesc.name, fingerprint)) {
+                log.info(
+                    "Schema fingerprint for model '" + modelDesc.name 
+                    + "' matches; skipping validation");
+                return;
+            }
+        }
 
         ClassLoader contextClassLoader = null;
         if (classLoader != null) {
@@ -2815,6 +4556,10 @@ public class HibernateMDRepository
             try {
                 validator.validate();
                 
+                if (fingerprint != null) {
+                    fingerprints.store(
+                        modelDesc.name, fingerprint, createSchema);
+                }
                 return;
             } catch(HibernateException e) {
                 if (createSchema) {
@@ -2882,6 +4627,10 @@ public class HibernateMDRepository
                     "Index creation for model '" + modelDesc.name + 
                     "' failed (see log for errors)");
             }
+            
+            if (fingerprint != null) {
+                fingerprints.store(modelDesc.name, fingerprint, createSchema);
+            }
         }
         finally {
             if (contextClassLoader != null) {
@@ -2891,6 +4640,25 @@ public class HibernateMDRepository
         }            
     }
     
+    /**
+     * Computes a fingerprint of the mapping and DDL resources of a model 
+     * and its plugins.
+     */
+    private String computeModelFingerprint(ModelDescriptor modelDesc)
+    {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(modelDesc.mappingUrl);
+        urls.add(modelDesc.indexMappingUrl);
+        urls.add(modelDesc.createDdl);
+        for(ModelPluginDescriptor pluginDesc: modelDesc.plugins) {
+            urls.add(pluginDesc.mappingUrl);
+            urls.add(pluginDesc.createDdl);
+        }
+        
+        return HibernateSchemaFingerprintUtil.compute(
+            urls, PACKAGE_VERSION, sqlDialect.getClass().getName());
+    }
+    
     private void initModelViews(ModelDescriptor modelDesc, RefPackage pkg)
     {
         if (!createViews) {
@@ -2983,6 +4751,50 @@ public class HibernateMDRepository
         }
     }
 
+    /**
+     * Drops or creates the indexes defined by the given model's index 
+     * mapping.  Errors are returned rather than thrown.
+     * 
+     * @param modelDesc model descriptor
+     * @param drop if true, drop indexes; otherwise create them
+     * @return list of DDL exceptions, possibly empty
+     */
+    List<?> executeIndexDdl(ModelDescriptor modelDesc, boolean drop)
+    {
+        ClassLoader contextClassLoader = null;
+        if (classLoader != null) {
+            contextClassLoader = 
+                Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+
+        try {
+            Configuration config = 
+                configurator.newModelIndexMappingConfiguration(
+                    modelDesc, false);
+            
+            SchemaExport export = new SchemaExport(config);
+            // execute params are:
+            //   script:     false (don't write DDL to stdout)
+            //   export:     true  (send DDL to DB)
+            //   justDrop:   run only drop statements
+            //   justCreate: run only create statements
+            export.execute(false, true, drop, !drop);
+            
+            List<?> exceptions = export.getExceptions();
+            if (exceptions == null) {
+                return Collections.emptyList();
+            }
+            return exceptions;
+        }
+        finally {
+            if (contextClassLoader != null) {
+                Thread.currentThread().setContextClassLoader(
+                    contextClassLoader);                
+            }
+        }            
+    }
+    
     private void logDdlExceptions(List<?> exceptions, Level level, String msg)
     {
         int i = 1;
@@ -3011,6 +4823,9 @@ public class HibernateMDRepository
     
             log.info("Dropping schema for model '" + modelDesc.name + "'");
             
+            // Forget the fingerprint, so that re-creation validates.
+            fingerprints.store(modelDesc.name, null, false);
+            
             SchemaExport export = new SchemaExport(config);
             export.drop(false, true);        
             List<?> exceptions = export.getExceptions();
@@ -3080,6 +4895,7 @@ public class HibernateMDRepository
         }
         
         extentMap.put(name, extentDesc);
+        updateMetamodelInitializers();
         
         log.fine("Initialized Extent Descriptor: " + name);
     }
@@ -3142,7 +4958,7 @@ public class HibernateMDRepository
             return;
         }
         
-        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        setMetricsEnabled(true);
         
         long delay = (long)periodicStatsInterval * 1000L;
         
@@ -3182,6 +4998,28 @@ public class HibernateMDRepository
             }
             log.info(b.toString());
         }
+        
+        if (sharedCache != null) {
+            EnkiCacheProvider.Statistics cacheStats = 
+                sharedCache.getStatistics();
+            b.setLength(0);
+            b
+                .append("stats: shared cache: entries: ")
+                .append(cacheStats.getSize())
+                .append(" of ")
+                .append(cacheStats.getMaxSize())
+                .append(" hits: ")
+                .append(cacheStats.getHitCount())
+                .append(" misses: ")
+                .append(cacheStats.getMissCount())
+                .append(" evictions: ")
+                .append(cacheStats.getEvictionCount());
+            log.info(b.toString());
+        }
+        
+        log.info("stats: event queue depth: " + getEventQueueDepth());
+        
+        metrics.log(log, "stats: ");
     }
     
     private void stopPeriodicStats()
@@ -3200,50 +5038,171 @@ public class HibernateMDRepository
     {
         protected final String name;
         protected ModelDescriptor modelDescriptor;
-        protected RefPackage extent;
         protected MetamodelInitializer initializer;
         protected List<MetamodelInitializer> pluginInitializers;
         protected boolean builtIn;
         protected String annotation;
         
+        /** 
+         * The extent's top-level package.  Null until materialized, if the
+         * extent was loaded lazily.  See {@link #getExtent()}.
+         */
+        private volatile RefPackage extent;
+        
+        /** 
+         * Repository that materializes this extent.  Only set if the extent
+         * was loaded lazily.
+         */
+        private HibernateMDRepository repos;
+        
+        /** Metamodel extent, until materialized. */
+        private ExtentDescriptor modelExtentDesc;
+        
+        /** Names of the extent's plugins, until materialized. */
+        private Set<String> pluginNames;
+        
         public ExtentDescriptor(String name)
         {
             this.name = name;
             this.pluginInitializers = new ArrayList<MetamodelInitializer>();
         }
+        
+        /**
+         * Returns the extent's top-level package, materializing it if 
+         * necessary.
+         * 
+         * @return the extent's top-level package
+         */
+        protected RefPackage getExtent()
+        {
+            RefPackage pkg = extent;
+            if (pkg == null && repos != null) {
+                pkg = repos.materializeExtent(this);
+            }
+            return pkg;
+        }
+    }
+    
+    /**
+     * StartupTimer measures the duration of repository start up phases.
+     */
+    private static class StartupTimer
+    {
+        private final long start;
+        private long phaseStart;
+        private final StringBuilder phases;
+        
+        private StartupTimer()
+        {
+            this.start = System.nanoTime();
+            this.phaseStart = start;
+            this.phases = new StringBuilder();
+        }
+        
+        /**
+         * Ends the current phase, which began when the previous phase ended
+         * (or when this timer was created).
+         * 
+         * @param name name of the phase
+         */
+        private void endPhase(String name)
+        {
+            long now = System.nanoTime();
+            
+            if (phases.length() > 0) {
+                phases.append(", ");
+            }
+            phases
+                .append(name)
+                .append(' ')
+                .append((now - phaseStart) / 1000000L)
+                .append(" ms");
+            
+            phaseStart = now;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return 
+                ((System.nanoTime() - start) / 1000000L) + " ms (" 
+                + phases + ")";
+        }
     }
     
     private class MdrSession implements EnkiMDSession
     {
         private Session session;
         private Lock lock;
+        
+        /** 
+         * Held in addition to {@link #lock} during schema changes.  See
+         * {@link #obtainExclusiveLock()}.
+         */
+        private Lock exclusiveLock;
         private boolean containsWrites;
         private boolean isImplicit;
         private int refCount;
         private final int sessionId;
         
         private final LinkedList<Context> context;
-        private final Map<HibernateRefClass, Collection<?>> allOfTypeCache;
-        private final Map<HibernateRefClass, Collection<?>> allOfClassCache;
+        private final Map<HibernateRefClass, AllOfView> allOfTypeCache;
+        private final Map<HibernateRefClass, AllOfView> allOfClassCache;
         private final Map<Long, SoftReference<RefBaseObject>> byMofIdCache;
         private final Set<Long> mofIdDeleteSet;
         private final Map<Long, Class<? extends RefObject>> mofIdCreateMap;
         
+        /** 
+         * Objects validated at commit if {@link #optimisticWrites} is 
+         * enabled.  See {@link HibernateMDRepository#recordRead(RefObject)}.
+         */
+        private final Map<Long, HibernateObject> readSet;
+        
+        /** 
+         * MOF IDs in {@link #mofIdCreateMap}, indexed by class in order of
+         * creation.
+         */
+        private final Map<Class<? extends RefObject>, List<Long>> 
+            mofIdCreateIndex;
+        
+        /** 
+         * Incremented whenever {@link #mofIdCreateMap} or 
+         * {@link #mofIdDeleteSet} change.
+         */
+        private int modCount;
+        
         private final List<MDRChangeEvent> queuedEvents;
 
+        /** 
+         * Objects saved during the current bulk batch, or null if no batch
+         * is in progress.  See {@link HibernateMDRepository#beginBulkBatch()}.
+         */
+        private List<HibernateObject> bulkSaved;
+        
+        /** 
+         * True if attribute or association changes were made without 
+         * enqueuing events.  See 
+         * {@link HibernateMDRepository#isChangeEventRequired()}.
+         */
+        private boolean hasUnqueuedChanges;
+        
         private MdrSession(Session session, boolean isImplicit, int sessionId)
         {
             this.session = session;
             this.context = new LinkedList<Context>();
             this.allOfTypeCache = 
-                new HashMap<HibernateRefClass, Collection<?>>();
+                new HashMap<HibernateRefClass, AllOfView>();
             this.allOfClassCache =
-                new HashMap<HibernateRefClass, Collection<?>>();
+                new HashMap<HibernateRefClass, AllOfView>();
             this.byMofIdCache =
                 new HashMap<Long, SoftReference<RefBaseObject>>();
             this.mofIdDeleteSet = new HashSet<Long>();
             this.mofIdCreateMap = 
                 new HashMap<Long, Class<? extends RefObject>>();
+            this.mofIdCreateIndex = 
+                new LinkedHashMap<Class<? extends RefObject>, List<Long>>();
+            this.readSet = new HashMap<Long, HibernateObject>();
+            this.modCount = 0;
             this.containsWrites = false;
             this.queuedEvents = new LinkedList<MDRChangeEvent>();
             this.isImplicit = isImplicit;
@@ -3260,8 +5219,55 @@ public class HibernateMDRepository
                 throw new EnkiHibernateException("already locked");
             }
             
-            lock = txnLock.writeLock();
+            long start = metrics.startTimer();
+            if (optimisticWrites) {
+                // Exclude only schema changes.  Conflicts with other
+                // writers are detected at commit.
+                lock = txnLock.readLock();
+            } else if (concurrentReads) {
+                // Exclude other writers, but not readers.
+                lock = writerLock;
+            } else {
+                lock = txnLock.writeLock();
+            }
             lock.lock();
+            writeLockWaitTime.recordSince(start);
+        }
+        
+        /**
+         * Waits for all readers (and, with optimistic writes, all other 
+         * writers) to finish and excludes new ones until the current write
+         * transaction ends.  Only necessary when 
+         * {@link HibernateMDRepository#concurrentReads} or
+         * {@link HibernateMDRepository#optimisticWrites} is enabled; 
+         * otherwise the write transaction already excludes readers.
+         */
+        private void obtainExclusiveLock()
+        {
+            if (interThreadSessionsEnabled || 
+                (!concurrentReads && !optimisticWrites))
+            {
+                return;
+            }
+            if (exclusiveLock != null) {
+                return;
+            }
+            if (!isNestedWriteTransaction(this)) {
+                throw new EnkiHibernateException(
+                    "exclusive lock requires write transaction");
+            }
+            
+            long start = metrics.startTimer();
+            if (optimisticWrites) {
+                // The read lock cannot be upgraded; give it up first.
+                Lock l = lock;
+                lock = null;
+                l.unlock();
+            }
+            Lock l = txnLock.writeLock();
+            l.lock();
+            writeLockWaitTime.recordSince(start);
+            exclusiveLock = l;
         }
         
         private void obtainReadLock()
@@ -3273,8 +5279,10 @@ public class HibernateMDRepository
                 throw new EnkiHibernateException("already locked");
             }
             
+            long start = metrics.startTimer();
             Lock l = txnLock.readLock();
             l.lock();
+            readLockWaitTime.recordSince(start);
             lock = l;
         }
         
@@ -3283,6 +5291,11 @@ public class HibernateMDRepository
             if (interThreadSessionsEnabled) {
                 return;
             }
+            if (exclusiveLock != null) {
+                Lock l = exclusiveLock;
+                exclusiveLock = null;
+                l.unlock();
+            }
             if (lock == null) {
                 return;
             }
@@ -3302,6 +5315,28 @@ public class HibernateMDRepository
             return HibernateMDRepository.this;
         }
         
+        private void recordCreation(
+            Long mofId, Class<? extends RefObject> cls)
+        {
+            mofIdCreateMap.put(mofId, cls);
+            
+            List<Long> mofIds = mofIdCreateIndex.get(cls);
+            if (mofIds == null) {
+                mofIds = new ArrayList<Long>();
+                mofIdCreateIndex.put(cls, mofIds);
+            }
+            mofIds.add(mofId);
+            
+            modCount++;
+        }
+        
+        private void recordDeletion(Long mofId)
+        {
+            if (mofIdDeleteSet.add(mofId)) {
+                modCount++;
+            }
+        }
+        
         public void reset()
         {
             allOfTypeCache.clear();
@@ -3309,6 +5344,11 @@ public class HibernateMDRepository
             byMofIdCache.clear();
             mofIdDeleteSet.clear();
             mofIdCreateMap.clear();
+            mofIdCreateIndex.clear();
+            readSet.clear();
+            bulkSaved = null;
+            hasUnqueuedChanges = false;
+            modCount++;
         }
         
         public void close()
@@ -3330,6 +5370,215 @@ public class HibernateMDRepository
         }
     }
     
+    /**
+     * AllOfView is the read-only result of {@link #allOfType} and 
+     * {@link #allOfClass}.  It combines the objects loaded by the all-of
+     * query (once per transaction) with its session's pending creations and
+     * deletions.  The view is cached by the session, so repeated calls do
+     * not copy the query result.  {@link #contains(Object)} is constant time
+     * and {@link #size()} is only recomputed, from the pending creations and
+     * deletions, after they change.  Objects created during an iteration
+     * are not returned by that iteration.
+     */
+    private class AllOfView extends AbstractSet<RefObject>
+    {
+        private final MdrSession mdrSession;
+        
+        /** All-of query result, by MOF ID. */
+        private final Map<Long, RefObjectBase> base;
+        
+        /** Class or interface that created objects must be assignable to. */
+        private final Class<?> filterClass;
+        
+        private int size;
+        private int sizeModCount;
+        
+        private AllOfView(
+            MdrSession mdrSession, List<?> queryResult, Class<?> filterClass)
+        {
+            this.mdrSession = mdrSession;
+            this.filterClass = filterClass;
+            
+            // Use a map here because certain types of objects (those with
+            // an attribute of type collection-of-primitive) cause Hibernate 
+            // to return duplicate results.  See getByMofId(List, Class).
+            this.base = new HashMap<Long, RefObjectBase>();
+            for(Object obj: queryResult) {
+                RefObjectBase b = (RefObjectBase)obj;
+                base.put(b.getMofId(), b);
+            }
+            
+            this.sizeModCount = mdrSession.modCount - 1;
+        }
+        
+        @Override
+        public int size()
+        {
+            if (sizeModCount != mdrSession.modCount) {
+                int n = base.size();
+                for(Long mofId: mdrSession.mofIdDeleteSet) {
+                    if (base.containsKey(mofId)) {
+                        n--;
+                    }
+                }
+                
+                for(Map.Entry<Class<? extends RefObject>, List<Long>> e:
+                        mdrSession.mofIdCreateIndex.entrySet())
+                {
+                    if (!filterClass.isAssignableFrom(e.getKey())) {
+                        continue;
+                    }
+                    
+                    for(Long mofId: e.getValue()) {
+                        if (isCreated(mofId)) {
+                            n++;
+                        }
+                    }
+                }
+                
+                size = n;
+                sizeModCount = mdrSession.modCount;
+            }
+            
+            return size;
+        }
+        
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof RefObjectBase)) {
+                return false;
+            }
+            
+            Long mofId = ((RefObjectBase)o).getMofId();
+            if (mdrSession.mofIdDeleteSet.contains(mofId)) {
+                return false;
+            }
+            
+            if (base.containsKey(mofId)) {
+                return true;
+            }
+            
+            Class<? extends RefObject> cls = 
+                mdrSession.mofIdCreateMap.get(mofId);
+            return cls != null && filterClass.isAssignableFrom(cls);
+        }
+        
+        @Override
+        public Iterator<RefObject> iterator()
+        {
+            return new AllOfIterator();
+        }
+        
+        /**
+         * Tests whether the given MOF ID, taken from the creation index, 
+         * identifies an object that is not already part of the query 
+         * result and has not since been deleted.
+         */
+        private boolean isCreated(Long mofId)
+        {
+            return !base.containsKey(mofId) &&
+                !mdrSession.mofIdDeleteSet.contains(mofId);
+        }
+        
+        private class AllOfIterator implements Iterator<RefObject>
+        {
+            private final Iterator<RefObjectBase> baseIter;
+            
+            /** Matching creation index lists and their lengths. */
+            private final List<List<Long>> createdLists;
+            private final int[] createdLimits;
+            private int listIndex;
+            private int pos;
+            
+            private RefObject next;
+            
+            private AllOfIterator()
+            {
+                this.baseIter = base.values().iterator();
+                
+                this.createdLists = new ArrayList<List<Long>>();
+                for(Map.Entry<Class<? extends RefObject>, List<Long>> e:
+                        mdrSession.mofIdCreateIndex.entrySet())
+                {
+                    if (filterClass.isAssignableFrom(e.getKey())) {
+                        createdLists.add(e.getValue());
+                    }
+                }
+                
+                this.createdLimits = new int[createdLists.size()];
+                for(int i = 0; i < createdLimits.length; i++) {
+                    createdLimits[i] = createdLists.get(i).size();
+                }
+            }
+            
+            public boolean hasNext()
+            {
+                if (next == null) {
+                    next = advance();
+                }
+                
+                return next != null;
+            }
+            
+            public RefObject next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                
+                RefObject result = next;
+                next = null;
+                return result;
+            }
+            
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+            
+            private RefObject advance()
+            {
+                while(baseIter.hasNext()) {
+                    RefObjectBase b = baseIter.next();
+                    if (!mdrSession.mofIdDeleteSet.contains(b.getMofId())) {
+                        return b;
+                    }
+                }
+                
+                while(listIndex < createdLimits.length) {
+                    if (pos >= createdLimits[listIndex]) {
+                        listIndex++;
+                        pos = 0;
+                        continue;
+                    }
+                    
+                    Long mofId = createdLists.get(listIndex).get(pos++);
+                    if (!isCreated(mofId)) {
+                        continue;
+                    }
+                    
+                    RefObject obj = (RefObject)lookupByMofId(mdrSession, mofId);
+                    if (obj == null) {
+                        Class<? extends RefObject> cls = 
+                            mdrSession.mofIdCreateMap.get(mofId);
+                        if (cls == null) {
+                            continue;
+                        }
+                        
+                        obj = getByMofId(mdrSession, mofId, cls);
+                    }
+                    
+                    if (obj != null) {
+                        return obj;
+                    }
+                }
+                
+                return null;
+            }
+        }
+    }
+    
     /**
      * MdrSessionStack maintains a thread-local stack of {@link MdrSession}
      * instances.  The stack should only ever contain a single session from
@@ -23,15 +23,23 @@ package org.eigenbase.enki.hibernate;
 
 import java.sql.*;
 import java.util.*;
+import java.util.logging.*;
 
 import javax.jmi.reflect.*;
 
+import org.eigenbase.enki.codegen.*;
+import org.eigenbase.enki.hibernate.codegen.*;
 import org.eigenbase.enki.hibernate.jmi.*;
 import org.eigenbase.enki.hibernate.storage.*;
 import org.eigenbase.enki.util.GenericCollections;
 import org.eigenbase.enki.util.HashMultiMap;
 import org.hibernate.*;
+import org.hibernate.connection.*;
 import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.*;
+import org.hibernate.metadata.*;
+
+import static org.eigenbase.enki.hibernate.codegen.HibernateMappingHandler.*;
 
 /**
  * HibernateMassDeletionUtil is a utility class that implements deleting 
@@ -39,10 +47,23 @@ import org.hibernate.dialect.Dialect;
  * possible by utilizing special knowledge of internal Enki/Hibernate
  * data structures.
  * 
+ * <p>By default, the objects to delete, their composed objects and the 
+ * affected associations are loaded into the session and the resulting 
+ * changes are issued as DML statements with parameterized <tt>IN</tt>
+ * clauses.  If 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_SET_BASED_MASS_DELETE}
+ * is enabled and the SQL dialect supports temporary tables, only the MOF 
+ * IDs of the given objects are written to the database.  The closure of 
+ * composed objects and all association changes are then computed with
+ * set-based SQL against temporary tables.
+ * 
  * @author Stephan Zuercher
  */
 class HibernateMassDeletionUtil
 {
+    private static final Logger log = 
+        Logger.getLogger(HibernateMassDeletionUtil.class.getName());
+    
     private static final int MAX_IN_CLAUSE = 256;
 
     private static final String IN_PARAMS = "?...";
@@ -104,8 +125,9 @@ class HibernateMassDeletionUtil
      * children beyond a certain ordinal and the re-insertion (with corrected
      * ordinals) of undeleted successors.
      */
-    private HashMultiMap<HibernateAssociation.Kind, OrderedAssocFixUp> assocFixUpMap =
-        new HashMultiMap<HibernateAssociation.Kind, OrderedAssocFixUp>();
+    private HashMultiMap<HibernateAssociation.Kind, OrderedAssocFixUp> 
+        assocFixUpMap =
+            new HashMultiMap<HibernateAssociation.Kind, OrderedAssocFixUp>();
     
     /**
      * Map of association type to table name.
@@ -129,6 +151,24 @@ class HibernateMassDeletionUtil
     private boolean indiscriminateOneToManyDelete;
     private boolean indiscriminateOneToManyHighCardinalityDelete;
 
+    // Temporary tables used by set-based deletion.  See 
+    // createTemporaryTables().
+    private String closureTable;
+    private String frontierTable;
+    private String nextTable;
+    private String assocTable;
+    private String affectedTable;
+    private String deletedOrdinalTable;
+    private String ordinalTable;
+    private List<String> tempTables;
+    private boolean isolateTempTableDdl;
+    
+    /**
+     * Class identifiers of types whose association reference columns may
+     * refer to a deleted association (set-based deletion only).
+     */
+    private Set<String> derefTypes;
+
     HibernateMassDeletionUtil(HibernateMDRepository repos)
     {
         this.repos = repos;
@@ -145,6 +185,17 @@ class HibernateMassDeletionUtil
         
         session = repos.getCurrentSession();
 
+        if (repos.getSetBasedMassDelete()) {
+            if (sqlDialect.supportsTemporaryTables()) {
+                massDeleteSetBased(objects);
+                return;
+            }
+            
+            log.fine(
+                "SQL dialect does not support temporary tables; " 
+                + "using object-based mass deletion");
+        }
+        
         // 1. Collect into map of HRC -> HRO
         // 2. Hunt down composites as well
         computeDeletionMap(objects);
@@ -374,8 +425,796 @@ class HibernateMassDeletionUtil
         } catch(SQLException e) {
             throw new HibernateException(e);
         }
+        
+        repos.clearTypeLookupCache();
+    }
+
+    /**
+     * Set-based implementation of {@link #massDelete(Collection)}.  Writes
+     * the MOF IDs of the given objects to a temporary table and expands
+     * composite associations iteratively in SQL.  Association modifications
+     * and deletions are then issued as <tt>DELETE ... WHERE ... IN 
+     * (SELECT ...)</tt> statements.  Produces the same database state, 
+     * deletion events and cache evictions as the object-based 
+     * implementation, except that second-level cache eviction is performed 
+     * per affected type rather than per object.
+     * 
+     * @param objects objects to delete
+     */
+    @SuppressWarnings("deprecation")
+    private void massDeleteSetBased(Collection<RefObject> objects)
+    {
+        session.clear();
+
+        SessionFactory sessionFactory = session.getSessionFactory();
+        Connection conn = session.connection();
+
+        derefTypes = new HashSet<String>();
+        Set<String> closureTypes;
+        List<Long> mofIds;
+        
+        try {
+            createTemporaryTables(conn);
+            try {
+                // 1. Compute the deletion closure.
+                int numRoots = insertRoots(conn, objects);
+                int numComponents = expandComposites(conn);
+                
+                closureTypes = new HashSet<String>();
+                queryStrings(
+                    conn, closureTypes,
+                    "select distinct ", quote("typeId"), 
+                    " from ", closureTable);
+
+                // 2. Compute association changes.  Members referring to
+                // deleted objects are removed from surviving associations.
+                computeOneToOneChanges(conn);
+                computeCollectionChanges(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_CHILDREN_TABLE,
+                    "parent", true, false, false);
+                computeCollectionChanges(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_HC_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_HC_CHILDREN_TABLE,
+                    "parent", true, false, false);
+                computeCollectionChanges(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_ORDERED_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE,
+                    "parent", true, true, true);
+                computeCollectionChanges(
+                    conn,
+                    ASSOC_MANY_TO_MANY_LAZY_TABLE,
+                    ASSOC_MANY_TO_MANY_LAZY_TARGET_TABLE,
+                    "source", false, true, false);
+                computeCollectionChanges(
+                    conn,
+                    ASSOC_MANY_TO_MANY_LAZY_ORDERED_TABLE,
+                    ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE,
+                    "source", false, true, true);
+                
+                // 3. Remove references to associations that will be 
+                // deleted.
+                for(String classId: derefTypes) {
+                    HibernateRefClass hrc = repos.findRefClass(classId);
+                    String table = quote(tablePrefix + hrc.getTable());
+                    
+                    for(String columnName: hrc.getAssociationColumnNames()) {
+                        executeUpdate(
+                            conn,
+                            "update ", table, 
+                            " set ", quote(columnName), " = null where ", 
+                            quote(columnName), " in (select ", quotedMofId, 
+                            " from ", assocTable, ")");
+                    }
+                }
+                
+                // 4. Delete the actual objects.
+                for(String classId: closureTypes) {
+                    HibernateRefClass hrc = repos.findRefClass(classId);
+                    
+                    PreparedStatement stmt = 
+                        conn.prepareStatement(
+                            concat(
+                                "delete from ", 
+                                quote(tablePrefix + hrc.getTable()),
+                                " where ", quotedMofId, " in (select ", 
+                                quotedMofId, " from ", closureTable, 
+                                " where ", quote("typeId"), " = ?)"));
+                    try {
+                        stmt.setString(1, classId);
+                        stmt.executeUpdate();
+                    } finally {
+                        stmt.close();
+                    }
+                }
+                
+                // 5. Delete associations (collection tables first).
+                deleteAssociations(
+                    conn,
+                    ASSOC_ONE_TO_ONE_LAZY_TABLE,
+                    null);
+                deleteAssociations(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_CHILDREN_TABLE);
+                deleteAssociations(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_HC_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_HC_CHILDREN_TABLE);
+                deleteAssociations(
+                    conn,
+                    ASSOC_ONE_TO_MANY_LAZY_ORDERED_TABLE,
+                    ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE);
+                deleteAssociations(
+                    conn,
+                    ASSOC_MANY_TO_MANY_LAZY_TABLE,
+                    ASSOC_MANY_TO_MANY_LAZY_TARGET_TABLE);
+                deleteAssociations(
+                    conn,
+                    ASSOC_MANY_TO_MANY_LAZY_ORDERED_TABLE,
+                    ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE);
+
+                // 6. Retrieve deleted MOF IDs for deletion events and type
+                // mapping clean up.
+                mofIds = new ArrayList<Long>(numRoots + numComponents);
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rset = 
+                        stmt.executeQuery(
+                            concat(
+                                "select ", quotedMofId, 
+                                " from ", closureTable));
+                    try {
+                        while(rset.next()) {
+                            mofIds.add(rset.getLong(1));
+                        }
+                    } finally {
+                        rset.close();
+                    }
+                } finally {
+                    stmt.close();
+                }
+                
+                log.fine(
+                    "Set-based mass deletion: " + numRoots + " objects, "
+                    + numComponents + " composed objects, " 
+                    + closureTypes.size() + " types");
+            } finally {
+                dropTemporaryTables(conn);
+            }
+        }
+        catch(SQLException e) {
+            throw new HibernateException(e);
+        }
+
+        // Evict all types that were modified from the second-level cache.
+        // Association instances are evicted by class and collection role.
+        Set<String> evictTypes = new HashSet<String>(closureTypes);
+        evictTypes.addAll(derefTypes);
+        for(String classId: evictTypes) {
+            Class<?> cls = repos.findRefClass(classId).getInstanceClass();
+            if (cls != null) {
+                sessionFactory.evict(cls);
+            }
+        }
+        evictAssociations(sessionFactory);
+        
+        HibernateRefClass anyHrc = 
+            (HibernateRefClass)objects.iterator().next().refClass();
+        sessionFactory.evictQueries(
+            tablePrefix + anyHrc.getQueryCacheRegion());
+        
+        repos.recordObjectDeletions(mofIds);
+    }
+
+    /**
+     * Creates (or re-uses) the temporary tables used by set-based deletion.
+     * 
+     * @param conn the session's connection
+     * @throws SQLException on database error
+     */
+    private void createTemporaryTables(Connection conn) throws SQLException
+    {
+        Boolean isolateVote = sqlDialect.performTemporaryTableDDLInIsolation();
+        if (isolateVote != null) {
+            isolateTempTableDdl = isolateVote.booleanValue();
+        } else {
+            isolateTempTableDdl = 
+                conn.getMetaData().dataDefinitionCausesTransactionCommit();
+        }
+        
+        String mofIdCol = 
+            quote("mofId") + " " + sqlDialect.getTypeName(Types.BIGINT);
+        String typeIdCol = 
+            quote("typeId") + " " + 
+            sqlDialect.getTypeName(
+                Types.VARCHAR, CodeGenUtils.DEFAULT_STRING_LENGTH, 0, 0);
+        String childTypeCol = 
+            quote("childType") + " " + 
+            sqlDialect.getTypeName(
+                Types.VARCHAR, CodeGenUtils.DEFAULT_STRING_LENGTH, 0, 0);
+        String childIdCol = 
+            quote("childId") + " " + sqlDialect.getTypeName(Types.BIGINT);
+        String ordinalCol =
+            quote("ordinal") + " " + sqlDialect.getTypeName(Types.INTEGER);
+        
+        tempTables = new ArrayList<String>();
+        closureTable = 
+            createTemporaryTable(conn, "MDEL_CLOSURE", mofIdCol, typeIdCol);
+        frontierTable = 
+            createTemporaryTable(conn, "MDEL_FRONTIER", mofIdCol, typeIdCol);
+        nextTable = 
+            createTemporaryTable(conn, "MDEL_NEXT", mofIdCol, typeIdCol);
+        assocTable = 
+            createTemporaryTable(conn, "MDEL_ASSOC", mofIdCol);
+        affectedTable = 
+            createTemporaryTable(conn, "MDEL_AFFECTED", mofIdCol);
+        deletedOrdinalTable = 
+            createTemporaryTable(conn, "MDEL_DEL_ORD", mofIdCol, ordinalCol);
+        ordinalTable = 
+            createTemporaryTable(
+                conn, "MDEL_ORD", mofIdCol, childTypeCol, childIdCol, 
+                ordinalCol);
+    }
+    
+    private String createTemporaryTable(
+        Connection conn, String baseName, String... columns)
+    throws SQLException
+    {
+        String table = 
+            sqlDialect.generateTemporaryTableName(tablePrefix + baseName);
+
+        StringBuilder ddl = new StringBuilder();
+        ddl
+            .append(sqlDialect.getCreateTemporaryTableString())
+            .append(' ')
+            .append(table)
+            .append(" (");
+        for(int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                ddl.append(", ");
+            }
+            ddl.append(columns[i]);
+        }
+        ddl.append(") ").append(sqlDialect.getCreateTemporaryTablePostfix());
+        
+        if (temporaryTableExists(conn, table)) {
+            // Left over from an earlier deletion (the dialect does not 
+            // drop temporary tables after use, or they live until the end
+            // of the transaction).  Make sure it's empty.
+            executeUpdate(conn, "delete from ", table);
+        } else {
+            executeDdl(conn, ddl.toString());
+        }
+        
+        tempTables.add(table);
+        
+        return table;
+    }
+    
+    /**
+     * Checks whether the given temporary table exists.  Consults 
+     * {@link DatabaseMetaData} rather than attempting the creation, since 
+     * on some databases (e.g., PostgreSQL) a failed statement aborts the
+     * session's transaction.
+     * 
+     * @param conn the session's connection
+     * @param table unquoted temporary table name
+     * @return true if the table exists
+     * @throws SQLException on database error
+     */
+    private boolean temporaryTableExists(Connection conn, String table)
+    throws SQLException
+    {
+        DatabaseMetaData metaData = conn.getMetaData();
+        
+        String pattern = table;
+        if (metaData.storesUpperCaseIdentifiers()) {
+            pattern = pattern.toUpperCase();
+        } else if (metaData.storesLowerCaseIdentifiers()) {
+            pattern = pattern.toLowerCase();
+        }
+        
+        String escape = metaData.getSearchStringEscape();
+        if (escape != null && escape.length() > 0) {
+            pattern = 
+                pattern.replace("_", escape + "_").replace("%", escape + "%");
+        }
+        
+        ResultSet rset = metaData.getTables(null, null, pattern, null);
+        try {
+            while(rset.next()) {
+                if (table.equalsIgnoreCase(rset.getString("TABLE_NAME"))) {
+                    return true;
+                }
+            }
+        } finally {
+            rset.close();
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Drops the temporary tables if the dialect requests it, and otherwise 
+     * empties them for re-use by the next set-based deletion.
+     * 
+     * @param conn the session's connection
+     * @throws SQLException on database error
+     */
+    private void dropTemporaryTables(Connection conn) throws SQLException
+    {
+        if (tempTables == null) {
+            return;
+        }
+
+        // executeDdl() uses a separate connection if DDL would commit the
+        // session's transaction.
+        boolean drop = sqlDialect.dropTemporaryTableAfterUse();
+        for(String table: tempTables) {
+            if (drop) {
+                executeDdl(conn, "drop table " + table);
+            } else {
+                executeUpdate(conn, "delete from ", table);
+            }
+        }
+        tempTables = null;
+    }
+
+    /**
+     * Executes temporary table DDL.  If DDL causes a transaction commit,
+     * the DDL is executed using a separate connection.
+     * 
+     * @param conn the session's connection
+     * @param ddl the DDL statement
+     * @throws SQLException on database error
+     */
+    private void executeDdl(Connection conn, String ddl) throws SQLException
+    {
+        if (!isolateTempTableDdl) {
+            executeUpdate(conn, ddl);
+            return;
+        }
+        
+        ConnectionProvider connectionProvider = 
+            ((SessionFactoryImplementor)session.getSessionFactory())
+                .getConnectionProvider();
+        Connection ddlConn = connectionProvider.getConnection();
+        try {
+            executeUpdate(ddlConn, ddl);
+            if (!ddlConn.getAutoCommit()) {
+                ddlConn.commit();
+            }
+        } finally {
+            connectionProvider.closeConnection(ddlConn);
+        }
+    }
+    
+    /**
+     * Writes the MOF IDs and class identifiers of the given objects to 
+     * the closure and frontier tables.
+     * 
+     * @param conn the session's connection
+     * @param objects objects to delete
+     * @return number of distinct objects
+     * @throws SQLException on database error
+     */
+    private int insertRoots(Connection conn, Collection<RefObject> objects)
+    throws SQLException
+    {
+        Set<Long> seen = new HashSet<Long>();
+        
+        PreparedStatement closureStmt = 
+            conn.prepareStatement(
+                concat("insert into ", closureTable, " values (?, ?)"));
+        try {
+            PreparedStatement frontierStmt = 
+                conn.prepareStatement(
+                    concat("insert into ", frontierTable, " values (?, ?)"));
+            try {
+                int batch = 0;
+                for(RefObject object: objects) {
+                    HibernateRefObject hro = (HibernateRefObject)object;
+                    Long mofId = hro.getMofId();
+                    if (!seen.add(mofId)) {
+                        continue;
+                    }
+                    
+                    String classId = 
+                        ((HibernateRefClass)hro.refClass())
+                            .getClassIdentifier();
+                    
+                    closureStmt.setLong(1, mofId);
+                    closureStmt.setString(2, classId);
+                    closureStmt.addBatch();
+                    frontierStmt.setLong(1, mofId);
+                    frontierStmt.setString(2, classId);
+                    frontierStmt.addBatch();
+                    
+                    if (++batch == MAX_IN_CLAUSE) {
+                        closureStmt.executeBatch();
+                        frontierStmt.executeBatch();
+                        batch = 0;
+                    }
+                }
+                
+                if (batch > 0) {
+                    closureStmt.executeBatch();
+                    frontierStmt.executeBatch();
+                }
+            } finally {
+                frontierStmt.close();
+            }
+        } finally {
+            closureStmt.close();
+        }
+        
+        return seen.size();
+    }
+    
+    /**
+     * Iteratively adds objects composed by the objects in the frontier 
+     * table to the closure table until no new objects are found.  Each
+     * iteration considers only the types present in the frontier table and
+     * their {@link HibernateRefClass#getComposingAssociationColumnNames() 
+     * composing association columns}.
+     * 
+     * @param conn the session's connection
+     * @return number of composed objects added to the closure
+     * @throws SQLException on database error
+     */
+    private int expandComposites(Connection conn) throws SQLException
+    {
+        final String quotedTypeId = quote("typeId");
+        final String quotedChildId = quote("childId");
+        final String quotedChildType = quote("childType");
+        final String quotedParentId = quote("parentId");
+        final String quotedParentType = quote("parentType");
+
+        final String oneToOneTable = 
+            quote(tablePrefix + ASSOC_ONE_TO_ONE_LAZY_TABLE);
+        final String[] childrenTables = {
+            quote(tablePrefix + ASSOC_ONE_TO_MANY_LAZY_CHILDREN_TABLE),
+            quote(tablePrefix + ASSOC_ONE_TO_MANY_LAZY_HC_CHILDREN_TABLE),
+            quote(tablePrefix + ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE),
+        };
+        
+        // Excludes objects already in the closure (guards against cycles
+        // in malformed data).
+        final String notInClosure = 
+            concat(
+                " and not exists (select 1 from ", closureTable, 
+                " c where c.", quotedMofId, " = ");
+        
+        int total = 0;
+        int iteration = 0;
+        while(true) {
+            Set<String> frontierTypes = new HashSet<String>();
+            queryStrings(
+                conn, frontierTypes,
+                "select distinct ", quotedTypeId, " from ", frontierTable);
+            
+            for(String classId: frontierTypes) {
+                HibernateRefClass hrc = repos.findRefClass(classId);
+                String table = quote(tablePrefix + hrc.getTable());
+                
+                for(String col: hrc.getComposingAssociationColumnNames()) {
+                    String from = 
+                        concat(
+                            " from ", table, " t, ", frontierTable, " f, ");
+                    String where = 
+                        concat(
+                            " where t.", quotedMofId, " = f.", quotedMofId,
+                            " and a.", quotedMofId, " = t.", quote(col));
+                    
+                    // One-to-one: the owner may be either end.
+                    executeUpdate(
+                        conn,
+                        "insert into ", nextTable, 
+                        " select a.", quotedChildId, ", a.", quotedChildType,
+                        from, oneToOneTable, " a", where,
+                        " and a.", quotedParentId, " = t.", quotedMofId,
+                        notInClosure, "a.", quotedChildId, ")");
+                    executeUpdate(
+                        conn,
+                        "insert into ", nextTable, 
+                        " select a.", quotedParentId, ", a.", quotedParentType,
+                        from, oneToOneTable, " a", where,
+                        " and a.", quotedChildId, " = t.", quotedMofId,
+                        notInClosure, "a.", quotedParentId, ")");
+                    
+                    // One-to-many: the owner is always the parent.
+                    for(String childrenTable: childrenTables) {
+                        executeUpdate(
+                            conn,
+                            "insert into ", nextTable, 
+                            " select a.", quotedChildId, ", a.", 
+                            quotedChildType,
+                            from, childrenTable, " a", where,
+                            notInClosure, "a.", quotedChildId, ")");
+                    }
+                }
+            }
+            
+            int added = 
+                executeUpdate(
+                    conn,
+                    "insert into ", closureTable, 
+                    " select distinct ", quotedMofId, ", ", quotedTypeId, 
+                    " from ", nextTable);
+            
+            iteration++;
+            if (added == 0) {
+                break;
+            }
+            total += added;
+            
+            // Next becomes the frontier; the old frontier is re-used.
+            executeUpdate(conn, "delete from ", frontierTable);
+            String t = frontierTable;
+            frontierTable = nextTable;
+            nextTable = t;
+        }
+        
+        log.finer(
+            "Composite expansion found " + total + " objects in " 
+            + iteration + " iterations");
+        
+        return total;
+    }
+    
+    /**
+     * Marks all one-to-one associations with a deleted end for deletion and
+     * records the types of the other ends for dereferencing.
+     * 
+     * @param conn the session's connection
+     * @throws SQLException on database error
+     */
+    private void computeOneToOneChanges(Connection conn) throws SQLException
+    {
+        String table = 
+            quote(tablePrefix + ASSOC_ONE_TO_ONE_LAZY_TABLE);
+        
+        String[][] ends = {
+            { "parentId", "childType" },
+            { "childId", "parentType" },
+        };
+        for(String[] end: ends) {
+            String where = 
+                concat(
+                    " where ", quote(end[0]), " in (select ", quotedMofId, 
+                    " from ", closureTable, ")");
+            
+            executeUpdate(
+                conn,
+                "insert into ", assocTable, 
+                " select ", quotedMofId, " from ", table, where);
+            queryStrings(
+                conn, derefTypes,
+                "select distinct ", quote(end[1]), " from ", table, where);
+        }
     }
+    
+    /**
+     * Computes changes to one-to-many or many-to-many associations.
+     * Associations whose owner (parent or source) is deleted are marked
+     * for deletion.  Deleted members are removed from all other 
+     * associations.  If the association is ordered, the surviving members'
+     * ordinals are renumbered.
+     * 
+     * @param conn the session's connection
+     * @param table association table name
+     * @param collectionTable association member table name
+     * @param ownerEnd column prefix of the owning end (parent or source)
+     * @param derefMembers if true, surviving members of associations 
+     *                     marked for deletion refer to the association 
+     *                     (one-to-many associations)
+     * @param deleteEmpty if true, associations that lose all their members
+     *                    are marked for deletion (otherwise empty 
+     *                    associations are tolerated, see 
+     *                    {@link #computeAssociationMaps(
+     *                    HibernateOneToManyLazyAssociationBase, boolean)})
+     * @param ordered if true, the association is ordered
+     * @throws SQLException on database error
+     */
+    private void computeCollectionChanges(
+        Connection conn,
+        String table, 
+        String collectionTable,
+        String ownerEnd,
+        boolean derefMembers,
+        boolean deleteEmpty,
+        boolean ordered)
+    throws SQLException
+    {
+        final String quotedChildId = quote("childId");
+        final String quotedChildType = quote("childType");
+        final String quotedOrdinal = quote("ordinal");
+        final String quotedTable = quote(tablePrefix + table);
+        final String quotedCollectionTable = 
+            quote(tablePrefix + collectionTable);
+        final String inClosure = 
+            concat(" in (select ", quotedMofId, " from ", closureTable, ")");
+        
+        // Associations with a deleted owner are always deleted.
+        String ownerDeleted = 
+            concat(" where ", quote(ownerEnd + "Id"), inClosure);
+        executeUpdate(
+            conn,
+            "insert into ", assocTable, 
+            " select ", quotedMofId, " from ", quotedTable, ownerDeleted);
+        
+        if (derefMembers) {
+            queryStrings(
+                conn, derefTypes,
+                "select distinct ", quotedChildType, 
+                " from ", quotedCollectionTable, 
+                " where ", quotedMofId, " in (select ", quotedMofId, 
+                " from ", quotedTable, ownerDeleted, ")");
+        }
+        
+        if (!deleteEmpty && !ordered) {
+            // Indiscriminate removal of deleted members.
+            executeUpdate(
+                conn,
+                "delete from ", quotedCollectionTable, 
+                " where ", quotedChildId, inClosure);
+            return;
+        }
+        
+        executeUpdate(
+            conn,
+            "insert into ", affectedTable, 
+            " select distinct ", quotedMofId, 
+            " from ", quotedCollectionTable, 
+            " where ", quotedChildId, inClosure);
 
+        if (deleteEmpty) {
+            // Delete associations whose members are all deleted and 
+            // dereference them from their owner.
+            executeUpdate(
+                conn,
+                "insert into ", assocTable, 
+                " select r.", quotedMofId, " from ", affectedTable, " r", 
+                " where not exists (select 1 from ", quotedCollectionTable, 
+                " k where k.", quotedMofId, " = r.", quotedMofId, 
+                " and k.", quotedChildId, " not", inClosure, ")");
+            queryStrings(
+                conn, derefTypes,
+                "select distinct a.", quote(ownerEnd + "Type"), 
+                " from ", quotedTable, " a, ", affectedTable, " r", 
+                " where a.", quotedMofId, " = r.", quotedMofId);
+        }
+        
+        if (ordered) {
+            // Each surviving member moves down by the number of deleted
+            // members that precede it.
+            executeUpdate(
+                conn,
+                "insert into ", deletedOrdinalTable, 
+                " select ", quotedMofId, ", ", quotedOrdinal, 
+                " from ", quotedCollectionTable, 
+                " where ", quotedChildId, inClosure);
+            executeUpdate(
+                conn,
+                "insert into ", ordinalTable, 
+                " select k.", quotedMofId, ", k.", quotedChildType, 
+                ", k.", quotedChildId, ", k.", quotedOrdinal, 
+                " - (select count(*) from ", deletedOrdinalTable, 
+                " d where d.", quotedMofId, " = k.", quotedMofId, 
+                " and d.", quotedOrdinal, " < k.", quotedOrdinal, ")",
+                " from ", quotedCollectionTable, " k",
+                " where k.", quotedMofId, " in (select ", quotedMofId, 
+                " from ", affectedTable, ") and k.", quotedChildId, 
+                " not", inClosure);
+            executeUpdate(
+                conn,
+                "delete from ", quotedCollectionTable, 
+                " where ", quotedMofId, " in (select ", quotedMofId, 
+                " from ", affectedTable, ")");
+            executeUpdate(
+                conn,
+                "insert into ", quotedCollectionTable, 
+                " (", quotedMofId, ", ", quotedChildType, ", ", 
+                quotedChildId, ", ", quotedOrdinal, ") select ", 
+                quotedMofId, ", ", quotedChildType, ", ", quotedChildId, 
+                ", ", quotedOrdinal, " from ", ordinalTable);
+            executeUpdate(conn, "delete from ", ordinalTable);
+            executeUpdate(conn, "delete from ", deletedOrdinalTable);
+        } else {
+            executeUpdate(
+                conn,
+                "delete from ", quotedCollectionTable, 
+                " where ", quotedChildId, inClosure);
+        }
+        
+        executeUpdate(conn, "delete from ", affectedTable);
+    }
+    
+    private void deleteAssociations(
+        Connection conn, String table, String collectionTable)
+    throws SQLException
+    {
+        String inAssocs = 
+            concat(
+                " where ", quotedMofId, " in (select ", quotedMofId, 
+                " from ", assocTable, ")");
+        
+        if (collectionTable != null) {
+            executeUpdate(
+                conn,
+                "delete from ", quote(tablePrefix + collectionTable), 
+                inAssocs);
+        }
+        
+        executeUpdate(
+            conn, "delete from ", quote(tablePrefix + table), inAssocs);
+    }
+    
+    /**
+     * Evicts all association instances and their collections from the 
+     * second-level cache.
+     * 
+     * @param sessionFactory the session factory
+     */
+    private void evictAssociations(SessionFactory sessionFactory)
+    {
+        Set<String> assocEntityNames = new HashSet<String>();
+        for(Object o: sessionFactory.getAllClassMetadata().values()) {
+            ClassMetadata metadata = (ClassMetadata)o;
+            
+            Class<?> cls = metadata.getMappedClass(EntityMode.POJO);
+            if (cls != null && HibernateAssociation.class.isAssignableFrom(cls))
+            {
+                sessionFactory.evict(cls);
+                assocEntityNames.add(metadata.getEntityName());
+            }
+        }
+        
+        for(Object o: sessionFactory.getAllCollectionMetadata().keySet()) {
+            String role = (String)o;
+            int dot = role.lastIndexOf('.');
+            if (dot > 0 && assocEntityNames.contains(role.substring(0, dot))) {
+                sessionFactory.evictCollection(role);
+            }
+        }
+    }
+    
+    private int executeUpdate(Connection conn, String... sqlParts)
+    throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        try {
+            return stmt.executeUpdate(concat(sqlParts));
+        } finally {
+            stmt.close();
+        }
+    }
+    
+    private void queryStrings(
+        Connection conn, Collection<String> result, String... sqlParts)
+    throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rset = stmt.executeQuery(concat(sqlParts));
+            try {
+                while(rset.next()) {
+                    String s = rset.getString(1);
+                    if (s != null) {
+                        result.add(s);
+                    }
+                }
+            } finally {
+                rset.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
     
     /**
      * Iterate over the given objects and add them to the {@link #delMap}.
@@ -625,8 +1464,9 @@ class HibernateMassDeletionUtil
                 // Remove children in deletion map from the association
                 Iterator<HibernateLazyAssociationBase.Element> iter =
                     children.iterator();
+                // Sparse ordinals tolerate gaps: no fix-up required.
                 int removals;
-                if (isOrdered) {
+                if (isOrdered && !assoc.getSparseOrdinals()) {
                     removals = 
                         removeDeletedOrderedElements(
                             assocKind, assocMofId, iter);
@@ -729,7 +1569,7 @@ class HibernateMassDeletionUtil
                 Iterator<HibernateLazyAssociationBase.Element> iter =
                     targets.iterator();
 
-                if (isOrdered) {
+                if (isOrdered && !assoc.getSparseOrdinals()) {
                     removeDeletedOrderedElements(assocKind, assocMofId, iter);
                 } else {
                     removeDeletedElements(assocKind, iter);
@@ -930,7 +1770,8 @@ class HibernateMassDeletionUtil
         
         // Generate a SQL DML statement with a parameterized in clause.
         StringBuilder sqlBuilder = new StringBuilder();
-        final int numParams = buildInSql(sqlBuilder, numValues, -1, sqlParts);        
+        final int numParams = 
+            buildInSql(sqlBuilder, numValues, -1, sqlParts);
         String sql = sqlBuilder.toString();
         
         // If necessary, generate a final DML statement with fewer parameters
@@ -0,0 +1,285 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.*;
+
+import org.eigenbase.enki.hibernate.storage.*;
+import org.hibernate.*;
+import org.hibernate.dialect.*;
+
+/**
+ * HibernateSchemaFingerprintUtil computes and stores fingerprints of the 
+ * mapping and DDL resources from which a schema was created or last 
+ * validated.  If the fingerprint stored for a schema matches the current
+ * resources, the schema need not be validated again.  Fingerprints are
+ * stored in a table ({@value #TABLE_NAME}) managed via JDBC, in the same
+ * manner as {@link MofIdGenerator}'s table, so that the provider mappings
+ * (and therefore the provider schema) are unchanged.
+ * 
+ * <p>Fingerprints only reflect the resources used to produce a schema.  
+ * Changes made to the database schema by other means are not detected.
+ * 
+ * @author Stephan Zuercher
+ */
+class HibernateSchemaFingerprintUtil
+{
+    static final String TABLE_NAME = "ENKI_SCHEMA_FINGERPRINT";
+    
+    private static final String PREFIX_COLUMN = "tablePrefix";
+    private static final String NAME_COLUMN = "schemaName";
+    private static final String FINGERPRINT_COLUMN = "fingerprint";
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    private static final Logger log = 
+        Logger.getLogger(HibernateSchemaFingerprintUtil.class.getName());
+    
+    private final SessionFactory sessionFactory;
+    private final String tablePrefix;
+    private final String querySql;
+    private final String deleteSql;
+    private final String insertSql;
+    private final String createDdl;
+    
+    HibernateSchemaFingerprintUtil(
+        SessionFactory sessionFactory, Dialect dialect, String tablePrefix)
+    {
+        this.sessionFactory = sessionFactory;
+        this.tablePrefix = tablePrefix;
+        
+        String table = HibernateDialectUtil.quote(dialect, TABLE_NAME);
+        String prefixCol = HibernateDialectUtil.quote(dialect, PREFIX_COLUMN);
+        String nameCol = HibernateDialectUtil.quote(dialect, NAME_COLUMN);
+        String fingerprintCol = 
+            HibernateDialectUtil.quote(dialect, FINGERPRINT_COLUMN);
+        String varchar = dialect.getTypeName(Types.VARCHAR, 255, 0, 0);
+        
+        this.querySql = 
+            "select " + fingerprintCol + " from " + table 
+            + " where " + prefixCol + " = ? and " + nameCol + " = ?";
+        this.deleteSql =
+            "delete from " + table 
+            + " where " + prefixCol + " = ? and " + nameCol + " = ?";
+        this.insertSql = 
+            "insert into " + table 
+            + " (" + prefixCol + ", " + nameCol + ", " + fingerprintCol 
+            + ") values (?, ?, ?)";
+        this.createDdl =
+            "create table " + table + " (" 
+            + prefixCol + " " + varchar + " not null, "
+            + nameCol + " " + varchar + " not null, "
+            + fingerprintCol + " " + varchar + " not null, "
+            + "primary key (" + prefixCol + ", " + nameCol + "))"
+            + dialect.getTableTypeString();
+    }
+    
+    /**
+     * Computes a fingerprint for the given resources and additional 
+     * strings.  Resources which cannot be read contribute only their URL.
+     * 
+     * @param urls resources to fingerprint (null entries are ignored)
+     * @param extras additional values to fingerprint, such as the dialect
+     * @return hex-encoded SHA-1 fingerprint
+     */
+    static String compute(List<URL> urls, String... extras)
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new EnkiHibernateException(e);
+        }
+        
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for(URL url: urls) {
+            if (url == null) {
+                continue;
+            }
+            
+            try {
+                md.update(url.toExternalForm().getBytes("UTF-8"));
+                
+                InputStream in = url.openStream();
+                try {
+                    int len;
+                    while((len = in.read(buffer)) > 0) {
+                        md.update(buffer, 0, len);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch(IOException e) {
+                log.log(Level.FINE, "Cannot fingerprint " + url, e);
+                md.update((byte)0);
+            }
+        }
+        
+        for(String extra: extras) {
+            try {
+                md.update(String.valueOf(extra).getBytes("UTF-8"));
+            } catch(UnsupportedEncodingException e) {
+                throw new InternalError("UTF-8 is unsupported");
+            }
+            md.update((byte)0);
+        }
+        
+        StringBuilder b = new StringBuilder();
+        for(byte v: md.digest()) {
+            b.append(Character.forDigit((v >> 4) & 0xF, 16));
+            b.append(Character.forDigit(v & 0xF, 16));
+        }
+        return b.toString();
+    }
+    
+    /**
+     * Determines whether the stored fingerprint for the named schema 
+     * matches the given fingerprint.
+     * 
+     * @param schemaName schema name
+     * @param fingerprint expected fingerprint
+     * @return true if the stored fingerprint matches; false if it differs
+     *         or if no fingerprint is stored
+     */
+    boolean matches(String schemaName, String fingerprint)
+    {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Connection conn = session.connection();
+            try {
+                PreparedStatement stmt = conn.prepareStatement(querySql);
+                try {
+                    stmt.setString(1, tablePrefix);
+                    stmt.setString(2, schemaName);
+                    ResultSet rs = stmt.executeQuery();
+                    try {
+                        return rs.next() && fingerprint.equals(rs.getString(1));
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    stmt.close();
+                    conn.commit();
+                }
+            } catch(SQLException e) {
+                // Presume that the table doesn't exist.
+                log.log(Level.FINE, "Schema fingerprint query error", e);
+                rollback(conn);
+                return false;
+            }
+        } finally {
+            session.close();
+        }
+    }
+    
+    /**
+     * Stores the fingerprint for the named schema, replacing any previous
+     * fingerprint.  Failures are logged and otherwise ignored: they only
+     * cause the schema to be validated again.
+     * 
+     * @param schemaName schema name
+     * @param fingerprint new fingerprint or null to remove the fingerprint
+     * @param createTable if true, create the fingerprint table if necessary
+     */
+    void store(String schemaName, String fingerprint, boolean createTable)
+    {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Connection conn = session.connection();
+            try {
+                try {
+                    update(conn, schemaName, fingerprint);
+                } catch(SQLException e) {
+                    if (!createTable) {
+                        throw e;
+                    }
+                    
+                    // Presume the table is missing.
+                    rollback(conn);
+                    
+                    log.info("Creating schema fingerprint table");
+                    Statement stmt = conn.createStatement();
+                    try {
+                        stmt.execute(createDdl);
+                    } finally {
+                        stmt.close();
+                    }
+                    conn.commit();
+                    
+                    update(conn, schemaName, fingerprint);
+                }
+                conn.commit();
+            } catch(SQLException e) {
+                log.log(
+                    Level.FINE, 
+                    "Cannot store schema fingerprint for " + schemaName, 
+                    e);
+                rollback(conn);
+            }
+        } finally {
+            session.close();
+        }
+    }
+    
+    private void update(Connection conn, String schemaName, String fingerprint)
+        throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement(deleteSql);
+        try {
+            stmt.setString(1, tablePrefix);
+            stmt.setString(2, schemaName);
+            stmt.executeUpdate();
+        } finally {
+            stmt.close();
+        }
+        
+        if (fingerprint == null) {
+            return;
+        }
+        
+        stmt = conn.prepareStatement(insertSql);
+        try {
+            stmt.setString(1, tablePrefix);
+            stmt.setString(2, schemaName);
+            stmt.setString(3, fingerprint);
+            stmt.executeUpdate();
+        } finally {
+            stmt.close();
+        }
+    }
+    
+    private static void rollback(Connection conn)
+    {
+        try {
+            conn.rollback();
+        } catch(SQLException e) {
+            log.log(Level.FINE, "rollback failed", e);
+        }
+    }
+}
+
+// End HibernateSchemaFingerprintUtil.java
@@ -0,0 +1,95 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.hibernate.storage.*;
+import org.eigenbase.enki.util.*;
+
+/**
+ * HibernateStreamingXmiReader is a {@link StreamingXmiReader} for 
+ * {@link HibernateMDRepository}.  Before each batch it reserves a range of
+ * MOF IDs for the importing thread (see 
+ * {@link MofIdGenerator#reserve(long)}), so that object creation does not
+ * contend for the shared MOF ID block.  After each batch it flushes the
+ * batch's inserts to the database and evicts the objects and associations
+ * created by the batch from the Hibernate session (see 
+ * {@link HibernateMDRepository#flushAndEvict()}), which keeps memory use
+ * bounded by the batch size rather than the document size.  Objects that
+ * the caller obtained before the import remain attached.  Hibernate groups
+ * each flush's inserts into JDBC batches by table (see 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_HIBERNATE_JDBC_BATCH_SIZE}).
+ * 
+ * <p>Object handles are numeric MOF IDs, so forward references are resolved
+ * by re-reading objects from the session or the database.
+ * 
+ * @author Stephan Zuercher
+ */
+public class HibernateStreamingXmiReader extends StreamingXmiReader
+{
+    /** 
+     * Number of MOF IDs reserved per expected object.  Association storage
+     * objects also consume MOF IDs.
+     */
+    private static final int MOF_IDS_PER_OBJECT = 2;
+    
+    private final HibernateMDRepository hibernateRepos;
+    
+    public HibernateStreamingXmiReader(HibernateMDRepository repos)
+    {
+        super(repos);
+        
+        this.hibernateRepos = repos;
+    }
+    
+    @Override
+    protected void beginBatch(int expectedObjects)
+    {
+        hibernateRepos.beginBulkBatch();
+        
+        if (expectedObjects > 0) {
+            hibernateRepos.getMofIdGenerator().reserve(
+                (long)expectedObjects * MOF_IDS_PER_OBJECT);
+        }
+    }
+    
+    @Override
+    protected void endBatch()
+    {
+        hibernateRepos.flushAndEvict();
+    }
+    
+    @Override
+    protected long getHandle(RefObject obj)
+    {
+        return ((HibernateObject)obj).getMofId();
+    }
+    
+    @Override
+    protected RefObject resolveHandle(long handle, RefClass refClass)
+    {
+        return hibernateRepos.getByMofId(handle, refClass);
+    }
+}
+
+// End HibernateStreamingXmiReader.java
@@ -0,0 +1,310 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eigenbase.enki.hibernate.storage.*;
+import org.eigenbase.enki.util.*;
+import org.hibernate.*;
+
+/**
+ * MofIdTypeLookupCache is a repository-wide cache of the MOF ID to type name
+ * mappings stored in the <code>ENKI_TYPE_LOOKUP</code> table.  It is shared
+ * by all sessions of a {@link HibernateMDRepository}.  On a miss, the
+ * mappings for an aligned range of MOF IDs surrounding the requested MOF ID 
+ * are loaded with a single query, since objects created together are 
+ * allocated neighboring MOF IDs and tend to be accessed together.  Callers
+ * resolving many MOF IDs at once should use 
+ * {@link #lookup(Session, Collection)}, which loads all missing mappings with
+ * <code>IN</code> queries.
+ * 
+ * <p>The repository keeps the cache consistent by invoking 
+ * {@link #recordCommit(Collection, Collection)} once the transaction 
+ * writing the type mappings has committed.  Recording the changes any 
+ * earlier would let other sessions resolve MOF IDs of objects they cannot
+ * yet load.  Since MOF IDs are never re-used, a stale entry for a deleted 
+ * object can only cause a fruitless query for the object, never an 
+ * incorrect result.
+ * 
+ * @author Stephan Zuercher
+ */
+class MofIdTypeLookupCache
+{
+    /** Maximum number of parameters in a single IN clause. */
+    private static final int MAX_IN_CLAUSE = 256;
+    
+    private final BoundedLongKeyCache<String> cache;
+    
+    /** Number of MOF IDs loaded per range query (a power of 2). */
+    private final long rangeSize;
+    
+    /** Canonical type name instances, to avoid caching duplicate strings. */
+    private final ConcurrentMap<String, String> typeNames;
+    
+    /**
+     * Constructs a new MofIdTypeLookupCache.
+     * 
+     * @param maxSize maximum number of cached mappings; values less than or
+     *                equal to zero disable caching
+     * @param rangeSize number of neighboring MOF IDs to load on a cache miss;
+     *                  rounded up to a power of 2; values less than or equal
+     *                  to one disable range loads
+     */
+    MofIdTypeLookupCache(int maxSize, int rangeSize)
+    {
+        if (maxSize > 0) {
+            this.cache = new BoundedLongKeyCache<String>(maxSize);
+        } else {
+            this.cache = null;
+        }
+        
+        long range = 1;
+        while(range < rangeSize) {
+            range <<= 1;
+        }
+        this.rangeSize = range;
+        
+        this.typeNames = new ConcurrentHashMap<String, String>();
+    }
+    
+    boolean isEnabled()
+    {
+        return cache != null;
+    }
+    
+    /**
+     * Finds the type name for the given MOF ID.
+     * 
+     * @param session the current Hibernate session
+     * @param mofId a MOF ID
+     * @return the type name for the MOF ID or null if no object with that
+     *         MOF ID exists
+     */
+    String lookup(Session session, long mofId)
+    {
+        if (cache == null) {
+            return queryTypeName(session, mofId);
+        }
+        
+        String typeName = cache.get(mofId);
+        if (typeName != null) {
+            return typeName;
+        }
+        
+        if (rangeSize <= 1) {
+            typeName = queryTypeName(session, mofId);
+            if (typeName != null) {
+                cache.put(mofId, typeName);
+            }
+            return typeName;
+        }
+        
+        long minMofId = mofId & ~(rangeSize - 1);
+        
+        Query query = session.getNamedQuery("TypeMappingByMofIdRange");
+        query.setLong("minMofId", minMofId);
+        query.setLong("maxMofId", minMofId + rangeSize);
+        
+        for(Object o: query.list()) {
+            Object[] row = (Object[])o;
+            long rowMofId = ((Number)row[0]).longValue();
+            String rowTypeName = canonicalize((String)row[1]);
+            
+            cache.put(rowMofId, rowTypeName);
+            if (rowMofId == mofId) {
+                typeName = rowTypeName;
+            }
+        }
+        
+        return typeName;
+    }
+    
+    /**
+     * Finds the type names for the given MOF IDs.  Mappings not already
+     * cached are loaded with as few queries as possible.
+     * 
+     * @param session the current Hibernate session
+     * @param mofIds a collection of MOF IDs
+     * @return a multi-map of type name to MOF IDs; MOF IDs with no mapping
+     *         are omitted
+     */
+    HashMultiMap<String, Long> lookup(Session session, Collection<Long> mofIds)
+    {
+        HashMultiMap<String, Long> result = new HashMultiMap<String, Long>();
+        
+        List<Long> missing = new ArrayList<Long>();
+        for(Long mofId: mofIds) {
+            String typeName = (cache != null) ? cache.get(mofId) : null;
+            if (typeName != null) {
+                result.put(typeName, mofId);
+            } else {
+                missing.add(mofId);
+            }
+        }
+        
+        if (missing.isEmpty()) {
+            return result;
+        }
+        
+        Query query = session.getNamedQuery("TypeMappingByMofIds");
+        
+        int size = missing.size();
+        for(int start = 0; start < size; start += MAX_IN_CLAUSE) {
+            List<Long> chunk = 
+                missing.subList(start, Math.min(start + MAX_IN_CLAUSE, size));
+            
+            query.setParameterList("mofIds", chunk);
+            for(Object o: query.list()) {
+                Object[] row = (Object[])o;
+                long rowMofId = ((Number)row[0]).longValue();
+                String rowTypeName = canonicalize((String)row[1]);
+                
+                if (cache != null) {
+                    cache.put(rowMofId, rowTypeName);
+                }
+                result.put(rowTypeName, rowMofId);
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Loads all type mappings for the given table prefix, up to the 
+     * cache's capacity.
+     * 
+     * @param session a Hibernate session
+     * @param tablePrefix the repository's table prefix
+     * @return the number of mappings loaded
+     */
+    int preload(Session session, String tablePrefix)
+    {
+        if (cache == null) {
+            return 0;
+        }
+        
+        Query query = session.getNamedQuery("AllTypeMappingsProjection");
+        query.setString("tablePrefix", tablePrefix);
+        query.setMaxResults(cache.getMaxSize());
+        
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        int count = 0;
+        try {
+            while(results.next()) {
+                long mofId = results.getLong(0);
+                String typeName = canonicalize(results.getString(1));
+                
+                cache.put(mofId, typeName);
+                count++;
+            }
+        } finally {
+            results.close();
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Records the type mappings deleted and created by a write transaction.
+     * Must only be invoked after the transaction has committed.
+     * 
+     * @param deletedMofIds MOF IDs of deleted objects
+     * @param createdMappings type mappings of created objects
+     */
+    void recordCommit(
+        Collection<Long> deletedMofIds, 
+        Collection<MofIdTypeMapping> createdMappings)
+    {
+        if (cache == null) {
+            return;
+        }
+        
+        for(Long mofId: deletedMofIds) {
+            recordDeletion(mofId);
+        }
+        for(MofIdTypeMapping mapping: createdMappings) {
+            recordCreation(mapping.getMofId(), mapping.getTypeName());
+        }
+    }
+    
+    void recordCreation(long mofId, String typeName)
+    {
+        if (cache != null) {
+            cache.put(mofId, canonicalize(typeName));
+        }
+    }
+    
+    void recordDeletion(long mofId)
+    {
+        if (cache != null) {
+            cache.remove(mofId);
+        }
+    }
+    
+    void clear()
+    {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+    
+    long getHitCount()
+    {
+        return cache != null ? cache.getHitCount() : 0L;
+    }
+    
+    long getMissCount()
+    {
+        return cache != null ? cache.getMissCount() : 0L;
+    }
+    
+    int size()
+    {
+        return cache != null ? cache.size() : 0;
+    }
+    
+    private String queryTypeName(Session session, long mofId)
+    {
+        Query query = session.getNamedQuery("TypeMappingByMofId");
+        query.setLong("mofId", mofId);
+        
+        MofIdTypeMapping mapping = (MofIdTypeMapping)query.uniqueResult();
+        if (mapping == null) {
+            return null;
+        }
+        
+        return canonicalize(mapping.getTypeName());
+    }
+    
+    private String canonicalize(String typeName)
+    {
+        String canonical = typeNames.putIfAbsent(typeName, typeName);
+        if (canonical == null) {
+            return typeName;
+        }
+        return canonical;
+    }
+}
+
+// End MofIdTypeLookupCache.java
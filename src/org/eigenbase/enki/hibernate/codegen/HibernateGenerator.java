@@ -89,6 +89,26 @@ import org.eigenbase.enki.codegen.*;
  *     for each model type.  Defaults to false.  Optional.
  *   </td>
  * </tr>
+ * <tr>
+ *   <td align="left">{@value #VERSIONED_OPTION}</td>
+ *   <td align="left">
+ *     Boolean flag to control whether each entity table receives a version
+ *     column, which Hibernate checks and increments on every update and
+ *     delete.  Required for 
+ *     {@link org.eigenbase.enki.hibernate.HibernateMDRepository#PROPERTY_STORAGE_OPTIMISTIC_WRITES}.
+ *     Defaults to false.  Optional.
+ *   </td>
+ * </tr>
+ * <tr>
+ *   <td align="left">{@value #SPARSE_ORDINALS_OPTION}</td>
+ *   <td align="left">
+ *     Boolean flag to control whether ordered associations store their 
+ *     elements with sparse ordinals, so that inserting or removing an 
+ *     element rewrites a single row rather than the ordinals of all 
+ *     subsequent elements.  Changes the schema of the ordered association
+ *     collection tables.  Defaults to false.  Optional.
+ *   </td>
+ * </tr>
  * </table>
  * 
  * @author Stephan Zuercher
@@ -119,6 +139,18 @@ public class HibernateGenerator extends MdrGenerator
      */
     public static final String GENERATE_VIEWS_OPTION = "generateViews";
     
+    /**
+     * Name of the generator option that controls the generation of version
+     * columns for optimistic concurrency control.
+     */
+    public static final String VERSIONED_OPTION = "versioned";
+    
+    /**
+     * Name of the generator option that controls whether ordered 
+     * associations are stored with sparse ordinals.
+     */
+    public static final String SPARSE_ORDINALS_OPTION = "sparseOrdinals";
+    
     public static final String IMPL_SUFFIX = "$Hib";
     
     /** Prefix for all table names in this metamodel. */
@@ -147,6 +179,12 @@ public class HibernateGenerator extends MdrGenerator
     /** Generate views flag. */
     private boolean generateViews;
     
+    /** Generate version columns flag. */
+    private boolean versioned;
+    
+    /** Sparse ordinals flag. */
+    private boolean sparseOrdinals;
+    
     public HibernateGenerator()
     {
         super();
@@ -199,6 +237,16 @@ public class HibernateGenerator extends MdrGenerator
         if (generateViewsValue != null) {
             generateViews = Boolean.parseBoolean(generateViewsValue);
         }
+        
+        String versionedValue = options.get(VERSIONED_OPTION);
+        if (versionedValue != null) {
+            versioned = Boolean.parseBoolean(versionedValue);
+        }
+        
+        String sparseOrdinalsValue = options.get(SPARSE_ORDINALS_OPTION);
+        if (sparseOrdinalsValue != null) {
+            sparseOrdinals = Boolean.parseBoolean(sparseOrdinalsValue);
+        }
     }
     
     /**
@@ -217,6 +265,7 @@ public class HibernateGenerator extends MdrGenerator
         javaHandler.setIncludes(includedPackageList);
         javaHandler.setPluginMode(pluginMode);
         javaHandler.setTablePrefix(tablePrefix);
+        javaHandler.setSparseOrdinals(sparseOrdinals);
         addHandler(javaHandler);
         
         HibernateMappingHandler mappingHandler = new HibernateMappingHandler();
@@ -224,6 +273,8 @@ public class HibernateGenerator extends MdrGenerator
         mappingHandler.setIncludes(includedPackageList);
         mappingHandler.setPluginMode(pluginMode);
         mappingHandler.setGenerateViews(generateViews);
+        mappingHandler.setVersioned(versioned);
+        mappingHandler.setSparseOrdinals(sparseOrdinals);
         if (defaultStringLength != -1) {
             mappingHandler.setDefaultStringLength(defaultStringLength);
         }
@@ -348,6 +348,9 @@ public class HibernateJavaHandler
 
     private String tablePrefix;
     
+    /** If true, ordered association storage uses sparse ordinals. */
+    private boolean sparseOrdinals;
+    
     public HibernateJavaHandler()
     {
         super();
@@ -419,6 +422,19 @@ public class HibernateJavaHandler
     {
         this.tablePrefix = tablePrefix;
     }
+    
+    /**
+     * Configures whether generated ordered association storage classes
+     * use sparse ordinals.  Must match the setting used to generate the
+     * model's mapping (see 
+     * {@link HibernateMappingHandler#setSparseOrdinals(boolean)}).
+     * 
+     * @param sparseOrdinals if true, use sparse ordinals
+     */
+    public void setSparseOrdinals(boolean sparseOrdinals)
+    {
+        this.sparseOrdinals = sparseOrdinals;
+    }
 
     @Override
     public void setOutputDir(File outputDir)
@@ -501,37 +517,43 @@ public class HibernateJavaHandler
                 ASSOCIATION_ONE_TO_ONE_LAZY_BASE,
                 AssociationKindEnum.ONE_TO_ONE,
                 HibernateMappingHandler.ASSOC_ONE_TO_ONE_LAZY_TABLE,
-                null);
+                null,
+                false);
             generateAssociationStorageSubclass(
                 assocOneToManyLazyClass,
                 ASSOCIATION_ONE_TO_MANY_LAZY_BASE,
                 AssociationKindEnum.ONE_TO_MANY,
                 HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_TABLE,
-                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_CHILDREN_TABLE);
+                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_CHILDREN_TABLE,
+                false);
             generateAssociationStorageSubclass(
                 assocOneToManyLazyHighCardinalityClass,
                 ASSOCIATION_ONE_TO_MANY_LAZY_HIGH_CARDINALITY_BASE,
                 AssociationKindEnum.ONE_TO_MANY,
                 HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_HC_TABLE,
-                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_HC_CHILDREN_TABLE);
+                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_HC_CHILDREN_TABLE,
+                false);
             generateAssociationStorageSubclass(
                 assocOneToManyLazyOrderedClass, 
                 ASSOCIATION_ONE_TO_MANY_LAZY_ORDERED_BASE,
                 AssociationKindEnum.ONE_TO_MANY,
                 HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_ORDERED_TABLE,
-                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE);
+                HibernateMappingHandler.ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE,
+                true);
             generateAssociationStorageSubclass(
                 assocManyToManyLazyClass, 
                 ASSOCIATION_MANY_TO_MANY_LAZY_BASE,
                 AssociationKindEnum.MANY_TO_MANY,
                 HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_TABLE,
-                HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_TARGET_TABLE);
+                HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_TARGET_TABLE,
+                false);
             generateAssociationStorageSubclass(
                 assocManyToManyLazyOrderedClass, 
                 ASSOCIATION_MANY_TO_MANY_LAZY_ORDERED_BASE,
                 AssociationKindEnum.MANY_TO_MANY,
                 HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_ORDERED_TABLE,
-                HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE);
+                HibernateMappingHandler.ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE,
+                true);
         }
         
         super.endGeneration(throwing);
@@ -547,6 +569,7 @@ public class HibernateJavaHandler
      * @param assocKind the basic type of association
      * @param tableName association table name
      * @param collectionTableName association collection table name
+     * @param ordered whether the association storage is ordered
      * @throws GenerationException if there is an error generating the class
      */
     private void generateAssociationStorageSubclass(
@@ -554,7 +577,8 @@ public class HibernateJavaHandler
         JavaClassReference superClassRef,
         AssociationKindEnum assocKind,
         String tableName,
-        String collectionTableName)
+        String collectionTableName,
+        boolean ordered)
     throws GenerationException
     {
         String typeName = classRef.toFull();
@@ -605,6 +629,13 @@ public class HibernateJavaHandler
             writeln("return _collectionTable;");
             endBlock();
             
+            if (ordered && sparseOrdinals) {
+                newLine();
+                startBlock("public boolean getSparseOrdinals()");
+                writeln("return true;");
+                endBlock();
+            }
+            
             writeEntityFooter();
         }
         finally {
@@ -1248,6 +1279,11 @@ public class HibernateJavaHandler
             generateRefImmediateComposite(
                 cls, refInfoMap, unrefAssocRefInfoMap, componentInfoMap);
             
+            List<StructuralFeature> instanceFeatures = 
+                new ArrayList<StructuralFeature>(instanceAttributes);
+            instanceFeatures.addAll(instanceReferences);
+            writeRefFeatureDispatch(instanceFeatures);
+            
             newLine();
             generateClassInstanceCheckConstraints(
                 instanceAttributes, instanceReferences, nonDataTypeAttribs);
@@ -1679,6 +1715,62 @@ public class HibernateJavaHandler
         endBlock();
     }
     
+    /**
+     * Generates an implementation of 
+     * {@link HibernateRefClass#getComposingAssociationColumnNames()} for the
+     * described references.  Uses the same criteria as
+     * {@link #generateGetComposingAssociationsMethod(MofClass, List)}.
+     *  
+     * @param cls MofClass describing the class
+     * @param refInfos descriptions of {@link Reference} instances which must
+     *                 be handled by the generated method
+     * @throws GenerationException if there's an error generating the method
+     */
+    private void generateGetComposingAssociationColumnNamesMethod(
+        MofClass cls,
+        List<ReferenceInfo> refInfos)
+    throws GenerationException
+    {
+        startBlock(
+            "public ",
+            JAVA_UTIL_COLLECTION_CLASS,
+            "<String> getComposingAssociationColumnNames()");
+
+        if (cls.isAbstract()) {
+            writeln("throw new UnsupportedOperationException();");
+        } else {
+            writeln("return ", JAVA_UTIL_ARRAYS_CLASS, ".asList(");
+            increaseIndent();
+            writeln("new String[] {");
+            increaseIndent();
+        
+            for(ReferenceInfo refInfo: refInfos) {
+                boolean composing;
+                if (refInfo instanceof ComponentInfo) {
+                    composing = refInfo.isExposedEndFirst();
+                } else {
+                    composing = 
+                        refInfo.isComposite(refInfo.getExposedEndIndex());
+                }
+                
+                if (!composing) {
+                    continue;
+                }
+                
+                String columnName = 
+                    StringUtil.toInitialLower(
+                        generator.transformIdentifier(
+                            refInfo.getReferencedEndBaseName()));
+                writeln(QUOTE, columnName, QUOTE, ",");
+            }
+        
+            decreaseIndent();
+            writeln("});");
+            decreaseIndent();
+        }
+        endBlock();
+    }
+    
     /**
      * Generates an association method generically based on the described
      * references and {@link AssocMethodGenerator}.
@@ -3253,6 +3345,8 @@ public class HibernateJavaHandler
             generateGetAssociationColumnNameMethod(cls, refInfos);
             newLine();
             generateGetAssociationColumnNamesMethod(cls, refInfos);
+            newLine();
+            generateGetComposingAssociationColumnNamesMethod(cls, refInfos);
             
             writeEntityFooter();
         }
@@ -68,6 +68,17 @@ public class HibernateMappingHandler
 
     /** Name of the object property that stores an entity's MOF ID. */
     private static final String MOF_ID_PROPERTY_NAME = "mofId";
+    
+    /** 
+     * Name of the version column generated if {@link #versioned} is set.
+     */
+    public static final String VERSION_COLUMN_NAME = "enkiVersion";
+    
+    /** 
+     * Name of the {@link HibernateObject} field mapped to 
+     * {@link #VERSION_COLUMN_NAME}.
+     */
+    private static final String VERSION_FIELD_NAME = "enkiVersion";
 
     /** Name of the type property for association. */
     private static final String ASSOC_TYPE_PROPERTY = "type";
@@ -98,6 +109,8 @@ public class HibernateMappingHandler
         "parentId";
     public static final String ASSOC_ONE_TO_MANY_CHILDREN_PROPERTY = 
         "children";
+    public static final String ASSOC_ONE_TO_MANY_SPARSE_CHILDREN_PROPERTY = 
+        "sparseChildren";
     private static final String ASSOC_ONE_TO_MANY_CHILD_KEY_COLUMN = 
         "mofId";
     private static final String ASSOC_ONE_TO_MANY_CHILD_ORDINAL_COLUMN = 
@@ -129,6 +142,8 @@ public class HibernateMappingHandler
     public static final String ASSOC_MANY_TO_MANY_SOURCE_ID_COLUMN =
         "sourceId";
     public static final String ASSOC_MANY_TO_MANY_TARGET_PROPERTY = "target";
+    public static final String ASSOC_MANY_TO_MANY_SPARSE_TARGET_PROPERTY = 
+        "sparseTarget";
     public static final String ASSOC_MANY_TO_MANY_LAZY_TARGET_TABLE = 
         "AssocManyToManyTarget";
     public static final String ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE = 
@@ -220,6 +235,8 @@ public class HibernateMappingHandler
     
     private int defaultStringLength;
     private boolean generateViews;
+    private boolean versioned;
+    private boolean sparseOrdinals;
     
     private String initializerName;
 
@@ -256,6 +273,29 @@ public class HibernateMappingHandler
         this.generateViews = generateViews;
     }
     
+    /**
+     * Configures whether each entity mapping includes a version property.
+     * 
+     * @param versioned if true, generate version columns
+     */
+    public void setVersioned(boolean versioned)
+    {
+        this.versioned = versioned;
+    }
+    
+    /**
+     * Configures whether ordered association collections are mapped with
+     * sparse ordinals (a sorted map keyed by ordinal) rather than as 
+     * densely indexed lists.
+     * 
+     * @param sparseOrdinals if true, map ordered associations with sparse
+     *                       ordinals
+     */
+    public void setSparseOrdinals(boolean sparseOrdinals)
+    {
+        this.sparseOrdinals = sparseOrdinals;
+    }
+    
     /**
     * Configures a default string column length, measured in characters.  
     * If left unspecified, the value of
@@ -652,22 +692,34 @@ public class HibernateMappingHandler
             "name", ASSOC_ONE_TO_MANY_PARENT_ID_COLUMN,
             "column", hibernateQuote(ASSOC_ONE_TO_MANY_PARENT_ID_COLUMN));
         
-        startElem(
-            "list",
-            "name", ASSOC_ONE_TO_MANY_CHILDREN_PROPERTY,
-            "table", tableName(ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE),
-            "cascade", "save-update,evict",
-            "lazy", "true",
-            "fetch", ASSOC_ONE_TO_MANY_LAZY_FETCH_TYPE);
+        String collectionElem = sparseOrdinals ? "map" : "list";
+        if (sparseOrdinals) {
+            startElem(
+                collectionElem,
+                "name", ASSOC_ONE_TO_MANY_SPARSE_CHILDREN_PROPERTY,
+                "table", 
+                    tableName(ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE),
+                "cascade", "save-update,evict",
+                "lazy", "true",
+                "fetch", ASSOC_ONE_TO_MANY_LAZY_FETCH_TYPE,
+                "sort", "natural");
+        } else {
+            startElem(
+                collectionElem,
+                "name", ASSOC_ONE_TO_MANY_CHILDREN_PROPERTY,
+                "table", 
+                    tableName(ASSOC_ONE_TO_MANY_LAZY_ORDERED_CHILDREN_TABLE),
+                "cascade", "save-update,evict",
+                "lazy", "true",
+                "fetch", ASSOC_ONE_TO_MANY_LAZY_FETCH_TYPE);
+        }
         writeCacheElement();        
         writeEmptyElem(
             "key", 
             "column", hibernateQuote(ASSOC_ONE_TO_MANY_CHILD_KEY_COLUMN),
             "foreign-key", 
                 indexName(ASSOC_ONE_TO_MANY_ORDERED_CHILD_KEY_INDEX));
-        writeEmptyElem(
-            "list-index", 
-            "column", hibernateQuote(ASSOC_ONE_TO_MANY_CHILD_ORDINAL_COLUMN));
+        writeOrdinalElem(ASSOC_ONE_TO_MANY_CHILD_ORDINAL_COLUMN);
         startElem(
             "composite-element", "class", assocLazyElementClass);
         writeEmptyElem(
@@ -682,7 +734,7 @@ public class HibernateMappingHandler
             "column", hibernateQuote(ASSOC_ONE_TO_MANY_CHILD_ID_COLUMN),
             "not-null", "true");
         endElem("composite-element");
-        endElem("list");
+        endElem(collectionElem);
         
         // Named queries
         newLine();
@@ -812,23 +864,34 @@ public class HibernateMappingHandler
             "name", ASSOC_MANY_TO_MANY_SOURCE_ID_COLUMN,
             "column", hibernateQuote(ASSOC_MANY_TO_MANY_SOURCE_ID_COLUMN));
         
-        startElem(
-            "list",
-            "name", ASSOC_MANY_TO_MANY_TARGET_PROPERTY,
-            "table", tableName(ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE),
-            "cascade", "save-update,evict",
-            "lazy", "true",
-            "fetch", ASSOC_MANY_TO_MANY_LAZY_FETCH_TYPE);
+        String collectionElem = sparseOrdinals ? "map" : "list";
+        if (sparseOrdinals) {
+            startElem(
+                collectionElem,
+                "name", ASSOC_MANY_TO_MANY_SPARSE_TARGET_PROPERTY,
+                "table", 
+                    tableName(ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE),
+                "cascade", "save-update,evict",
+                "lazy", "true",
+                "fetch", ASSOC_MANY_TO_MANY_LAZY_FETCH_TYPE,
+                "sort", "natural");
+        } else {
+            startElem(
+                collectionElem,
+                "name", ASSOC_MANY_TO_MANY_TARGET_PROPERTY,
+                "table", 
+                    tableName(ASSOC_MANY_TO_MANY_LAZY_ORDERED_TARGET_TABLE),
+                "cascade", "save-update,evict",
+                "lazy", "true",
+                "fetch", ASSOC_MANY_TO_MANY_LAZY_FETCH_TYPE);
+        }
         writeCacheElement();
         writeEmptyElem(
             "key",
             "column", hibernateQuote(ASSOC_MANY_TO_MANY_TARGET_KEY_COLUMN),
             "foreign-key", 
                 indexName(ASSOC_MANY_TO_MANY_ORDERED_TARGET_KEY_INDEX));
-        writeEmptyElem(
-            "list-index",
-            "column", 
-            hibernateQuote(ASSOC_MANY_TO_MANY_TARGET_ORDINAL_COLUMN));
+        writeOrdinalElem(ASSOC_MANY_TO_MANY_TARGET_ORDINAL_COLUMN);
         startElem(
             "composite-element", "class", assocLazyElementClass);
         // REVIEW: SWZ: 2008-07-29: purposely re-using 1-to-many field names 
@@ -846,7 +909,7 @@ public class HibernateMappingHandler
             "column", hibernateQuote(ASSOC_MANY_TO_MANY_TARGET_ID_COLUMN),
             "not-null", "true");
         endElem("composite-element");
-        endElem("list");
+        endElem(collectionElem);
         
         // Named queries
         newLine();
@@ -1387,6 +1450,28 @@ public class HibernateMappingHandler
         }
     }
     
+    /**
+     * Writes the ordinal column element of an ordered association's 
+     * collection mapping: a list index or, with sparse ordinals, a map key.
+     * 
+     * @param column ordinal column name
+     * @throws GenerationException if there is an error writing the element
+     */
+    private void writeOrdinalElem(String column)
+        throws GenerationException
+    {
+        if (sparseOrdinals) {
+            writeEmptyElem(
+                "map-key",
+                "column", hibernateQuote(column),
+                "type", "integer");
+        } else {
+            writeEmptyElem(
+                "list-index",
+                "column", hibernateQuote(column));
+        }
+    }
+    
     private void writeIdBlock()
         throws GenerationException
     {
@@ -1396,6 +1481,16 @@ public class HibernateMappingHandler
             "column", hibernateQuote(MOF_ID_COLUMN_NAME));
         writeEmptyElem("generator", "class", "assigned");
         endElem("id");
+        
+        if (versioned) {
+            // Hibernate requires version to immediately follow id.
+            writeEmptyElem(
+                "version",
+                "name", VERSION_FIELD_NAME,
+                "column", hibernateQuote(VERSION_COLUMN_NAME),
+                "type", "integer",
+                "access", "field");
+        }
     }
     
     private void addComponentAttrib(
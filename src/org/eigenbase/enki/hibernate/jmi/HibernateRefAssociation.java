@@ -128,9 +128,8 @@ public abstract class HibernateRefAssociation
             return false;
         }
         
-        Collection<? extends RefObject> queryResult = assoc.query(true);
-        
-        return queryResult.contains(end2);
+        return assoc.linkExists(
+            (HibernateAssociable)end1, (HibernateAssociable)end2);
     }
 
     @Override
@@ -236,6 +235,10 @@ public abstract class HibernateRefAssociation
     private void generateAddEvent(
         RefObject fixedEnd, String fixedEndName, RefObject end, int index)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         getHibernateRepository().enqueueEvent(
             new AssociationEvent(
                 this,
@@ -249,6 +252,10 @@ public abstract class HibernateRefAssociation
     
     protected void fireRemoveEvent(RefObject end1, RefObject end2)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         int index = AssociationEvent.POSITION_NONE;
         if (end2Multiplicity.isOrdered()) {
             Collection<?> c = query(true, end1);
@@ -295,6 +302,10 @@ public abstract class HibernateRefAssociation
     private void generateRemoveEvent(
         RefObject fixedEnd, String fixedEndName, RefObject end, int index)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         getHibernateRepository().enqueueEvent(
             new AssociationEvent(
                 this,
@@ -313,6 +324,10 @@ public abstract class HibernateRefAssociation
         RefObject newEnd,
         int index)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         String fixedEndName;
         Multiplicity mult;
         if (fixedIsFirstEnd) {
@@ -137,4 +137,16 @@ public abstract class HibernateRefClass
      * @throws UnsupportedOperationException if this RefClass is abstract
      */
     public abstract Collection<String> getAssociationColumnNames();
+    
+    /**
+     * Retrieves the names of the columns that store a reference to an
+     * association in which this type is the composite owner (including
+     * associations that store component attributes).  The objects at the
+     * other end of these associations are deleted with this object.
+     *
+     * @return the names of all columns that hold a composing association 
+     *         reference, possibly empty
+     * @throws UnsupportedOperationException if this RefClass is abstract
+     */
+    public abstract Collection<String> getComposingAssociationColumnNames();
 }
@@ -223,6 +223,10 @@ public abstract class HibernateRefObject
     protected void fireAttributeSetEvent(
         String attribName, Object oldValue, Object newValue)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 this,
@@ -238,6 +242,10 @@ public abstract class HibernateRefObject
         boolean isExposedEndFirst,
         HibernateAssociation assoc)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         HibernateRefAssociation refAssoc = 
             getHibernateRepository().findRefAssociation(refAssocId);
         
@@ -26,6 +26,7 @@ import java.util.*;
 import javax.management.openmbean.*;
 
 import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.hibernate.storage.*;
 import org.eigenbase.enki.mbean.*;
 import org.eigenbase.enki.mdr.*;
 import org.hibernate.*;
@@ -43,6 +44,9 @@ class HibernateMDRepositoryMBean extends EnkiRepository
     private static final String statsValueHeader = "value";
     private static final String statsDesc = 
         "repository performance statistics";
+    private static final String listenerStatsDesc = 
+        "repository listener statistics";
+    private static final String metricsDesc = "repository metrics";
     
     private final HibernateMDRepository repos;
     
@@ -59,16 +63,12 @@ class HibernateMDRepositoryMBean extends EnkiRepository
 
     public void enablePerformanceStatistics()
     {
-        SessionFactory sessionFactory = repos.getSessionFactory();
-
-        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        repos.setMetricsEnabled(true);
     }
     
     public void disablePerformanceStatistics()
     {
-        SessionFactory sessionFactory = repos.getSessionFactory();
-
-        sessionFactory.getStatistics().setStatisticsEnabled(false);
+        repos.setMetricsEnabled(false);
     }
     
     public TabularData getPerformanceStatistics() throws Exception
@@ -78,6 +78,19 @@ class HibernateMDRepositoryMBean extends EnkiRepository
         Statistics stats = sessionFactory.getStatistics();
         
         LinkedHashMap<String, Object> data = loadStats(stats);
+        loadMofIdStats(data, repos.getMofIdGeneratorStatistics());
+        
+        EnkiCacheProvider.Statistics cacheStats = 
+            repos.getSharedCacheStatistics();
+        if (cacheStats != null) {
+            loadSharedCacheStats(data, cacheStats);
+        }
+        
+        HibernateBackupRestoreUtil.RestoreStatistics restoreStats = 
+            repos.getRestoreStatistics();
+        if (restoreStats != null) {
+            loadRestoreStats(data, restoreStats);
+        }
 
         return EnkiMBeanUtil.tabularDataFromMap(
             data,
@@ -86,6 +99,49 @@ class HibernateMDRepositoryMBean extends EnkiRepository
             statsValueHeader);
     }
 
+    @Override
+    public TabularData getMetrics() throws Exception
+    {
+        LinkedHashMap<String, Object> data = 
+            new LinkedHashMap<String, Object>();
+        data.put("metrics enabled", repos.getMetrics().isEnabled());
+        data.put("event queue depth", repos.getEventQueueDepth());
+        repos.getMetrics().snapshot(data);
+        
+        return EnkiMBeanUtil.tabularDataFromMap(
+            data,
+            metricsDesc,
+            statsKeyHeader,
+            statsValueHeader);
+    }
+    
+    @Override
+    public TabularData getListenerStatistics() throws Exception
+    {
+        LinkedHashMap<String, Object> data = 
+            new LinkedHashMap<String, Object>();
+        for(EnkiChangeEventDispatcher.ListenerStatistics stats: 
+                repos.getListenerStatistics())
+        {
+            String prefix = "listener: " + stats.getListenerName() + ": ";
+            data.put(prefix + "overflow policy", stats.getOverflowPolicy());
+            data.put(prefix + "queue capacity", stats.getQueueCapacity());
+            data.put(prefix + "queue depth", stats.getQueueDepth());
+            data.put(prefix + "lag (ms)", stats.getLagMillis());
+            data.put(prefix + "delivered", stats.getDeliveredCount());
+            data.put(prefix + "dropped", stats.getDroppedCount());
+            data.put(prefix + "coalesced", stats.getCoalescedCount());
+            data.put(prefix + "blocked", stats.getBlockedCount());
+            data.put(prefix + "blocked time (ms)", stats.getBlockedMillis());
+        }
+        
+        return EnkiMBeanUtil.tabularDataFromMap(
+            data,
+            listenerStatsDesc,
+            statsKeyHeader,
+            statsValueHeader);
+    }
+    
     private LinkedHashMap<String, Object> loadStats(Statistics stats)
     {
         LinkedHashMap<String, Object> data = 
@@ -137,6 +193,45 @@ class HibernateMDRepositoryMBean extends EnkiRepository
         
         return data;
     }
+    
+    private void loadMofIdStats(
+        LinkedHashMap<String, Object> data, MofIdGenerator.Statistics stats)
+    {
+        data.put("mof id slab hits", stats.getHitCount());
+        data.put("mof id slab misses", stats.getMissCount());
+        data.put("mof id stalls (minimize this)", stats.getStallCount());
+        data.put("mof id stall time (ms)", stats.getStallMillis());
+        data.put("mof id block fetches", stats.getBlockFetchCount());
+        data.put("mof id block prefetches", stats.getPrefetchCount());
+        data.put("mof id block size", stats.getBlockSize());
+    }
+    
+    private void loadSharedCacheStats(
+        LinkedHashMap<String, Object> data, 
+        EnkiCacheProvider.Statistics stats)
+    {
+        data.put("shared cache hits", stats.getHitCount());
+        data.put("shared cache misses", stats.getMissCount());
+        data.put("shared cache hit ratio", stats.getHitRatio());
+        data.put("shared cache puts", stats.getPutCount());
+        data.put("shared cache evictions", stats.getEvictionCount());
+        data.put("shared cache entries", stats.getSize());
+        data.put("shared cache max entries", stats.getMaxSize());
+    }
+    
+    private void loadRestoreStats(
+        LinkedHashMap<String, Object> data, 
+        HibernateBackupRestoreUtil.RestoreStatistics stats)
+    {
+        data.put("restore extent", stats.getExtentName());
+        data.put("restore state", stats.getState());
+        data.put("restore threads", stats.getThreads());
+        data.put("restore batch size", stats.getBatchSize());
+        data.put("restore rows parsed", stats.getRowsParsed());
+        data.put("restore rows loaded", stats.getRowsLoaded());
+        data.put("restore time (ms)", stats.getElapsedMillis());
+        data.put("restore rows per second", stats.getRowsPerSecond());
+    }
 }
 
 // End HibernateMDRepositoryMBean.java
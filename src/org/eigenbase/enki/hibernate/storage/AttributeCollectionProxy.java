@@ -63,6 +63,10 @@ public class AttributeCollectionProxy<E extends RefObject>
     @Override
     protected void fireAddEvent(E e)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -76,6 +80,10 @@ public class AttributeCollectionProxy<E extends RefObject>
     @Override
     protected void fireRemoveEvent(E e)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
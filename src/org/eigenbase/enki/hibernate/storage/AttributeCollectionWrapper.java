@@ -145,6 +145,10 @@ public class AttributeCollectionWrapper<E> implements Collection<E>
     
     protected void fireAddEvent(Object o)
     {
+        if (!source.getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -157,6 +161,10 @@ public class AttributeCollectionWrapper<E> implements Collection<E>
 
     protected void fireRemoveEvent(Object o)
     {
+        if (!source.getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
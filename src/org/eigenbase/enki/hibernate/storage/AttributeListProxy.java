@@ -62,6 +62,10 @@ public class AttributeListProxy<E extends RefObject> extends ListProxy<E>
     @Override
     protected void fireAddEvent(E e, int position)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -81,6 +85,10 @@ public class AttributeListProxy<E extends RefObject> extends ListProxy<E>
     @Override
     protected void fireRemoveEvent(E e, int position)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -100,6 +108,10 @@ public class AttributeListProxy<E extends RefObject> extends ListProxy<E>
     @Override
     protected void fireSetEvent(E oldE, E newE, int position)
     {
+        if (!getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
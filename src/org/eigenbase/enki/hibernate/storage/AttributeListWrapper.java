@@ -136,6 +136,10 @@ public class AttributeListWrapper<E>
  
     protected void fireAddEvent(Object o, int position)
     {
+        if (!source.getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -148,6 +152,10 @@ public class AttributeListWrapper<E>
 
     protected void fireRemoveEvent(Object o, int position)
     {
+        if (!source.getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -160,6 +168,10 @@ public class AttributeListWrapper<E>
 
     protected void fireSetEvent(Object oldObj, Object newObj, int position)
     {
+        if (!source.getHibernateRepository().isChangeEventRequired()) {
+            return;
+        }
+        
         enqueueEvent(
             new AttributeEvent(
                 source,
@@ -99,6 +99,18 @@ public interface HibernateAssociation extends HibernateIdentifiable
      */
     public Collection<? extends RefObject> query(boolean returnSecondEnd);
     
+    /**
+     * Tests whether the given objects are linked by this association.  
+     * Implementations avoid loading the association's other members where
+     * possible.
+     * 
+     * @param end1 an object that is end1 of this association
+     * @param end2 an object that may be end2 of this association
+     * @return true if end1 and end2 are linked by this association
+     */
+    public boolean linkExists(
+        HibernateAssociable end1, HibernateAssociable end2);
+    
     /**
      * Get a Collection of the remote end(s) of the association for the given 
      * item.
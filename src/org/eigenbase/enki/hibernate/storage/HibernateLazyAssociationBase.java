@@ -21,13 +21,16 @@
 */
 package org.eigenbase.enki.hibernate.storage;
 
+import java.sql.*;
 import java.util.*;
 
 import javax.jmi.reflect.*;
 
-import org.apache.commons.collections.*;
 import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.hibernate.codegen.*;
 import org.eigenbase.enki.hibernate.jmi.*;
+import org.hibernate.*;
+import org.hibernate.dialect.Dialect;
 
 /**
  * HibernateLazyAssociationBase extends {@link HibernateAssociationBase} to
@@ -82,6 +85,22 @@ public abstract class HibernateLazyAssociationBase
     
         return repos.getByMofId(mofIds, refClass);
     }
+    
+    /**
+     * Indicates whether this association's elements are stored with sparse
+     * ordinals (see {@link SparseOrdinalList}) rather than as a densely
+     * indexed list.  Only meaningful for ordered associations.  Generated 
+     * model-specific subclasses override this method if the model was 
+     * generated with the 
+     * {@link org.eigenbase.enki.hibernate.codegen.HibernateGenerator#SPARSE_ORDINALS_OPTION}
+     * option.
+     * 
+     * @return true if elements are stored with sparse ordinals
+     */
+    public boolean getSparseOrdinals()
+    {
+        return false;
+    }
 
     /**
      * Constructs an {@link Element} object from the given {@link RefObject}.
@@ -100,134 +119,61 @@ public abstract class HibernateLazyAssociationBase
     }
     
     /**
-     * Scans the list of elements and pre-loads additional objects of the
-     * same type.  Pre-load batch size is controlled by
-     * {@link HibernateMDRepository#getBatchSize()}.
+     * Tests whether the given collection of elements contains the given
+     * element.  If the collection has already been loaded, the test is
+     * performed in memory.  Otherwise, the association's collection table
+     * is probed for the element by this association's MOF ID and the 
+     * element's child ID (both indexed) and the collection is left 
+     * uninitialized.
      * 
-     * @param elements list of Element objects
-     * @param loadedObjects list of previously loaded objects corresponding to
-     *                      elements index-by-index
-     * @param pos index of element to load
-     * @param size size of elements and loadedObjects
+     * @param elements this association's collection of elements
+     * @param elem the element to search for
+     * @return true if elements contains elem
      */
-    protected void loadBatch(
-        List<Element> elements,
-        List<HibernateAssociable> loadedObjects, 
-        final int pos,
-        final int size)
+    @SuppressWarnings("deprecation")
+    protected boolean containsElement(
+        Collection<Element> elements, Element elem)
     {
-        List<Long> preLoadMofIds = new ArrayList<Long>();
-        Map<Long, Integer> preLoadIndexes = new HashMap<Long, Integer>();
-        
-        Element element = elements.get(pos);
-        
-        final String type = element.getChildType();
-        Long elementMofId = element.getChildId();
-        preLoadMofIds.add(elementMofId);
-        preLoadIndexes.put(elementMofId, pos);
-        
-        // Look for other objects in the collection with the same type
-        // and load them together.
-        final int batchSize = getHibernateRepository().getBatchSize();
-        int numAdded = 1;
-        for(
-            int i = (pos + 1) % size; 
-            i != pos && numAdded < batchSize; 
-            i = (i + 1) % size)
-        {
-            element = elements.get(i);
-            if (loadedObjects.get(i) == null &&
-                type.equals(element.getChildType()))
-            {
-                elementMofId = element.getChildId();
-                preLoadMofIds.add(elementMofId);
-                preLoadIndexes.put(elementMofId, i);
-                numAdded++;
-            }
+        if (Hibernate.isInitialized(elements)) {
+            return elements.contains(elem);
         }
         
-        assert(numAdded == preLoadIndexes.size());
-        assert(numAdded == preLoadMofIds.size());
-        
-        Collection<RefObject> objects = load(type, preLoadMofIds);
-        assert(objects.size() == numAdded);
-        
-        for(RefObject obj: objects) {
-            long mofId = ((HibernateRefObject)obj).getMofId();
-            int index = preLoadIndexes.get(mofId);
-            loadedObjects.set(index, (HibernateAssociable)obj);
-        }
-    }
-    
-    /**
-     * Scans the list of elements and pre-loads additional objects of the
-     * same type.  See {@link #loadBatch(List, List, int, int)}.  The primary
-     * distinction is that this method handles ordered semantics, where an
-     * object can appear in the list multiple times.
-     * 
-     * @param elements list of Element objects
-     * @param loadedObjects list of previously loaded objects corresponding to
-     *                      elements index-by-index
-     * @param pos index of element to load
-     * @param size size of elements and loadedObjects
-     */
-    protected void loadNonUniqueBatch(
-        List<Element> elements,
-        List<HibernateAssociable> loadedObjects,
-        final int pos,
-        final int size)
-    {
-        assert(elements.size() == loadedObjects.size());
-        
-        List<Long> preLoadMofIds = new ArrayList<Long>();
-        MultiHashMap preLoadIndexes = new MultiHashMap();
-        
-        Element element = elements.get(pos);
-        
-        final String type = element.getChildType();
-        Long elementMofId = element.getChildId();
-        preLoadMofIds.add(elementMofId);
-        preLoadIndexes.put(elementMofId, pos);
-        
-        // Look for other objects in the collection with the same type
-        // and load them together.
-        final int batchSize = getHibernateRepository().getBatchSize();
-        int numAdded = 1;
-        for(
-            int i = (pos + 1) % size; 
-            i != pos && numAdded < batchSize; 
-            i = (i + 1) % size)
-        {
-            element = elements.get(i);
-            if (loadedObjects.get(i) == null && 
-                type.equals(element.getChildType()))
-            {
-                elementMofId = element.getChildId();
-                if (!preLoadIndexes.containsKey(elementMofId)) {
-                    preLoadMofIds.add(elementMofId);
-                    numAdded++;                    
+        HibernateMDRepository repos = getHibernateRepository();
+        Dialect dialect = repos.getSqlDialect();
+        
+        String childIdColumn = 
+            HibernateDialectUtil.quote(
+                dialect, HibernateMappingHandler.ASSOC_ONE_TO_MANY_CHILD_ID_COLUMN);
+        String sql = 
+            "select " + childIdColumn 
+            + " from " 
+            + HibernateDialectUtil.quote(
+                dialect, repos.getTablePrefix() + getCollectionTable())
+            + " where " + HibernateDialectUtil.quote(dialect, "mofId") 
+            + " = ? and " + childIdColumn + " = ?";
+        
+        Session session = repos.getCurrentSession();
+        try {
+            PreparedStatement stmt = session.connection().prepareStatement(sql);
+            try {
+                stmt.setMaxRows(1);
+                stmt.setLong(1, getMofId());
+                stmt.setLong(2, elem.getChildId());
+                
+                ResultSet rset = stmt.executeQuery();
+                try {
+                    return rset.next();
+                } finally {
+                    rset.close();
                 }
-                preLoadIndexes.put(elementMofId, i);
-            }
-        }
-        
-        assert(numAdded == preLoadIndexes.size());
-        assert(numAdded == preLoadMofIds.size());
-        
-        Collection<RefObject> objects = load(type, preLoadMofIds);
-        assert(objects.size() == numAdded);
-        
-        for(RefObject obj: objects) {
-            long mofId = ((HibernateRefObject)obj).getMofId();
-            Collection<?> indexes = (Collection<?>)preLoadIndexes.get(mofId);
-            
-            for(Object indexObj: indexes) {
-                Integer index = (Integer)indexObj;
-                loadedObjects.set(index, (HibernateAssociable)obj);
+            } finally {
+                stmt.close();
             }
+        } catch(SQLException e) {
+            throw new HibernateException(e);
         }
     }
-
+    
     /**
      * Element represents a member of the many-end of an association.  It
      * stores the object's type (via the {@link HibernateRefClass} unique
@@ -323,7 +269,7 @@ public abstract class HibernateLazyAssociationBase
         {
             Element elem = newElement((RefObject)o);
             
-            return collection.contains(elem);
+            return containsElement(collection, elem);
         }
 
         @Override
@@ -343,8 +289,8 @@ public abstract class HibernateLazyAssociationBase
      * loads the persistent {@link RefObject} instances referenced by those 
      * Element during calls to {@link #next()}. Loads are executed in batches 
      * of same-typed objects in the order in which the elements appear in the 
-     * collection. If objects of different types are interleaved, 
-     * ElementIterator skips ahead to find objects of the same type as that 
+     * collection (see {@link ElementLoader}).  If objects of different types
+     * are interleaved, each batch contains objects of the same type as that 
      * being returned by the current call.
      */
     private class ElementIterator implements Iterator<HibernateAssociable>
@@ -352,8 +298,10 @@ public abstract class HibernateLazyAssociationBase
         private final ElementCollection owner;
         private final List<Element> materializedCollection;
         private final List<HibernateAssociable> loadedObjects;
-        private int size;
+        private final ElementLoader loader;
+        private final int size;
         private int pos;
+        private boolean removed;
         
         ElementIterator(
             ElementCollection owner, Collection<Element> collection)
@@ -365,6 +313,8 @@ public abstract class HibernateLazyAssociationBase
             for(int i = 0; i < size; i++) {
                 loadedObjects.add(null);
             }
+            this.loader = 
+                new ElementLoader(materializedCollection, loadedObjects);
             
             this.pos = -1;
         }
@@ -377,6 +327,7 @@ public abstract class HibernateLazyAssociationBase
         public HibernateAssociable next()
         {
             pos++;
+            removed = false;
             
             if (pos >= size) {
                 throw new NoSuchElementException();
@@ -387,7 +338,7 @@ public abstract class HibernateLazyAssociationBase
                 return result;
             }
             
-            loadBatch(materializedCollection, loadedObjects, pos, size);
+            loader.load(pos);
             
             return loadedObjects.get(pos);
         }
@@ -397,17 +348,175 @@ public abstract class HibernateLazyAssociationBase
             if (pos < 0 || pos >= size) {
                 throw new NoSuchElementException();
             }
+            if (removed) {
+                throw new IllegalStateException();
+            }
+            
+            // The materialized collection is left as-is so that the
+            // loader's partitioning remains valid.
+            owner.remove(loadedObjects.get(pos));
+            removed = true;
+        }
+    }
+    
+    /**
+     * ElementLoader loads the {@link RefObject} instances referenced by a 
+     * list of {@link HibernateLazyAssociationBase.Element} instances in
+     * batches of same-typed objects.  The list is partitioned by type once,
+     * upon construction.  Each call to {@link #load(int)} loads the requested
+     * element along with the following unloaded elements of the same type
+     * (wrapping around to the start of the list), up to 
+     * {@link HibernateMDRepository#getBatchSize()} distinct objects.  
+     * Objects that appear in the list more than once are loaded once.  The
+     * list of elements must not be structurally modified while the loader
+     * is in use.
+     */
+    protected class ElementLoader
+    {
+        private final List<Element> elements;
+        private final List<HibernateAssociable> loadedObjects;
+        private final int batchSize;
+        
+        /** Type groups, keyed by {@link Element#getChildType()}. */
+        private final Map<String, TypeGroup> typeGroups;
+        
+        /** Each element's position in its TypeGroup's indexes. */
+        private final int[] groupPositions;
+        
+        private final List<Long> batchMofIds;
+        private final Map<Long, HibernateAssociable> batchObjects;
+        private int[] batchIndexes;
+        
+        /**
+         * Constructs a new ElementLoader.
+         * 
+         * @param elements list of Element objects
+         * @param loadedObjects list of loaded objects corresponding to
+         *                      elements index-by-index, null for objects
+         *                      not yet loaded; updated by {@link #load(int)}
+         */
+        protected ElementLoader(
+            List<Element> elements, List<HibernateAssociable> loadedObjects)
+        {
+            assert(elements.size() == loadedObjects.size());
+            
+            this.elements = elements;
+            this.loadedObjects = loadedObjects;
+            // Batch size is -1 if batch fetching is not configured.
+            this.batchSize = 
+                Math.max(1, getHibernateRepository().getBatchSize());
+            this.typeGroups = new HashMap<String, TypeGroup>();
+            this.batchMofIds = new ArrayList<Long>(batchSize);
+            this.batchObjects = new HashMap<Long, HibernateAssociable>();
+            this.batchIndexes = new int[batchSize];
+            
+            final int size = elements.size();
+            this.groupPositions = new int[size];
+            
+            TypeGroup[] elementGroups = new TypeGroup[size];
+            for(int i = 0; i < size; i++) {
+                String type = elements.get(i).getChildType();
+                TypeGroup group = typeGroups.get(type);
+                if (group == null) {
+                    group = new TypeGroup();
+                    typeGroups.put(type, group);
+                }
+                elementGroups[i] = group;
+                groupPositions[i] = group.unloaded++;
+            }
             
-            HibernateAssociable obj = loadedObjects.remove(pos);
-            materializedCollection.remove(pos);
-            owner.remove(obj);
+            for(TypeGroup group: typeGroups.values()) {
+                group.indexes = new int[group.unloaded];
+            }
             
-            pos--;
-            size--;
+            for(int i = 0; i < size; i++) {
+                elementGroups[i].indexes[groupPositions[i]] = i;
+            }
+        }
+        
+        /**
+         * Loads the element at the given index and pre-loads additional
+         * objects of the same type.
+         * 
+         * @param pos index of the element to load
+         */
+        public void load(final int pos)
+        {
+            final String type = elements.get(pos).getChildType();
+            final TypeGroup group = typeGroups.get(type);
+            final int[] indexes = group.indexes;
+            final int n = indexes.length;
+            final int start = groupPositions[pos];
+            
+            int numIndexes = 0;
+            for(
+                int i = 0; 
+                i < n && 
+                    numIndexes < group.unloaded && 
+                    batchMofIds.size() < batchSize; 
+                i++)
+            {
+                int index = indexes[(start + i) % n];
+                if (loadedObjects.get(index) != null) {
+                    continue;
+                }
+                
+                Long mofId = elements.get(index).getChildId();
+                if (!batchObjects.containsKey(mofId)) {
+                    batchObjects.put(mofId, null);
+                    batchMofIds.add(mofId);
+                }
+                
+                if (numIndexes == batchIndexes.length) {
+                    int[] newBatchIndexes = new int[numIndexes * 2];
+                    System.arraycopy(
+                        batchIndexes, 0, newBatchIndexes, 0, numIndexes);
+                    batchIndexes = newBatchIndexes;
+                }
+                batchIndexes[numIndexes++] = index;
+            }
+            
+            try {
+                for(RefObject obj: HibernateLazyAssociationBase.this.load(
+                        type, batchMofIds))
+                {
+                    batchObjects.put(
+                        ((HibernateRefObject)obj).getMofId(), 
+                        (HibernateAssociable)obj);
+                }
+                
+                for(int i = 0; i < numIndexes; i++) {
+                    int index = batchIndexes[i];
+                    HibernateAssociable obj = 
+                        batchObjects.get(elements.get(index).getChildId());
+                    if (obj != null) {
+                        loadedObjects.set(index, obj);
+                        group.unloaded--;
+                    }
+                }
+            } finally {
+                batchMofIds.clear();
+                batchObjects.clear();
+            }
         }
     }
     
-
+    /**
+     * TypeGroup records the indexes of the elements of a single type for
+     * {@link ElementLoader}.
+     */
+    private static class TypeGroup
+    {
+        /** Indexes of this group's elements, in list order. */
+        private int[] indexes;
+        
+        /** 
+         * Upper bound on the number of this group's elements that have not 
+         * been loaded. 
+         */
+        private int unloaded;
+    }
+    
     /**
      * ElementList wraps a List of {@link HibernateLazyAssociationBase.Element}
      * objects and handles the conversion from {@link RefObject} instances to 
@@ -421,6 +530,7 @@ public abstract class HibernateLazyAssociationBase
     {
         protected final List<Element> elements;
         private final List<HibernateAssociable> cache;
+        private ElementLoader loader;
         
         protected ElementList(List<Element> elements)
         {
@@ -446,6 +556,7 @@ public abstract class HibernateLazyAssociationBase
             
             elements.remove(i);
             cache.remove(i);
+            loader = null;
             
             return o;
         }
@@ -455,8 +566,10 @@ public abstract class HibernateLazyAssociationBase
             HibernateAssociable result = cache.get(index);
             if (result == null) {
                 if (preFetch) {
-                    loadNonUniqueBatch(
-                        elements, cache, index, elements.size());
+                    if (loader == null) {
+                        loader = new ElementLoader(elements, cache);
+                    }
+                    loader.load(index);
                     result = cache.get(index);
                 } else {
                     result = (HibernateAssociable)load(elements.get(index));
@@ -474,6 +587,7 @@ public abstract class HibernateLazyAssociationBase
             
             elements.add(index, elem);
             cache.add(index, e);
+            loader = null;
         }
         
         @Override
@@ -503,7 +617,7 @@ public abstract class HibernateLazyAssociationBase
         {
             Element elem = newElement((RefObject)o);
             
-            return elements.contains(elem);
+            return containsElement(elements, elem);
         }
 
         @Override
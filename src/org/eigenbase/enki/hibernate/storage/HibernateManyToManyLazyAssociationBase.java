@@ -119,7 +119,7 @@ public abstract class HibernateManyToManyLazyAssociationBase
         Collection<HibernateAssociable> sourceAssocTargets = 
             sourceAssoc.getTargetCollection();
         if (!sourceAssoc.getUnique() || 
-            !sourceAssocTargets.contains(newTarget))
+            !sourceAssoc.getTargetElements().contains(newElement(newTarget)))
         {
             sourceAssocTargets.add(newTarget);
             result = true;
@@ -128,7 +128,7 @@ public abstract class HibernateManyToManyLazyAssociationBase
         Collection<HibernateAssociable> targetAssocTargets = 
             targetAssoc.getTargetCollection();
         if (!targetAssoc.getUnique() || 
-            !targetAssocTargets.contains(newSource))
+            !targetAssoc.getTargetElements().contains(newElement(newSource)))
         {
             targetAssocTargets.add(newSource);
             result = true;
@@ -137,6 +137,26 @@ public abstract class HibernateManyToManyLazyAssociationBase
         return result;
     }
 
+    public boolean linkExists(
+        HibernateAssociable end1, HibernateAssociable end2)
+    {
+        HibernateAssociable source;
+        HibernateAssociable target;
+        if (getReversed()) {
+            source = end2;
+            target = end1;
+        } else {
+            source = end1;
+            target = end2;
+        }
+        
+        if (((HibernateRefObject)source).getMofId() != getSourceId()) {
+            return false;
+        }
+        
+        return containsElement(getTargetElements(), newElement(target));
+    }
+    
     public boolean remove(
         HibernateAssociable end1, HibernateAssociable end2)
     {
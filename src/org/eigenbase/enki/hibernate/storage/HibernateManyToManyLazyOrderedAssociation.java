@@ -38,6 +38,8 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
     implements HibernateOrderedAssociation
 {
     private List<Element> target;
+    private SortedMap<Integer, Element> sparseTarget;
+    private SparseOrdinalList sparseTargetList;
     private ElementList targetWrapper;
     
     public HibernateManyToManyLazyOrderedAssociation()
@@ -45,10 +47,28 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
         super();
         
         this.target = new ArrayList<Element>();
+        this.sparseTarget = new TreeMap<Integer, Element>();
     }
 
+    /**
+     * Returns the targets of this association.  If 
+     * {@link #getSparseOrdinals()} is true, the list is a view of
+     * {@link #getSparseTarget()}.
+     * 
+     * @return the targets of this association
+     */
     public List<Element> getTarget()
     {
+        if (getSparseOrdinals()) {
+            SortedMap<Integer, Element> targetMap = getSparseTarget();
+            if (sparseTargetList == null || 
+                !sparseTargetList.isBackedBy(targetMap))
+            {
+                sparseTargetList = new SparseOrdinalList(targetMap);
+            }
+            return sparseTargetList;
+        }
+        
         return target;
     }
     
@@ -57,6 +77,16 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
         this.target = target;
     }
     
+    public SortedMap<Integer, Element> getSparseTarget()
+    {
+        return sparseTarget;
+    }
+    
+    public void setSparseTarget(SortedMap<Integer, Element> sparseTarget)
+    {
+        this.sparseTarget = sparseTarget;
+    }
+    
     @Override
     public void addInitialTarget(HibernateAssociable newTarget)
     {
@@ -96,7 +126,11 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
     @Override
     protected void emptyTargetElements()
     {
-        setTarget(new ArrayList<Element>());
+        if (getSparseOrdinals()) {
+            setSparseTarget(new TreeMap<Integer, Element>());
+        } else {
+            setTarget(new ArrayList<Element>());
+        }
     }
 
     /*
@@ -115,7 +149,7 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
             cls.cast(obj);
         }
 
-        return (List<E>)target;
+        return (List<E>)getTarget();
     }
 
     public void add(
@@ -139,7 +173,7 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
         List<HibernateAssociable> sourceAssocTargets = 
             sourceAssoc.getTargetList();
         if (!sourceAssoc.getUnique() ||
-            !sourceAssocTargets.contains(newTarget))
+            !sourceAssoc.getTargetElements().contains(newElement(newTarget)))
         {
             if (indexOnSourceAssoc) {
                 sourceAssocTargets.add(index, newTarget);
@@ -150,7 +184,7 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
         
         List<HibernateAssociable> targetAssocTargets = targetAssoc.getTargetList();
         if (!targetAssoc.getUnique() ||
-            !targetAssocTargets.contains(newSource))
+            !targetAssoc.getTargetElements().contains(newElement(newSource)))
         {
             if (indexOnTargetAssoc) {
                 targetAssocTargets.add(index, newSource);
@@ -176,6 +210,18 @@ public abstract class HibernateManyToManyLazyOrderedAssociation
         return removeInternal(sourceEnd, targetEnd, index);
     }
     
+    public void reserve(HibernateAssociable item, int index, int count)
+    {
+        if (!getSparseOrdinals()) {
+            return;
+        }
+        
+        long itemMofId = ((HibernateRefObject)item).getMofId();
+        if (itemMofId == getSourceId()) {
+            ((SparseOrdinalList)getTarget()).reserve(index, count);
+        }
+    }
+    
     public Collection <HibernateAssociable> get(HibernateAssociable item)
     {
         return getOrdered(item);
@@ -42,6 +42,15 @@ public abstract class HibernateObject
     private boolean saved;
     private boolean deleted;
     
+    /**
+     * Version number maintained by Hibernate if the model was generated
+     * with the {@link 
+     * org.eigenbase.enki.hibernate.codegen.HibernateGenerator#VERSIONED_OPTION}
+     * option.  Accessed by Hibernate via reflection.
+     */
+    @SuppressWarnings("unused")
+    private int enkiVersion;
+    
     protected HibernateObject()
     {
         super((MetamodelInitializer)null);
@@ -84,6 +93,7 @@ public abstract class HibernateObject
         }
         
         session.save(this);
+        repos.recordObjectSave(this);
         
         log.finer(
             "Save on '" + getClass().getName() + "':" + refMofId());
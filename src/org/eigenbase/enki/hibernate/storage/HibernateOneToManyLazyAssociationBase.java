@@ -214,6 +214,26 @@ public abstract class HibernateOneToManyLazyAssociationBase
             parentIsFirstEnd);
     }
 
+    public boolean linkExists(
+        HibernateAssociable end1, HibernateAssociable end2)
+    {
+        HibernateAssociable parent;
+        HibernateAssociable child;
+        if (getReversed()) {
+            parent = end2;
+            child = end1;
+        } else {
+            parent = end1;
+            child = end2;
+        }
+        
+        if (((HibernateRefObject)parent).getMofId() != getParentId()) {
+            return false;
+        }
+        
+        return containsElement(getElements(), newElement(child));
+    }
+
     public boolean remove(HibernateAssociable end1, HibernateAssociable end2)
     {
         HibernateAssociable parent;
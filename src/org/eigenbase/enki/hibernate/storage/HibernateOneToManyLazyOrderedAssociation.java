@@ -41,6 +41,8 @@ public abstract class HibernateOneToManyLazyOrderedAssociation
     implements HibernateOrderedAssociation
 {
     private List<Element> children;
+    private SortedMap<Integer, Element> sparseChildren;
+    private SparseOrdinalList sparseChildrenList;
     private ElementList childrenWrapper;
     
     public HibernateOneToManyLazyOrderedAssociation()
@@ -48,13 +50,41 @@ public abstract class HibernateOneToManyLazyOrderedAssociation
         super();
      
         this.children = new ArrayList<Element>();
+        this.sparseChildren = new TreeMap<Integer, Element>();
     }
     
+    /**
+     * Returns the children of this association.  If 
+     * {@link #getSparseOrdinals()} is true, the list is a view of
+     * {@link #getSparseChildren()}.
+     * 
+     * @return the children of this association
+     */
     public List<Element> getChildren()
     {
+        if (getSparseOrdinals()) {
+            SortedMap<Integer, Element> childMap = getSparseChildren();
+            if (sparseChildrenList == null || 
+                !sparseChildrenList.isBackedBy(childMap))
+            {
+                sparseChildrenList = new SparseOrdinalList(childMap);
+            }
+            return sparseChildrenList;
+        }
+        
         return children;
     }
     
+    public SortedMap<Integer, Element> getSparseChildren()
+    {
+        return sparseChildren;
+    }
+    
+    public void setSparseChildren(SortedMap<Integer, Element> sparseChildren)
+    {
+        this.sparseChildren = sparseChildren;
+    }
+    
     @Override
     public void addInitialChild(HibernateAssociable child)
     {
@@ -168,6 +198,18 @@ public abstract class HibernateOneToManyLazyOrderedAssociation
 
         return removeInternal(parent, child, index);
     }
+    
+    public void reserve(HibernateAssociable item, int index, int count)
+    {
+        if (!getSparseOrdinals()) {
+            return;
+        }
+        
+        HibernateRefObject refObj = (HibernateRefObject)item;
+        if (refObj.getMofId() == getParentId()) {
+            ((SparseOrdinalList)getChildren()).reserve(index, count);
+        }
+    }
 
     public void setChildren(List<Element> children)
     {
@@ -283,6 +283,13 @@ public abstract class HibernateOneToOneLazyAssociation
         }
     }
     
+    public boolean linkExists(
+        HibernateAssociable end1, HibernateAssociable end2)
+    {
+        return ((HibernateRefObject)end1).getMofId() == getParentId() &&
+            ((HibernateRefObject)end2).getMofId() == getChildId();
+    }
+    
     public Collection<HibernateAssociable> get(HibernateAssociable item)
     {
         return getOrdered(item);
@@ -55,6 +55,18 @@ public interface HibernateOrderedAssociation extends HibernateAssociation
     public boolean remove(
         int index, HibernateAssociable left, HibernateAssociable right);
 
+    /**
+     * Prepares for the insertion of several items into the List returned
+     * by {@link #getOrdered(HibernateAssociable)} for the given item.
+     * Implementations that store sparse ordinals renumber at most once 
+     * here, rather than repeatedly as the items are added one at a time.
+     * 
+     * @param item the item whose associated items are to be extended
+     * @param index position of the first new item
+     * @param count number of items to be inserted at consecutive positions
+     */
+    public void reserve(HibernateAssociable item, int index, int count);
+
 
     /**
      * Get a List of the remote end(s) of the association for the given item.
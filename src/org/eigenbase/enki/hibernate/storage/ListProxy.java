@@ -104,6 +104,10 @@ public class ListProxy<E extends RefObject>
 
     public boolean addAll(int index, Collection<? extends E> c)
     {
+        if (orderedAssoc != null && c.size() > 1) {
+            orderedAssoc.reserve(source, index, c.size());
+        }
+        
         boolean result = false;
         for(E e: c) {
             add(index++, e);
@@ -23,7 +23,12 @@ package org.eigenbase.enki.hibernate.storage;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.logging.*;
 
+import org.eigenbase.enki.util.*;
 import org.hibernate.*;
 import org.hibernate.cfg.*;
 import org.hibernate.dialect.*;
@@ -31,20 +36,55 @@ import org.hibernate.id.*;
 
 /**
  * MofIdGenerator extends Hibernate's {@link TableGenerator} to provide a 
- * source of unique MOF ID values. 
+ * source of unique MOF ID values.
+ * 
+ * <p>MOF IDs are reserved from the database in blocks.  Each thread draws
+ * small slabs of MOF IDs from the current block with a single atomic
+ * operation and then hands out IDs from its slab without any 
+ * synchronization.  When the current block is nearly exhausted, the next 
+ * block is fetched asynchronously so that creating threads rarely wait on
+ * the database.  Block size grows (up to 
+ * {@value #PROPERTY_MAX_BLOCK_SIZE}) when blocks are consumed quickly and
+ * shrinks (down to {@value #PROPERTY_BLOCK_SIZE}) when they are not.
+ * 
+ * <p>Because slabs are per-thread, MOF IDs are only monotonically 
+ * increasing within a single thread.  MOF IDs remaining in a slab or block
+ * when the repository shuts down are never used (as has always been the case
+ * for the remainder of a block).
  * 
  * @author Stephan Zuercher
  */
 public class MofIdGenerator
 {
+    private static final Logger log = 
+        Logger.getLogger(MofIdGenerator.class.getName());
+    
     private static final String PROPERTY_TABLE_NAME = "enki.mofid.table";
     private static final String PROPERTY_BLOCK_SIZE = "enki.mofid.blocksize";
+    private static final String PROPERTY_MAX_BLOCK_SIZE = 
+        "enki.mofid.maxblocksize";
+    private static final String PROPERTY_SLAB_SIZE = "enki.mofid.slabsize";
+    private static final String PROPERTY_PREFETCH = "enki.mofid.prefetch";
     
     private static final String DEFAULT_TABLE_NAME = "ENKI_MOF_ID_SEQUENCE";
     
     private static final String COLUMN_NAME = "NEXT_MOF_ID_BLOCK";
 
     private static final int DEFAULT_BLOCK_SIZE = 1000;
+    private static final int DEFAULT_MAX_BLOCK_SIZE_FACTOR = 16;
+    private static final int DEFAULT_SLAB_SIZE = 32;
+    
+    /** 
+     * Blocks consumed in less than this many milliseconds cause the block
+     * size to double. 
+     */
+    private static final long FAST_BLOCK_MILLIS = 1000L;
+    
+    /** 
+     * Blocks that last longer than this many milliseconds cause the block
+     * size to halve. 
+     */
+    private static final long SLOW_BLOCK_MILLIS = 60000L;
     
     private final SessionFactory sessionFactory;
     
@@ -55,27 +95,65 @@ public class MofIdGenerator
     private final String initSql;
     private final String dropDdl;
     
-    private final int blockSize;
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final int slabSize;
+    private final boolean prefetchEnabled;
 
-    private long nextMofId;
-    private long lastMofId;
+    /** Block size used for the next block fetch. */
+    private volatile int blockSize;
+    
+    /** The block from which slabs are currently allocated. */
+    private final AtomicReference<Block> currentBlock;
+    
+    /** Serializes replacement of {@link #currentBlock}. */
+    private final Lock refillLock;
+    
+    /** Pending asynchronous block fetch, guarded by {@link #refillLock}. */
+    private Future<Block> prefetch;
+    
+    /** Executor for asynchronous block fetches.  Created on demand. */
+    private ExecutorService prefetchExecutor;
+    
+    private final ThreadLocal<Slab> slabs;
+    
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong stallCount;
+    private final AtomicLong stallNanos;
+    private final AtomicLong blockFetchCount;
+    private final AtomicLong prefetchCount;
+    private final EnkiMetrics.Histogram blockFetchTime;
+    private final EnkiMetrics metrics;
     
     public MofIdGenerator(
-        SessionFactory sessionFactory, Configuration config, Properties enkiProps)
+        SessionFactory sessionFactory, 
+        Configuration config, 
+        Properties enkiProps,
+        EnkiMetrics metrics)
     {
         this.sessionFactory = sessionFactory;
+        this.metrics = metrics;
+        this.blockFetchTime = metrics.histogram("mof id block fetch time");
 
-        String blockSizeStr = 
-            enkiProps.getProperty(
-                PROPERTY_BLOCK_SIZE, String.valueOf(DEFAULT_BLOCK_SIZE));
-        int blockSizeInit;
-        try {
-            blockSizeInit = Integer.parseInt(blockSizeStr);
-        }
-        catch(NumberFormatException e) {
-            blockSizeInit = DEFAULT_BLOCK_SIZE;
-        }
-        this.blockSize = blockSizeInit;
+        this.minBlockSize = 
+            readIntProperty(
+                enkiProps, PROPERTY_BLOCK_SIZE, DEFAULT_BLOCK_SIZE, 1);
+        this.maxBlockSize =
+            readIntProperty(
+                enkiProps, 
+                PROPERTY_MAX_BLOCK_SIZE, 
+                minBlockSize * DEFAULT_MAX_BLOCK_SIZE_FACTOR, 
+                minBlockSize);
+        this.slabSize = 
+            Math.min(
+                readIntProperty(
+                    enkiProps, PROPERTY_SLAB_SIZE, DEFAULT_SLAB_SIZE, 1),
+                minBlockSize);
+        this.prefetchEnabled =
+            Boolean.valueOf(
+                enkiProps.getProperty(PROPERTY_PREFETCH, "true"));
+        this.blockSize = minBlockSize;
         
         this.tableName = 
             enkiProps.getProperty(PROPERTY_TABLE_NAME, DEFAULT_TABLE_NAME);
@@ -106,8 +184,44 @@ public class MofIdGenerator
         this.initSql = generateInsertDml(enkiProps, dialect);
         
         // Load block on first call to nextMofId()
-        this.nextMofId = 0;
-        this.lastMofId = 0;
+        this.currentBlock = new AtomicReference<Block>(null);
+        this.refillLock = new ReentrantLock();
+        this.prefetch = null;
+        this.prefetchExecutor = null;
+        
+        this.slabs = new ThreadLocal<Slab>() {
+            @Override
+            protected Slab initialValue()
+            {
+                return new Slab();
+            }
+        };
+        
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.stallCount = new AtomicLong();
+        this.stallNanos = new AtomicLong();
+        this.blockFetchCount = new AtomicLong();
+        this.prefetchCount = new AtomicLong();
+    }
+    
+    private static int readIntProperty(
+        Properties props, String name, int defaultValue, int minValue)
+    {
+        String str = props.getProperty(name);
+        if (str == null) {
+            return defaultValue;
+        }
+        
+        int value;
+        try {
+            value = Integer.parseInt(str);
+        }
+        catch(NumberFormatException e) {
+            value = defaultValue;
+        }
+        
+        return Math.max(value, minValue);
     }
     
     public static String generateCreateDdl(
@@ -269,62 +383,321 @@ public class MofIdGenerator
         }
     }
     
-    public synchronized long nextMofId()
+    public long nextMofId()
     {
-        if (nextMofId >= lastMofId) {
-            try {
-                readNextBlock();
+        Slab slab = slabs.get();
+        if (slab.next >= slab.last) {
+            refillSlab(slab);
+        } else {
+            slab.hits++;
+        }
+        
+        return slab.next++;
+    }
+    
+    /**
+     * Allocates a contiguous range of MOF IDs.  Small ranges are taken from
+     * the current block if possible.  Larger ranges are reserved directly 
+     * from the database and do not disturb the current block.
+     * 
+     * @param numMofIds number of MOF IDs to allocate
+     * @return the first MOF ID in the allocated range
+     */
+    public long allocate(long numMofIds)
+    {
+        Block block = currentBlock.get();
+        if (block != null) {
+            long start = block.next.get();
+            if (start + numMofIds <= block.last && 
+                block.next.compareAndSet(start, start + numMofIds))
+            {
+                return start;
             }
-            catch(SQLException e) {
-                throw new HibernateException(e);
+        }
+        
+        try {
+            return fetchBlock(numMofIds).first;
+        }
+        catch(SQLException e) {
+            throw new HibernateException(e);
+        }
+    }
+
+    /**
+     * Reserves a contiguous range of MOF IDs for the calling thread.
+     * Subsequent calls to {@link #nextMofId()} on this thread draw from the
+     * range without touching the shared block until it is exhausted.  If the
+     * thread's current slab already holds enough MOF IDs, this method does
+     * nothing.  Otherwise, the MOF IDs remaining in the slab are discarded.
+     *
+     * @param numMofIds number of MOF IDs to reserve
+     */
+    public void reserve(long numMofIds)
+    {
+        Slab slab = slabs.get();
+        if (slab.last - slab.next >= numMofIds) {
+            return;
+        }
+
+        long start = allocate(numMofIds);
+
+        hitCount.addAndGet(slab.hits);
+        slab.hits = 0;
+        slab.next = start;
+        slab.last = start + numMofIds;
+    }
+
+    /**
+     * Discards any outstanding asynchronous block fetch and releases the
+     * thread used to perform them.  MOF IDs remaining in the current block
+     * may still be used after this method is invoked.
+     */
+    public void close()
+    {
+        refillLock.lock();
+        try {
+            if (prefetch != null) {
+                prefetch.cancel(false);
+                prefetch = null;
+            }
+            
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdown();
+                prefetchExecutor = null;
             }
         }
+        finally {
+            refillLock.unlock();
+        }
+    }
+    
+    /**
+     * Waits for the pending asynchronous block fetch, if any, to complete.
+     * A block swap that finds the fetch complete does not count as a 
+     * stall.
+     * 
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return false if the fetch did not complete in time, true otherwise
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitPrefetch(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        Future<Block> pending;
+        refillLock.lock();
+        try {
+            pending = prefetch;
+        }
+        finally {
+            refillLock.unlock();
+        }
         
-        long mofId = nextMofId++;
+        if (pending == null) {
+            return true;
+        }
         
-        return mofId;
+        try {
+            pending.get(timeout, unit);
+        }
+        catch(ExecutionException e) {
+            // Failed fetches are also complete.
+        }
+        catch(CancellationException e) {
+            // As are cancelled ones.
+        }
+        catch(TimeoutException e) {
+            return false;
+        }
+        return true;
     }
     
-    public synchronized long allocate(long numMofIds)
+    /**
+     * Returns a snapshot of this generator's allocation statistics.  Hit
+     * counts are accumulated per-thread and only published when a thread's
+     * slab is refilled, so the snapshot may lag slightly.
+     * 
+     * @return allocation statistics snapshot
+     */
+    public Statistics getStatistics()
     {
-        if (nextMofId + numMofIds >= lastMofId) {
-            // Determine how many blocks we need and advance that many
-            // blocks.  This causes a gap at the end of the current block 
-            // (same as a repository restart would).
-
-            // Always round up.  If blockSize doesn't divide evenly into
-            // numMofIds we need the round up to get enough MOF IDs.  If
-            // it does go in evenly, we'll use the extra MOF IDs for future
-            // nextMofId() calls.
-            long numBlocks = (numMofIds / blockSize) + 1;
+        return new Statistics(
+            hitCount.get(),
+            missCount.get(),
+            stallCount.get(),
+            TimeUnit.NANOSECONDS.toMillis(stallNanos.get()),
+            blockFetchCount.get(),
+            prefetchCount.get(),
+            blockSize);
+    }
+    
+    private void refillSlab(Slab slab)
+    {
+        hitCount.addAndGet(slab.hits);
+        missCount.incrementAndGet();
+        slab.hits = 0;
+        
+        while(true) {
+            Block block = currentBlock.get();
+            if (block != null) {
+                long start = block.next.getAndAdd(slabSize);
+                if (start < block.last) {
+                    long end = Math.min(start + slabSize, block.last);
+                    slab.next = start;
+                    slab.last = end;
+                    
+                    if (prefetchEnabled && 
+                        block.last - end <= block.prefetchThreshold)
+                    {
+                        schedulePrefetch(block);
+                    }
+                    return;
+                }
+            }
             
-            try {
-                readNextBlocks(numBlocks);
+            replaceBlock(block);
+        }
+    }
+    
+    private void replaceBlock(Block exhausted)
+    {
+        refillLock.lock();
+        try {
+            if (currentBlock.get() != exhausted) {
+                // Another thread already replaced it.
+                return;
             }
-            catch(SQLException e) {
-                throw new HibernateException(e);
+            
+            long startNanos = System.nanoTime();
+            
+            // Only count a stall if this thread actually waits for a 
+            // prefetch or fetches a block synchronously.
+            boolean stalled = false;
+            
+            Block block = null;
+            if (prefetch != null) {
+                Future<Block> pending = prefetch;
+                prefetch = null;
+                
+                stalled = !pending.isDone();
+                try {
+                    block = pending.get();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HibernateException(
+                        "Interrupted waiting for MOF ID block", e);
+                } catch(ExecutionException e) {
+                    // Fall back to a synchronous fetch below.
+                    log.log(
+                        Level.WARNING, 
+                        "Asynchronous MOF ID block fetch failed", 
+                        e.getCause());
+                }
+            }
+            
+            if (block == null) {
+                stalled = true;
+                try {
+                    block = fetchBlock(blockSize);
+                }
+                catch(SQLException e) {
+                    throw new HibernateException(e);
+                }
+            }
+
+            adjustBlockSize(exhausted, startNanos);
+            
+            currentBlock.set(block);
+            
+            if (stalled) {
+                stallCount.incrementAndGet();
+                stallNanos.addAndGet(System.nanoTime() - startNanos);
             }
         }
+        finally {
+            refillLock.unlock();
+        }
+    }
+    
+    private void schedulePrefetch(final Block block)
+    {
+        if (!block.prefetchRequested.compareAndSet(false, true)) {
+            return;
+        }
         
-        // Now have (or always had) enough MOF IDs before lastMofId, return 
-        // nextMofId and increment it by the number of MOF IDs allocated.
-        // Future callers to this method (or nextMofId()) will obtain values
-        // from beyond the end of the allocated block. 
-        long result = nextMofId;
+        refillLock.lock();
+        try {
+            if (prefetch != null || currentBlock.get() != block) {
+                return;
+            }
             
-        nextMofId += numMofIds;
-        
-        return result;
+            if (prefetchExecutor == null) {
+                prefetchExecutor = 
+                    Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = 
+                                new Thread(r, "Enki MOF ID Prefetch Thread");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            }
+            
+            final int size = blockSize;
+            prefetch = prefetchExecutor.submit(new Callable<Block>() {
+                public Block call() throws SQLException
+                {
+                    prefetchCount.incrementAndGet();
+                    return fetchBlock(size);
+                }
+            });
+        }
+        finally {
+            refillLock.unlock();
+        }
     }
     
-    private void readNextBlock() throws SQLException
+    /**
+     * Doubles the block size if the exhausted block was consumed quickly
+     * and halves it if the block lasted a long time.
+     * 
+     * @param exhausted the exhausted block (may be null)
+     * @param nowNanos time at which the block was exhausted
+     */
+    private void adjustBlockSize(Block exhausted, long nowNanos)
     {
-        readNextBlocks(1);
+        if (exhausted == null) {
+            return;
+        }
+        
+        long lifetimeMillis = 
+            TimeUnit.NANOSECONDS.toMillis(nowNanos - exhausted.createdNanos);
+        
+        int size = blockSize;
+        if (lifetimeMillis < FAST_BLOCK_MILLIS) {
+            size = (int)Math.min((long)size * 2L, (long)maxBlockSize);
+        } else if (lifetimeMillis > SLOW_BLOCK_MILLIS) {
+            size = Math.max(size / 2, minBlockSize);
+        }
+        
+        if (size != blockSize) {
+            log.fine("MOF ID block size changed to " + size);
+            blockSize = size;
+        }
     }
     
-    private void readNextBlocks(long numBlocks) throws SQLException
+    /**
+     * Reserves a range of MOF IDs from the database.  The range never 
+     * contains MOF ID 0.
+     * 
+     * @param numMofIds number of MOF IDs to reserve
+     * @return a Block containing the reserved MOF IDs
+     * @throws SQLException on database error
+     */
+    private Block fetchBlock(long numMofIds) throws SQLException
     {
-        final long numMofIds = numBlocks * (long)blockSize;
+        long start = metrics.startTimer();
         
         StatelessSession session = sessionFactory.openStatelessSession();
         
@@ -335,6 +708,7 @@ public class MofIdGenerator
         
         try {
             long next;
+            long reserved;
             int rows;
 
             // Repeat this update until we manage to update the row.  If the
@@ -360,10 +734,15 @@ public class MofIdGenerator
                     queryStmt.close();
                 }
                 
+                // Make sure we skip MOF ID 0 to avoid conflicts with the 
+                // default value Hibernate will pick should be ever fail to 
+                // set an object's MOF ID.
+                reserved = (next == 0L) ? numMofIds + 1 : numMofIds;
+                
                 PreparedStatement updateStmt = 
                     conn.prepareStatement(updateSql);
                 try {
-                    updateStmt.setLong(1, next + numMofIds);
+                    updateStmt.setLong(1, next + reserved);
                     updateStmt.setLong(2, next);
                     rows = updateStmt.executeUpdate();
                 }
@@ -374,15 +753,11 @@ public class MofIdGenerator
 
             conn.commit();
             
-            nextMofId = next;
-            lastMofId = next + numMofIds;
+            blockFetchCount.incrementAndGet();
+            blockFetchTime.recordSince(start);
             
-            // Make sure we skip MOF ID 0 to avoid conflicts with the default
-            // value Hibernate will pick should be ever fail to set an object's
-            // MOF ID.
-            if (nextMofId == 0L) {
-                nextMofId++;
-            }
+            long first = (next == 0L) ? 1L : next;
+            return new Block(first, next + reserved);
         }
         catch(SQLException e) {
             conn.rollback();
@@ -393,6 +768,122 @@ public class MofIdGenerator
         }
     }
     
+    /**
+     * Block represents a range of MOF IDs reserved from the database.
+     * Slabs are allocated from a block by atomically advancing 
+     * {@link #next}, which may overshoot {@link #last}.
+     */
+    private static class Block
+    {
+        private final long first;
+        private final long last;
+        private final AtomicLong next;
+        private final long prefetchThreshold;
+        private final long createdNanos;
+        private final AtomicBoolean prefetchRequested;
+        
+        private Block(long first, long last)
+        {
+            this.first = first;
+            this.last = last;
+            this.next = new AtomicLong(first);
+            this.prefetchThreshold = (last - first) / 4;
+            this.createdNanos = System.nanoTime();
+            this.prefetchRequested = new AtomicBoolean(false);
+        }
+    }
+    
+    /**
+     * Slab is a thread-private range of MOF IDs.
+     */
+    private static class Slab
+    {
+        private long next;
+        private long last;
+        private long hits;
+    }
+    
+    /**
+     * Statistics is an immutable snapshot of MofIdGenerator allocation
+     * statistics.
+     */
+    public static class Statistics
+    {
+        private final long hits;
+        private final long misses;
+        private final long stalls;
+        private final long stallMillis;
+        private final long blockFetches;
+        private final long prefetches;
+        private final int blockSize;
+        
+        private Statistics(
+            long hits,
+            long misses,
+            long stalls,
+            long stallMillis,
+            long blockFetches,
+            long prefetches,
+            int blockSize)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.stalls = stalls;
+            this.stallMillis = stallMillis;
+            this.blockFetches = blockFetches;
+            this.prefetches = prefetches;
+            this.blockSize = blockSize;
+        }
+        
+        /** 
+         * @return number of MOF IDs allocated from a thread's slab without
+         *         synchronization
+         */
+        public long getHitCount()
+        {
+            return hits;
+        }
+        
+        /** @return number of times a thread's slab was refilled */
+        public long getMissCount()
+        {
+            return misses;
+        }
+        
+        /** 
+         * @return number of times a thread waited for a block to be fetched
+         *         from the database
+         */
+        public long getStallCount()
+        {
+            return stalls;
+        }
+        
+        /** @return total time spent waiting for blocks, in milliseconds */
+        public long getStallMillis()
+        {
+            return stallMillis;
+        }
+        
+        /** @return number of MOF ID ranges reserved from the database */
+        public long getBlockFetchCount()
+        {
+            return blockFetches;
+        }
+        
+        /** @return number of asynchronous block fetches */
+        public long getPrefetchCount()
+        {
+            return prefetches;
+        }
+        
+        /** @return the current block size */
+        public int getBlockSize()
+        {
+            return blockSize;
+        }
+    }
+    
     public static enum Validity
     {
         VALID,
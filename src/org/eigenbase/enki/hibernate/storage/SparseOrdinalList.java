@@ -0,0 +1,217 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.hibernate.storage;
+
+import java.util.*;
+
+import org.eigenbase.enki.hibernate.storage.HibernateLazyAssociationBase.*;
+
+/**
+ * SparseOrdinalList presents a {@link SortedMap} of ordinal to 
+ * {@link Element} as a {@link List}.  It is used by ordered associations
+ * whose elements are stored with sparse ordinals (see 
+ * {@link HibernateLazyAssociationBase#getSparseOrdinals()}).  Inserting or
+ * removing an element changes a single map entry (and therefore a single 
+ * row) except when no ordinal is available between an element's 
+ * neighbors, in which case all elements are renumbered 
+ * {@link #ORDINAL_GAP} apart.
+ * 
+ * <p>All modifications must be made via this list, since the position of
+ * each ordinal is cached.
+ * 
+ * @author Stephan Zuercher
+ */
+class SparseOrdinalList
+    extends AbstractList<Element>
+    implements RandomAccess
+{
+    /** Distance between ordinals assigned by appends and renumbering. */
+    static final int ORDINAL_GAP = 1024;
+    
+    private final SortedMap<Integer, Element> map;
+    
+    /** Map keys in order.  Rebuilt if the map's size changes. */
+    private List<Integer> ordinals;
+    
+    SparseOrdinalList(SortedMap<Integer, Element> map)
+    {
+        this.map = map;
+    }
+    
+    /**
+     * Tests whether this list presents the given map.
+     * 
+     * @param map a map of ordinal to element
+     * @return true if this list is backed by the given map
+     */
+    boolean isBackedBy(SortedMap<Integer, Element> map)
+    {
+        return this.map == map;
+    }
+    
+    private List<Integer> getOrdinals()
+    {
+        if (ordinals == null || ordinals.size() != map.size()) {
+            ordinals = new ArrayList<Integer>(map.keySet());
+        }
+        
+        return ordinals;
+    }
+    
+    @Override
+    public Element get(int index)
+    {
+        return map.get(getOrdinals().get(index));
+    }
+    
+    @Override
+    public int size()
+    {
+        return map.size();
+    }
+    
+    @Override
+    public void add(int index, Element element)
+    {
+        List<Integer> ords = getOrdinals();
+        if (index < 0 || index > ords.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        Integer ordinal = computeOrdinal(index);
+        
+        map.put(ordinal, element);
+        ordinals.add(index, ordinal);
+        modCount++;
+    }
+    
+    @Override
+    public Element set(int index, Element element)
+    {
+        return map.put(getOrdinals().get(index), element);
+    }
+    
+    @Override
+    public Element remove(int index)
+    {
+        Integer ordinal = getOrdinals().remove(index);
+        modCount++;
+        return map.remove(ordinal);
+    }
+    
+    @Override
+    public void clear()
+    {
+        map.clear();
+        ordinals = null;
+        modCount++;
+    }
+    
+    /**
+     * Ensures that the given number of elements can be inserted at the 
+     * given index without renumbering.  Renumbers all elements if 
+     * necessary, leaving a gap at index.
+     * 
+     * @param index position of the first element to be inserted
+     * @param count number of elements to be inserted
+     */
+    void reserve(int index, int count)
+    {
+        List<Integer> ords = getOrdinals();
+        if (index < 0 || index >= ords.size() || count <= 1) {
+            // Appends never renumber; single inserts need no reservation.
+            return;
+        }
+        
+        long lo = index > 0 ? ords.get(index - 1) : 0;
+        long hi = ords.get(index);
+        if (hi - lo <= (long)count * ORDINAL_GAP) {
+            renumber(index, count);
+        }
+    }
+    
+    /**
+     * Computes an ordinal for a new element at the given index, 
+     * renumbering existing elements if necessary.  Elements appended to 
+     * the list are placed {@link #ORDINAL_GAP} after their predecessor.
+     * Elements inserted elsewhere are placed at most {@link #ORDINAL_GAP}
+     * after their predecessor and no further than half way to their 
+     * successor, so that runs of inserts at consecutive positions consume 
+     * the gap evenly.
+     */
+    private Integer computeOrdinal(int index)
+    {
+        List<Integer> ords = ordinals;
+        
+        long lo = index > 0 ? ords.get(index - 1) : 0;
+        long step;
+        if (index == ords.size()) {
+            step = Math.min(ORDINAL_GAP, Integer.MAX_VALUE - lo);
+        } else {
+            long hi = ords.get(index);
+            step = Math.min((hi - lo) / 2, ORDINAL_GAP);
+        }
+        
+        if (step < 1) {
+            renumber(index, 1);
+            return computeOrdinal(index);
+        }
+        
+        return (int)(lo + step);
+    }
+    
+    /**
+     * Reassigns all ordinals, evenly spaced, leaving room for the given
+     * number of elements at the given index.
+     */
+    private void renumber(int holeIndex, int holeSize)
+    {
+        List<Element> elements = new ArrayList<Element>(map.values());
+        int n = elements.size();
+        
+        long gap = 
+            Math.min(ORDINAL_GAP, (Integer.MAX_VALUE - 1L) / (n + holeSize + 1));
+        if (gap < 1) {
+            throw new IllegalStateException(
+                "Too many elements for ordered association");
+        }
+        
+        map.clear();
+        
+        ordinals = new ArrayList<Integer>(n);
+        long ordinal = 0;
+        for(int i = 0; i < n; i++) {
+            if (i == holeIndex) {
+                ordinal += gap * holeSize;
+            }
+            ordinal += gap;
+            
+            Integer key = (int)ordinal;
+            map.put(key, elements.get(i));
+            ordinals.add(key);
+        }
+        
+        modCount++;
+    }
+}
+
+// End SparseOrdinalList.java
@@ -38,6 +38,11 @@ class AssocQueryCollection implements Collection<RefObject>
     protected final RefAssociationBase assoc;
     protected final RefObject fixedEnd;
     protected final boolean fixedIsFirstEnd;
+    
+    /** 
+     * The fixed end's links, or null if they must be looked up on each use
+     * (see {@link #getLinks()}).
+     */
     private final Collection<RefAssociationLinkImpl> links;
 
     public AssocQueryCollection(
@@ -105,9 +110,23 @@ class AssocQueryCollection implements Collection<RefObject>
         return true;
     }
 
+    /**
+     * Returns the fixed end's links.  Looks them up via 
+     * {@link RefAssociationBase#getVisibleLinks} if no collection was given
+     * at construction, which is the case when links are versioned.
+     */
+    protected Collection<RefAssociationLinkImpl> getLinks()
+    {
+        if (links != null) {
+            return links;
+        }
+        
+        return assoc.getVisibleLinks(fixedEnd, fixedIsFirstEnd);
+    }
+    
     public boolean isEmpty()
     {
-        return links.isEmpty();
+        return getLinks().isEmpty();
     }
 
     public Iterator<RefObject> iterator()
@@ -151,12 +170,12 @@ class AssocQueryCollection implements Collection<RefObject>
 
     public int size()
     {
-        return links.size();
+        return getLinks().size();
     }
 
     public Object[] toArray()
     {
-        Object[] array = links.toArray();
+        Object[] array = getLinks().toArray();
         if (fixedIsFirstEnd) {
             for(int i = 0; i < array.length; i++) {
                 array[i] = ((RefAssociationLinkImpl)array[i]).refSecondEnd();
@@ -173,7 +192,8 @@ class AssocQueryCollection implements Collection<RefObject>
     @SuppressWarnings("unchecked")
     public <T> T[] toArray(T[] array)
     {
-        int size = size();
+        Collection<RefAssociationLinkImpl> links = getLinks();
+        int size = links.size();
         if (array.length < size) {
             array = 
                 (T[])java.lang.reflect.Array.newInstance(
@@ -207,7 +227,8 @@ class AssocQueryCollection implements Collection<RefObject>
         
         Iter()
         {
-            this.linksCopy = new ArrayList<RefAssociationLinkImpl>(links);
+            this.linksCopy = 
+                new ArrayList<RefAssociationLinkImpl>(getLinks());
             this.iter = linksCopy.iterator();
         }
         
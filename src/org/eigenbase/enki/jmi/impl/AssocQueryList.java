@@ -37,8 +37,6 @@ public class AssocQueryList
     extends AssocQueryCollection 
     implements List<RefObject>
 {
-    private final List<RefAssociationLinkImpl> linksList;
-    
     public AssocQueryList(
         RefAssociationBase assoc,
         RefObject fixedEnd,
@@ -46,8 +44,11 @@ public class AssocQueryList
         List<RefAssociationLinkImpl> links)
     {
         super(assoc, fixedEnd, fixedIsFirstEnd, links);
-
-        this.linksList = links;
+    }
+    
+    private List<RefAssociationLinkImpl> getLinksList()
+    {
+        return (List<RefAssociationLinkImpl>)getLinks();
     }
 
     public void add(int index, RefObject element)
@@ -70,6 +71,7 @@ public class AssocQueryList
 
     public RefObject get(int index)
     {
+        List<RefAssociationLinkImpl> linksList = getLinksList();
         if (fixedIsFirstEnd) {
             return linksList.get(index).refSecondEnd();
         } else {
@@ -81,6 +83,7 @@ public class AssocQueryList
     {
         if (o instanceof RefObject) {
             RefObject refObj = (RefObject)o;
+            List<RefAssociationLinkImpl> linksList = getLinksList();
             if (fixedIsFirstEnd) {
                 for(int index = 0; index < linksList.size(); index++) {
                     if (linksList.get(index).refSecondEnd().equals(refObj)) {
@@ -103,6 +106,7 @@ public class AssocQueryList
     {
         if (o instanceof RefObject) {
             RefObject refObj = (RefObject)o;
+            List<RefAssociationLinkImpl> linksList = getLinksList();
             if (fixedIsFirstEnd) {
                 for(int index = linksList.size() - 1; index >= 0; index--) {
                     if (linksList.get(index).refSecondEnd().equals(refObj)) {
@@ -133,7 +137,7 @@ public class AssocQueryList
 
     public RefObject remove(int index)
     {
-        RefAssociationLinkImpl link = linksList.get(index);
+        RefAssociationLinkImpl link = getLinksList().get(index);
         RefObject other;
         if (fixedIsFirstEnd) {
             other = link.refSecondEnd();
@@ -175,13 +179,13 @@ public class AssocQueryList
         
         private ListIter()
         {
-            this.iter = linksList.listIterator();
+            this.iter = getLinksList().listIterator();
             this.blockMods = true;
         }
         
         private ListIter(int index)
         {
-            this.iter = linksList.listIterator(index);            
+            this.iter = getLinksList().listIterator(index);            
             this.blockMods = true;
         }
 
@@ -197,7 +201,7 @@ public class AssocQueryList
             // delegation ListIterator to point at the right spot.
             int index = iter.nextIndex();
             AssocQueryList.this.add(index, o);
-            iter = linksList.listIterator(index + 1);
+            iter = getLinksList().listIterator(index + 1);
         }
 
         public boolean hasNext()
@@ -260,7 +264,7 @@ public class AssocQueryList
             // delegation ListIterator to point at the right spot.
             int index = iter.nextIndex() - 1;
             AssocQueryList.this.remove(index);
-            iter = linksList.listIterator(index);
+            iter = getLinksList().listIterator(index);
         }
 
         public void set(RefObject o)
@@ -22,6 +22,7 @@
 package org.eigenbase.enki.jmi.impl;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import javax.jmi.model.*;
@@ -55,6 +56,45 @@ public abstract class MetamodelInitializer
     
     private EnkiMDRepository owningRepository;
     
+    /**
+     * Index of all metamodel elements by MOF ID.  Built when initialization
+     * completes and replaced (never modified) if further objects are
+     * registered.  Null if not yet built or stale.
+     */
+    private volatile LongKeyIndex<RefBaseObject> mofIdIndex;
+    
+    /**
+     * Index used by {@link #findGeneric(String, String)}: metamodel class 
+     * name to instance name to instance.  A class's entry is rebuilt 
+     * whenever a name is not found.
+     */
+    private final Map<String, Map<String, RefObject>> genericIndex =
+        new HashMap<String, Map<String, RefObject>>();
+    
+    private final NameIndex<MofClass> mofClassIndex = 
+        new NameIndex<MofClass>() {
+            protected Collection<?> allOfClass(ModelPackage mp)
+            {
+                return mp.getMofClass().refAllOfClass();
+            }
+        };
+    
+    private final NameIndex<MofPackage> mofPackageIndex = 
+        new NameIndex<MofPackage>() {
+            protected Collection<?> allOfClass(ModelPackage mp)
+            {
+                return mp.getMofPackage().refAllOfClass();
+            }
+        };
+    
+    private final NameIndex<Association> associationIndex = 
+        new NameIndex<Association>() {
+            protected Collection<?> allOfClass(ModelPackage mp)
+            {
+                return mp.getAssociation().refAllOfClass();
+            }
+        };
+    
     protected Logger log = 
         Logger.getLogger(MetamodelInitializer.class.getName());
     
@@ -79,6 +119,9 @@ public abstract class MetamodelInitializer
         initMetamodel();
         
         initializerTls.set(null);
+        
+        buildMofIdIndex();
+        RefClassBase.invalidateTypeClosures();
     }
     
     public final void initPlugin(
@@ -93,6 +136,11 @@ public abstract class MetamodelInitializer
         initMetamodel();
         
         initializerTls.set(null);
+        
+        // Plugin elements are added to the parent's model package.
+        parentInitializer.buildMofIdIndex();
+        buildMofIdIndex();
+        RefClassBase.invalidateTypeClosures();
     }
     
     public String getExtent()
@@ -160,11 +208,111 @@ public abstract class MetamodelInitializer
     
     public RefBaseObject getByMofId(String mofId)
     {
-        ModelPackage modelPkg = getModelPackage();
+        long mofIdLong;
+        try {
+            mofIdLong = MofIdUtil.parseMofIdStr(mofId);
+        } catch(IllegalArgumentException e) {
+            return null;
+        }
         
-        return getByMofId(modelPkg, mofId);
+        return getByMofId(mofIdLong);
     }
 
+    /**
+     * Finds a metamodel element by MOF ID.  Once initialization is 
+     * complete, this method uses an index and does not lock.
+     * 
+     * @param mofId a MOF ID
+     * @return the metamodel element with the given MOF ID or null
+     */
+    public RefBaseObject getByMofId(long mofId)
+    {
+        LongKeyIndex<RefBaseObject> index = mofIdIndex;
+        if (index == null) {
+            if (initializerTls.get() == this) {
+                // Still initializing: search without indexing.
+                String mofIdStr = MofIdUtil.makeMofIdStr(mofId);
+                return getByMofId(getModelPackage(), mofIdStr);
+            }
+            
+            index = buildMofIdIndex();
+        }
+        
+        return index.get(mofId);
+    }
+    
+    /**
+     * Builds (or rebuilds) the MOF ID index of all associations, packages,
+     * classes and class instances reachable from the model package.  If
+     * an element's MOF ID is encountered more than once, the first element
+     * found wins.
+     * 
+     * @return the new index
+     */
+    private LongKeyIndex<RefBaseObject> buildMofIdIndex()
+    {
+        LongKeyIndex<RefBaseObject> index = 
+            new LongKeyIndex<RefBaseObject>(allClasses.size() * 8);
+        
+        ModelPackage modelPkg = getModelPackage();
+        if (modelPkg != null) {
+            addToIndex(index, modelPkg);
+        }
+        
+        log.fine(
+            "Indexed " + index.size() + " metamodel elements for extent '" 
+            + metaModelExtent + "'");
+        
+        mofIdIndex = index;
+        return index;
+    }
+    
+    private void addToIndex(
+        LongKeyIndex<RefBaseObject> index, RefPackage pkg)
+    {
+        for(RefAssociation assoc:
+                GenericCollections.asTypedCollection(
+                    pkg.refAllAssociations(), RefAssociation.class))
+        {
+            indexObject(index, assoc);
+        }
+        
+        for(RefPackage subPkg: 
+                GenericCollections.asTypedCollection(
+                    pkg.refAllPackages(), RefPackage.class))
+        {
+            indexObject(index, subPkg);
+            addToIndex(index, subPkg);
+        }
+        
+        for(RefClass cls:
+                GenericCollections.asTypedCollection(
+                    pkg.refAllClasses(), RefClass.class))
+        {
+            indexObject(index, cls);
+            
+            for(RefObject obj: 
+                    GenericCollections.asTypedCollection(
+                        cls.refAllOfClass(), RefObject.class))
+            {
+                indexObject(index, obj);
+            }
+        }
+    }
+    
+    private static void indexObject(
+        LongKeyIndex<RefBaseObject> index, RefBaseObject obj)
+    {
+        long mofId;
+        if (obj instanceof RefBaseObjectBase) {
+            mofId = ((RefBaseObjectBase)obj).getMofId();
+        } else {
+            mofId = MofIdUtil.parseMofIdStr(obj.refMofId());
+        }
+        
+        index.putIfAbsent(mofId, obj);
+    }
+    
     private RefBaseObject getByMofId(RefPackage pkg, String mofId)
     {
         for(RefAssociation assoc:
@@ -215,11 +363,18 @@ public abstract class MetamodelInitializer
     {
         RefClassBase refClass = (RefClassBase)refObject.refClass();
         
-        log.finer(
-            "Registering " + refClass.getClass() + "/" + refObject.refMofId() + 
-            " with " + getClass());
+        if (log.isLoggable(Level.FINER)) {
+            log.finer(
+                "Registering " + refClass.getClass() + "/" 
+                + refObject.refMofId() + " with " + getClass());
+        }
         
         allClasses.add(refClass);
+        
+        // Objects created after initialization invalidate the index.
+        if (mofIdIndex != null) {
+            mofIdIndex = null;
+        }
     }
     
     protected MofClass findMofClassByName(
@@ -230,16 +385,7 @@ public abstract class MetamodelInitializer
             mp = metaModelPackage;
         }
         
-        for(MofClass mofClass:         
-            GenericCollections.asTypedCollection(
-                mp.getMofClass().refAllOfClass(), MofClass.class)) 
-        {
-            if (mofClass.getName().equals(name)) {
-                return mofClass;
-            }
-        }
-        
-        throw new NoSuchElementException(name);
+        return mofClassIndex.find(mp, name);
     }
 
     protected MofClass findMofClassByName(String name)
@@ -270,16 +416,7 @@ public abstract class MetamodelInitializer
 
     private MofPackage findMofPackageByName(ModelPackage mp, String name)
     {
-        for(MofPackage mofPackage:         
-            GenericCollections.asTypedCollection(
-                mp.getMofPackage().refAllOfClass(), MofPackage.class)) 
-        {
-            if (mofPackage.getName().equals(name)) {
-                return mofPackage;
-            }
-        }
-        
-        throw new NoSuchElementException(name);
+        return mofPackageIndex.find(mp, name);
     }
     
     public void setRefMetaObject(RefPackageBase pkg, String pkgName)
@@ -319,33 +456,57 @@ public abstract class MetamodelInitializer
 
     private Association findAssociationByName(ModelPackage mp, String name)
     {
-        for(Association association:         
-            GenericCollections.asTypedCollection(
-                mp.getAssociation().refAllOfClass(), Association.class)) 
-        {
-            if (association.getName().equals(name)) {
-                return association;
-            }
-        }
-        
-        throw new NoSuchElementException(name);
+        return associationIndex.find(mp, name);
     }
     
+    /**
+     * Finds an instance of the named metamodel class by name.  The instances
+     * of each class are indexed by name on first use (and re-indexed when a
+     * name is not found), so that repeated lookups (plugin initializers 
+     * make one per shared element) do not rescan the class's instances.
+     * 
+     * @param type metamodel class name (e.g., "Attribute")
+     * @param name instance name
+     * @return the first instance of type with the given name
+     * @throws NoSuchElementException if no such instance exists
+     */
     protected RefObject findGeneric(String type, String name)
     {
-        ModelPackage mp = getModelPackage();
-
-        RefClass cls = mp.refClass(type);
-        for(RefObject obj: 
-                GenericCollections.asTypedCollection(
-                    cls.refAllOfClass(), RefObject.class))
-        {
-            if (obj.refGetValue("name").equals(name)) {
-                return obj;
+        synchronized(genericIndex) {
+            Map<String, RefObject> typeIndex = genericIndex.get(type);
+            if (typeIndex != null) {
+                RefObject result = typeIndex.get(name);
+                if (result != null) {
+                    return result;
+                }
             }
+            
+            ModelPackage mp = getModelPackage();
+            
+            typeIndex = new HashMap<String, RefObject>();
+            RefClass cls = mp.refClass(type);
+            for(RefObject obj: 
+                    GenericCollections.asTypedCollection(
+                        cls.refAllOfClass(), RefObject.class))
+            {
+                Object objName = obj.refGetValue("name");
+                if (objName == null) {
+                    continue;
+                }
+                
+                String key = objName.toString();
+                if (!typeIndex.containsKey(key)) {
+                    typeIndex.put(key, obj);
+                }
+            }
+            genericIndex.put(type, typeIndex);
+            
+            RefObject result = typeIndex.get(name);
+            if (result == null) {
+                throw new NoSuchElementException(name);
+            }
+            return result;
         }
-        
-        throw new NoSuchElementException(name);
     }
     
     public void stitchPackages(RefPackage topLevelPkg)
@@ -358,6 +519,49 @@ public abstract class MetamodelInitializer
 
         assoc.setRefMetaObject(metaObj);
     }
+    
+    /**
+     * NameIndex maps {@link ModelElement} names to the first element of a
+     * given type with that name in a {@link ModelPackage}.  Indexes are
+     * built on first use and rebuilt whenever a name is not found (the 
+     * model package may still be under construction).  Built indexes are
+     * never modified, so lookups of indexed names do not lock.
+     */
+    private static abstract class NameIndex<E extends ModelElement>
+    {
+        private final Map<ModelPackage, Map<String, E>> indexes =
+            new ConcurrentHashMap<ModelPackage, Map<String, E>>();
+        
+        protected abstract Collection<?> allOfClass(ModelPackage mp);
+        
+        E find(ModelPackage mp, String name)
+        {
+            Map<String, E> index = indexes.get(mp);
+            if (index != null) {
+                E result = index.get(name);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            index = new HashMap<String, E>();
+            for(Object o: allOfClass(mp)) {
+                @SuppressWarnings("unchecked")
+                E elem = (E)o;
+                String elemName = elem.getName();
+                if (!index.containsKey(elemName)) {
+                    index.put(elemName, elem);
+                }
+            }
+            indexes.put(mp, index);
+
+            E result = index.get(name);
+            if (result == null) {
+                throw new NoSuchElementException(name);
+            }
+            return result;
+        }
+    }
 }
 
 // End MetamodelInitializer.java
@@ -57,6 +57,12 @@ public abstract class RefAssociationBase
 
     private final boolean isReposWeak;
 
+    /** 
+     * Versioned storage for links, if the repository versions them.  Null
+     * otherwise.
+     */
+    private final SnapshotStorage storage;
+
     protected RefAssociationBase(
         RefPackage container, 
         String end1Name,
@@ -73,6 +79,14 @@ public abstract class RefAssociationBase
         } else {
             isReposWeak = repos.isWeak();
         }
+        
+        if (repos instanceof SnapshotStorage && 
+            ((SnapshotStorage)repos).isVersioned())
+        {
+            this.storage = (SnapshotStorage)repos;
+        } else {
+            this.storage = null;
+        }
 
         if (!isReposWeak) {
             this.links = Collections.<RefAssociationLinkImpl>newSetFromMap(
@@ -126,12 +140,21 @@ public abstract class RefAssociationBase
         
         RefAssociationLinkImpl link = new RefAssociationLinkImpl(end1, end2);
 
+        boolean changed = 
+            isLinkChangeRecorded() && 
+            (isFixedEndOrdered() || findLink(link) < 0);
+        
         addToMap(link, true, -1);
         addToMap(link, false, -1);
 
+        if (changed) {
+            fireLinkChanged(true, link, findLastLink(link));
+        }
+        
         if (isReposWeak) {
             return true;
         } else {
+            recordLinkMembership(link, false);
             return links.add(link);
         }
     }
@@ -144,7 +167,15 @@ public abstract class RefAssociationBase
         addToMap(link, true, firstEndIndex);
         addToMap(link, false, secondEndIndex);
 
-        if (isReposWeak) {
+        if (isLinkChangeRecorded()) {
+            int index = 
+                end1Multiplicity.isOrdered() ? secondEndIndex : firstEndIndex;
+            fireLinkChanged(
+                true, link, index >= 0 ? index : findLastLink(link));
+        }
+        
+        if (!isReposWeak) {
+            recordLinkMembership(link, false);
             links.add(link);
         }
     }
@@ -154,8 +185,13 @@ public abstract class RefAssociationBase
     {
         logJmi("refAllLinks");
         
+        Collection<RefAssociationLinkImpl> allLinks = links;
+        if (storage != null) {
+            allLinks = storage.getSnapshotMembers(this, allLinks);
+        }
+        
         return Collections.unmodifiableCollection(
-            new ArrayList<RefAssociationLinkImpl>(links));
+            new ArrayList<RefAssociationLinkImpl>(allLinks));
     }
 
     public boolean refLinkExists(RefObject end1, RefObject end2)    
@@ -168,12 +204,10 @@ public abstract class RefAssociationBase
             new RefAssociationLinkImpl(end1, end2);
 
         if (isReposWeak) {
-            Collection<RefAssociationLinkImpl> referencedLinks =
-                getLinkCollection(end1, true);
-            if (referencedLinks == null) {
-                return false;
-            }
-            return referencedLinks.contains(testLink);
+            return getVisibleLinks(end1, true).contains(testLink);
+        } else if (storage != null) {
+            Boolean exists = Boolean.valueOf(links.contains(testLink));
+            return (Boolean)storage.getSnapshotValue(this, testLink, exists);
         } else {
             return links.contains(testLink);
         }
@@ -222,17 +256,141 @@ public abstract class RefAssociationBase
 
         RefAssociationLinkImpl link = new RefAssociationLinkImpl(end1, end2);
 
-        if (removeFromMaps(link)) {
-            return true;
-        }
+        int position = isLinkChangeRecorded() ? findLink(link) : -1;
+        
+        boolean additional = removeFromMaps(link);
 
-        if (isReposWeak) {
+        if (position >= 0) {
+            fireLinkChanged(false, link, position);
+        }
+        
+        if (additional || isReposWeak) {
             return true;
         } else {
+            recordLinkMembership(link, true);
             return links.remove(link);
         }
     }
     
+    /**
+     * Tests whether {@link #linkChanged} should be invoked for link changes.
+     * Finding the position of a changed link may require a scan of the 
+     * fixed end's links, so it is skipped unless this method returns true.
+     * This implementation returns false.
+     * 
+     * @return true if subclasses are recording link changes
+     */
+    protected boolean isLinkChangeRecorded()
+    {
+        return false;
+    }
+    
+    /**
+     * Invoked after a link is added to or removed from this association,
+     * if {@link #isLinkChangeRecorded()} returns true.
+     * The fixed end is the end whose linked objects may be ordered (e.g., 
+     * the first end unless the first end is itself ordered).  This 
+     * implementation does nothing.  Subclasses may override it to record 
+     * changes.
+     * 
+     * @param added true if the link was added, false if it was removed
+     * @param fixedEnd the object at the fixed end of the link
+     * @param fixedIsFirstEnd true if fixedEnd is the link's first end
+     * @param otherEnd the object at the other end of the link
+     * @param position otherEnd's position among the objects linked to 
+     *                 fixedEnd if that end is ordered, otherwise -1
+     */
+    protected void linkChanged(
+        boolean added,
+        RefObject fixedEnd,
+        boolean fixedIsFirstEnd,
+        RefObject otherEnd, 
+        int position)
+    {
+    }
+    
+    private void fireLinkChanged(
+        boolean added, RefAssociationLinkImpl link, int position)
+    {
+        if (end1Multiplicity.isOrdered()) {
+            linkChanged(
+                added, link.refSecondEnd(), false, link.refFirstEnd(), 
+                position);
+        } else {
+            if (!end2Multiplicity.isOrdered()) {
+                position = -1;
+            }
+            linkChanged(
+                added, link.refFirstEnd(), true, link.refSecondEnd(), 
+                position);
+        }
+    }
+    
+    /**
+     * Records a change to {@link #links} with the versioned storage, if 
+     * any.
+     * 
+     * @param link link being added or removed
+     * @param remove true if the link is being removed
+     */
+    private void recordLinkMembership(
+        RefAssociationLinkImpl link, boolean remove)
+    {
+        if (storage != null && links.contains(link) == remove) {
+            storage.recordMembership(this, link, remove);
+        }
+    }
+    
+    private boolean isFixedEndOrdered()
+    {
+        return end1Multiplicity.isOrdered() || end2Multiplicity.isOrdered();
+    }
+    
+    /**
+     * Finds the given link among the links of its fixed end (see 
+     * {@link #linkChanged}).
+     * 
+     * @return the link's first position if the fixed end is ordered, 0 if 
+     *         it is unordered and the link exists, -1 if the link does not
+     *         exist
+     */
+    private int findLink(RefAssociationLinkImpl link)
+    {
+        Collection<RefAssociationLinkImpl> referencedLinks = 
+            getFixedEndLinks(link);
+        if (referencedLinks == null) {
+            return -1;
+        }
+        
+        if (isFixedEndOrdered()) {
+            return 
+                ((List<RefAssociationLinkImpl>)referencedLinks).indexOf(link);
+        }
+        
+        return referencedLinks.contains(link) ? 0 : -1;
+    }
+
+    private int findLastLink(RefAssociationLinkImpl link)
+    {
+        if (!isFixedEndOrdered()) {
+            return -1;
+        }
+        
+        List<RefAssociationLinkImpl> referencedLinks = 
+            (List<RefAssociationLinkImpl>)getFixedEndLinks(link);
+        return referencedLinks.lastIndexOf(link);
+    }
+    
+    private Collection<RefAssociationLinkImpl> getFixedEndLinks(
+        RefAssociationLinkImpl link)
+    {
+        if (end1Multiplicity.isOrdered()) {
+            return getLinkCollection(link.refSecondEnd(), false);
+        } else {
+            return getLinkCollection(link.refFirstEnd(), true);
+        }
+    }
+    
     private void addToMap(
         RefAssociationLinkImpl link, boolean isFirstEnd, int index)
     {
@@ -252,7 +410,7 @@ public abstract class RefAssociationBase
         }
         
         Collection<RefAssociationLinkImpl> referencedLinks =
-            getLinkCollection(key, isFirstEnd);
+            getLinkCollectionForUpdate(key, isFirstEnd);
 
         if (referencedLinks == null) {
             if (multiplicity.isOrdered()) {
@@ -288,9 +446,11 @@ public abstract class RefAssociationBase
         boolean handleEnd2 = true;
         if (end2Multiplicity.isOrdered() && end1Multiplicity.isSingle()) {
             List<RefAssociationLinkImpl> referencedLinks =
-                (List<RefAssociationLinkImpl>) getLinkCollection(end1, true);
+                (List<RefAssociationLinkImpl>)getLinkCollectionForUpdate(
+                    end1, true);
 
-            boolean removed = referencedLinks.remove(link);
+            boolean removed = 
+                referencedLinks != null && referencedLinks.remove(link);
             if (!removed) {
                 return false;
             }
@@ -305,9 +465,11 @@ public abstract class RefAssociationBase
         } else if (end1Multiplicity.isOrdered() && end2Multiplicity.isSingle())
         {
             List<RefAssociationLinkImpl> referencedLinks = 
-                (List<RefAssociationLinkImpl>) getLinkCollection(end2, false);
+                (List<RefAssociationLinkImpl>)getLinkCollectionForUpdate(
+                    end2, false);
 
-            boolean removed = referencedLinks.remove(link);
+            boolean removed = 
+                referencedLinks != null && referencedLinks.remove(link);
             if (!removed) {
                 return false;
             }
@@ -323,16 +485,20 @@ public abstract class RefAssociationBase
         
         if (handleEnd1) {
             Collection<RefAssociationLinkImpl> referencedLinks =
-                getLinkCollection(end1, true);
+                getLinkCollectionForUpdate(end1, true);
 
-            referencedLinks.remove(link);
+            if (referencedLinks != null) {
+                referencedLinks.remove(link);
+            }
         }
         
         if (handleEnd2) {
             Collection<RefAssociationLinkImpl> referencedLinks = 
-                getLinkCollection(end2, false);
+                getLinkCollectionForUpdate(end2, false);
 
-            referencedLinks.remove(link);
+            if (referencedLinks != null) {
+                referencedLinks.remove(link);
+            }
         }
 
         return false;
@@ -347,22 +513,21 @@ public abstract class RefAssociationBase
             checkSecondEndType(queryObject);
         }
         
-        Collection<RefAssociationLinkImpl> referencedLinks =
-            getLinkCollection(queryObject, isFirstEnd);
-
-        // isFirstEnd refers to the given end, so check the multiplicity of
-        // the other end to see whether the result should be ordered.
-        boolean isOrdered =
-            (isFirstEnd && end2Multiplicity.isOrdered()) ||
-            (!isFirstEnd && end1Multiplicity.isOrdered());
+        boolean isOrdered = isOrdered(isFirstEnd);
 
-        if (referencedLinks == null) {
-            if (isOrdered) {
-                referencedLinks = new ArrayList<RefAssociationLinkImpl>();
-            } else {
-                referencedLinks = new HashSet<RefAssociationLinkImpl>();
+        // With versioned storage, the links may be replaced by a writer, so
+        // leave the result to look up the visible links on each use.
+        Collection<RefAssociationLinkImpl> referencedLinks = null;
+        if (storage == null) {
+            referencedLinks = getLinkCollection(queryObject, isFirstEnd);
+            if (referencedLinks == null) {
+                if (isOrdered) {
+                    referencedLinks = new ArrayList<RefAssociationLinkImpl>();
+                } else {
+                    referencedLinks = new HashSet<RefAssociationLinkImpl>();
+                }
+                setLinkCollection(queryObject, isFirstEnd, referencedLinks);
             }
-            setLinkCollection(queryObject, isFirstEnd, referencedLinks);
         }
         
         if (isOrdered) {
@@ -474,6 +639,47 @@ public abstract class RefAssociationBase
         return repos;
     }
 
+    /**
+     * Tests whether the objects linked to an object at the given end are 
+     * ordered.  That depends on the multiplicity of the other end.
+     */
+    private boolean isOrdered(boolean isFirstEnd)
+    {
+        return 
+            (isFirstEnd && end2Multiplicity.isOrdered()) ||
+            (!isFirstEnd && end1Multiplicity.isOrdered());
+    }
+
+    /**
+     * Returns the links of the given object at the given end as of the 
+     * calling thread's snapshot.  The result must not be modified.
+     * 
+     * @param obj object at the given end
+     * @param isFirstEnd true if obj is at the first end
+     * @return the object's links, possibly empty but never null
+     */
+    @SuppressWarnings("unchecked")
+    Collection<RefAssociationLinkImpl> getVisibleLinks(
+        RefObject obj, boolean isFirstEnd)
+    {
+        Collection<RefAssociationLinkImpl> referencedLinks = 
+            getLinkCollection(obj, isFirstEnd);
+        if (storage != null) {
+            referencedLinks = 
+                (Collection<RefAssociationLinkImpl>)storage.getSnapshotValue(
+                    obj, isFirstEnd ? end1Key : end2Key, referencedLinks);
+        }
+        
+        if (referencedLinks == null) {
+            if (isOrdered(isFirstEnd)) {
+                return Collections.emptyList();
+            } else {
+                return Collections.emptySet();
+            }
+        }
+        return referencedLinks;
+    }
+    
     private Collection<RefAssociationLinkImpl> getLinkCollection(
         RefObject obj, boolean isFirstEnd)
     {
@@ -481,12 +687,43 @@ public abstract class RefAssociationBase
         return ((RefObjectBase) obj).getLinkCollection(endKey);
     }
 
+    /**
+     * Returns the links of the given object at the given end for 
+     * modification.  With versioned storage, the links are copied before
+     * their first modification in each write transaction, leaving the 
+     * original collection to readers.
+     */
+    private Collection<RefAssociationLinkImpl> getLinkCollectionForUpdate(
+        RefObject obj, boolean isFirstEnd)
+    {
+        Collection<RefAssociationLinkImpl> referencedLinks = 
+            getLinkCollection(obj, isFirstEnd);
+        
+        if (storage != null &&
+            storage.recordValue(
+                obj, isFirstEnd ? end1Key : end2Key, referencedLinks) &&
+            referencedLinks != null)
+        {
+            if (referencedLinks instanceof List) {
+                referencedLinks = 
+                    new ArrayList<RefAssociationLinkImpl>(referencedLinks);
+            } else {
+                referencedLinks = 
+                    new HashSet<RefAssociationLinkImpl>(referencedLinks);
+            }
+            setLinkCollection(obj, isFirstEnd, referencedLinks);
+        }
+        
+        return referencedLinks;
+    }
+
     private void setLinkCollection(
         RefObject obj, boolean isFirstEnd,
         Collection<RefAssociationLinkImpl> links)
     {
         String endKey = isFirstEnd ? end1Key : end2Key;
-        ((RefObjectBase) obj).setLinkCollection(endKey, links);
+        ((RefObjectBase) obj).setLinkCollection(
+            endKey, links, storage != null);
     }
 }
 
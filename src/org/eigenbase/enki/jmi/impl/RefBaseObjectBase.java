@@ -23,6 +23,7 @@ package org.eigenbase.enki.jmi.impl;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import javax.jmi.model.*;
@@ -44,6 +45,15 @@ public abstract class RefBaseObjectBase implements RefBaseObject
         Logger.getLogger("org.eigenbase.enki.jmi");
     private static boolean loggingEnabled;
     
+    /**
+     * Public methods and factory method cache, by implementation class.
+     * Shared by all {@link RefClass} and {@link RefPackage} instances of a 
+     * given class, since each metamodel or extent initialization creates 
+     * new instances of the same classes.
+     */
+    private static final ConcurrentMap<Class<?>, ClassMethods> 
+        classMethodsMap = new ConcurrentHashMap<Class<?>, ClassMethods>();
+    
     private final MetamodelInitializer initializer;
     
     private long mofId;
@@ -69,8 +79,19 @@ public abstract class RefBaseObjectBase implements RefBaseObject
         loggingEnabled = log.isLoggable(Level.FINER);
         
         if (this instanceof RefClass || this instanceof RefPackage) {
-            this.cachedMethods = getClass().getMethods();
-            this.createMethodCache = new HashMap<String, Method>();
+            ClassMethods classMethods = classMethodsMap.get(getClass());
+            if (classMethods == null) {
+                // Harmless race: the loser's instance is discarded.
+                classMethods = new ClassMethods(getClass());
+                ClassMethods existing = 
+                    classMethodsMap.putIfAbsent(getClass(), classMethods);
+                if (existing != null) {
+                    classMethods = existing;
+                }
+            }
+            
+            this.cachedMethods = classMethods.methods;
+            this.createMethodCache = classMethods.createMethods;
         } else {
             this.cachedMethods = null;
             this.createMethodCache = null;
@@ -621,6 +642,25 @@ public abstract class RefBaseObjectBase implements RefBaseObject
         
         log.finer(getClass().getSimpleName() + ": " + msg);
     }
+    
+    /**
+     * ClassMethods holds the reflective method information for a 
+     * {@link RefClass} or {@link RefPackage} implementation class.
+     */
+    private static class ClassMethods
+    {
+        /** Result of {@link Class#getMethods()}.  Never modified. */
+        private final Method[] methods;
+        
+        /** Factory methods by type name and parameter count. */
+        private final Map<String, Method> createMethods;
+        
+        private ClassMethods(Class<?> cls)
+        {
+            this.methods = cls.getMethods();
+            this.createMethods = new ConcurrentHashMap<String, Method>();
+        }
+    }
 }
 
 // End RefBaseObjectBase.java
@@ -37,13 +37,34 @@ import org.eigenbase.enki.util.*;
  */
 public abstract class RefClassBase extends RefFeaturedBase implements RefClass
 {
+    /**
+     * Incremented whenever a metamodel is initialized, since that may 
+     * change the generalization hierarchy.  Invalidates cached 
+     * {@link TypeClosure} instances.
+     */
+    private static volatile int hierarchyVersion = 0;
+    
     private final RefPackage container;
     private final EnkiMDRepository repos;
     
     private final Set<RefObject> allOfClass;
+    
+    /** Read-only, live view of {@link #allOfClass}. */
+    private final Collection<RefObject> allOfClassView;
+    
+    /** Read-only, live view of the instances of this type and subtypes. */
+    private final Collection<RefObject> allOfTypeView;
+    
+    private volatile TypeClosure typeClosure;
 
     private final boolean isReposWeak;
     
+    /** 
+     * Versioned storage for instances, if the repository versions them.  
+     * Null otherwise.
+     */
+    private final SnapshotStorage storage;
+    
     protected RefClassBase(RefPackage container)
     {
         super();
@@ -57,8 +78,18 @@ public abstract class RefClassBase extends RefFeaturedBase implements RefClass
             isReposWeak = repos.isWeak();
         }
         
+        if (repos instanceof SnapshotStorage && 
+            ((SnapshotStorage)repos).isVersioned())
+        {
+            this.storage = (SnapshotStorage)repos;
+        } else {
+            this.storage = null;
+        }
+        
         this.allOfClass = Collections.<RefObject>newSetFromMap(
             new ConcurrentHashMap<RefObject, Boolean>());
+        this.allOfClassView = Collections.unmodifiableSet(allOfClass);
+        this.allOfTypeView = new AllOfTypeView();
     }
     
     // Implement RefBaseObject
@@ -67,25 +98,77 @@ public abstract class RefClassBase extends RefFeaturedBase implements RefClass
         return container;
     }
     
+    /**
+     * Returns a read-only, live view of the instances of this class.  The 
+     * view's iterators are weakly consistent: they never throw 
+     * {@link ConcurrentModificationException} and may or may not reflect
+     * instances created or deleted after their creation.  If instances are
+     * versioned, a read transaction instead gets a view of the instances
+     * as of its snapshot (see {@link SnapshotStorage#getSnapshotMembers}).
+     */
     @SuppressWarnings("unchecked")
     public Collection refAllOfClass()
     {
         logJmi("refAllOfClass");
         
-        return 
-            Collections.unmodifiableCollection(
-                new HashSet<RefObject>(allOfClass));
+        return getInstances();
+    }
+    
+    /**
+     * Returns the instances of this class visible to the caller.
+     */
+    private Collection<RefObject> getInstances()
+    {
+        if (storage != null) {
+            return storage.getSnapshotMembers(this, allOfClassView);
+        }
+        
+        return allOfClassView;
     }
 
+    /**
+     * Returns a read-only, live view of the instances of this class and its
+     * subclasses.  The view is composed from the subclasses' 
+     * {@link #refAllOfClass()} views without copying and has the same
+     * consistency guarantees.
+     */
     @SuppressWarnings("unchecked")
     public Collection refAllOfType()
     {
-        logJmi("refAllOfClass");
+        logJmi("refAllOfType");
         
-        Set<RefObject> allOfType = new HashSet<RefObject>();
+        return allOfTypeView;
+    }
+    
+    /**
+     * Returns this class and its direct and indirect subclasses, each 
+     * exactly once.  The result is cached until the next metamodel
+     * initialization.
+     */
+    private RefClassBase[] getTypeClosure()
+    {
+        final int version = hierarchyVersion;
+        
+        TypeClosure closure = typeClosure;
+        if (closure == null || closure.version != version) {
+            Set<RefClassBase> classes = new LinkedHashSet<RefClassBase>();
+            addTypeClosure(classes);
+            
+            closure = 
+                new TypeClosure(
+                    version, classes.toArray(new RefClassBase[classes.size()]));
+            typeClosure = closure;
+        }
+        
+        return closure.classes;
+    }
+    
+    private void addTypeClosure(Set<RefClassBase> classes)
+    {
+        if (!classes.add(this)) {
+            return;
+        }
         
-        allOfType.addAll(allOfClass);
-
         MofClass mofCls = (MofClass)refMetaObject();
         Generalizes generalizesAssoc = 
             ((ModelPackage)mofCls.refOutermostPackage()).getGeneralizes();
@@ -98,10 +181,17 @@ public abstract class RefClassBase extends RefFeaturedBase implements RefClass
                 (RefClassBase)refImmediatePackage().refClass(
                     subClass.getName());
             
-            allOfType.addAll(refSubClass.refAllOfType());
+            refSubClass.addTypeClosure(classes);
         }
-        
-        return allOfType;
+    }
+    
+    /**
+     * Invalidates all cached subclass hierarchies.  Invoked after a 
+     * metamodel is initialized.
+     */
+    static void invalidateTypeClosures()
+    {
+        hierarchyVersion++;
     }
 
     @SuppressWarnings("unchecked")
@@ -147,6 +237,9 @@ public abstract class RefClassBase extends RefFeaturedBase implements RefClass
     protected void register(RefObject instance)
     {
         if (!isReposWeak) {
+            if (storage != null && !allOfClass.contains(instance)) {
+                storage.recordMembership(this, instance, false);
+            }
             allOfClass.add(instance);
         }
     }
@@ -154,11 +247,107 @@ public abstract class RefClassBase extends RefFeaturedBase implements RefClass
     protected void unregister(RefObject instance)
     {
         if (!isReposWeak) {
+            if (storage != null && allOfClass.contains(instance)) {
+                storage.recordMembership(this, instance, true);
+            }
             allOfClass.remove(instance);
         }
     }
     
     public abstract Class<?> getInstanceClass();
+    
+    /**
+     * TypeClosure caches the result of {@link RefClassBase#getTypeClosure()}
+     * along with the hierarchy version it was computed for.
+     */
+    private static class TypeClosure
+    {
+        private final int version;
+        private final RefClassBase[] classes;
+        
+        private TypeClosure(int version, RefClassBase[] classes)
+        {
+            this.version = version;
+            this.classes = classes;
+        }
+    }
+    
+    /**
+     * AllOfTypeView is a read-only view of the union of the instances
+     * (see {@link RefClassBase#getInstances()}) of a class and its 
+     * subclasses.  Each instance is a member of exactly one class's set, so
+     * the union requires no duplicate elimination.
+     */
+    private class AllOfTypeView extends AbstractCollection<RefObject>
+    {
+        @Override
+        public int size()
+        {
+            int size = 0;
+            for(RefClassBase refClass: getTypeClosure()) {
+                size += refClass.getInstances().size();
+            }
+            return size;
+        }
+        
+        @Override
+        public boolean isEmpty()
+        {
+            for(RefClassBase refClass: getTypeClosure()) {
+                if (!refClass.getInstances().isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean contains(Object o)
+        {
+            for(RefClassBase refClass: getTypeClosure()) {
+                if (refClass.getInstances().contains(o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public Iterator<RefObject> iterator()
+        {
+            final RefClassBase[] classes = getTypeClosure();
+            
+            return new Iterator<RefObject>() {
+                private int index = 0;
+                private Iterator<RefObject> iter = 
+                    classes[0].getInstances().iterator();
+                
+                public boolean hasNext()
+                {
+                    while(!iter.hasNext()) {
+                        if (++index >= classes.length) {
+                            return false;
+                        }
+                        iter = classes[index].getInstances().iterator();
+                    }
+                    return true;
+                }
+                
+                public RefObject next()
+                {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return iter.next();
+                }
+                
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
 }
 
 // End RefClassBase.java
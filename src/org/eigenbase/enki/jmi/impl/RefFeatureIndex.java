@@ -0,0 +1,73 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2007 The Eigenbase Project
+// Copyright (C) 2007 SQLstream, Inc.
+// Copyright (C) 2007 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.enki.jmi.impl;
+
+import java.util.*;
+
+/**
+ * RefFeatureIndex maps the names of a class's structural features to
+ * consecutive integers.  Generated class instance implementations use it
+ * to dispatch {@link RefFeaturedBase#refGetValue(String)} and
+ * {@link RefFeaturedBase#refSetValue(String, Object)} to their accessor
+ * and mutator methods via a switch statement, rather than by reflection.
+ * Instances are immutable and safe for use by multiple threads.
+ * 
+ * @author Stephan Zuercher
+ */
+public final class RefFeatureIndex
+{
+    private final Map<String, Integer> indexMap;
+    
+    /**
+     * Constructs a RefFeatureIndex.  Each feature's index is its position
+     * in the given array.
+     * 
+     * @param featureNames feature names, in index order
+     */
+    public RefFeatureIndex(String[] featureNames)
+    {
+        this.indexMap = new HashMap<String, Integer>();
+        for(int i = 0; i < featureNames.length; i++) {
+            if (!indexMap.containsKey(featureNames[i])) {
+                indexMap.put(featureNames[i], i);
+            }
+        }
+    }
+    
+    /**
+     * Returns the index of the named feature.
+     * 
+     * @param featureName feature name
+     * @return the feature's index or -1 if the feature is unknown
+     */
+    public int indexOf(String featureName)
+    {
+        Integer index = indexMap.get(featureName);
+        if (index == null) {
+            return -1;
+        }
+        
+        return index;
+    }
+}
+
+// End RefFeatureIndex.java
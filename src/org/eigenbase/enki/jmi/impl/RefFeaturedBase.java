@@ -50,6 +50,12 @@ public abstract class RefFeaturedBase
     private static final Map<Class<?>, Map<String, Method>> refMethodCache =
         new LRUHashMap<Class<?>, Map<String, Method>>(MAX_CLASSES);
     
+    /**
+     * Value returned by {@link #refGetFeatureValue(String)} when no 
+     * generated accessor exists for a feature.
+     */
+    protected static final Object NO_FEATURE_VALUE = new Object();
+    
     protected RefFeaturedBase()
     {
         super();
@@ -64,6 +70,13 @@ public abstract class RefFeaturedBase
     {
         logJmi("refGetValue(ByRefObject)");
         
+        if (type != null) {
+            Object value = refGetFeatureValue(((ModelElement)type).getName());
+            if (value != NO_FEATURE_VALUE) {
+                return value;
+            }
+        }
+        
         Method method = findMethod(type, null, true, 0);
         
         if (method != null) {
@@ -77,6 +90,13 @@ public abstract class RefFeaturedBase
     {
         logJmi("refGetValue(ByName)");
         
+        if (typeName != null) {
+            Object value = refGetFeatureValue(typeName);
+            if (value != NO_FEATURE_VALUE) {
+                return value;
+            }
+        }
+        
         Method method = findMethod(null, typeName, true, 0);
         
         if (method != null) {
@@ -120,9 +140,17 @@ public abstract class RefFeaturedBase
     {
         logJmi("refSetValue(ByRefObject)");
         
+        if (type != null && 
+            refSetFeatureValue(((ModelElement)type).getName(), value))
+        {
+            return;
+        }
+        
         Method method = findMethod(type, null, false, 1);
         
-        if (method != null && isMutable(method, value.getClass())) {
+        if (method != null &&
+            isMutable(method, value == null ? null : value.getClass()))
+        {
             invokeMethod(Void.class, this, method, value);
             return;
         }
@@ -134,9 +162,15 @@ public abstract class RefFeaturedBase
     {
         logJmi("refSetValue(ByName)");
 
+        if (typeName != null && refSetFeatureValue(typeName, value)) {
+            return;
+        }
+        
         Method method = findMethod(null, typeName, false, 1);
         
-        if (method != null && isMutable(method, value.getClass())) {
+        if (method != null && 
+            isMutable(method, value == null ? null : value.getClass()))
+        {
             invokeMethod(Void.class, this, method, value);
             return;
         }
@@ -144,6 +178,38 @@ public abstract class RefFeaturedBase
         throw new InvalidNameException(typeName);
     }
 
+    /**
+     * Invokes the accessor for the named feature without reflection.  
+     * Generated class instance implementations override this method (see
+     * {@link RefFeatureIndex}).  This implementation always returns
+     * {@link #NO_FEATURE_VALUE}, causing a reflective lookup.
+     * 
+     * @param featureName feature name
+     * @return the feature's value or {@link #NO_FEATURE_VALUE} if there is
+     *         no generated accessor for the feature
+     */
+    protected Object refGetFeatureValue(String featureName)
+    {
+        return NO_FEATURE_VALUE;
+    }
+    
+    /**
+     * Invokes the mutator for the named feature without reflection.
+     * Generated class instance implementations override this method (see
+     * {@link RefFeatureIndex}).  This implementation always returns false,
+     * causing a reflective lookup.
+     * 
+     * @param featureName feature name
+     * @param value the feature's new value
+     * @return true if the value was set, false if there is no generated 
+     *         mutator for the feature or the value is not of the 
+     *         mutator's type
+     */
+    protected boolean refSetFeatureValue(String featureName, Object value)
+    {
+        return false;
+    }
+    
     private Method findMethod(
         RefObject type, String typeName, boolean isGetter, int numParams)
     {
@@ -241,7 +307,13 @@ public abstract class RefFeaturedBase
         Class<?> paramType = paramTypes[0];
         
         if (paramType.isPrimitive()) {
+            if (valueType == null) {
+                return false;
+            }
             paramType = Primitives.getWrapper(paramType);
+        } else if (valueType == null) {
+            // null is assignable to any reference type
+            return true;
         }
         
         return 
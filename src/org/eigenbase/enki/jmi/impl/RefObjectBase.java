@@ -43,7 +43,11 @@ public abstract class RefObjectBase
 {
     private RefClass refClass;
 
-    private Map<String, Collection<RefAssociationLinkImpl>> linkMap
+    /**
+     * Link collections by association end key.  Replaced rather than
+     * modified when links are versioned (see {@link SnapshotStorage}).
+     */
+    private volatile Map<String, Collection<RefAssociationLinkImpl>> linkMap
         = new HashMap<String, Collection<RefAssociationLinkImpl>>();
     
     protected RefObjectBase(RefClass refClass)
@@ -64,9 +68,19 @@ public abstract class RefObjectBase
 
     void setLinkCollection(
         String endKey,
-        Collection<RefAssociationLinkImpl> links)
+        Collection<RefAssociationLinkImpl> links,
+        boolean copyOnWrite)
     {
-        linkMap.put(endKey, links);
+        if (copyOnWrite) {
+            // Concurrent readers may be calling getLinkCollection.
+            Map<String, Collection<RefAssociationLinkImpl>> newLinkMap =
+                new HashMap<String, Collection<RefAssociationLinkImpl>>(
+                    linkMap);
+            newLinkMap.put(endKey, links);
+            linkMap = newLinkMap;
+        } else {
+            linkMap.put(endKey, links);
+        }
     }
 
     protected RefObjectBase()
@@ -125,6 +139,15 @@ public abstract class RefObjectBase
         ((RefClassBase)refClass()).unregister(this);
     }
 
+    /**
+     * Re-registers this object after a call to {@link #unregister()}.  Used
+     * by generated code to restore an object whose deletion is rolled back.
+     */
+    protected void reregister()
+    {
+        ((RefClassBase)refClass()).register(this);
+    }
+
     public boolean refIsInstanceOf(RefObject objType, boolean considerSubtypes)
     {
         logJmi("refIsInstanceOf");
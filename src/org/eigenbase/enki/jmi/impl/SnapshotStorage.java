@@ -0,0 +1,107 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2007 The Eigenbase Project
+// Copyright (C) 2007 SQLstream, Inc.
+// Copyright (C) 2007 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.enki.jmi.impl;
+
+import java.util.*;
+
+/**
+ * SnapshotStorage is implemented by repositories that keep the previous 
+ * versions of values modified by write transactions, so that readers see a
+ * consistent snapshot while a writer modifies objects in place.  
+ * {@link RefClassBase} and {@link RefAssociationBase} use it to version 
+ * class extents and links.
+ * 
+ * <p>Values are identified by an owner and a feature, e.g., an object and
+ * an attribute name.  Membership of an object in a class extent or of a 
+ * link in an association is identified by the container and the member 
+ * and has a {@link Boolean} value.  Collection values must not be modified
+ * once replaced: writers copy a collection before its first modification
+ * in each transaction.
+ * 
+ * @author Stephan Zuercher
+ */
+public interface SnapshotStorage
+{
+    /**
+     * Tests whether values are versioned.  If not, the other methods need
+     * not be called.
+     * 
+     * @return true if values are versioned
+     */
+    public boolean isVersioned();
+    
+    /**
+     * Returns the value of a feature as of the calling thread's snapshot.
+     * The current value is returned to the writer and whenever the feature
+     * has not been modified since the snapshot was taken.
+     * 
+     * @param owner owner of the feature
+     * @param feature feature identifier
+     * @param currentValue current value of the feature, which must be read
+     *                     before this method is called
+     * @return the value visible to the caller
+     */
+    public Object getSnapshotValue(
+        Object owner, Object feature, Object currentValue);
+    
+    /**
+     * Records the value of a feature before it is modified.  Does nothing 
+     * unless the calling thread is in a write transaction. 
+     * 
+     * @param owner owner of the feature
+     * @param feature feature identifier
+     * @param oldValue value of the feature before modification
+     * @return true if this is the first modification of the feature in
+     *         the current write transaction, in which case a collection 
+     *         value must be copied and the copy modified instead
+     */
+    public boolean recordValue(Object owner, Object feature, Object oldValue);
+    
+    /**
+     * Returns the members of a container as of the calling thread's 
+     * snapshot.  In a read transaction the result is a read-only view of
+     * currentMembers that hides members added and shows members removed
+     * since the snapshot was taken.  Its membership tests do not copy
+     * currentMembers.  The view is only valid until the transaction ends.
+     * 
+     * @param container a class proxy or association
+     * @param currentMembers current members of the container
+     * @return currentMembers for the writer, or outside of transactions
+     *         if no member was added or removed since the last commit;
+     *         otherwise a read-only view or copy of the snapshot's members
+     */
+    public <E> Collection<E> getSnapshotMembers(
+        Object container, Collection<E> currentMembers);
+    
+    /**
+     * Records a change to a container's members before it is made.  Does 
+     * nothing unless the calling thread is in a write transaction. 
+     * 
+     * @param container a class proxy or association
+     * @param member the member being added or removed
+     * @param wasMember true if member is being removed, false if added
+     */
+    public void recordMembership(
+        Object container, Object member, boolean wasMember);
+}
+
+// End SnapshotStorage.java
@@ -247,6 +247,119 @@ public class Attribute
             otherElement);
     }
 
+    // Reflective Feature Dispatch
+    private static final org.eigenbase.enki.jmi.impl.RefFeatureIndex _features =
+        new org.eigenbase.enki.jmi.impl.RefFeatureIndex(
+            new String[] {
+                "name",
+                "qualifiedName",
+                "annotation",
+                "scope",
+                "visibility",
+                "multiplicity",
+                "isChangeable",
+                "isDerived",
+                "requiredElements",
+                "container",
+                "constraints",
+                "type",
+            });
+
+    protected Object refGetFeatureValue(String featureName)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                return getName();
+            case 1:
+                return getQualifiedName();
+            case 2:
+                return getAnnotation();
+            case 3:
+                return getScope();
+            case 4:
+                return getVisibility();
+            case 5:
+                return getMultiplicity();
+            case 6:
+                return isChangeable();
+            case 7:
+                return isDerived();
+            case 8:
+                return getRequiredElements();
+            case 9:
+                return getContainer();
+            case 10:
+                return getConstraints();
+            case 11:
+                return getType();
+            default:
+                return super.refGetFeatureValue(featureName);
+        }
+    }
+
+    protected boolean refSetFeatureValue(String featureName, Object value)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                if (value instanceof String) {
+                    setName((String)value);
+                    return true;
+                }
+                break;
+            case 2:
+                if (value instanceof String) {
+                    setAnnotation((String)value);
+                    return true;
+                }
+                break;
+            case 3:
+                if (value instanceof javax.jmi.model.ScopeKind) {
+                    setScope((javax.jmi.model.ScopeKind)value);
+                    return true;
+                }
+                break;
+            case 4:
+                if (value instanceof javax.jmi.model.VisibilityKind) {
+                    setVisibility((javax.jmi.model.VisibilityKind)value);
+                    return true;
+                }
+                break;
+            case 5:
+                if (value instanceof javax.jmi.model.MultiplicityType) {
+                    setMultiplicity((javax.jmi.model.MultiplicityType)value);
+                    return true;
+                }
+                break;
+            case 6:
+                if (value instanceof java.lang.Boolean) {
+                    setChangeable((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 7:
+                if (value instanceof java.lang.Boolean) {
+                    setDerived((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 9:
+                if (value instanceof javax.jmi.model.Namespace) {
+                    setContainer((javax.jmi.model.Namespace)value);
+                    return true;
+                }
+                break;
+            case 11:
+                if (value instanceof javax.jmi.model.Classifier) {
+                    setType((javax.jmi.model.Classifier)value);
+                    return true;
+                }
+                break;
+        }
+        return super.refSetFeatureValue(featureName, value);
+    }
+
     protected void checkConstraints(List<javax.jmi.reflect.JmiException> errors, boolean deepVerify)
     {
         if (name == null) {
@@ -317,6 +317,110 @@ public class EnumerationType
             includeSubtypes);
     }
 
+    // Reflective Feature Dispatch
+    private static final org.eigenbase.enki.jmi.impl.RefFeatureIndex _features =
+        new org.eigenbase.enki.jmi.impl.RefFeatureIndex(
+            new String[] {
+                "name",
+                "qualifiedName",
+                "annotation",
+                "isRoot",
+                "isLeaf",
+                "isAbstract",
+                "visibility",
+                "labels",
+                "requiredElements",
+                "container",
+                "constraints",
+                "contents",
+                "supertypes",
+            });
+
+    protected Object refGetFeatureValue(String featureName)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                return getName();
+            case 1:
+                return getQualifiedName();
+            case 2:
+                return getAnnotation();
+            case 3:
+                return isRoot();
+            case 4:
+                return isLeaf();
+            case 5:
+                return isAbstract();
+            case 6:
+                return getVisibility();
+            case 7:
+                return getLabels();
+            case 8:
+                return getRequiredElements();
+            case 9:
+                return getContainer();
+            case 10:
+                return getConstraints();
+            case 11:
+                return getContents();
+            case 12:
+                return getSupertypes();
+            default:
+                return super.refGetFeatureValue(featureName);
+        }
+    }
+
+    protected boolean refSetFeatureValue(String featureName, Object value)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                if (value instanceof String) {
+                    setName((String)value);
+                    return true;
+                }
+                break;
+            case 2:
+                if (value instanceof String) {
+                    setAnnotation((String)value);
+                    return true;
+                }
+                break;
+            case 3:
+                if (value instanceof java.lang.Boolean) {
+                    setRoot((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 4:
+                if (value instanceof java.lang.Boolean) {
+                    setLeaf((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 5:
+                if (value instanceof java.lang.Boolean) {
+                    setAbstract((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 6:
+                if (value instanceof javax.jmi.model.VisibilityKind) {
+                    setVisibility((javax.jmi.model.VisibilityKind)value);
+                    return true;
+                }
+                break;
+            case 9:
+                if (value instanceof javax.jmi.model.Namespace) {
+                    setContainer((javax.jmi.model.Namespace)value);
+                    return true;
+                }
+                break;
+        }
+        return super.refSetFeatureValue(featureName, value);
+    }
+
     protected void checkConstraints(List<javax.jmi.reflect.JmiException> errors, boolean deepVerify)
     {
         if (name == null) {
@@ -255,6 +255,98 @@ public class Operation
             proposedName);
     }
 
+    // Reflective Feature Dispatch
+    private static final org.eigenbase.enki.jmi.impl.RefFeatureIndex _features =
+        new org.eigenbase.enki.jmi.impl.RefFeatureIndex(
+            new String[] {
+                "name",
+                "qualifiedName",
+                "annotation",
+                "scope",
+                "visibility",
+                "isQuery",
+                "requiredElements",
+                "container",
+                "constraints",
+                "contents",
+                "exceptions",
+            });
+
+    protected Object refGetFeatureValue(String featureName)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                return getName();
+            case 1:
+                return getQualifiedName();
+            case 2:
+                return getAnnotation();
+            case 3:
+                return getScope();
+            case 4:
+                return getVisibility();
+            case 5:
+                return isQuery();
+            case 6:
+                return getRequiredElements();
+            case 7:
+                return getContainer();
+            case 8:
+                return getConstraints();
+            case 9:
+                return getContents();
+            case 10:
+                return getExceptions();
+            default:
+                return super.refGetFeatureValue(featureName);
+        }
+    }
+
+    protected boolean refSetFeatureValue(String featureName, Object value)
+    {
+        switch(_features.indexOf(featureName))
+        {
+            case 0:
+                if (value instanceof String) {
+                    setName((String)value);
+                    return true;
+                }
+                break;
+            case 2:
+                if (value instanceof String) {
+                    setAnnotation((String)value);
+                    return true;
+                }
+                break;
+            case 3:
+                if (value instanceof javax.jmi.model.ScopeKind) {
+                    setScope((javax.jmi.model.ScopeKind)value);
+                    return true;
+                }
+                break;
+            case 4:
+                if (value instanceof javax.jmi.model.VisibilityKind) {
+                    setVisibility((javax.jmi.model.VisibilityKind)value);
+                    return true;
+                }
+                break;
+            case 5:
+                if (value instanceof java.lang.Boolean) {
+                    setQuery((java.lang.Boolean)value);
+                    return true;
+                }
+                break;
+            case 7:
+                if (value instanceof javax.jmi.model.Namespace) {
+                    setContainer((javax.jmi.model.Namespace)value);
+                    return true;
+                }
+                break;
+        }
+        return super.refSetFeatureValue(featureName, value);
+    }
+
     protected void checkConstraints(List<javax.jmi.reflect.JmiException> errors, boolean deepVerify)
     {
         if (name == null) {
@@ -134,6 +134,38 @@ public abstract class EnkiRepository implements EnkiRepositoryMBean
             "statistic",
             "value");
     }
+    
+    /**
+     * Returns the repository's hot path metrics as {@link TabularData}.
+     * The default implementation assumes the repository does not collect
+     * metrics and returns no data.
+     * 
+     * @return empty TablularData instance
+     */
+    public TabularData getMetrics() throws Exception
+    {
+        return EnkiMBeanUtil.tabularDataFromMap(
+            new HashMap<Object, Object>(),
+            "metrics values",
+            "statistic",
+            "value");
+    }
+    
+    /**
+     * Returns the repository's change listener statistics as 
+     * {@link TabularData}.  The default implementation assumes the 
+     * repository does not queue change events and returns no data.
+     * 
+     * @return empty TablularData instance
+     */
+    public TabularData getListenerStatistics() throws Exception
+    {
+        return EnkiMBeanUtil.tabularDataFromMap(
+            new HashMap<Object, Object>(),
+            "listener statistics values",
+            "statistic",
+            "value");
+    }
 }
 
 // End EnkiRepository.java
@@ -68,6 +68,28 @@ public interface EnkiRepositoryMBean
      */
     public TabularData getPerformanceStatistics() throws Exception;
     
+    /**
+     * Retrieve the event queue statistics of this repository's change 
+     * listeners as tabular data: queue depth, lag and counts of delivered, 
+     * dropped and coalesced events for each listener.
+     * 
+     * @return this repository's listener statistics
+     * @throws Exception on error
+     */
+    public TabularData getListenerStatistics() throws Exception;
+    
+    /**
+     * Retrieve this repository's hot path metrics as tabular data: counters
+     * and latency distributions for cache use, lock waits, commit phases
+     * and so on.  Actual contents depend on the underlying repository 
+     * implementation.  Metrics are collected while performance statistics
+     * are enabled.
+     * 
+     * @return this repository's metrics
+     * @throws Exception on error
+     */
+    public TabularData getMetrics() throws Exception;
+    
     /**
      * Retrieve the repository's extent names.
      * 
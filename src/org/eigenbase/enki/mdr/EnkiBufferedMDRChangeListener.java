@@ -0,0 +1,54 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.mdr;
+
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiBufferedMDRChangeListener is an {@link MDRChangeListener} that
+ * controls how {@link EnkiChangeEventDispatcher} buffers its events.
+ * Listeners that do not implement this interface get the dispatcher's 
+ * default queue capacity and the 
+ * {@link EnkiChangeEventDispatcher.OverflowPolicy#DROP DROP} policy.
+ * 
+ * @author Stephan Zuercher
+ */
+public interface EnkiBufferedMDRChangeListener extends MDRChangeListener
+{
+    /**
+     * Returns the policy applied when this listener's event queue is full.
+     * 
+     * @return this listener's overflow policy
+     */
+    public EnkiChangeEventDispatcher.OverflowPolicy getOverflowPolicy();
+    
+    /**
+     * Returns the maximum number of undelivered events queued for this 
+     * listener.
+     * 
+     * @return this listener's queue capacity, or 0 to use the dispatcher's
+     *         default
+     */
+    public int getQueueCapacity();
+}
+
+// End EnkiBufferedMDRChangeListener.java
@@ -0,0 +1,716 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.mdr;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.logging.*;
+
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiChangeEventDispatcher issues {@link MDRChangeEvent events} 
+ * asynchronously upon completion of a write transaction.  Each listener has
+ * its own bounded queue of pending events, which is drained by a task 
+ * running on the dispatcher's {@link Executor}.  Events are delivered to a
+ * given listener in order, but a slow listener does not delay delivery to 
+ * other listeners (so long as the executor has threads to spare).  At most 
+ * {@link #MAX_CONSECUTIVE} events are delivered to a listener before its 
+ * task yields the thread to other listeners.
+ * 
+ * <p>When a listener's queue is full, its {@link OverflowPolicy} determines
+ * what happens to new events.  Listeners choose a policy and queue capacity
+ * by implementing {@link EnkiBufferedMDRChangeListener}.  Other listeners
+ * use {@link OverflowPolicy#DROP} and the dispatcher's default capacity.
+ * 
+ * @author Stephan Zuercher
+ */
+public class EnkiChangeEventDispatcher
+{
+    /** Maximum number of events delivered to a listener per task run. */
+    public static final int MAX_CONSECUTIVE = 100;
+    
+    /** Default per-listener queue capacity. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    
+    /** 
+     * Maximum time, in milliseconds, a committer waits for space in the 
+     * queue of a listener using {@link OverflowPolicy#BLOCK}. 
+     */
+    public static final long BLOCK_TIMEOUT = 30000L;
+    
+    private static final Logger log = 
+        Logger.getLogger(EnkiChangeEventDispatcher.class.getName());
+    
+    private final ListenerSource listenerSource;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final int defaultQueueCapacity;
+    
+    /** Listener queues, by listener (see EnkiMaskedMDRChangeListener). */
+    private final Map<EnkiMaskedMDRChangeListener, ListenerQueue> queues;
+    
+    private volatile boolean shutdown;
+    
+    /**
+     * Constructs a dispatcher that delivers events using its own pool of
+     * daemon threads.
+     * 
+     * @param listenerSource source of listeners
+     * @param numThreads number of delivery threads (at least 1 is used)
+     * @param defaultQueueCapacity queue capacity for listeners that do not
+     *                             specify one
+     */
+    public EnkiChangeEventDispatcher(
+        ListenerSource listenerSource, 
+        int numThreads,
+        int defaultQueueCapacity)
+    {
+        this(
+            listenerSource,
+            Executors.newFixedThreadPool(
+                Math.max(1, numThreads), new DispatchThreadFactory()),
+            true,
+            defaultQueueCapacity);
+    }
+    
+    /**
+     * Constructs a dispatcher that delivers events using the given 
+     * executor.  The executor is not shut down by {@link #shutdown()}.
+     * 
+     * @param listenerSource source of listeners
+     * @param executor executor that runs delivery tasks
+     * @param defaultQueueCapacity queue capacity for listeners that do not
+     *                             specify one
+     */
+    public EnkiChangeEventDispatcher(
+        ListenerSource listenerSource, 
+        Executor executor,
+        int defaultQueueCapacity)
+    {
+        this(listenerSource, executor, false, defaultQueueCapacity);
+    }
+    
+    private EnkiChangeEventDispatcher(
+        ListenerSource listenerSource,
+        Executor executor,
+        boolean ownsExecutor,
+        int defaultQueueCapacity)
+    {
+        this.listenerSource = listenerSource;
+        this.executor = executor;
+        this.ownedExecutor = 
+            ownsExecutor ? (ExecutorService)executor : null;
+        this.defaultQueueCapacity = 
+            defaultQueueCapacity > 0 
+                ? defaultQueueCapacity 
+                : DEFAULT_QUEUE_CAPACITY;
+        this.queues = 
+            new HashMap<EnkiMaskedMDRChangeListener, ListenerQueue>();
+        this.shutdown = false;
+    }
+    
+    /**
+     * Discards all pending events and stops delivery.  If the dispatcher
+     * created its own threads, waits for them to terminate.
+     * 
+     * @throws InterruptedException if interrupted while waiting for 
+     *                              delivery threads to terminate
+     */
+    public void shutdown() throws InterruptedException
+    {
+        synchronized(queues) {
+            if (shutdown) {
+                return;
+            }
+            
+            shutdown = true;
+            
+            for(ListenerQueue queue: queues.values()) {
+                queue.clear();
+            }
+            queues.clear();
+        }
+        
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            ownedExecutor.awaitTermination(
+                Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Queues an event for delivery to all current listeners.
+     * 
+     * @param event the event to deliver
+     */
+    public void enqueueEvent(MDRChangeEvent event)
+    {
+        enqueueEvents(Collections.singletonList(event));
+    }
+    
+    /**
+     * Queues events for delivery to all current listeners.  Events are
+     * only queued for listeners whose mask accepts them.  Listeners that
+     * implement {@link EnkiChangeSetListener} instead receive a single
+     * {@link EnkiChangeSetEvent} summarizing the events.
+     * 
+     * @param events the events to deliver, in order
+     */
+    public void enqueueEvents(Collection<MDRChangeEvent> events)
+    {
+        if (events.isEmpty()) {
+            return;
+        }
+        
+        Collection<EnkiMaskedMDRChangeListener> listeners = 
+            listenerSource.getListeners();
+        
+        List<ListenerQueue> targets = new ArrayList<ListenerQueue>();
+        synchronized(queues) {
+            if (shutdown) {
+                return;
+            }
+            
+            // Forget listeners that have been removed.
+            if (queues.size() > listeners.size() || 
+                !listeners.containsAll(queues.keySet()))
+            {
+                queues.keySet().retainAll(listeners);
+            }
+            
+            for(EnkiMaskedMDRChangeListener listener: listeners) {
+                ListenerQueue queue = queues.get(listener);
+                if (queue == null) {
+                    queue = new ListenerQueue(listener);
+                    queues.put(listener, queue);
+                }
+                targets.add(queue);
+            }
+        }
+        
+        EnkiChangeSetEvent changeSet = null;
+        boolean builtChangeSet = false;
+        for(ListenerQueue queue: targets) {
+            if (queue.listener.isChangeSetListener()) {
+                if (!builtChangeSet) {
+                    changeSet = 
+                        EnkiChangeSetEvent.build(listenerSource, events);
+                    builtChangeSet = true;
+                }
+                if (changeSet != null) {
+                    queue.offer(changeSet);
+                }
+                continue;
+            }
+            
+            for(MDRChangeEvent event: events) {
+                if (queue.listener.accepts(event)) {
+                    queue.offer(event);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns a snapshot of per-listener statistics.
+     * 
+     * @return statistics for each listener that has been sent events
+     */
+    public List<ListenerStatistics> getListenerStatistics()
+    {
+        List<ListenerQueue> snapshot;
+        synchronized(queues) {
+            snapshot = new ArrayList<ListenerQueue>(queues.values());
+        }
+        
+        long now = System.currentTimeMillis();
+        List<ListenerStatistics> result = 
+            new ArrayList<ListenerStatistics>(snapshot.size());
+        for(ListenerQueue queue: snapshot) {
+            result.add(queue.getStatistics(now));
+        }
+        return result;
+    }
+    
+    /**
+     * OverflowPolicy determines what happens to an event when a listener's
+     * queue is full.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * The committing thread waits for the listener to catch up, up to
+         * {@link EnkiChangeEventDispatcher#BLOCK_TIMEOUT} milliseconds, 
+         * after which the event is dropped.  Listeners using this policy
+         * must not begin repository transactions while handling events, 
+         * since the committer may hold the repository's write lock.
+         */
+        BLOCK,
+        
+        /**
+         * All queued events and the new event are replaced by a single
+         * {@link EnkiCoalescedChangeEvent}, which tells the listener how
+         * many events it missed.  The coalesced event is delivered 
+         * regardless of the listener's mask.
+         */
+        COALESCE,
+        
+        /**
+         * The event is discarded and counted.
+         */
+        DROP;
+    }
+    
+    /**
+     * ListenerQueue is a listener's bounded ring buffer of pending events.
+     * It is also the task that delivers those events.
+     */
+    private class ListenerQueue implements Runnable
+    {
+        private final EnkiMaskedMDRChangeListener listener;
+        private final OverflowPolicy policy;
+        
+        private final ReentrantLock lock;
+        private final Condition notFull;
+        
+        private final MDRChangeEvent[] events;
+        private final long[] enqueueTimes;
+        private int head;
+        private int count;
+        
+        /** True if this task is queued or running on the executor. */
+        private boolean scheduled;
+        
+        /** True if the last offered event was dropped. */
+        private boolean overflowing;
+        
+        private long delivered;
+        private long dropped;
+        private long coalesced;
+        private long blocked;
+        private long blockedMillis;
+        
+        ListenerQueue(EnkiMaskedMDRChangeListener listener)
+        {
+            this.listener = listener;
+            
+            OverflowPolicy policy = listener.getOverflowPolicy();
+            this.policy = policy != null ? policy : OverflowPolicy.DROP;
+            
+            int capacity = listener.getQueueCapacity();
+            if (capacity <= 0) {
+                capacity = defaultQueueCapacity;
+            }
+            
+            this.lock = new ReentrantLock();
+            this.notFull = lock.newCondition();
+            this.events = new MDRChangeEvent[capacity];
+            this.enqueueTimes = new long[capacity];
+        }
+        
+        void offer(MDRChangeEvent event)
+        {
+            boolean schedule = false;
+            lock.lock();
+            try {
+                if (count == events.length && !handleOverflow()) {
+                    return;
+                }
+
+                if (count == events.length) {
+                    // Coalesced: the new event counts towards the 
+                    // coalesced event.
+                    ((EnkiCoalescedChangeEvent)events[head]).add(1);
+                    coalesced++;
+                } else {
+                    add(event);
+                }
+                
+                if (!scheduled && !shutdown) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            
+            if (schedule) {
+                schedule();
+            }
+        }
+        
+        /**
+         * Handles a full queue according to the overflow policy.  Must
+         * be called with the lock held.
+         * 
+         * @return true if there is now room for the event, or if the queue
+         *         was coalesced; false if the event must be dropped
+         */
+        private boolean handleOverflow()
+        {
+            switch(policy) {
+            case BLOCK:
+                long start = System.currentTimeMillis();
+                long remaining = BLOCK_TIMEOUT;
+                blocked++;
+                try {
+                    while(count == events.length && !shutdown) {
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        remaining = 
+                            TimeUnit.NANOSECONDS.toMillis(
+                                notFull.awaitNanos(
+                                    TimeUnit.MILLISECONDS.toNanos(
+                                        remaining)));
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    blockedMillis += System.currentTimeMillis() - start;
+                }
+                
+                if (count < events.length) {
+                    overflowing = false;
+                    return true;
+                }
+                break;
+                
+            case COALESCE:
+                int numEvents = 0;
+                while(count > 0) {
+                    MDRChangeEvent e = poll();
+                    if (e instanceof EnkiCoalescedChangeEvent) {
+                        numEvents += 
+                            ((EnkiCoalescedChangeEvent)e).getCoalescedCount();
+                    } else {
+                        numEvents++;
+                        coalesced++;
+                    }
+                }
+                add(new EnkiCoalescedChangeEvent(listenerSource, numEvents));
+                
+                // Make room for the new event if this is a 1 element 
+                // queue.  Caller counts the new event.
+                return true;
+                
+            default:
+                break;
+            }
+            
+            dropped++;
+            if (!overflowing) {
+                overflowing = true;
+                log.warning(
+                    "Dropping events for listener " + getName() 
+                    + ": queue full (" + events.length + ")");
+            }
+            return false;
+        }
+        
+        private void add(MDRChangeEvent event)
+        {
+            int tail = (head + count) % events.length;
+            events[tail] = event;
+            enqueueTimes[tail] = System.currentTimeMillis();
+            count++;
+        }
+        
+        private MDRChangeEvent poll()
+        {
+            MDRChangeEvent event = events[head];
+            events[head] = null;
+            head = (head + 1) % events.length;
+            count--;
+            return event;
+        }
+        
+        void clear()
+        {
+            lock.lock();
+            try {
+                while(count > 0) {
+                    poll();
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private void schedule()
+        {
+            try {
+                executor.execute(this);
+            } catch(RejectedExecutionException e) {
+                lock.lock();
+                try {
+                    scheduled = false;
+                } finally {
+                    lock.unlock();
+                }
+                
+                if (!shutdown) {
+                    log.log(
+                        Level.SEVERE, 
+                        "Event delivery rejected for listener " + getName(),
+                        e);
+                }
+            }
+        }
+        
+        public void run()
+        {
+            for(int i = 0; i < MAX_CONSECUTIVE; i++) {
+                MDRChangeEvent event;
+                lock.lock();
+                try {
+                    if (count == 0 || shutdown) {
+                        scheduled = false;
+                        return;
+                    }
+                    
+                    event = poll();
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    if (event instanceof EnkiCoalescedChangeEvent ||
+                        event instanceof EnkiChangeSetEvent)
+                    {
+                        listener.changeUnmasked(event);
+                    } else {
+                        listener.change(event);
+                    }
+                } catch(Throwable t) {
+                    log.log(
+                        Level.SEVERE,
+                        "Unexpected exception in EnkiChangeEventDispatcher",
+                        t);
+                }
+                
+                lock.lock();
+                try {
+                    delivered++;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            
+            // Yield to other listeners' tasks.
+            lock.lock();
+            try {
+                if (count == 0 || shutdown) {
+                    scheduled = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            
+            schedule();
+        }
+        
+        private String getName()
+        {
+            return listener.getName();
+        }
+        
+        ListenerStatistics getStatistics(long now)
+        {
+            lock.lock();
+            try {
+                long lag = count > 0 ? now - enqueueTimes[head] : 0L;
+                return new ListenerStatistics(
+                    getName(),
+                    policy,
+                    events.length,
+                    count,
+                    Math.max(0L, lag),
+                    delivered,
+                    dropped,
+                    coalesced,
+                    blocked,
+                    blockedMillis);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * DispatchThreadFactory creates daemon event delivery threads.
+     */
+    private static class DispatchThreadFactory implements ThreadFactory
+    {
+        private static final AtomicInteger poolNumber = new AtomicInteger();
+        
+        private final int pool;
+        private final AtomicInteger threadNumber;
+        
+        DispatchThreadFactory()
+        {
+            this.pool = poolNumber.incrementAndGet();
+            this.threadNumber = new AtomicInteger();
+        }
+        
+        public Thread newThread(Runnable r)
+        {
+            Thread t = 
+                new Thread(
+                    r, 
+                    "Enki MDR Change Event Thread " + pool + "-" 
+                    + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+    
+    /**
+     * ListenerStatistics is a snapshot of a listener's queue statistics.
+     */
+    public static class ListenerStatistics
+    {
+        private final String listenerName;
+        private final OverflowPolicy policy;
+        private final int capacity;
+        private final int queueDepth;
+        private final long lagMillis;
+        private final long deliveredCount;
+        private final long droppedCount;
+        private final long coalescedCount;
+        private final long blockedCount;
+        private final long blockedMillis;
+        
+        private ListenerStatistics(
+            String listenerName,
+            OverflowPolicy policy,
+            int capacity,
+            int queueDepth,
+            long lagMillis,
+            long deliveredCount,
+            long droppedCount,
+            long coalescedCount,
+            long blockedCount,
+            long blockedMillis)
+        {
+            this.listenerName = listenerName;
+            this.policy = policy;
+            this.capacity = capacity;
+            this.queueDepth = queueDepth;
+            this.lagMillis = lagMillis;
+            this.deliveredCount = deliveredCount;
+            this.droppedCount = droppedCount;
+            this.coalescedCount = coalescedCount;
+            this.blockedCount = blockedCount;
+            this.blockedMillis = blockedMillis;
+        }
+        
+        /** @return the listener's class name and identity hash code */
+        public String getListenerName()
+        {
+            return listenerName;
+        }
+        
+        /** @return the listener's overflow policy */
+        public OverflowPolicy getOverflowPolicy()
+        {
+            return policy;
+        }
+        
+        /** @return the listener's queue capacity */
+        public int getQueueCapacity()
+        {
+            return capacity;
+        }
+        
+        /** @return number of events waiting to be delivered */
+        public int getQueueDepth()
+        {
+            return queueDepth;
+        }
+        
+        /** 
+         * @return age of the oldest undelivered event in milliseconds, or 0
+         *         if the queue is empty
+         */
+        public long getLagMillis()
+        {
+            return lagMillis;
+        }
+        
+        /** @return number of events delivered */
+        public long getDeliveredCount()
+        {
+            return deliveredCount;
+        }
+        
+        /** @return number of events dropped because the queue was full */
+        public long getDroppedCount()
+        {
+            return droppedCount;
+        }
+        
+        /** 
+         * @return number of events replaced by 
+         *         {@link EnkiCoalescedChangeEvent coalesced events}
+         */
+        public long getCoalescedCount()
+        {
+            return coalescedCount;
+        }
+        
+        /** @return number of times a committer waited for queue space */
+        public long getBlockedCount()
+        {
+            return blockedCount;
+        }
+        
+        /** @return total time committers waited for queue space */
+        public long getBlockedMillis()
+        {
+            return blockedMillis;
+        }
+    }
+    
+    /**
+     * ListenerSource represents an object that is a source of 
+     * {@link MDRChangeListener} instances.  Typically, this object is
+     * also an {@link EnkiMDRepository}.
+     */
+    public interface ListenerSource
+    {
+        /**
+         * Return all current listeners .
+         * 
+         * @return listeners collection that will contain all current listeners
+         */
+        public Collection<EnkiMaskedMDRChangeListener> getListeners();
+    }
+}
+
+// End EnkiChangeEventDispatcher.java
@@ -21,140 +21,64 @@
 */
 package org.eigenbase.enki.mdr;
 
-import java.util.*;
-import java.util.concurrent.*;
-import java.util.logging.*;
-
 import org.netbeans.api.mdr.events.*;
 
 /**
  * EnkiChangeEventThread issues {@link MDRChangeEvent events} asynchronously
  * upon completion of a write transaction.
+ * 
+ * <p>This class is retained for compatibility.  Events are now delivered 
+ * by an {@link EnkiChangeEventDispatcher} with a single delivery thread,
+ * created when this object is constructed.  Starting this thread has no 
+ * effect other than running an empty {@link #run()} method.
  *  
  * @author Stephan Zuercher
+ * @deprecated use {@link EnkiChangeEventDispatcher}
  */
+@Deprecated
 public class EnkiChangeEventThread
     extends Thread
 {
-    private static final long POLLING_TIMEOUT = 1000L;
-    private static final int MAX_CONSECUTIVE = 100;
-    private static final int MAX_CAPACITY = 1000;
-    
-    private static final Logger log = 
-        Logger.getLogger(EnkiChangeEventThread.class.getName());
-    
-    private final ListenerSource listenerSource;
-    private final LinkedBlockingQueue<MDRChangeEvent> eventQueue;
+    private static final int MAX_CAPACITY = 
+        EnkiChangeEventDispatcher.DEFAULT_QUEUE_CAPACITY;
     
-    private boolean shutdown;
+    private final EnkiChangeEventDispatcher dispatcher;
     
     public EnkiChangeEventThread(ListenerSource listenerSource)
     {
-        this.listenerSource = listenerSource;
-        this.eventQueue = 
-            new LinkedBlockingQueue<MDRChangeEvent>(MAX_CAPACITY);
-        this.shutdown = false;
+        this.dispatcher = 
+            new EnkiChangeEventDispatcher(listenerSource, 1, MAX_CAPACITY);
         
         setName("Enki MDR Change Event Thread");
         setDaemon(true);
     }
     
-    public synchronized void shutdown() throws InterruptedException
+    public void shutdown() throws InterruptedException
     {
-        if (shutdown) {
-            return;
-        }
-
-        eventQueue.clear();
-        shutdown = true;
-        
-        join();
+        dispatcher.shutdown();
     }
     
     public void enqueueEvent(MDRChangeEvent event)
     {
-        eventQueue.offer(event);
+        dispatcher.enqueueEvent(event);
     }
     
     public void run()
     {
-        ArrayList<MDRChangeEvent> events = 
-            new ArrayList<MDRChangeEvent>(MAX_CONSECUTIVE + 1);
-
-        boolean sawEvents = false;
-        try {
-            while(true) {
-                synchronized(this) {
-                    if (shutdown) {
-                        break;
-                    }
-                }
-
-                if (!sawEvents) {
-                    MDRChangeEvent trigger = 
-                       eventQueue.poll(
-                           POLLING_TIMEOUT, TimeUnit.MILLISECONDS);
-
-                    if (trigger == null) {
-                        sawEvents = false;
-                        continue;
-                    }
-                    
-                    events.add(trigger);
-                } else {
-                    int numAdded = eventQueue.drainTo(events, MAX_CONSECUTIVE);
-                    
-                    if (numAdded == 0) {
-                        sawEvents = false;
-                        continue;
-                    }
-                }
-
-                sawEvents = true;
-                    
-                Collection<EnkiMaskedMDRChangeListener> listeners= 
-                    listenerSource.getListeners();
-                for(MDRChangeEvent event: events) {                        
-                    for(MDRChangeListener listener: listeners) { 
-                        try {
-                            listener.change(event);
-                        }
-                        catch(Throwable t) {
-                            log.log(
-                                Level.SEVERE,
-                                "Unexpected exception in EnkiChangeEventThread",
-                                t);
-                        }
-                    }
-                }
-
-                events.clear();
-            }
-        }
-        catch(InterruptedException e) {
-            log.log(Level.SEVERE, "EnkiChangeEventThread interrupted", e);
-        }
-        catch(Throwable t) {
-            log.log(
-                Level.SEVERE, 
-                "EnkiChangeEventThread ending unexpectedly",
-                t);
-        }
+        // Delivery is performed by the dispatcher's thread.
     }
     
     /**
      * ListenerSource represents an object that is a source of 
      * {@link MDRChangeListener} instances.  Typically, this object is
      * also an {@link EnkiMDRepository}.
+     * 
+     * @deprecated use {@link EnkiChangeEventDispatcher.ListenerSource}
      */
+    @Deprecated
     public interface ListenerSource
+        extends EnkiChangeEventDispatcher.ListenerSource
     {
-        /**
-         * Return all current listeners .
-         * 
-         * @return listeners collection that will contain all current listeners
-         */
-        public Collection<EnkiMaskedMDRChangeListener> getListeners();
     }
 }
 
@@ -0,0 +1,443 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.mdr;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.jmi.impl.*;
+import org.eigenbase.enki.util.*;
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiChangeSetEvent summarizes the changes made by a single committed
+ * transaction.  It is delivered to {@link EnkiChangeSetListener} instances
+ * in place of the transaction's individual {@link InstanceEvent}, 
+ * {@link AttributeEvent} and {@link AssociationEvent} instances.
+ * 
+ * <p>MOF IDs are reported as sorted arrays of unique, primitive long values
+ * (see {@link MofIdUtil}).  Objects that were both created and deleted
+ * during the transaction are not reported.  Objects reported as created or
+ * deleted are never also reported as modified.  An object is modified if 
+ * one of its attributes was changed or if a link it participates in was
+ * added or removed.
+ * 
+ * <p>Instances of this class are immutable: all accessors return copies. 
+ * Its event type is 0, so it matches any event mask.
+ * 
+ * @author Stephan Zuercher
+ */
+public class EnkiChangeSetEvent extends MDRChangeEvent
+{
+    private static final long serialVersionUID = -2896414311407745531L;
+
+    private static final long[] EMPTY = new long[0];
+    
+    private final long[] created;
+    private final long[] deleted;
+    private final long[] modified;
+    private final Map<RefClass, long[]> createdByClass;
+    private final Map<RefClass, long[]> deletedByClass;
+    private final Map<RefClass, long[]> modifiedByClass;
+    private final Map<RefAssociation, long[]> linkEndsByAssoc;
+    
+    private EnkiChangeSetEvent(
+        Object source,
+        Map<RefClass, long[]> createdByClass,
+        Map<RefClass, long[]> deletedByClass,
+        Map<RefClass, long[]> modifiedByClass,
+        Map<RefAssociation, long[]> linkEndsByAssoc)
+    {
+        super(source, 0);
+        
+        this.createdByClass = createdByClass;
+        this.deletedByClass = deletedByClass;
+        this.modifiedByClass = modifiedByClass;
+        this.linkEndsByAssoc = linkEndsByAssoc;
+        this.created = merge(createdByClass.values());
+        this.deleted = merge(deletedByClass.values());
+        this.modified = merge(modifiedByClass.values());
+    }
+    
+    /**
+     * Builds a change-set from the given transaction events.  Events other
+     * than instance, attribute and association events are ignored.
+     * 
+     * @param source the event source (typically the repository)
+     * @param events the events generated by a committed transaction
+     * @return a change-set or null if the events created, deleted or 
+     *         modified no objects
+     */
+    static EnkiChangeSetEvent build(
+        Object source, Collection<MDRChangeEvent> events)
+    {
+        Map<RefClass, LongList> created = new HashMap<RefClass, LongList>();
+        Map<RefClass, LongList> deleted = new HashMap<RefClass, LongList>();
+        Map<RefClass, LongList> modified = new HashMap<RefClass, LongList>();
+        Map<RefAssociation, LongList> linkEnds = 
+            new HashMap<RefAssociation, LongList>();
+        
+        for(MDRChangeEvent event: events) {
+            if (event instanceof InstanceEvent) {
+                RefObject instance = ((InstanceEvent)event).getInstance();
+                if (instance == null) {
+                    continue;
+                }
+                
+                if (event.getType() == InstanceEvent.EVENT_INSTANCE_CREATE) {
+                    add(created, instance.refClass(), instance);
+                } else {
+                    add(deleted, instance.refClass(), instance);
+                }
+            } else if (event instanceof AttributeEvent) {
+                Object src = event.getSource();
+                if (src instanceof RefObject) {
+                    RefObject object = (RefObject)src;
+                    add(modified, object.refClass(), object);
+                }
+            } else if (event instanceof AssociationEvent) {
+                AssociationEvent assocEvent = (AssociationEvent)event;
+                RefAssociation assoc = (RefAssociation)event.getSource();
+                addLinkEnd(
+                    linkEnds, modified, assoc, assocEvent.getFixedElement());
+                addLinkEnd(
+                    linkEnds, modified, assoc, assocEvent.getOldElement());
+                addLinkEnd(
+                    linkEnds, modified, assoc, assocEvent.getNewElement());
+            }
+        }
+        
+        if (created.isEmpty() && deleted.isEmpty() && modified.isEmpty()) {
+            return null;
+        }
+        
+        // Objects created and then deleted were never visible outside the
+        // transaction.
+        long[] allCreated = mergeLists(created.values());
+        long[] allDeleted = mergeLists(deleted.values());
+        long[] transientIds = intersect(allCreated, allDeleted);
+        
+        Map<RefClass, long[]> createdByClass = 
+            finish(created, transientIds, EMPTY);
+        Map<RefClass, long[]> deletedByClass = 
+            finish(deleted, transientIds, EMPTY);
+        Map<RefClass, long[]> modifiedByClass = 
+            finish(modified, allCreated, allDeleted);
+        Map<RefAssociation, long[]> linkEndsByAssoc =
+            finish(linkEnds, transientIds, EMPTY);
+        
+        if (createdByClass.isEmpty() && 
+            deletedByClass.isEmpty() && 
+            modifiedByClass.isEmpty() &&
+            linkEndsByAssoc.isEmpty())
+        {
+            return null;
+        }
+        
+        return new EnkiChangeSetEvent(
+            source, 
+            createdByClass, 
+            deletedByClass, 
+            modifiedByClass, 
+            linkEndsByAssoc);
+    }
+    
+    /**
+     * Returns the MOF IDs of all objects created by the transaction.
+     * 
+     * @return sorted MOF IDs of created objects
+     */
+    public long[] getCreated()
+    {
+        return created.clone();
+    }
+    
+    /**
+     * Returns the MOF IDs of all objects deleted by the transaction.
+     * 
+     * @return sorted MOF IDs of deleted objects
+     */
+    public long[] getDeleted()
+    {
+        return deleted.clone();
+    }
+    
+    /**
+     * Returns the MOF IDs of all pre-existing objects modified by the
+     * transaction.
+     * 
+     * @return sorted MOF IDs of modified objects
+     */
+    public long[] getModified()
+    {
+        return modified.clone();
+    }
+    
+    /**
+     * Returns the classes of objects created by the transaction.
+     * 
+     * @return classes with at least one created instance
+     */
+    public Set<RefClass> getCreatedClasses()
+    {
+        return Collections.unmodifiableSet(createdByClass.keySet());
+    }
+    
+    /**
+     * Returns the classes of objects deleted by the transaction.
+     * 
+     * @return classes with at least one deleted instance
+     */
+    public Set<RefClass> getDeletedClasses()
+    {
+        return Collections.unmodifiableSet(deletedByClass.keySet());
+    }
+    
+    /**
+     * Returns the classes of objects modified by the transaction.
+     * 
+     * @return classes with at least one modified instance
+     */
+    public Set<RefClass> getModifiedClasses()
+    {
+        return Collections.unmodifiableSet(modifiedByClass.keySet());
+    }
+    
+    /**
+     * Returns the associations whose links were changed by the transaction.
+     * 
+     * @return associations with at least one added or removed link
+     */
+    public Set<RefAssociation> getAssociations()
+    {
+        return Collections.unmodifiableSet(linkEndsByAssoc.keySet());
+    }
+    
+    /**
+     * Returns the MOF IDs of objects of exactly the given class created by 
+     * the transaction.
+     * 
+     * @param refClass a class
+     * @return sorted MOF IDs, possibly empty
+     */
+    public long[] getCreated(RefClass refClass)
+    {
+        return get(createdByClass, refClass);
+    }
+    
+    /**
+     * Returns the MOF IDs of objects of exactly the given class deleted by 
+     * the transaction.
+     * 
+     * @param refClass a class
+     * @return sorted MOF IDs, possibly empty
+     */
+    public long[] getDeleted(RefClass refClass)
+    {
+        return get(deletedByClass, refClass);
+    }
+    
+    /**
+     * Returns the MOF IDs of objects of exactly the given class modified by 
+     * the transaction.
+     * 
+     * @param refClass a class
+     * @return sorted MOF IDs, possibly empty
+     */
+    public long[] getModified(RefClass refClass)
+    {
+        return get(modifiedByClass, refClass);
+    }
+    
+    /**
+     * Returns the MOF IDs of the objects at either end of the links added 
+     * to or removed from the given association.  Includes objects that 
+     * were created or deleted by the transaction.
+     * 
+     * @param assoc an association
+     * @return sorted MOF IDs, possibly empty
+     */
+    public long[] getLinkEnds(RefAssociation assoc)
+    {
+        return get(linkEndsByAssoc, assoc);
+    }
+    
+    private static <K> long[] get(Map<K, long[]> map, K key)
+    {
+        long[] mofIds = map.get(key);
+        if (mofIds == null) {
+            return EMPTY;
+        }
+        return mofIds.clone();
+    }
+    
+    private static <K> void add(
+        Map<K, LongList> map, K key, RefBaseObject object)
+    {
+        LongList list = map.get(key);
+        if (list == null) {
+            list = new LongList();
+            map.put(key, list);
+        }
+        
+        list.add(getMofId(object));
+    }
+    
+    private static void addLinkEnd(
+        Map<RefAssociation, LongList> linkEnds,
+        Map<RefClass, LongList> modified,
+        RefAssociation assoc,
+        RefObject end)
+    {
+        if (end == null) {
+            return;
+        }
+        
+        add(linkEnds, assoc, end);
+        add(modified, end.refClass(), end);
+    }
+    
+    private static long getMofId(RefBaseObject object)
+    {
+        if (object instanceof RefBaseObjectBase) {
+            return ((RefBaseObjectBase)object).getMofId();
+        }
+        
+        return MofIdUtil.parseMofIdStr(object.refMofId());
+    }
+    
+    /**
+     * Converts each list to a sorted array of unique values, removing 
+     * values found in either of the given sorted arrays.  Keys whose 
+     * arrays end up empty are omitted.
+     */
+    private static <K> Map<K, long[]> finish(
+        Map<K, LongList> lists, long[] exclude1, long[] exclude2)
+    {
+        Map<K, long[]> result = new HashMap<K, long[]>();
+        for(Map.Entry<K, LongList> entry: lists.entrySet()) {
+            long[] mofIds = 
+                entry.getValue().toSortedArray(exclude1, exclude2);
+            if (mofIds.length > 0) {
+                result.put(entry.getKey(), mofIds);
+            }
+        }
+        return result;
+    }
+    
+    private static long[] mergeLists(Collection<LongList> lists)
+    {
+        LongList all = new LongList();
+        for(LongList list: lists) {
+            all.addAll(list.values, list.size);
+        }
+        return all.toSortedArray(EMPTY, EMPTY);
+    }
+    
+    private static long[] merge(Collection<long[]> arrays)
+    {
+        LongList all = new LongList();
+        for(long[] array: arrays) {
+            all.addAll(array, array.length);
+        }
+        return all.toSortedArray(EMPTY, EMPTY);
+    }
+    
+    private static long[] intersect(long[] a, long[] b)
+    {
+        LongList result = new LongList();
+        int i = 0;
+        int j = 0;
+        while(i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result.add(a[i]);
+                i++;
+                j++;
+            }
+        }
+        return result.toSortedArray(EMPTY, EMPTY);
+    }
+    
+    /**
+     * LongList is a growable array of primitive longs.
+     */
+    private static class LongList
+    {
+        private long[] values = new long[16];
+        private int size;
+        
+        void add(long value)
+        {
+            if (size == values.length) {
+                grow(size + 1);
+            }
+            values[size++] = value;
+        }
+        
+        void addAll(long[] array, int length)
+        {
+            if (size + length > values.length) {
+                grow(size + length);
+            }
+            System.arraycopy(array, 0, values, size, length);
+            size += length;
+        }
+        
+        private void grow(int minCapacity)
+        {
+            long[] newValues = 
+                new long[Math.max(minCapacity, values.length * 2)];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+        }
+        
+        long[] toSortedArray(long[] exclude1, long[] exclude2)
+        {
+            Arrays.sort(values, 0, size);
+            
+            int n = 0;
+            for(int i = 0; i < size; i++) {
+                long value = values[i];
+                if (n > 0 && values[n - 1] == value) {
+                    continue;
+                }
+                if (Arrays.binarySearch(exclude1, value) >= 0 ||
+                    Arrays.binarySearch(exclude2, value) >= 0)
+                {
+                    continue;
+                }
+                values[n++] = value;
+            }
+            
+            long[] result = new long[n];
+            System.arraycopy(values, 0, result, 0, n);
+            return result;
+        }
+    }
+}
+
+// End EnkiChangeSetEvent.java
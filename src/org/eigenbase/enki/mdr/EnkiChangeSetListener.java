@@ -0,0 +1,45 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.mdr;
+
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiChangeSetListener is an {@link MDRChangeListener} that receives a 
+ * single {@link EnkiChangeSetEvent} per committed transaction instead of
+ * one event per change.  The listener's event mask is ignored for
+ * change-sets, and planned or canceled change notifications are not 
+ * delivered even if the listener implements {@link MDRPreChangeListener}.
+ * Transactions that create, delete or modify no objects or links produce
+ * no change-set.
+ * 
+ * <p>Listeners that merely invalidate state derived from the repository 
+ * should prefer this interface: a transaction that creates 100,000 objects
+ * results in a single call to {@link #change(MDRChangeEvent)}.
+ * 
+ * @author Stephan Zuercher
+ */
+public interface EnkiChangeSetListener extends MDRChangeListener
+{
+}
+
+// End EnkiChangeSetListener.java
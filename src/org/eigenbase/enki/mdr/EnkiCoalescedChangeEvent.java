@@ -0,0 +1,64 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.mdr;
+
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiCoalescedChangeEvent replaces events that could not be queued for a
+ * listener using {@link EnkiChangeEventDispatcher.OverflowPolicy#COALESCE}.
+ * Receipt of this event means that the listener missed the given number of
+ * events and should discard any state derived from repository contents.
+ * Its event type is 0, so it matches any event mask.
+ * 
+ * @author Stephan Zuercher
+ */
+public class EnkiCoalescedChangeEvent extends MDRChangeEvent
+{
+    private static final long serialVersionUID = 5361473312406618342L;
+
+    private int coalescedCount;
+    
+    public EnkiCoalescedChangeEvent(Object source, int coalescedCount)
+    {
+        super(source, 0);
+        
+        this.coalescedCount = coalescedCount;
+    }
+    
+    /**
+     * Returns the number of events this event replaces.
+     * 
+     * @return the number of events this event replaces
+     */
+    public synchronized int getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+    
+    synchronized void add(int count)
+    {
+        coalescedCount += count;
+    }
+}
+
+// End EnkiCoalescedChangeEvent.java
@@ -26,6 +26,7 @@ import java.util.*;
 
 import javax.jmi.reflect.*;
 
+import org.eigenbase.enki.util.*;
 import org.netbeans.api.mdr.*;
 
 /**
@@ -120,6 +121,17 @@ public interface EnkiMDRepository extends MDRepository
      */
     public RefObject getByMofId(String mofId, RefClass cls);
     
+    /**
+     * Looks up the {@link RefBaseObject objects} with the given MOF IDs.
+     * Some repositories may perform this operation more efficiently than
+     * repeated invocations of {@link MDRepository#getByMofId(String)}.
+     * 
+     * @param mofIds MOF IDs of the objects to look up
+     * @return a map of MOF ID to object, in the iteration order of 
+     *         <code>mofIds</code>; MOF IDs that were not found are omitted
+     */
+    public Map<String, RefBaseObject> getByMofId(Collection<String> mofIds);
+    
     /**
      * Deletes the given collection of {@link RefObject} instances.  This
      * method is functionally equivalent to iterating over the given collection
@@ -260,6 +272,16 @@ public interface EnkiMDRepository extends MDRepository
      */
     @Deprecated
     public void setRestoreExtentXmiFilter(Class<? extends InputStream> cls);
+
+    /**
+     * Creates a {@link StreamingXmiReader} for importing XMI into extents of
+     * this repository.  Implementations may return a subclass that takes
+     * advantage of their storage, for instance by batching writes.  The
+     * reader must be used within a write transaction.
+     * 
+     * @return a new StreamingXmiReader
+     */
+    public StreamingXmiReader createStreamingXmiReader();
     
     /**
      * Retrieves a copy of this repository's storage properties.
@@ -31,6 +31,8 @@ import org.netbeans.api.mdr.events.*;
  * If the given listener is also an {@link MDRPreChangeListener}, pre-change
  * events are also propagated, other they are discarded. Events are also 
  * discarded if the listener throws any {@link RuntimeException}.
+ * Pre-change events are never propagated to an 
+ * {@link EnkiChangeSetListener}.
  * 
  * <p><b>Mask Bits</b></p>
  * The mask bits used by this class correspond to the constants fields in
@@ -46,6 +48,7 @@ public class EnkiMaskedMDRChangeListener implements MDRPreChangeListener
     
     private final MDRChangeListener listener;
     private final MDRPreChangeListener preListener;
+    private final boolean changeSetListener;
     private int mask;
     
     /**
@@ -60,7 +63,8 @@ public class EnkiMaskedMDRChangeListener implements MDRPreChangeListener
     public EnkiMaskedMDRChangeListener(MDRChangeListener listener, int mask)
     {
         this.listener = listener;
-        if (listener instanceof MDRPreChangeListener) {
+        this.changeSetListener = listener instanceof EnkiChangeSetListener;
+        if (listener instanceof MDRPreChangeListener && !changeSetListener) {
             this.preListener = (MDRPreChangeListener)listener;
         } else {
             this.preListener = null;
@@ -120,23 +124,104 @@ public class EnkiMaskedMDRChangeListener implements MDRPreChangeListener
 
     // Implements MDRChangeListener
     public void change(MDRChangeEvent event)
+    {
+        if (accepts(event)) {
+            changeUnmasked(event);
+        }
+    }
+    
+    /**
+     * Delivers the given event to the underlying listener without checking
+     * it against this instance's mask.  Used for events generated by
+     * {@link EnkiChangeEventDispatcher} itself.
+     * 
+     * @param event an event
+     */
+    public void changeUnmasked(MDRChangeEvent event)
+    {
+        try {
+            listener.change(event);
+        }
+        catch(RuntimeException e) {
+            log.log(
+                Level.WARNING, 
+                "Ignored exception during change event", 
+                e);
+        }
+    }
+    
+    /**
+     * Tests whether the given event matches this instance's mask.
+     * 
+     * @param event an event
+     * @return true if the event would be passed to the underlying listener
+     */
+    public boolean accepts(MDRChangeEvent event)
     {
         int localMask;
         synchronized(this) {
             localMask = this.mask;
         }
         
-        if (event.isOfType(localMask)) {
-            try {
-                listener.change(event);
-            }
-            catch(RuntimeException e) {
-                log.log(
-                    Level.WARNING, 
-                    "Ignored exception during change event", 
-                    e);
-            }
+        return event.isOfType(localMask);
+    }
+    
+    /**
+     * Tests whether the underlying listener is an 
+     * {@link EnkiChangeSetListener}.
+     * 
+     * @return true if the listener expects one {@link EnkiChangeSetEvent}
+     *         per transaction instead of individual events
+     */
+    public boolean isChangeSetListener()
+    {
+        return changeSetListener;
+    }
+    
+    /**
+     * Returns the underlying listener's overflow policy.
+     * 
+     * @return the policy requested by an 
+     *         {@link EnkiBufferedMDRChangeListener} or null if the 
+     *         underlying listener does not specify one
+     */
+    public EnkiChangeEventDispatcher.OverflowPolicy getOverflowPolicy()
+    {
+        if (listener instanceof EnkiBufferedMDRChangeListener) {
+            return ((EnkiBufferedMDRChangeListener)listener)
+                .getOverflowPolicy();
         }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the underlying listener's event queue capacity.
+     * 
+     * @return the capacity requested by an 
+     *         {@link EnkiBufferedMDRChangeListener} or 0 if the 
+     *         underlying listener does not specify one
+     */
+    public int getQueueCapacity()
+    {
+        if (listener instanceof EnkiBufferedMDRChangeListener) {
+            return ((EnkiBufferedMDRChangeListener)listener)
+                .getQueueCapacity();
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Returns a name for the underlying listener, for use in logging and
+     * statistics.
+     * 
+     * @return the listener's class name and identity hash code
+     */
+    public String getName()
+    {
+        return listener.getClass().getName() + "@" 
+            + Integer.toHexString(System.identityHashCode(listener));
     }
     
     /**
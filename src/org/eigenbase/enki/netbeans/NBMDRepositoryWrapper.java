@@ -398,6 +398,19 @@ public class NBMDRepositoryWrapper implements EnkiMDRepository
         return obj;
     }
     
+    public Map<String, RefBaseObject> getByMofId(Collection<String> mofIds)
+    {
+        Map<String, RefBaseObject> result = 
+            new LinkedHashMap<String, RefBaseObject>();
+        for(String mofId: mofIds) {
+            RefBaseObject obj = impl.getByMofId(mofId);
+            if (obj != null) {
+                result.put(mofId, obj);
+            }
+        }
+        return result;
+    }
+    
     public void delete(Collection<RefObject> objects)
     {
         for(RefObject object: objects)
@@ -512,6 +525,12 @@ public class NBMDRepositoryWrapper implements EnkiMDRepository
             stream);
     }
 
+    // Implement EnkiMDRepository
+    public StreamingXmiReader createStreamingXmiReader()
+    {
+        return new StreamingXmiReader(this);
+    }
+
     @Deprecated
     public void setRestoreExtentXmiFilter(Class<? extends InputStream> cls)
     {
@@ -0,0 +1,137 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2008 The Eigenbase Project
+// Copyright (C) 2008 SQLstream, Inc.
+// Copyright (C) 2008 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.enki.test;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.mdr.*;
+import org.eigenbase.enki.util.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * BatchGetByMofIdTest tests 
+ * {@link org.eigenbase.enki.mdr.EnkiMDRepository#getByMofId(Collection)}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class BatchGetByMofIdTest extends SampleModelTestBase
+{
+    private static String carMofId;
+    private static String busMofId;
+    
+    @BeforeClass
+    public static void setupVehicles()
+    {
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Austin", "Seven", 2);
+            
+            carMofId = car.refMofId();
+            
+            Bus bus = getSamplePackage().getBus().createBus("MCI", "E4500", 3);
+            
+            busMofId = bus.refMofId();
+        }
+        finally {
+            getRepository().endTrans(false);
+        }
+    }
+    
+    @Test
+    public void testBatchGetByMofId()
+    {
+        getRepository().beginTrans(false);
+        try {
+            // Never allocated: MOF ID generation starts at 1.
+            String missingMofId = MofIdUtil.makeMofIdStr(0L);
+            
+            List<String> mofIds = 
+                Arrays.asList(busMofId, missingMofId, carMofId);
+            
+            Map<String, RefBaseObject> result = 
+                getRepository().getByMofId(mofIds);
+            
+            Assert.assertEquals(
+                Arrays.asList(busMofId, carMofId),
+                new ArrayList<String>(result.keySet()));
+            
+            Assert.assertTrue(result.get(busMofId) instanceof Bus);
+            Assert.assertTrue(result.get(carMofId) instanceof Car);
+        }
+        finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    @Test
+    public void testBatchGetByMofIdWithMetamodel()
+    {
+        if (getMdrProvider() != MdrProvider.ENKI_HIBERNATE) {
+            // Transient repositories do not resolve metamodel MOF IDs via
+            // getByMofId(String) either.
+            return;
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            RefObject carMetaObj = 
+                getSamplePackage().getCar().refMetaObject();
+            String carClassMofId = carMetaObj.refMofId();
+            
+            Map<String, RefBaseObject> result = 
+                getRepository().getByMofId(
+                    Arrays.asList(carClassMofId, carMofId));
+            
+            Assert.assertEquals(
+                Arrays.asList(carClassMofId, carMofId),
+                new ArrayList<String>(result.keySet()));
+            Assert.assertEquals(carMetaObj, result.get(carClassMofId));
+        }
+        finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    @Test
+    public void testBatchGetByMofIdEmpty()
+    {
+        getRepository().beginTrans(false);
+        try {
+            Map<String, RefBaseObject> result = 
+                getRepository().getByMofId(Collections.<String>emptyList());
+            
+            Assert.assertTrue(result.isEmpty());
+        }
+        finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End BatchGetByMofIdTest.java
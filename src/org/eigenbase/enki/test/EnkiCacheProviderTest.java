@@ -0,0 +1,127 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import java.util.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.hibernate.cache.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+/**
+ * EnkiCacheProviderTest tests {@link EnkiCacheProvider}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class EnkiCacheProviderTest
+{
+    private static final int MAX_SIZE = 100;
+    
+    private EnkiCacheProvider provider;
+    
+    @Before
+    public void startProvider()
+    {
+        Properties props = new Properties();
+        props.setProperty(
+            HibernateMDRepository.PROPERTY_STORAGE_SHARED_CACHE_SIZE,
+            String.valueOf(MAX_SIZE));
+        
+        provider = new EnkiCacheProvider();
+        provider.start(props);
+    }
+    
+    @After
+    public void stopProvider()
+    {
+        provider.stop();
+    }
+    
+    @Test
+    public void testRegions()
+    {
+        Cache entities = provider.buildCache("ENKI", new Properties());
+        Cache queries = provider.buildCache("ENKI_QUERY", new Properties());
+        
+        entities.put("a", "entity");
+        queries.put("a", "query");
+        
+        Assert.assertEquals("entity", entities.get("a"));
+        Assert.assertEquals("query", queries.get("a"));
+        Assert.assertEquals(1L, entities.getElementCountInMemory());
+        
+        queries.clear();
+        
+        Assert.assertNull(queries.get("a"));
+        Assert.assertEquals("entity", entities.get("a"));
+        
+        EnkiCacheProvider.Statistics stats = provider.getStatistics();
+        Assert.assertEquals(3L, stats.getHitCount());
+        Assert.assertEquals(1L, stats.getMissCount());
+        Assert.assertEquals(1, stats.getSize());
+    }
+    
+    @Test
+    public void testLruEviction()
+    {
+        Cache entities = provider.buildCache("ENKI", new Properties());
+        
+        for(int i = 0; i < MAX_SIZE; i++) {
+            entities.put(i, i);
+        }
+        
+        // Touch the oldest entry so that the next put evicts entry 1.
+        Assert.assertEquals(0, entities.get(0));
+        
+        entities.put(MAX_SIZE, MAX_SIZE);
+        
+        Assert.assertEquals(0, entities.get(0));
+        Assert.assertNull(entities.get(1));
+        Assert.assertEquals((long)MAX_SIZE, entities.getElementCountInMemory());
+        Assert.assertEquals(1L, provider.getStatistics().getEvictionCount());
+    }
+    
+    @Test
+    public void testTimestampsNotEvicted()
+    {
+        Cache timestamps = 
+            provider.buildCache(
+                UpdateTimestampsCache.REGION_NAME, new Properties());
+        Cache entities = provider.buildCache("ENKI", new Properties());
+
+        timestamps.put("TABLE", 1L);
+        for(int i = 0; i < MAX_SIZE * 2; i++) {
+            entities.put(i, i);
+        }
+        
+        Assert.assertEquals(1L, timestamps.get("TABLE"));
+        
+        provider.clear();
+        
+        Assert.assertEquals(0L, entities.getElementCountInMemory());
+        Assert.assertEquals(1L, timestamps.get("TABLE"));
+    }
+}
+
+// End EnkiCacheProviderTest.java
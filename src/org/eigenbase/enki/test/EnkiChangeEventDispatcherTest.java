@@ -0,0 +1,241 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eigenbase.enki.mdr.*;
+import org.junit.*;
+import org.junit.runner.*;
+import org.netbeans.api.mdr.events.*;
+
+/**
+ * EnkiChangeEventDispatcherTest tests {@link EnkiChangeEventDispatcher}'s
+ * overflow policies.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class EnkiChangeEventDispatcherTest
+{
+    private static final int CAPACITY = 10;
+    private static final int NUM_EVENTS = 25;
+    private static final long TIMEOUT = 10000L;
+    
+    private final List<EnkiMaskedMDRChangeListener> listeners =
+        new ArrayList<EnkiMaskedMDRChangeListener>();
+    
+    private EnkiChangeEventDispatcher dispatcher;
+    
+    @Before
+    public void createDispatcher()
+    {
+        dispatcher = 
+            new EnkiChangeEventDispatcher(
+                new EnkiChangeEventDispatcher.ListenerSource() {
+                    public Collection<EnkiMaskedMDRChangeListener> 
+                        getListeners()
+                    {
+                        return listeners;
+                    }
+                },
+                2,
+                CAPACITY);
+    }
+    
+    @After
+    public void shutdownDispatcher() throws InterruptedException
+    {
+        dispatcher.shutdown();
+    }
+    
+    @Test
+    public void testDrop() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedListener listener = 
+            addListener(EnkiChangeEventDispatcher.OverflowPolicy.DROP, gate);
+        
+        enqueueEvents();
+        
+        gate.countDown();
+        
+        // The first event may or may not have been dequeued before the 
+        // queue filled up.
+        int received = listener.awaitEvents(CAPACITY);
+        Assert.assertTrue(received == CAPACITY || received == CAPACITY + 1);
+        
+        EnkiChangeEventDispatcher.ListenerStatistics stats = 
+            dispatcher.getListenerStatistics().get(0);
+        Assert.assertEquals(NUM_EVENTS - received, stats.getDroppedCount());
+    }
+    
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedListener listener = 
+            addListener(
+                EnkiChangeEventDispatcher.OverflowPolicy.COALESCE, gate);
+        
+        enqueueEvents();
+        
+        gate.countDown();
+        
+        listener.awaitCount(NUM_EVENTS);
+        
+        Assert.assertEquals(
+            0L, dispatcher.getListenerStatistics().get(0).getDroppedCount());
+    }
+    
+    @Test
+    public void testBlock() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(0);
+        GatedListener listener = 
+            addListener(EnkiChangeEventDispatcher.OverflowPolicy.BLOCK, gate);
+        
+        enqueueEvents();
+        
+        Assert.assertEquals(NUM_EVENTS, listener.awaitEvents(NUM_EVENTS));
+    }
+    
+    private GatedListener addListener(
+        EnkiChangeEventDispatcher.OverflowPolicy policy, CountDownLatch gate)
+    {
+        GatedListener listener = new GatedListener(policy, gate);
+        listeners.add(
+            new EnkiMaskedMDRChangeListener(
+                listener, MDRChangeEvent.EVENTMASK_ALL));
+        return listener;
+    }
+    
+    private void enqueueEvents()
+    {
+        for(int i = 0; i < NUM_EVENTS; i++) {
+            dispatcher.enqueueEvent(
+                new MDRChangeEvent(this, MDRChangeEvent.EVENTMASK_ALL) { 
+                    private static final long serialVersionUID = 1L;
+                });
+        }
+    }
+    
+    /**
+     * GatedListener records events, but does not return from 
+     * {@link #change(MDRChangeEvent)} until its gate opens.
+     */
+    private static class GatedListener 
+        implements EnkiBufferedMDRChangeListener
+    {
+        private final EnkiChangeEventDispatcher.OverflowPolicy policy;
+        private final CountDownLatch gate;
+        private final List<MDRChangeEvent> events;
+        
+        GatedListener(
+            EnkiChangeEventDispatcher.OverflowPolicy policy, 
+            CountDownLatch gate)
+        {
+            this.policy = policy;
+            this.gate = gate;
+            this.events = new ArrayList<MDRChangeEvent>();
+        }
+        
+        public EnkiChangeEventDispatcher.OverflowPolicy getOverflowPolicy()
+        {
+            return policy;
+        }
+
+        public int getQueueCapacity()
+        {
+            return CAPACITY;
+        }
+
+        public void change(MDRChangeEvent event)
+        {
+            try {
+                gate.await();
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            
+            synchronized(this) {
+                events.add(event);
+                notifyAll();
+            }
+        }
+        
+        /**
+         * Waits until at least the given number of events arrive and no
+         * more arrive for a short time.
+         */
+        synchronized int awaitEvents(int expected) throws Exception
+        {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while(events.size() < expected) {
+                long remaining = deadline - System.currentTimeMillis();
+                Assert.assertTrue("timed out", remaining > 0);
+                wait(remaining);
+            }
+            
+            int size;
+            do {
+                size = events.size();
+                wait(200L);
+            } while(size != events.size());
+            
+            return size;
+        }
+        
+        /**
+         * Waits until the given number of events, counting the events
+         * replaced by {@link EnkiCoalescedChangeEvent}s, arrive.
+         */
+        synchronized void awaitCount(int expected) throws Exception
+        {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while(true) {
+                int count = 0;
+                for(MDRChangeEvent event: events) {
+                    if (event instanceof EnkiCoalescedChangeEvent) {
+                        count += 
+                            ((EnkiCoalescedChangeEvent)event)
+                                .getCoalescedCount();
+                    } else {
+                        count++;
+                    }
+                }
+                
+                if (count == expected) {
+                    return;
+                }
+                Assert.assertTrue("too many events", count < expected);
+                
+                long remaining = deadline - System.currentTimeMillis();
+                Assert.assertTrue("timed out", remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}
+
+// End EnkiChangeEventDispatcherTest.java
@@ -0,0 +1,137 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import java.util.*;
+
+import org.eigenbase.enki.util.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+/**
+ * EnkiMetricsTest tests {@link EnkiMetrics}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class EnkiMetricsTest
+{
+    @Test
+    public void testDisabled()
+    {
+        EnkiMetrics metrics = new EnkiMetrics();
+        
+        EnkiMetrics.Counter counter = metrics.counter("c");
+        EnkiMetrics.Histogram histogram = metrics.histogram("h");
+        
+        counter.increment();
+        histogram.record(100L);
+        histogram.recordSince(metrics.startTimer());
+        
+        Assert.assertEquals(0L, counter.get());
+        Assert.assertEquals(0L, histogram.snapshot().getCount());
+        
+        metrics.setEnabled(true);
+        Assert.assertSame(counter, metrics.counter("c"));
+        counter.add(5L);
+        Assert.assertEquals(5L, counter.get());
+        
+        metrics.reset();
+        Assert.assertEquals(0L, counter.get());
+    }
+    
+    @Test
+    public void testConcurrentCounter() throws Exception
+    {
+        final EnkiMetrics metrics = new EnkiMetrics();
+        metrics.setEnabled(true);
+        
+        final int numThreads = 8;
+        final int increments = 10000;
+        
+        Thread[] threads = new Thread[numThreads];
+        for(int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    EnkiMetrics.Counter counter = metrics.counter("c");
+                    for(int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        
+        Assert.assertEquals(
+            (long)numThreads * increments, metrics.counter("c").get());
+    }
+    
+    @Test
+    public void testHistogram()
+    {
+        EnkiMetrics metrics = new EnkiMetrics();
+        metrics.setEnabled(true);
+        
+        EnkiMetrics.Histogram histogram = metrics.histogram("h");
+        for(long i = 1; i <= 100000L; i++) {
+            histogram.record(i);
+        }
+        
+        EnkiMetrics.Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100000L, snapshot.getCount());
+        Assert.assertEquals(100000L, snapshot.getMax());
+        Assert.assertEquals(50000L, snapshot.getMean());
+        
+        assertWithin(50000L, snapshot.getPercentile(50.0));
+        assertWithin(90000L, snapshot.getPercentile(90.0));
+        assertWithin(99000L, snapshot.getPercentile(99.0));
+        Assert.assertEquals(100000L, snapshot.getPercentile(100.0));
+        
+        // Small values are exact.
+        EnkiMetrics.Histogram small = metrics.histogram("small");
+        for(long i = 0; i < 10; i++) {
+            small.record(i);
+        }
+        Assert.assertEquals(4L, small.snapshot().getPercentile(50.0));
+        
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        metrics.snapshot(data);
+        Assert.assertEquals(100000L, data.get("h: count"));
+        Assert.assertEquals(100L, data.get("h: max (us)"));
+    }
+    
+    private void assertWithin(long expected, long actual)
+    {
+        // Buckets are 1/16th of a power of 2 wide.
+        long tolerance = expected / 16;
+        Assert.assertTrue(
+            "expected " + expected + ", got " + actual,
+            Math.abs(expected - actual) <= tolerance);
+    }
+}
+
+// End EnkiMetricsTest.java
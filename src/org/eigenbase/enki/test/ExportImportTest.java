@@ -166,6 +166,23 @@ public class ExportImportTest extends SampleModelTestBase
         XmiFileComparator.assertEqual(file, file2);
     }
 
+    @Test
+    public void testStreamingExportImport() throws Exception
+    {
+        RefPackage refPackage = getPackage();
+        
+        deleteExtent(refPackage);
+        
+        refPackage = createExtent();
+        
+        streamingImportExtent(refPackage, file);
+        
+        File file2 = new File("test/results/ExportImportTestStreaming.xmi");
+        exportExtent(refPackage, file2);
+
+        XmiFileComparator.assertEqual(file, file2);
+    }
+
     @Test
     public void testMultipleExtents()
         throws Exception
@@ -330,6 +347,35 @@ public class ExportImportTest extends SampleModelTestBase
             }
         }
     }
+    
+    private void streamingImportExtent(
+        RefPackage extent, File importFile) throws Exception
+    {
+        EnkiMDRepository mdrRepos = getRepository();
+
+        StreamingXmiReader xmiReader = mdrRepos.createStreamingXmiReader();
+        
+        // Small batches exercise batch boundaries and forward references
+        // that span batches.
+        xmiReader.setBatchSize(5);
+        
+        boolean rollback = false;
+        try {
+            mdrRepos.beginTrans(true);
+            rollback = true;
+            
+            long count = 
+                xmiReader.read(importFile.toURL().toString(), extent);
+            Assert.assertTrue(count > 0L);
+            
+            rollback = false;
+            mdrRepos.endTrans();
+        } finally {
+            if (rollback) {
+                mdrRepos.endTrans(true);
+            }
+        }
+    }
 }
 
 // End ExportImportTest.java
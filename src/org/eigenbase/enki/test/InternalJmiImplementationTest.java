@@ -21,7 +21,10 @@
 */
 package org.eigenbase.enki.test;
 
+import java.util.*;
+
 import javax.jmi.model.*;
+import javax.jmi.reflect.*;
 
 import org.eigenbase.enki.jmi.model.init.*;
 import org.junit.*;
@@ -48,6 +51,69 @@ public class InternalJmiImplementationTest
         Assert.assertNotNull(contains.refAllLinks());
         Assert.assertFalse(contains.refAllLinks().isEmpty());
     }
+    
+    @Test
+    public void testAllOfTypeViews()
+    {
+        Initializer initializer = new Initializer("MofExtent");
+        initializer.init(null);
+        
+        ModelPackage modelPackage = initializer.getModelPackage();
+        
+        Collection<?> allOfClass = modelPackage.getMofClass().refAllOfClass();
+        Collection<?> allOfType = modelPackage.getClassifier().refAllOfType();
+        
+        // Views are cached.
+        Assert.assertSame(
+            allOfType, modelPackage.getClassifier().refAllOfType());
+        
+        // No duplicates across the subclass hierarchy.
+        Assert.assertEquals(
+            new HashSet<Object>(allOfType).size(), allOfType.size());
+        Assert.assertTrue(allOfType.size() > allOfClass.size());
+        Assert.assertTrue(allOfType.containsAll(allOfClass));
+        
+        try {
+            allOfType.clear();
+            Assert.fail("expected UnsupportedOperationException");
+        } catch(UnsupportedOperationException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testReflectiveFeatureAccess()
+    {
+        Initializer initializer = new Initializer("MofExtent");
+        initializer.init(null);
+        
+        ModelPackage modelPackage = initializer.getModelPackage();
+        MofClass mofClass = 
+            (MofClass)modelPackage.getMofClass().refAllOfClass()
+                .iterator().next();
+        
+        Assert.assertEquals(mofClass.getName(), mofClass.refGetValue("name"));
+        Assert.assertEquals(
+            mofClass.isAbstract(), mofClass.refGetValue("isAbstract"));
+        
+        mofClass.refSetValue("annotation", "reflective annotation");
+        Assert.assertEquals(
+            "reflective annotation", mofClass.getAnnotation());
+        
+        try {
+            mofClass.refGetValue("noSuchFeature");
+            Assert.fail("expected InvalidNameException");
+        } catch(InvalidNameException e) {
+            // expected
+        }
+        
+        try {
+            mofClass.refSetValue("name", 1);
+            Assert.fail("expected InvalidNameException");
+        } catch(InvalidNameException e) {
+            // expected
+        }
+    }
 }
 
 // End InternalJmiImplementationTest.java
@@ -440,6 +440,53 @@ public class JmiWriteTest extends JmiTestBase
             getRepository().endTrans(false);
         }
     }
+    
+    @Test
+    public void testRefAllOfTypeWithPendingChanges()
+    {
+        reset();
+        
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Lotus", "Elise", 2);
+            
+            Vehicle vehicle =
+                getSamplePackage().getVehicle().createVehicle("Segway", "i2");
+            
+            Collection<?> vehicles = 
+                getSamplePackage().getVehicle().refAllOfType();
+            Assert.assertEquals(2, vehicles.size());
+            
+            car.refDelete();
+            
+            vehicles = getSamplePackage().getVehicle().refAllOfType();
+            Assert.assertEquals(1, vehicles.size());
+            Assert.assertFalse(vehicles.contains(car));
+            Assert.assertTrue(vehicles.contains(vehicle));
+            
+            Car car2 = 
+                getSamplePackage().getCar().createCar("Lotus", "Exige", 2);
+            
+            vehicles = getSamplePackage().getVehicle().refAllOfType();
+            Assert.assertEquals(2, vehicles.size());
+            Assert.assertTrue(vehicles.contains(car2));
+            
+            int count = 0;
+            for(Object o: vehicles) {
+                Assert.assertTrue(o == vehicle || o == car2);
+                count++;
+            }
+            Assert.assertEquals(vehicles.size(), count);
+            
+            Collection<?> cars = getSamplePackage().getCar().refAllOfClass();
+            Assert.assertEquals(1, cars.size());
+            Assert.assertTrue(cars.contains(car2));
+            Assert.assertFalse(cars.contains(vehicle));
+        } finally {
+            getRepository().endTrans(false);
+        }
+    }
 }
 
 // End JmiWriteTest.java
@@ -529,6 +529,66 @@ public class LazyAssociationTest extends SampleModelTestBase
         }
     }
     
+    @Test
+    public void testLargeAssociationIteratorRemove()
+    {
+        createVariedAssociations(1, 50);
+        String parentMofId = parentsMofIds.get(0);
+        List<String> child1MofIds = childMofIds.get(0);
+        
+        getRepository().endSession();
+        getRepository().beginSession();
+        
+        // remove every other child while iterating
+        Set<String> remainingMofIds = new HashSet<String>();
+        getRepository().beginTrans(true);
+        try {
+            LazyParent parent = 
+                (LazyParent)getRepository().getByMofId(parentMofId);
+
+            Collection<LazyChild> childCollection = 
+                getSpecialPackage().getLazyOwnership().getOwnsLazily(parent);
+            
+            Set<String> childMofIdsCopy = new HashSet<String>(child1MofIds);
+            
+            boolean remove = true;
+            for(Iterator<LazyChild> iter = childCollection.iterator(); 
+                iter.hasNext(); )
+            {
+                LazyChild child = iter.next();
+                Assert.assertTrue(childMofIdsCopy.remove(child.refMofId()));
+                
+                if (remove) {
+                    iter.remove();
+                } else {
+                    remainingMofIds.add(child.refMofId());
+                }
+                remove = !remove;
+            }
+
+            Assert.assertTrue(childMofIdsCopy.isEmpty());
+        } finally {
+            getRepository().endTrans(false);
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            LazyParent parent = 
+                (LazyParent)getRepository().getByMofId(parentMofId);
+
+            Collection<LazyChild> childCollection = 
+                getSpecialPackage().getLazyOwnership().getOwnsLazily(parent);
+            Assert.assertEquals(
+                remainingMofIds.size(), childCollection.size());
+            
+            for(LazyChild child: childCollection) {
+                Assert.assertTrue(remainingMofIds.contains(child.refMofId()));
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
     @Test
     public void testUnsavedAssociation()
     {
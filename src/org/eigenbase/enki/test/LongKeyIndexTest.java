@@ -0,0 +1,76 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2007 The Eigenbase Project
+// Copyright (C) 2007 SQLstream, Inc.
+// Copyright (C) 2007 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.enki.test;
+
+import java.util.*;
+
+import org.eigenbase.enki.util.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+/**
+ * LongKeyIndexTest tests {@link LongKeyIndex}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class LongKeyIndexTest
+{
+    @Test
+    public void testPutAndGet()
+    {
+        LongKeyIndex<String> index = new LongKeyIndex<String>();
+        Map<Long, String> expected = new HashMap<Long, String>();
+        
+        // Metamodel-style MOF IDs: high bit set, densely allocated.
+        Random rng = new Random(0xfeedL);
+        for(int i = 0; i < 10000; i++) {
+            long key = 0x4000000000000000L + rng.nextInt(20000);
+            String value = String.valueOf(i);
+            
+            String prev = index.putIfAbsent(key, value);
+            if (expected.containsKey(key)) {
+                Assert.assertEquals(expected.get(key), prev);
+            } else {
+                Assert.assertNull(prev);
+                expected.put(key, value);
+            }
+        }
+        
+        Assert.assertEquals(expected.size(), index.size());
+        for(Map.Entry<Long, String> entry: expected.entrySet()) {
+            Assert.assertEquals(
+                entry.getValue(), index.get(entry.getKey()));
+        }
+        
+        Assert.assertNull(index.get(0L));
+        Assert.assertNull(index.get(-1L));
+    }
+    
+    @Test(expected = NullPointerException.class)
+    public void testNullValue()
+    {
+        new LongKeyIndex<String>().putIfAbsent(1L, null);
+    }
+}
+
+// End LongKeyIndexTest.java
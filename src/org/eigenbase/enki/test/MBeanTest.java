@@ -132,7 +132,9 @@ public class MBeanTest extends SampleModelTestBase
                             }));
                 Assert.assertEquals(expected, extentNamesSet);
             } else if (name.equals("StorageProperties") ||
-                       name.equals("PerformanceStatistics"))
+                       name.equals("PerformanceStatistics") ||
+                       name.equals("ListenerStatistics") ||
+                       name.equals("Metrics"))
             {
                 // Just enumerate the values without expecting any specific
                 // values.  These will vary widely by repositoroy type.
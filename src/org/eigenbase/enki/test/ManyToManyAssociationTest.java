@@ -225,6 +225,55 @@ public class ManyToManyAssociationTest extends SampleModelTestBase
         }
     }
     
+    @Test
+    public void testUnorderedLinkExists()
+    {
+        Set<String> e21RefMofIds = new HashSet<String>();
+        Set<String> e20RefMofIds = createEntities20(N, N, e21RefMofIds, false);
+
+        Set<String> otherE21RefMofIds = new HashSet<String>();
+        Set<String> otherE20RefMofIds = 
+            createEntities20(N, N, otherE21RefMofIds, true);
+        
+        getRepository().beginTrans(false);
+        try {
+            Entity20to21 assoc = getSimplePackage().getEntity20to21();
+            
+            for(String e20RefMofId: e20RefMofIds) {
+                Entity20 e20 = findEntity(e20RefMofId, Entity20.class);
+                
+                for(String e21RefMofId: e21RefMofIds) {
+                    Entity21 e21 = findEntity(e21RefMofId, Entity21.class);
+                    Assert.assertTrue(assoc.refLinkExists(e20, e21));
+                }
+                
+                for(String e21RefMofId: otherE21RefMofIds) {
+                    Entity21 e21 = findEntity(e21RefMofId, Entity21.class);
+                    Assert.assertFalse(assoc.refLinkExists(e20, e21));
+                }
+            }
+            
+            for(String e20RefMofId: otherE20RefMofIds) {
+                Entity20 e20 = findEntity(e20RefMofId, Entity20.class);
+                
+                // Load the collection, so that membership is tested in memory
+                Assert.assertEquals(N, e20.getEntity21().size());
+                
+                for(String e21RefMofId: otherE21RefMofIds) {
+                    Entity21 e21 = findEntity(e21RefMofId, Entity21.class);
+                    Assert.assertTrue(assoc.refLinkExists(e20, e21));
+                }
+                
+                for(String e21RefMofId: e21RefMofIds) {
+                    Entity21 e21 = findEntity(e21RefMofId, Entity21.class);
+                    Assert.assertFalse(assoc.refLinkExists(e20, e21));
+                }
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
     @Test
     public void testOrderedReassociationByFirstEnd()
     {
@@ -27,6 +27,7 @@ import javax.jmi.reflect.*;
 
 import org.eigenbase.enki.mdr.*;
 import org.eigenbase.enki.test.events.*;
+import org.eigenbase.enki.util.*;
 import org.junit.*;
 import org.junit.runner.*;
 import org.netbeans.api.mdr.events.*;
@@ -1791,6 +1792,83 @@ public class MdrEventsApiTest extends SampleModelTestBase
         }
     }
 
+    @Test
+    public void testChangeSetListener() throws Exception
+    {
+        ChangeSetListener changeSetListener = new ChangeSetListener();
+        getRepository().addListener(changeSetListener);
+        try {
+            long carMofId;
+            long driverMofId;
+            getRepository().beginTrans(true);
+            try {
+                Car car = 
+                    getSamplePackage().getCar().createCar("Ford", "Model T", 2);
+                Driver driver =
+                    getSamplePackage().getDriver().createDriver(
+                        "Henry", "T1908");
+                car.setDriver(driver);
+                
+                // Created and deleted in the same transaction: invisible.
+                getSamplePackage().getPerson().createPerson(
+                    "Nobody").refDelete();
+                
+                carMofId = MofIdUtil.parseMofIdStr(car.refMofId());
+                driverMofId = MofIdUtil.parseMofIdStr(driver.refMofId());
+            } finally {
+                getRepository().endTrans(false);
+            }
+            
+            EnkiChangeSetEvent changeSet = 
+                changeSetListener.waitForChangeSet();
+            Assert.assertTrue(
+                Arrays.equals(
+                    sorted(carMofId, driverMofId), changeSet.getCreated()));
+            Assert.assertTrue(
+                Arrays.equals(
+                    new long[] { carMofId }, 
+                    changeSet.getCreated(getSamplePackage().getCar())));
+            Assert.assertEquals(0, changeSet.getDeleted().length);
+            Assert.assertEquals(0, changeSet.getModified().length);
+            Assert.assertFalse(
+                changeSet.getCreatedClasses().contains(
+                    getSamplePackage().getPerson()));
+            Assert.assertEquals(1, changeSet.getAssociations().size());
+            
+            getRepository().beginTrans(true);
+            try {
+                Car car = 
+                    (Car)getRepository().getByMofId(
+                        MofIdUtil.makeMofIdStr(carMofId));
+                car.setModel("Model A");
+                
+                RefObject driver = 
+                    (RefObject)getRepository().getByMofId(
+                        MofIdUtil.makeMofIdStr(driverMofId));
+                driver.refDelete();
+            } finally {
+                getRepository().endTrans(false);
+            }
+            
+            changeSet = changeSetListener.waitForChangeSet();
+            Assert.assertEquals(0, changeSet.getCreated().length);
+            Assert.assertTrue(
+                Arrays.equals(
+                    new long[] { driverMofId }, changeSet.getDeleted()));
+            Assert.assertTrue(
+                Arrays.equals(
+                    new long[] { carMofId }, changeSet.getModified()));
+        } finally {
+            getRepository().removeListener(changeSetListener);
+        }
+    }
+    
+    private static long[] sorted(long... mofIds)
+    {
+        Arrays.sort(mofIds);
+        return mofIds;
+    }
+    
     private enum CreateMethod
     {
         CLASS_PROXY,
@@ -1836,6 +1914,32 @@ public class MdrEventsApiTest extends SampleModelTestBase
         }
         
     }
+    
+    private static class ChangeSetListener implements EnkiChangeSetListener
+    {
+        private final LinkedList<EnkiChangeSetEvent> changeSets = 
+            new LinkedList<EnkiChangeSetEvent>();
+        
+        public synchronized void change(MDRChangeEvent event)
+        {
+            changeSets.add((EnkiChangeSetEvent)event);
+            notifyAll();
+        }
+        
+        public synchronized EnkiChangeSetEvent waitForChangeSet() 
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + EVENT_TIMEOUT;
+            while(changeSets.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                Assert.assertTrue("timed out waiting for change-set", 
+                    remaining > 0);
+                wait(remaining);
+            }
+            
+            return changeSets.removeFirst();
+        }
+    }
 }
 
 // End MdrEventsApiTest.java
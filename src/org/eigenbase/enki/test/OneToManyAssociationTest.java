@@ -473,6 +473,79 @@ public class OneToManyAssociationTest extends SampleModelTestBase
         traverseHasEntity17(e16RefMofId, e17RefMofIds);
     }
     
+    @Test
+    public void testOrderedRepeatedInsert()
+    {
+        List<String> e17RefMofIds = new ArrayList<String>();
+        
+        String e16RefMofId = createEntity16(N, e17RefMofIds, false);
+
+        // Enough inserts at the same positions to exhaust any gap between
+        // stored ordinals.
+        final int numInserts = 40;
+        
+        getRepository().beginTrans(true);
+        try {
+            Entity16 e16 = findEntity(e16RefMofId, Entity16.class);
+            List<Entity17> entities17 = e16.getEntity17();
+            
+            for(int i = 0; i < numInserts; i++) {
+                Entity17 e17 = 
+                    getSimplePackage().getEntity17().createEntity17();
+                
+                int index = (i % 2 == 0) ? 0 : 1;
+                entities17.add(index, e17);
+                e17RefMofIds.add(index, e17.refMofId());
+            }
+            
+            traverseHasEntity17(e16RefMofId, e17RefMofIds, false);
+        }
+        finally {
+            getRepository().endTrans();
+        }
+
+        traverseHasEntity17(e16RefMofId, e17RefMofIds);
+    }
+    
+    @Test
+    public void testOrderedBulkInsert()
+    {
+        List<String> e17RefMofIds = new ArrayList<String>();
+        
+        String e16RefMofId = createEntity16(N, e17RefMofIds, false);
+
+        getRepository().beginTrans(true);
+        try {
+            Entity16 e16 = findEntity(e16RefMofId, Entity16.class);
+            List<Entity17> entities17 = e16.getEntity17();
+            
+            List<Entity17> head = new ArrayList<Entity17>();
+            List<Entity17> middle = new ArrayList<Entity17>();
+            for(int i = 0; i < N; i++) {
+                head.add(getSimplePackage().getEntity17().createEntity17());
+                middle.add(getSimplePackage().getEntity17().createEntity17());
+            }
+            
+            Assert.assertTrue(entities17.addAll(0, head));
+            for(int i = 0; i < N; i++) {
+                e17RefMofIds.add(i, head.get(i).refMofId());
+            }
+            
+            int index = e17RefMofIds.size() / 2;
+            Assert.assertTrue(entities17.addAll(index, middle));
+            for(int i = 0; i < N; i++) {
+                e17RefMofIds.add(index + i, middle.get(i).refMofId());
+            }
+            
+            traverseHasEntity17(e16RefMofId, e17RefMofIds, false);
+        }
+        finally {
+            getRepository().endTrans();
+        }
+
+        traverseHasEntity17(e16RefMofId, e17RefMofIds);
+    }
+    
     private String createEntity10(
         int numEntities11, Set<String> e11RefMofIds, boolean reverse)
     {
@@ -0,0 +1,47 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import org.eigenbase.enki.hibernate.*;
+import org.junit.runner.*;
+
+/**
+ * ParallelBackupRestoreTest repeats {@link BackupRestoreTest} with parallel,
+ * compressed backups enabled.  Storage properties are ignored by providers
+ * other than Hibernate.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class ParallelBackupRestoreTest extends BackupRestoreTest
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_BACKUP_THREADS,
+            String.valueOf(4));
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_BACKUP_COMPRESS,
+            Boolean.toString(true));
+    }
+}
+
+// End ParallelBackupRestoreTest.java
@@ -0,0 +1,153 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import java.io.*;
+import java.util.zip.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.mdr.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * ParallelRestoreTest repeats {@link BackupRestoreTest} with parallel
+ * restores, small insert batches and deferred index creation enabled.
+ * Storage properties are ignored by providers other than Hibernate.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class ParallelRestoreTest extends BackupRestoreTest
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_RESTORE_THREADS,
+            String.valueOf(4));
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_RESTORE_BATCH_SIZE,
+            String.valueOf(100));
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_RESTORE_DEFER_INDEXES,
+            Boolean.toString(true));
+    }
+    
+    /**
+     * Tests that a parallel restore which fails after committing the
+     * deletion of the extent's data and some batches of restored rows
+     * removes the restored rows and reports that the extent is empty.
+     */
+    @Test
+    public void testFailedRestoreLeavesExtentEmpty() throws Exception
+    {
+        if (getMdrProvider() != MdrProvider.ENKI_HIBERNATE) {
+            // Only Hibernate supports parallel restores.
+            return;
+        }
+        
+        getRepository().beginTrans(true);
+        try {
+            CarClass carClass = getSamplePackage().getCar();
+            for(int i = 0; i < 250; i++) {
+                carClass.createCar("Make" + i, "Model" + i, 4);
+            }
+        } finally {
+            getRepository().endTrans(false);
+        }
+        
+        ByteArrayOutputStream backup = new ByteArrayOutputStream();
+        getRepository().beginTrans(true);
+        try {
+            getRepository().backupExtent(getTestExtentName(), backup);
+        } finally {
+            getRepository().endTrans(false);
+        }
+        
+        byte[] corruptBackup = appendCorruptDataEntry(backup.toByteArray());
+        
+        getRepository().endSession();
+        getRepository().beginSession();
+        
+        try {
+            getRepository().beginTrans(true);
+            try {
+                getRepository().restoreExtent(
+                    getTestExtentName(), 
+                    "SampleMetamodel", 
+                    "EEM", 
+                    new ByteArrayInputStream(corruptBackup));
+                
+                Assert.fail("restore of corrupt backup succeeded");
+            } catch(EnkiRestoreFailedException e) {
+                Assert.assertTrue(
+                    e.getMessage(), e.getMessage().contains("left empty"));
+                Assert.assertTrue(e.getCause() instanceof IOException);
+            } finally {
+                getRepository().endTrans(false);
+            }
+        } finally {
+            resetMetaModel();
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            Assert.assertTrue(
+                getSamplePackage().getCar().refAllOfClass().isEmpty());
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    /**
+     * Copies the given backup, appending a data entry that cannot be parsed.
+     */
+    private byte[] appendCorruptDataEntry(byte[] backup) throws IOException
+    {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ZipOutputStream zipOut = new ZipOutputStream(result);
+        ZipInputStream zipIn = 
+            new ZipInputStream(new ByteArrayInputStream(backup));
+        
+        byte[] buffer = new byte[4096];
+        ZipEntry entry;
+        while((entry = zipIn.getNextEntry()) != null) {
+            zipOut.putNextEntry(new ZipEntry(entry.getName()));
+            int len;
+            while((len = zipIn.read(buffer)) > 0) {
+                zipOut.write(buffer, 0, len);
+            }
+            zipOut.closeEntry();
+        }
+        
+        zipOut.putNextEntry(
+            new ZipEntry(HibernateBackupRestoreUtil.FILE_BACKUP_DATA + ".x"));
+        zipOut.write("SAMPLE_CAR,mofId\nnot a row count\n".getBytes("UTF-8"));
+        zipOut.closeEntry();
+        zipOut.close();
+        
+        return result.toByteArray();
+    }
+}
+
+// End ParallelRestoreTest.java
@@ -0,0 +1,94 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+/**
+ * SetBasedMassDeletionTest repeats {@link MassDeletionTest} with set-based
+ * (temporary table) mass deletion enabled.  Storage properties are ignored
+ * by providers other than Hibernate.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(LoggingTestRunner.class)
+public class SetBasedMassDeletionTest extends MassDeletionTest
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_SET_BASED_MASS_DELETE,
+            Boolean.toString(true));
+    }
+    
+    @Test
+    public void testRepeatedMassDeleteInOneTransaction()
+    {
+        List<String> mofIds = new ArrayList<String>();
+        getRepository().beginTrans(true);
+        try {
+            for(int i = 0; i < 4; i++) {
+                mofIds.add(
+                    getSpecialPackage().getSampleEntity().createSampleEntity(
+                        "repeat" + i).refMofId());
+            }
+        }
+        finally {
+            getRepository().endTrans();
+        }
+        
+        // Later deletions find the temporary tables created by the first 
+        // one, unless the dialect drops them after use.
+        getRepository().beginTrans(true);
+        try {
+            for(int i = 0; i < mofIds.size(); i += 2) {
+                List<RefObject> objects = new ArrayList<RefObject>();
+                objects.add(
+                    (RefObject)getRepository().getByMofId(mofIds.get(i)));
+                objects.add(
+                    (RefObject)getRepository().getByMofId(mofIds.get(i + 1)));
+                
+                getRepository().delete(objects);
+            }
+        }
+        finally {
+            getRepository().endTrans();
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            for(String mofId: mofIds) {
+                Assert.assertNull(getRepository().getByMofId(mofId));
+            }
+        }
+        finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End SetBasedMassDeletionTest.java
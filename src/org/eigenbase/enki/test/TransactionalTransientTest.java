@@ -0,0 +1,541 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.enki.test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.jmi.reflect.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.netbeans.api.mdr.events.*;
+
+import org.eigenbase.enki.trans.*;
+
+import eem.sample.*;
+
+/**
+ * TransactionalTransientTest tests rollback, change events and snapshot
+ * isolation of readers in the transactional mode of the transient 
+ * repository.
+ *
+ * @author Stephan Zuercher
+ */
+@RunWith(TransientOnlyTestRunner.class)
+public class TransactionalTransientTest extends JmiTestBase
+{
+    private static final long TIMEOUT_MILLIS = 30000L;
+    
+    static {
+        getExtraProps().put(
+            TransientMDRepository.PROPERTY_TRANSACTIONAL,
+            Boolean.toString(true));
+    }
+
+    @Test
+    public void testRollback()
+    {
+        int numStates = countStates();
+        
+        getRepository().beginTrans(true);
+        try {
+            Car car = getCarInstance();
+            car.setMake("Lancia");
+            car.getRegistrar().remove(car.getRegistrar().iterator().next());
+            car.getRegistrar().add(
+                getSamplePackage().getState().createState("WA"));
+        } finally {
+            getRepository().endTrans(true);
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            Car car = getCarInstance();
+            Assert.assertEquals(CAR_MAKE, car.getMake());
+            Assert.assertEquals(2, car.getRegistrar().size());
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        Assert.assertEquals(numStates, countStates());
+    }
+    
+    @Test
+    public void testDeleteRollback()
+    {
+        getRepository().beginTrans(true);
+        try {
+            getCarInstance().refDelete();
+            Assert.assertNull(getRepository().getByMofId(carMofId));
+        } finally {
+            getRepository().endTrans(true);
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            Car car = getCarInstance();
+            Assert.assertEquals(CAR_MODEL, car.getModel());
+            Assert.assertEquals(2, car.getRegistrar().size());
+            Assert.assertTrue(
+                getSamplePackage().getCar().refAllOfClass().contains(car));
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    @Test
+    public void testEvents()
+    {
+        final List<MDRChangeEvent> planned = new ArrayList<MDRChangeEvent>();
+        final List<MDRChangeEvent> cancelled = 
+            new ArrayList<MDRChangeEvent>();
+        MDRPreChangeListener listener = new MDRPreChangeListener() {
+            public void plannedChange(MDRChangeEvent event)
+            {
+                planned.add(event);
+            }
+            
+            public void changeCancelled(MDRChangeEvent event)
+            {
+                cancelled.add(event);
+            }
+            
+            public void change(MDRChangeEvent event)
+            {
+            }
+        };
+        
+        getRepository().addListener(
+            listener, AttributeEvent.EVENTMASK_ATTRIBUTE);
+        try {
+            getRepository().beginTrans(true);
+            try {
+                getCarInstance().setDoors(4);
+            } finally {
+                getRepository().endTrans(true);
+            }
+        } finally {
+            getRepository().removeListener(listener);
+        }
+        
+        Assert.assertEquals(1, planned.size());
+        AttributeEvent event = (AttributeEvent)planned.get(0);
+        Assert.assertEquals("doors", event.getAttributeName());
+        Assert.assertEquals(CAR_NUM_DOORS, event.getOldElement());
+        Assert.assertEquals(4, event.getNewElement());
+        Assert.assertEquals(planned, cancelled);
+    }
+    
+    @Test
+    public void testReadDuringWrite() throws Exception
+    {
+        try {
+            String newCarMofId;
+            
+            getRepository().beginTrans(true);
+            try {
+                Car car = getCarInstance();
+                car.setDoors(4);
+                car.getRegistrar().add(
+                    getSamplePackage().getState().createState("WA"));
+                newCarMofId = 
+                    getSamplePackage().getCar().createCar(
+                        "Ford", "Pinto", 3).refMofId();
+                
+                // A reader must neither wait for nor see the uncommitted 
+                // write.
+                Reader reader = new Reader(newCarMofId);
+                reader.start();
+                reader.join(TIMEOUT_MILLIS);
+                
+                Assert.assertFalse(
+                    "reader blocked by writer", reader.isAlive());
+                reader.check();
+                Assert.assertEquals(CAR_NUM_DOORS, reader.doors);
+                Assert.assertEquals(2, reader.numRegistrars);
+                Assert.assertFalse(reader.found);
+                Assert.assertFalse(reader.inExtent);
+            } finally {
+                getRepository().endTrans();
+            }
+            
+            // Once committed, the changes are visible to new readers.
+            Reader reader = new Reader(newCarMofId);
+            reader.start();
+            reader.join(TIMEOUT_MILLIS);
+            
+            Assert.assertFalse("reader did not finish", reader.isAlive());
+            reader.check();
+            Assert.assertEquals(4, reader.doors);
+            Assert.assertEquals(3, reader.numRegistrars);
+            Assert.assertTrue(reader.found);
+            Assert.assertTrue(reader.inExtent);
+        } finally {
+            undoWrite();
+        }
+    }
+    
+    @Test
+    public void testSnapshotAcrossCommit() throws Exception
+    {
+        String before = describeSample();
+        
+        SnapshotReader reader = new SnapshotReader();
+        reader.start();
+        try {
+            reader.awaitObservation();
+            
+            getRepository().beginTrans(true);
+            try {
+                write();
+                
+                reader.observeAgain();
+            } finally {
+                getRepository().endTrans();
+            }
+            
+            reader.observeAgain();
+            
+            // The reader's snapshot still predates the commit.
+            reader.finish();
+            Assert.assertEquals(
+                Arrays.asList(before, before, before), reader.observations);
+            
+            String after = describeSample();
+            Assert.assertFalse(before.equals(after));
+        } finally {
+            reader.abort();
+            undoWrite();
+        }
+    }
+    
+    @Test
+    public void testSnapshotAcrossRollback() throws Exception
+    {
+        String before = describeSample();
+        
+        SnapshotReader reader = new SnapshotReader();
+        reader.start();
+        try {
+            reader.awaitObservation();
+            
+            getRepository().beginTrans(true);
+            try {
+                write();
+                
+                Car car = getCarInstance();
+                car.setMake("Lancia");
+                car.getRegistrar().remove(
+                    car.getRegistrar().iterator().next());
+                for(Object o: getSamplePackage().getCar().refAllOfClass()) {
+                    if (CAR2_MODEL.equals(((Car)o).getModel())) {
+                        ((Car)o).refDelete();
+                        break;
+                    }
+                }
+                
+                reader.observeAgain();
+            } finally {
+                getRepository().endTrans(true);
+            }
+            
+            reader.observeAgain();
+            reader.finish();
+            Assert.assertEquals(
+                Arrays.asList(before, before, before), reader.observations);
+        } finally {
+            reader.abort();
+        }
+        
+        Assert.assertEquals(before, describeSample());
+    }
+    
+    @Test
+    public void testDeltasPruned() throws Exception
+    {
+        TransientMDRepository repos = (TransientMDRepository)getRepository();
+        Assert.assertEquals(0, repos.getRetainedDeltaCount());
+        
+        SnapshotReader reader = new SnapshotReader();
+        reader.start();
+        try {
+            reader.awaitObservation();
+            
+            for(int doors: new int[] { 4, CAR_NUM_DOORS }) {
+                getRepository().beginTrans(true);
+                try {
+                    getCarInstance().setDoors(doors);
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+            
+            // Both commits are newer than the reader's snapshot.
+            Assert.assertEquals(2, repos.getRetainedDeltaCount());
+            
+            reader.finish();
+        } finally {
+            reader.abort();
+        }
+        
+        Assert.assertEquals(0, repos.getRetainedDeltaCount());
+    }
+    
+    private int countStates()
+    {
+        getRepository().beginTrans(false);
+        try {
+            return getSamplePackage().getState().refAllOfClass().size();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    /**
+     * Modifies an attribute, a link and a class extent.  Reversed by
+     * {@link #undoWrite()}.
+     */
+    private static void write()
+    {
+        Car car = getCarInstance();
+        car.setDoors(4);
+        car.getRegistrar().add(
+            getSamplePackage().getState().createState("WA"));
+        getSamplePackage().getCar().createCar("Ford", "Pinto", 3);
+    }
+    
+    private static void undoWrite()
+    {
+        getRepository().beginTrans(true);
+        try {
+            getCarInstance().setDoors(CAR_NUM_DOORS);
+            
+            List<RefObject> deleted = new ArrayList<RefObject>();
+            for(Object o: getSamplePackage().getState().refAllOfClass()) {
+                if ("WA".equals(((State)o).getName())) {
+                    deleted.add((RefObject)o);
+                }
+            }
+            for(Object o: getSamplePackage().getCar().refAllOfClass()) {
+                if ("Pinto".equals(((Car)o).getModel())) {
+                    deleted.add((RefObject)o);
+                }
+            }
+            for(RefObject obj: deleted) {
+                obj.refDelete();
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    /**
+     * Describes the sample car's attributes and links and the car and
+     * state extents.
+     */
+    private static String describeSample()
+    {
+        getRepository().beginTrans(false);
+        try {
+            Car car = getCarInstance();
+            
+            List<String> registrars = new ArrayList<String>();
+            for(Object o: car.getRegistrar()) {
+                registrars.add(((State)o).getName());
+            }
+            Collections.sort(registrars);
+            
+            Collection<?> allCars = 
+                getSamplePackage().getCar().refAllOfClass();
+            List<String> cars = new ArrayList<String>();
+            for(Object o: allCars) {
+                cars.add(((Car)o).getMake() + " " + ((Car)o).getModel());
+            }
+            Collections.sort(cars);
+            
+            Collection<?> allStates = 
+                getSamplePackage().getState().refAllOfClass();
+            
+            return 
+                car.getMake() + " " + car.getDoors() + " " + registrars 
+                + " " + cars + " " + allCars.size() + " " 
+                + allCars.contains(car) + " " + allStates.size() + " " 
+                + allStates.isEmpty();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private static class Reader extends Thread
+    {
+        private final String mofId;
+        private Throwable error;
+        private int doors;
+        private int numRegistrars;
+        private boolean found;
+        private boolean inExtent;
+        
+        Reader(String mofId)
+        {
+            this.mofId = mofId;
+        }
+        
+        @Override
+        public void run()
+        {
+            getRepository().beginSession();
+            try {
+                getRepository().beginTrans(false);
+                try {
+                    Car car = getCarInstance();
+                    doors = car.getDoors();
+                    numRegistrars = car.getRegistrar().size();
+                    
+                    found = getRepository().getByMofId(mofId) != null;
+                    inExtent = false;
+                    for(Object o: getSamplePackage().getCar().refAllOfClass())
+                    {
+                        if (((RefObject)o).refMofId().equals(mofId)) {
+                            inExtent = true;
+                        }
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            } catch(Throwable t) {
+                error = t;
+            } finally {
+                getRepository().endSession();
+            }
+        }
+        
+        void check()
+        {
+            if (error != null) {
+                fail(error);
+            }
+        }
+    }
+    
+    /**
+     * SnapshotReader holds a read transaction open and describes the 
+     * sample each time the test asks it to, so that the test can write 
+     * in between.
+     */
+    private static class SnapshotReader extends Thread
+    {
+        private final CyclicBarrier barrier = new CyclicBarrier(2);
+        private final List<String> observations = new ArrayList<String>();
+        private volatile boolean done;
+        private Throwable error;
+        
+        @Override
+        public void run()
+        {
+            getRepository().beginSession();
+            try {
+                getRepository().beginTrans(false);
+                try {
+                    do {
+                        observations.add(describeSample());
+                        await();
+                        await();
+                    } while(!done);
+                } finally {
+                    getRepository().endTrans();
+                }
+            } catch(Throwable t) {
+                error = t;
+                barrier.reset();
+            } finally {
+                getRepository().endSession();
+            }
+        }
+        
+        /**
+         * Waits until the reader has made its next observation.
+         */
+        void awaitObservation() throws Exception
+        {
+            step();
+        }
+        
+        /**
+         * Lets the reader make another observation and waits for it.
+         */
+        void observeAgain() throws Exception
+        {
+            step();
+            step();
+        }
+        
+        /**
+         * Lets the reader end its transaction and waits for it to finish.
+         */
+        void finish() throws Exception
+        {
+            done = true;
+            step();
+            join(TIMEOUT_MILLIS);
+            Assert.assertFalse("reader did not finish", isAlive());
+            check();
+        }
+        
+        /**
+         * Ends the reader, if it is still running, after a failure.
+         */
+        void abort() throws Exception
+        {
+            if (isAlive()) {
+                done = true;
+                barrier.reset();
+                join(TIMEOUT_MILLIS);
+            }
+        }
+        
+        private void step() throws Exception
+        {
+            try {
+                await();
+            } catch(BrokenBarrierException e) {
+                join(TIMEOUT_MILLIS);
+                check();
+                throw e;
+            }
+        }
+        
+        private void await() throws Exception
+        {
+            barrier.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        
+        private void check()
+        {
+            if (error != null) {
+                fail(error);
+            }
+        }
+    }
+}
+
+// End TransactionalTransientTest.java
@@ -0,0 +1,188 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateConcurrentReadsTest tests 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_CONCURRENT_READS}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateConcurrentReadsTest extends SampleModelTestBase
+{
+    private static final long TIMEOUT_MILLIS = 30000L;
+    
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_CONCURRENT_READS,
+            Boolean.toString(true));
+    }
+    
+    @Test
+    public void testReadDuringWrite() throws Exception
+    {
+        String mofId;
+        
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Ford", "Pinto", 3);
+            mofId = car.refMofId();
+            
+            // A reader in its own session must not wait for the writer.
+            Reader reader = new Reader(null);
+            reader.start();
+            reader.join(TIMEOUT_MILLIS);
+            
+            Assert.assertFalse("reader blocked by writer", reader.isAlive());
+            reader.check();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        // Once committed, the new object is visible to new sessions.
+        Reader reader = new Reader(mofId);
+        reader.start();
+        reader.join(TIMEOUT_MILLIS);
+        
+        Assert.assertFalse("reader did not finish", reader.isAlive());
+        reader.check();
+        Assert.assertTrue(reader.found);
+    }
+    
+    @Test
+    public void testWritersSerialized() throws Exception
+    {
+        int numCars;
+        getRepository().beginTrans(false);
+        try {
+            numCars = getSamplePackage().getCar().refAllOfClass().size();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        getRepository().beginTrans(true);
+        Writer writer;
+        try {
+            getSamplePackage().getCar().createCar("Ford", "Model T", 2);
+            
+            writer = new Writer();
+            writer.start();
+            writer.join(1000L);
+            
+            // The second writer must wait for the first.
+            Assert.assertTrue("writers not serialized", writer.isAlive());
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        writer.join(TIMEOUT_MILLIS);
+        Assert.assertFalse("writer did not finish", writer.isAlive());
+        writer.check();
+        
+        getRepository().beginTrans(false);
+        try {
+            Assert.assertEquals(
+                numCars + 2, 
+                getSamplePackage().getCar().refAllOfClass().size());
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private static abstract class Worker extends Thread
+    {
+        private Throwable error;
+        
+        @Override
+        public void run()
+        {
+            getRepository().beginSession();
+            try {
+                work();
+            } catch(Throwable t) {
+                error = t;
+            } finally {
+                getRepository().endSession();
+            }
+        }
+        
+        protected abstract void work();
+        
+        void check()
+        {
+            if (error != null) {
+                fail(error);
+            }
+        }
+    }
+    
+    private static class Reader extends Worker
+    {
+        private final String mofId;
+        private boolean found;
+        
+        Reader(String mofId)
+        {
+            this.mofId = mofId;
+        }
+        
+        @Override
+        protected void work()
+        {
+            getRepository().beginTrans(false);
+            try {
+                getSamplePackage().getCar().refAllOfClass().size();
+                
+                if (mofId != null) {
+                    found = getRepository().getByMofId(mofId) != null;
+                }
+            } finally {
+                getRepository().endTrans();
+            }
+        }
+    }
+    
+    private static class Writer extends Worker
+    {
+        @Override
+        protected void work()
+        {
+            getRepository().beginTrans(true);
+            try {
+                getSamplePackage().getCar().createCar("Ford", "Model A", 2);
+            } finally {
+                getRepository().endTrans();
+            }
+        }
+    }
+}
+
+// End HibernateConcurrentReadsTest.java
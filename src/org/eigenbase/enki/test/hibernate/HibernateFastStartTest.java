@@ -0,0 +1,104 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import java.sql.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.test.*;
+import org.hibernate.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateFastStartTest tests 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_FAST_START}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateFastStartTest extends SampleModelTestBase
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_FAST_START,
+            Boolean.toString(true));
+        
+        // Allows the fingerprint table to be created.
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_CREATE_SCHEMA,
+            HibernateMDRepository.CREATE_SCHEMA_AUTO_VIEW);
+    }
+    
+    @Test
+    public void testProviderFingerprintRecorded() throws Exception
+    {
+        SessionFactory sessionFactory = 
+            ((HibernateMDRepository)getRepository()).getSessionFactory();
+        
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Statement stmt = session.connection().createStatement();
+            try {
+                ResultSet rs = 
+                    stmt.executeQuery(
+                        "select count(*) from ENKI_SCHEMA_FINGERPRINT");
+                try {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertTrue(rs.getInt(1) > 0);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            session.close();
+        }
+    }
+    
+    @Test
+    public void testRepositoryUsable()
+    {
+        String mofId;
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Ford", "Anglia", 2);
+            mofId = car.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        getRepository().beginTrans(false);
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            Assert.assertEquals("Anglia", car.getModel());
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End HibernateFastStartTest.java
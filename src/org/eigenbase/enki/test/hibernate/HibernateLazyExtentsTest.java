@@ -0,0 +1,96 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateLazyExtentsTest tests 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_LAZY_EXTENTS} and
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_LAZY_EXTENT_WARMUP}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateLazyExtentsTest extends SampleModelTestBase
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_LAZY_EXTENTS,
+            Boolean.toString(true));
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_LAZY_EXTENT_WARMUP,
+            Boolean.toString(true));
+    }
+    
+    @Test
+    public void testExtentNames()
+    {
+        List<String> names = Arrays.asList(getRepository().getExtentNames());
+        Assert.assertTrue(names.contains(getTestExtentName()));
+    }
+    
+    @Test
+    public void testExtentIdentity()
+    {
+        RefPackage pkg1 = getRepository().getExtent(getTestExtentName());
+        RefPackage pkg2 = getRepository().getExtent(getTestExtentName());
+        Assert.assertNotNull(pkg1);
+        Assert.assertSame(pkg1, pkg2);
+    }
+    
+    @Test
+    public void testObjectsAfterRestart()
+    {
+        String mofId;
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Morris", "Minor", 2);
+            mofId = car.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        bounceRepository();
+        
+        getRepository().beginTrans(false);
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            Assert.assertNotNull(car);
+            Assert.assertEquals("Minor", car.getModel());
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End HibernateLazyExtentsTest.java
@@ -0,0 +1,160 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.hibernate.storage.*;
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+/**
+ * HibernateMofIdGeneratorTest tests concurrent MOF ID allocation via
+ * {@link MofIdGenerator}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateMofIdGeneratorTest extends SampleModelTestBase
+{
+    private static final int NUM_THREADS = 8;
+    private static final int IDS_PER_THREAD = 5000;
+    private static final long TIMEOUT_MILLIS = 10000L;
+    
+    @Test
+    public void testConcurrentNextMofId() throws Exception
+    {
+        final MofIdGenerator generator = getMofIdGenerator();
+        
+        final long[][] results = new long[NUM_THREADS][IDS_PER_THREAD];
+        
+        Thread[] threads = new Thread[NUM_THREADS];
+        for(int i = 0; i < NUM_THREADS; i++) {
+            final long[] ids = results[i];
+            threads[i] = new Thread() {
+                public void run()
+                {
+                    for(int j = 0; j < ids.length; j++) {
+                        ids[j] = generator.nextMofId();
+                    }
+                }
+            };
+        }
+        
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+        
+        Set<Long> seen = new HashSet<Long>();
+        for(long[] ids: results) {
+            long prev = 0L;
+            for(long id: ids) {
+                Assert.assertTrue(id != 0L);
+                
+                // Per-thread allocations are monotonic.
+                Assert.assertTrue(id > prev);
+                prev = id;
+                
+                Assert.assertTrue("duplicate MOF ID " + id, seen.add(id));
+            }
+        }
+        
+        MofIdGenerator.Statistics stats = generator.getStatistics();
+        Assert.assertTrue(stats.getMissCount() > 0);
+        Assert.assertTrue(stats.getBlockFetchCount() > 0);
+    }
+    
+    @Test
+    public void testAllocateDoesNotOverlap()
+    {
+        MofIdGenerator generator = getMofIdGenerator();
+        
+        long first = generator.nextMofId();
+        
+        long small = generator.allocate(10);
+        long large = generator.allocate(100000);
+        
+        long next = generator.nextMofId();
+        
+        Assert.assertTrue(first < small || first >= small + 10);
+        Assert.assertTrue(next < small || next >= small + 10);
+        Assert.assertTrue(next < large || next >= large + 100000);
+        Assert.assertTrue(small + 10 <= large || large + 100000 <= small);
+    }
+    
+    @Test
+    public void testStallsOnlyCountedWhenWaiting() throws Exception
+    {
+        MofIdGenerator generator = getMofIdGenerator();
+        
+        // Make sure a block is loaded (the initial fetch is synchronous) and
+        // that any prefetch started by earlier tests has completed.
+        generator.nextMofId();
+        awaitPrefetch(generator);
+        
+        MofIdGenerator.Statistics before = generator.getStatistics();
+        
+        // Consume MOF IDs, but whenever a prefetch is started, wait for it
+        // to finish before continuing.  Every block swap then finds its
+        // prefetched block ready, and none of them may count as a stall.
+        while(generator.getStatistics().getPrefetchCount() 
+                  - before.getPrefetchCount() < 3)
+        {
+            generator.nextMofId();
+            awaitPrefetch(generator);
+        }
+        
+        MofIdGenerator.Statistics after = generator.getStatistics();
+        
+        // At least three blocks were prefetched, and each one that was 
+        // swapped in was ready.
+        Assert.assertTrue(
+            after.getPrefetchCount() - before.getPrefetchCount() >= 3);
+        Assert.assertEquals(
+            0L, after.getStallCount() - before.getStallCount());
+    }
+    
+    private void awaitPrefetch(MofIdGenerator generator) throws Exception
+    {
+        Assert.assertTrue(
+            "prefetch did not complete", 
+            generator.awaitPrefetch(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+    
+    private MofIdGenerator getMofIdGenerator()
+    {
+        getRepository().beginSession();
+        try {
+            return ((HibernateMDRepository)getRepository()).getMofIdGenerator();
+        } finally {
+            getRepository().endSession();
+        }
+    }
+}
+
+// End HibernateMofIdGeneratorTest.java
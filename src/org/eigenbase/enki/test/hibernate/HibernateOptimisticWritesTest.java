@@ -0,0 +1,328 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import java.io.*;
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.hibernate.jmi.*;
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateOptimisticWritesTest tests 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_OPTIMISTIC_WRITES}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateOptimisticWritesTest extends SampleModelTestBase
+{
+    private static final long TIMEOUT_MILLIS = 30000L;
+    private static final long BLOCKED_MILLIS = 1000L;
+    
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_OPTIMISTIC_WRITES,
+            Boolean.toString(true));
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_BACKUP_THREADS,
+            String.valueOf(2));
+    }
+    
+    @Test
+    public void testNonConflictingWriters() throws Exception
+    {
+        int numCars = countCars();
+        
+        getRepository().beginTrans(true);
+        try {
+            getSamplePackage().getCar().createCar("Ford", "Model T", 2);
+            
+            // The second writer must not wait for the first.
+            Writer writer = new Writer(null, "Model A");
+            writer.start();
+            writer.join(TIMEOUT_MILLIS);
+            
+            Assert.assertFalse("writer blocked by writer", writer.isAlive());
+            writer.check();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        Assert.assertEquals(numCars + 2, countCars());
+    }
+    
+    @Test
+    public void testWriteWriteConflict() throws Exception
+    {
+        if (!isSampleModelVersioned()) {
+            return;
+        }
+        
+        String mofId = createCar();
+        
+        getRepository().beginTrans(true);
+        boolean rollback = true;
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            car.setModel("Mustang");
+            
+            // Concurrent writer modifies the same object and commits first.
+            runWriter(mofId, "Thunderbird");
+            
+            rollback = false;
+            getRepository().endTrans();
+            Assert.fail("expected optimistic lock conflict");
+        } catch(EnkiOptimisticLockException e) {
+            Assert.assertFalse(rollback);
+            Assert.assertEquals(1, e.getConflictingMofIds().size());
+            Assert.assertEquals(mofId, e.getConflictingMofIds().get(0));
+        } finally {
+            if (rollback) {
+                getRepository().endTrans(true);
+            }
+        }
+        
+        Assert.assertEquals("Thunderbird", getModel(mofId));
+        
+        // Retry succeeds.
+        getRepository().beginTrans(true);
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            car.setModel("Mustang");
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        Assert.assertEquals("Mustang", getModel(mofId));
+    }
+    
+    @Test
+    public void testReadSetConflict() throws Exception
+    {
+        if (!isSampleModelVersioned()) {
+            return;
+        }
+        
+        String mofId = createCar();
+        
+        HibernateMDRepository repos = (HibernateMDRepository)getRepository();
+        
+        getRepository().beginTrans(true);
+        boolean rollback = true;
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            repos.recordRead(car);
+            
+            getSamplePackage().getCar().createCar(
+                "Ford", car.getModel() + " II", 2);
+            
+            runWriter(mofId, "Thunderbird");
+            
+            rollback = false;
+            getRepository().endTrans();
+            Assert.fail("expected optimistic lock conflict");
+        } catch(EnkiOptimisticLockException e) {
+            Assert.assertFalse(rollback);
+        } finally {
+            if (rollback) {
+                getRepository().endTrans(true);
+            }
+        }
+    }
+    
+    @Test
+    public void testMassDeletionExcludesWriters() throws Exception
+    {
+        String mofId = createCar();
+        String otherMofId = createCar();
+        
+        Writer writer;
+        getRepository().beginTrans(true);
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            getRepository().delete(
+                Collections.<RefObject>singletonList(car));
+            
+            // Mass deletion bypasses version checks, so a concurrent writer
+            // must wait for this transaction to end.
+            writer = new Writer(otherMofId, "Thunderbird");
+            writer.start();
+            writer.join(BLOCKED_MILLIS);
+            
+            Assert.assertTrue(
+                "writer not blocked by mass deletion", writer.isAlive());
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        writer.join(TIMEOUT_MILLIS);
+        Assert.assertFalse("writer did not finish", writer.isAlive());
+        writer.check();
+        
+        Assert.assertEquals("Thunderbird", getModel(otherMofId));
+    }
+    
+    @Test
+    public void testParallelBackupExcludesWriters() throws Exception
+    {
+        int numCars = countCars();
+        
+        Writer writer;
+        getRepository().beginTrans(true);
+        try {
+            getRepository().backupExtent(
+                getTestExtentName(), new ByteArrayOutputStream());
+            
+            // The backup's table scans use separate connections, so a 
+            // concurrent writer must wait for this transaction to end.
+            writer = new Writer(null, "Model A");
+            writer.start();
+            writer.join(BLOCKED_MILLIS);
+            
+            Assert.assertTrue(
+                "writer not blocked by parallel backup", writer.isAlive());
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        writer.join(TIMEOUT_MILLIS);
+        Assert.assertFalse("writer did not finish", writer.isAlive());
+        writer.check();
+        
+        Assert.assertEquals(numCars + 1, countCars());
+    }
+    
+    /**
+     * Conflicts are only detected for models generated with version 
+     * columns.  The build's test-versioned target generates the sample 
+     * model that way.
+     */
+    private boolean isSampleModelVersioned()
+    {
+        HibernateMDRepository repos = (HibernateMDRepository)getRepository();
+        HibernateRefClass carClass = 
+            (HibernateRefClass)getSamplePackage().getCar();
+        
+        return repos.getSessionFactory().getClassMetadata(
+            carClass.getInstanceClass()).isVersioned();
+    }
+    
+    private String createCar()
+    {
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Ford", "Falcon", 4);
+            return car.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private int countCars()
+    {
+        getRepository().beginTrans(false);
+        try {
+            return getSamplePackage().getCar().refAllOfClass().size();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private String getModel(String mofId)
+    {
+        getRepository().beginTrans(false);
+        try {
+            return ((Car)getRepository().getByMofId(mofId)).getModel();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private void runWriter(String mofId, String model) throws Exception
+    {
+        Writer writer = new Writer(mofId, model);
+        writer.start();
+        writer.join(TIMEOUT_MILLIS);
+        
+        Assert.assertFalse("writer did not finish", writer.isAlive());
+        writer.check();
+    }
+    
+    /**
+     * Modifies the model of an existing car or creates a new car in its own
+     * repository session.
+     */
+    private static class Writer extends Thread
+    {
+        private final String mofId;
+        private final String model;
+        private Throwable error;
+        
+        Writer(String mofId, String model)
+        {
+            this.mofId = mofId;
+            this.model = model;
+        }
+        
+        @Override
+        public void run()
+        {
+            getRepository().beginSession();
+            try {
+                getRepository().beginTrans(true);
+                try {
+                    if (mofId == null) {
+                        getSamplePackage().getCar().createCar(
+                            "Ford", model, 2);
+                    } else {
+                        Car car = (Car)getRepository().getByMofId(mofId);
+                        car.setModel(model);
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            } catch(Throwable t) {
+                error = t;
+            } finally {
+                getRepository().endSession();
+            }
+        }
+        
+        void check()
+        {
+            if (error != null) {
+                fail(error);
+            }
+        }
+    }
+}
+
+// End HibernateOptimisticWritesTest.java
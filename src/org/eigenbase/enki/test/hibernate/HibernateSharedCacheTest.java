@@ -0,0 +1,131 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateSharedCacheTest tests 
+ * {@link HibernateMDRepository#PROPERTY_STORAGE_SHARED_CACHE_SIZE}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateSharedCacheTest extends SampleModelTestBase
+{
+    static {
+        getExtraProps().put(
+            HibernateMDRepository.PROPERTY_STORAGE_SHARED_CACHE_SIZE,
+            String.valueOf(1000));
+    }
+    
+    @Test
+    public void testReadFromSharedCache()
+    {
+        String mofId = createCar("Ford", "Falcon");
+        
+        // Loads the car into the shared cache.
+        Assert.assertEquals("Falcon", getModel(mofId));
+        
+        long hits = getStatistics().getHitCount();
+        
+        // A new session has nothing in its own caches.
+        Assert.assertEquals("Falcon", getModel(mofId));
+        
+        Assert.assertTrue(getStatistics().getHitCount() > hits);
+    }
+    
+    @Test
+    public void testSharedCacheAfterWrite()
+    {
+        String mofId = createCar("Holden", "Monaro");
+        
+        Assert.assertEquals("Monaro", getModel(mofId));
+        Assert.assertEquals("Monaro", getModel(mofId));
+        
+        getRepository().beginSession();
+        try {
+            getRepository().beginTrans(true);
+            try {
+                ((Car)getRepository().getByMofId(mofId)).setModel("Torana");
+            } finally {
+                getRepository().endTrans();
+            }
+        } finally {
+            getRepository().endSession();
+        }
+        
+        // Other sessions must see the committed change, not the cached
+        // state.
+        Assert.assertEquals("Torana", getModel(mofId));
+        
+        long hits = getStatistics().getHitCount();
+        
+        Assert.assertEquals("Torana", getModel(mofId));
+        
+        // The modified car is cached again.
+        Assert.assertTrue(getStatistics().getHitCount() > hits);
+    }
+    
+    private EnkiCacheProvider.Statistics getStatistics()
+    {
+        EnkiCacheProvider.Statistics stats = 
+            ((HibernateMDRepository)getRepository()).getSharedCacheStatistics();
+        Assert.assertNotNull(stats);
+        return stats;
+    }
+    
+    private String createCar(String make, String model)
+    {
+        getRepository().beginTrans(true);
+        try {
+            Car car = getSamplePackage().getCar().createCar(make, model, 4);
+            return car.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    /**
+     * Reads the given car's model in a new repository session, so that the
+     * car cannot be found in the session's own caches.
+     */
+    private String getModel(String mofId)
+    {
+        getRepository().endSession();
+        getRepository().beginSession();
+        
+        getRepository().beginTrans(false);
+        try {
+            return ((Car)getRepository().getByMofId(mofId)).getModel();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End HibernateSharedCacheTest.java
@@ -0,0 +1,121 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.hibernate;
+
+import java.io.*;
+
+import org.eigenbase.enki.hibernate.*;
+import org.eigenbase.enki.test.*;
+import org.eigenbase.enki.util.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+import eem.sample.*;
+
+/**
+ * HibernateStreamingImportTest tests {@link HibernateStreamingXmiReader}.
+ * 
+ * @author Stephan Zuercher
+ */
+@RunWith(HibernateOnlyTestRunner.class)
+public class HibernateStreamingImportTest extends SampleModelTestBase
+{
+    private static final int BATCH_SIZE = 5;
+    private static final int NUM_CARS = BATCH_SIZE * 4;
+    
+    /**
+     * Tests that an object read before a streaming import can be modified
+     * after the import's batches have been flushed and evicted, and that
+     * the modification is committed.
+     */
+    @Test
+    public void testModifyObjectReadBeforeImport() throws Exception
+    {
+        String mofId;
+        getRepository().beginTrans(true);
+        try {
+            Car car = 
+                getSamplePackage().getCar().createCar("Ford", "Falcon", 4);
+            mofId = car.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        getRepository().endSession();
+        getRepository().beginSession();
+        
+        StreamingXmiReader xmiReader = 
+            getRepository().createStreamingXmiReader();
+        xmiReader.setBatchSize(BATCH_SIZE);
+        
+        getRepository().beginTrans(true);
+        boolean rollback = true;
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            Assert.assertEquals("Falcon", car.getModel());
+            
+            long count = 
+                xmiReader.read(
+                    new ByteArrayInputStream(makeXmi()), getPackage());
+            Assert.assertEquals(NUM_CARS, count);
+            
+            car.setModel("Fairlane");
+            
+            rollback = false;
+        } finally {
+            getRepository().endTrans(rollback);
+        }
+        
+        getRepository().endSession();
+        getRepository().beginSession();
+        
+        getRepository().beginTrans(false);
+        try {
+            Car car = (Car)getRepository().getByMofId(mofId);
+            Assert.assertEquals("Fairlane", car.getModel());
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    private static byte[] makeXmi() throws IOException
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("<?xml version = '1.0' encoding = 'UTF-8' ?>\n");
+        b.append("<XMI xmi.version = '1.2'>\n");
+        b.append("  <XMI.content>\n");
+        for(int i = 0; i < NUM_CARS; i++) {
+            b
+                .append("    <EEM.Sample.Car xmi.id = 'a")
+                .append(i)
+                .append("' make = 'Holden' model = 'Model ")
+                .append(i)
+                .append("' doors = '4'/>\n");
+        }
+        b.append("  </XMI.content>\n");
+        b.append("</XMI>\n");
+        
+        return b.toString().getBytes("UTF-8");
+    }
+}
+
+// End HibernateStreamingImportTest.java
@@ -0,0 +1,248 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.performance;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Benchmark is a minimal micro-benchmark harness for repository hot paths.
+ * Each benchmark is run for a number of unmeasured warmup iterations
+ * followed by a number of measured iterations.  Every iteration calls 
+ * {@link #setUp()} (unmeasured), {@link #run()} (measured with
+ * {@link System#nanoTime()}) and {@link #tearDown()} (unmeasured).
+ * 
+ * <p>Results are appended as rows of comma-separated values to the file 
+ * named by the <code>enki.benchmark.results</code> system property, 
+ * writing a header row if the file is new, so that results can be 
+ * compared mechanically between builds.  The number of iterations is
+ * controlled by the <code>enki.benchmark.warmup</code> and
+ * <code>enki.benchmark.iterations</code> system properties.
+ * 
+ * @author Stephan Zuercher
+ */
+public abstract class Benchmark
+{
+    public static final String PROPERTY_RESULTS = "enki.benchmark.results";
+    public static final String PROPERTY_WARMUP = "enki.benchmark.warmup";
+    public static final String PROPERTY_ITERATIONS = 
+        "enki.benchmark.iterations";
+    
+    private static final String DEFAULT_RESULTS = 
+        "test/results/benchmarks.csv";
+    private static final int DEFAULT_WARMUP = 3;
+    private static final int DEFAULT_ITERATIONS = 10;
+    
+    private static final String HEADER = 
+        "timestamp,provider,benchmark,param,iterations,opsPerIteration,"
+        + "meanNanosPerOp,minNanosPerOp,maxNanosPerOp,stdDevNanosPerOp,"
+        + "opsPerSecond";
+    
+    private final String name;
+    private final String param;
+    private final int opsPerIteration;
+    
+    /**
+     * Constructs a new Benchmark.
+     * 
+     * @param name benchmark name
+     * @param param benchmark parameter (e.g., a size), may be null
+     * @param opsPerIteration number of operations performed by each call
+     *                        to {@link #run()}; results are reported per
+     *                        operation
+     */
+    protected Benchmark(String name, Object param, int opsPerIteration)
+    {
+        this.name = name;
+        this.param = param == null ? "" : param.toString();
+        this.opsPerIteration = opsPerIteration;
+    }
+    
+    /**
+     * Prepares for a single iteration.  Not measured.  The default
+     * implementation does nothing.
+     * 
+     * @throws Exception on error
+     */
+    protected void setUp() throws Exception
+    {
+    }
+    
+    /**
+     * Performs a single, measured iteration.
+     * 
+     * @throws Exception on error
+     */
+    protected abstract void run() throws Exception;
+    
+    /**
+     * Cleans up after a single iteration.  Not measured.  The default
+     * implementation does nothing.
+     * 
+     * @throws Exception on error
+     */
+    protected void tearDown() throws Exception
+    {
+    }
+    
+    /**
+     * Runs this benchmark and records its result.
+     * 
+     * @param provider name of the repository provider being measured
+     * @return the recorded result
+     * @throws Exception on error
+     */
+    public Result execute(String provider) throws Exception
+    {
+        int warmup = Integer.getInteger(PROPERTY_WARMUP, DEFAULT_WARMUP);
+        int iterations = 
+            Math.max(
+                1, Integer.getInteger(PROPERTY_ITERATIONS, DEFAULT_ITERATIONS));
+        
+        for(int i = 0; i < warmup; i++) {
+            iterate();
+        }
+        
+        long[] samples = new long[iterations];
+        for(int i = 0; i < iterations; i++) {
+            samples[i] = iterate();
+        }
+        
+        Result result = new Result(provider, samples);
+        result.write();
+        
+        System.out.println(result);
+        
+        return result;
+    }
+    
+    private long iterate() throws Exception
+    {
+        setUp();
+        try {
+            long start = System.nanoTime();
+            run();
+            return System.nanoTime() - start;
+        } finally {
+            tearDown();
+        }
+    }
+    
+    /**
+     * Result summarizes the measured iterations of a Benchmark.
+     */
+    public class Result
+    {
+        private final String provider;
+        private final int iterations;
+        private final double mean;
+        private final double min;
+        private final double max;
+        private final double stdDev;
+        
+        private Result(String provider, long[] samples)
+        {
+            this.provider = provider;
+            this.iterations = samples.length;
+            
+            double sum = 0.0;
+            double lo = Double.MAX_VALUE;
+            double hi = 0.0;
+            for(long sample: samples) {
+                double perOp = (double)sample / opsPerIteration;
+                sum += perOp;
+                lo = Math.min(lo, perOp);
+                hi = Math.max(hi, perOp);
+            }
+            this.mean = sum / samples.length;
+            this.min = lo;
+            this.max = hi;
+            
+            double sumSq = 0.0;
+            for(long sample: samples) {
+                double delta = ((double)sample / opsPerIteration) - mean;
+                sumSq += delta * delta;
+            }
+            this.stdDev = Math.sqrt(sumSq / samples.length);
+        }
+        
+        /** @return mean nanoseconds per operation */
+        public double getMeanNanosPerOp()
+        {
+            return mean;
+        }
+        
+        /** @return operations per second, based on the mean */
+        public double getOpsPerSecond()
+        {
+            return mean == 0.0 ? 0.0 : 1000000000.0 / mean;
+        }
+        
+        private void write() throws IOException
+        {
+            File file = 
+                new File(System.getProperty(PROPERTY_RESULTS, DEFAULT_RESULTS));
+            boolean writeHeader = !file.exists() || file.length() == 0L;
+            
+            PrintWriter out = 
+                new PrintWriter(new FileWriter(file, true));
+            try {
+                if (writeHeader) {
+                    out.println(HEADER);
+                }
+                out.println(toCsv());
+            } finally {
+                out.close();
+            }
+        }
+        
+        private String toCsv()
+        {
+            StringBuilder b = new StringBuilder();
+            b
+                .append(System.currentTimeMillis()).append(',')
+                .append(provider).append(',')
+                .append(name).append(',')
+                .append(param).append(',')
+                .append(iterations).append(',')
+                .append(opsPerIteration).append(',')
+                .append(Math.round(mean)).append(',')
+                .append(Math.round(min)).append(',')
+                .append(Math.round(max)).append(',')
+                .append(Math.round(stdDev)).append(',')
+                .append(Math.round(getOpsPerSecond()));
+            return b.toString();
+        }
+        
+        @Override
+        public String toString()
+        {
+            return 
+                provider + ": " + name + 
+                (param.length() > 0 ? "(" + param + ")" : "") + ": " +
+                Math.round(mean) + " ns/op (+/- " + Math.round(stdDev) + 
+                "), " + Math.round(getOpsPerSecond()) + " ops/s";
+        }
+    }
+}
+
+// End Benchmark.java
@@ -25,14 +25,17 @@ import java.net.*;
 
 import javax.jmi.xmi.*;
 
+import org.eigenbase.enki.mdr.*;
 import org.eigenbase.enki.test.*;
+import org.eigenbase.enki.util.*;
 import org.junit.*;
 import org.netbeans.api.mdr.*;
 import org.netbeans.api.xmi.*;
 
 /**
- * ImportPerformanceTest tests the performance of importing a large XMI file.
- * It uses the XMI file generated by
+ * ImportPerformanceTest tests the performance of importing a large XMI file
+ * with the NetBeans XMI reader and with the repository's 
+ * {@link StreamingXmiReader}.  It uses the XMI file generated by
  * {@link BackupRestoreLargeDataSetTest#main(String[])}.
  * 
  * @author Stephan Zuercher
@@ -53,6 +56,44 @@ public class ImportPerformanceTest extends SampleModelTestBase
         System.out.println((end -start) + " ms");
     }
     
+    @Test
+    public void testStreaming() throws Exception
+    {
+        URL importSource = 
+            BackupRestoreLargeDataSetTest.class.getResource(
+                "BackupRestoreLargeDataSet.xmi");
+        
+        long start = System.currentTimeMillis();
+        long count = streamingImportXmi(importSource);
+        long end = System.currentTimeMillis();
+        
+        System.out.println(
+            "streaming: " + count + " objects, " + (end - start) + " ms");
+    }
+    
+    private static long streamingImportXmi(URL xmi) throws Exception
+    {
+        EnkiMDRepository mdrRepos = getRepository();
+
+        StreamingXmiReader xmiReader = mdrRepos.createStreamingXmiReader();
+        boolean rollback = false;
+        try {
+            mdrRepos.beginTrans(true);
+            rollback = true;
+            
+            long count = xmiReader.read(xmi.toString(), getPackage());
+            
+            rollback = false;
+            mdrRepos.endTrans();
+            
+            return count;
+        } finally {
+            if (rollback) {
+                mdrRepos.endTrans(true);
+            }
+        }
+    }
+    
     private static void importXmi(URL xmi) throws Exception
     {
         MDRepository mdrRepos = getRepository();
@@ -0,0 +1,480 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.test.performance;
+
+import java.io.*;
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import org.eigenbase.enki.test.*;
+import org.junit.*;
+
+import eem.sample.simple.*;
+
+/**
+ * RepositoryBenchmarkTest measures repository hot paths with 
+ * {@link Benchmark}: object creation, lookup by MOF ID, 
+ * {@link RefClass#refAllOfType()}, association iteration, link 
+ * modification, commit cost by transaction size, mass deletion, and backup
+ * and restore.  Results are appended to the file named by the
+ * {@link Benchmark#PROPERTY_RESULTS} system property.  The number of
+ * objects used by each benchmark is controlled by the 
+ * <code>enki.benchmark.size</code> system property.
+ * 
+ * <p>Like other tests in this package, these benchmarks are not run as
+ * part of the normal unit test suite.  Use the <code>benchmark</code> Ant
+ * target.
+ * 
+ * @author Stephan Zuercher
+ */
+public class RepositoryBenchmarkTest extends SampleModelTestBase
+{
+    public static final String PROPERTY_SIZE = "enki.benchmark.size";
+    
+    private static final int DEFAULT_SIZE = 1000;
+    
+    private static final int[] TXN_SIZES = { 1, 10, 100, 1000 };
+    
+    private final int size = Integer.getInteger(PROPERTY_SIZE, DEFAULT_SIZE);
+    
+    @Test
+    public void benchmarkCreate() throws Exception
+    {
+        execute(new Benchmark("create", null, size) {
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(true);
+                try {
+                    Entity11Class e11Cls = getSimplePackage().getEntity11();
+                    for(int i = 0; i < size; i++) {
+                        e11Cls.createEntity11();
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+            
+            @Override
+            protected void tearDown()
+            {
+                reset();
+            }
+        });
+    }
+    
+    @Test
+    public void benchmarkGetByMofId() throws Exception
+    {
+        final List<String> mofIds = createEntities11(size);
+        
+        execute(new Benchmark("getByMofId", null, size) {
+            @Override
+            protected void setUp()
+            {
+                newSession();
+            }
+            
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(false);
+                try {
+                    for(String mofId: mofIds) {
+                        Assert.assertNotNull(
+                            getRepository().getByMofId(mofId));
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+        });
+        
+        reset();
+    }
+    
+    @Test
+    public void benchmarkAllOfType() throws Exception
+    {
+        createEntities11(size);
+        
+        execute(new Benchmark("refAllOfType", null, size) {
+            @Override
+            protected void setUp()
+            {
+                newSession();
+            }
+            
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(false);
+                try {
+                    int n = 0;
+                    for(Object o: 
+                            getSimplePackage().getEntity11().refAllOfType())
+                    {
+                        Assert.assertNotNull(o);
+                        n++;
+                    }
+                    Assert.assertEquals(size, n);
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+        });
+        
+        reset();
+    }
+    
+    @Test
+    public void benchmarkAssociationIteration() throws Exception
+    {
+        final String e10MofId = createEntity10(size);
+        
+        execute(new Benchmark("associationIteration", null, size) {
+            @Override
+            protected void setUp()
+            {
+                newSession();
+            }
+            
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(false);
+                try {
+                    Entity10 e10 = findEntity(e10MofId, Entity10.class);
+                    int n = 0;
+                    for(Entity11 e11: e10.getEntity11()) {
+                        Assert.assertNotNull(e11);
+                        n++;
+                    }
+                    Assert.assertEquals(size, n);
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+        });
+        
+        reset();
+    }
+    
+    @Test
+    public void benchmarkUnorderedLinks() throws Exception
+    {
+        benchmarkLinks(
+            "unordered", 
+            getSimplePackage().getHasEntity11s(), 
+            Entity10.class, 
+            Entity11.class);
+    }
+    
+    @Test
+    public void benchmarkOrderedLinks() throws Exception
+    {
+        benchmarkLinks(
+            "ordered", 
+            getSimplePackage().getHasEntity17s(), 
+            Entity16.class, 
+            Entity17.class);
+    }
+    
+    /**
+     * Measures adding links from one object to {@link #size} others
+     * (a high-cardinality association end) and removing them again.
+     */
+    private void benchmarkLinks(
+        String kind, 
+        final RefAssociation assoc,
+        final Class<? extends RefObject> parentCls,
+        final Class<? extends RefObject> childCls)
+    throws Exception
+    {
+        final String[] parentMofId = new String[1];
+        final List<String> childMofIds = new ArrayList<String>();
+        
+        getRepository().beginTrans(true);
+        try {
+            parentMofId[0] = createInstance(parentCls).refMofId();
+            for(int i = 0; i < size; i++) {
+                childMofIds.add(createInstance(childCls).refMofId());
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        execute(new Benchmark("refAddLink", kind, size) {
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(true);
+                try {
+                    RefObject parent = findEntity(parentMofId[0], parentCls);
+                    for(String childMofId: childMofIds) {
+                        assoc.refAddLink(
+                            parent, findEntity(childMofId, childCls));
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+            
+            @Override
+            protected void tearDown()
+            {
+                removeLinks(
+                    assoc, parentMofId[0], parentCls, childMofIds, childCls);
+            }
+        });
+
+        execute(new Benchmark("refRemoveLink", kind, size) {
+            @Override
+            protected void setUp()
+            {
+                getRepository().beginTrans(true);
+                try {
+                    RefObject parent = findEntity(parentMofId[0], parentCls);
+                    for(String childMofId: childMofIds) {
+                        assoc.refAddLink(
+                            parent, findEntity(childMofId, childCls));
+                    }
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+            
+            @Override
+            protected void run()
+            {
+                removeLinks(
+                    assoc, parentMofId[0], parentCls, childMofIds, childCls);
+            }
+        });
+        
+        reset();
+    }
+    
+    private void removeLinks(
+        RefAssociation assoc,
+        String parentMofId,
+        Class<? extends RefObject> parentCls,
+        List<String> childMofIds,
+        Class<? extends RefObject> childCls)
+    {
+        getRepository().beginTrans(true);
+        try {
+            RefObject parent = findEntity(parentMofId, parentCls);
+            
+            // Remove from the end to avoid shifting ordered positions.
+            for(int i = childMofIds.size() - 1; i >= 0; i--) {
+                assoc.refRemoveLink(
+                    parent, findEntity(childMofIds.get(i), childCls));
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+    
+    @Test
+    public void benchmarkCommitByTransactionSize() throws Exception
+    {
+        for(final int txnSize: TXN_SIZES) {
+            final int numTxns = Math.max(1, size / txnSize);
+            
+            execute(new Benchmark("commit", txnSize, numTxns * txnSize) {
+                @Override
+                protected void run()
+                {
+                    Entity11Class e11Cls = getSimplePackage().getEntity11();
+                    for(int t = 0; t < numTxns; t++) {
+                        getRepository().beginTrans(true);
+                        try {
+                            for(int i = 0; i < txnSize; i++) {
+                                e11Cls.createEntity11();
+                            }
+                        } finally {
+                            getRepository().endTrans();
+                        }
+                    }
+                }
+                
+                @Override
+                protected void tearDown()
+                {
+                    reset();
+                }
+            });
+        }
+    }
+    
+    @Test
+    public void benchmarkMassDeletion() throws Exception
+    {
+        final List<String> mofIds = new ArrayList<String>();
+        
+        execute(new Benchmark("massDeletion", null, size) {
+            @Override
+            protected void setUp()
+            {
+                mofIds.clear();
+                mofIds.addAll(createEntities11(size));
+            }
+            
+            @Override
+            protected void run()
+            {
+                getRepository().beginTrans(true);
+                try {
+                    List<RefObject> objects = 
+                        new ArrayList<RefObject>(mofIds.size());
+                    for(String mofId: mofIds) {
+                        objects.add(
+                            (RefObject)getRepository().getByMofId(mofId));
+                    }
+                    
+                    getRepository().delete(objects);
+                } finally {
+                    getRepository().endTrans();
+                }
+            }
+        });
+    }
+    
+    @Test
+    public void benchmarkBackupRestore() throws Exception
+    {
+        createEntity10(size);
+        
+        final byte[][] backup = new byte[1][];
+        
+        execute(new Benchmark("backup", null, size + 1) {
+            @Override
+            protected void run() throws Exception
+            {
+                backup[0] = backup();
+            }
+        });
+        
+        execute(new Benchmark("restore", null, size + 1) {
+            @Override
+            protected void run() throws Exception
+            {
+                getRepository().beginTrans(true);
+                try {
+                    getRepository().restoreExtent(
+                        getTestExtentName(), 
+                        "SampleMetamodel", 
+                        "EEM", 
+                        new ByteArrayInputStream(backup[0]));
+                } finally {
+                    getRepository().endTrans(false);
+                }
+            }
+            
+            @Override
+            protected void tearDown()
+            {
+                resetMetaModel();
+            }
+        });
+        
+        reset();
+    }
+    
+    private byte[] backup() throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        
+        getRepository().beginTrans(true);
+        try {
+            getRepository().backupExtent(getTestExtentName(), output);
+        } finally {
+            getRepository().endTrans(false);
+        }
+        
+        return output.toByteArray();
+    }
+    
+    private void execute(Benchmark benchmark) throws Exception
+    {
+        benchmark.execute(getMdrProvider().toString());
+    }
+    
+    private void newSession()
+    {
+        getRepository().endSession();
+        getRepository().beginSession();
+    }
+    
+    private RefObject createInstance(Class<? extends RefObject> cls)
+    {
+        SimplePackage simplePkg = getSimplePackage();
+        if (cls == Entity10.class) {
+            return simplePkg.getEntity10().createEntity10();
+        } else if (cls == Entity11.class) {
+            return simplePkg.getEntity11().createEntity11();
+        } else if (cls == Entity16.class) {
+            return simplePkg.getEntity16().createEntity16();
+        } else {
+            return simplePkg.getEntity17().createEntity17();
+        }
+    }
+    
+    private List<String> createEntities11(int n)
+    {
+        List<String> mofIds = new ArrayList<String>(n);
+        
+        getRepository().beginTrans(true);
+        try {
+            Entity11Class e11Cls = getSimplePackage().getEntity11();
+            for(int i = 0; i < n; i++) {
+                mofIds.add(e11Cls.createEntity11().refMofId());
+            }
+        } finally {
+            getRepository().endTrans();
+        }
+        
+        return mofIds;
+    }
+    
+    private String createEntity10(int numEntities11)
+    {
+        getRepository().beginTrans(true);
+        try {
+            SimplePackage simplePkg = getSimplePackage();
+            Entity10 e10 = simplePkg.getEntity10().createEntity10();
+            
+            Entity11Class e11Cls = simplePkg.getEntity11();
+            for(int i = 0; i < numEntities11; i++) {
+                e10.getEntity11().add(e11Cls.createEntity11());
+            }
+            
+            return e10.refMofId();
+        } finally {
+            getRepository().endTrans();
+        }
+    }
+}
+
+// End RepositoryBenchmarkTest.java
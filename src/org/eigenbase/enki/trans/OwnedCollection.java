@@ -43,14 +43,31 @@ public class OwnedCollection<E extends TransientRefObject>
     private final RefObject owner;
 
     public OwnedCollection(Collection<E> wrapped, RefObject owner)
+    {
+        this(wrapped, owner, true);
+    }
+
+    private OwnedCollection(
+        Collection<E> wrapped, RefObject owner, boolean markOwner)
     {
         this.wrapped = wrapped;
         this.owner = owner;
-        for (E e : wrapped) {
-            e.markOwner(owner);
+        if (markOwner) {
+            for (E e : wrapped) {
+                e.markOwner(owner);
+            }
         }
     }
 
+    /**
+     * Returns a copy of this collection with the same owner.  The elements
+     * are already owned, so they are not marked again.
+     */
+    public OwnedCollection<E> copy()
+    {
+        return new OwnedCollection<E>(new HashSet<E>(wrapped), owner, false);
+    }
+
     public boolean add(E e) 
     {
         e.markOwner(owner);
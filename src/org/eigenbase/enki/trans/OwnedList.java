@@ -43,14 +43,30 @@ public class OwnedList<E extends TransientRefObject>
     private final RefObject owner;
 
     public OwnedList(List<E> wrapped, RefObject owner)
+    {
+        this(wrapped, owner, true);
+    }
+
+    private OwnedList(List<E> wrapped, RefObject owner, boolean markOwner)
     {
         this.wrapped = wrapped;
         this.owner = owner;
-        for (E e : wrapped) {
-            e.markOwner(owner);
+        if (markOwner) {
+            for (E e : wrapped) {
+                e.markOwner(owner);
+            }
         }
     }
 
+    /**
+     * Returns a copy of this collection with the same owner.  The elements
+     * are already owned, so they are not marked again.
+     */
+    public OwnedList<E> copy()
+    {
+        return new OwnedList<E>(new ArrayList<E>(wrapped), owner, false);
+    }
+
     public boolean add(E e) 
     {
         e.markOwner(owner);
@@ -42,10 +42,26 @@ import org.netbeans.api.mdr.events.*;
 /**
  * TransientMDRepository implements a memory-only, non-persistent repository.
  * All objects are lost upon repository shutdown.  This repository 
- * implementation only partially supports the MDR APIs.  In particular, it 
- * doesn't generate MDR Events and does not implement actual transactions (e.g.,
- * all changes are immediately visible to all callers and changes cannot be
- * rolled back).
+ * implementation only partially supports the MDR APIs.  Unless the 
+ * {@link #PROPERTY_TRANSACTIONAL} storage property is set, transactions are
+ * not isolated (all changes are immediately visible to all callers), no MDR
+ * Events are generated and changes cannot be rolled back.
+ * When it is set, each write transaction records its changes.  On rollback
+ * the changes are undone in reverse order, and on commit the corresponding 
+ * MDR Events are delivered to listeners.  Changes to multi-valued attributes 
+ * are recorded by copying the attribute's values the first time they are
+ * retrieved in a write transaction and reported as a single set of events at
+ * commit.  Creation and deletion of extents are never rolled back.
+ * 
+ * <p>In transactional mode read transactions are also isolated from
+ * writers.  Writers are serialized, but readers take no lock.  Instead,
+ * each read transaction sees the state committed when it began: the old
+ * values of attributes, links and class extents modified by a write 
+ * transaction are kept (see {@link SnapshotStorage}) until no reader
+ * can still see them.  Link collections and multi-valued attributes are 
+ * copied on their first modification in a write transaction, so readers
+ * never observe a collection being modified.  Annotations and composite
+ * owners are not versioned.
  * 
  * <p>Storage properties.  Set the 
  * <code>org.eigenbase.enki.implementationType</code> storage property to 
@@ -66,11 +82,24 @@ import org.netbeans.api.mdr.events.*;
  *       Defaults to {@value DEFAULT_WEAK}.
  *     </td>
  *   </tr>
+ *   <tr>
+ *     <td align="left">{@value #PROPERTY_TRANSACTIONAL}</td>
+ *     <td align="left">
+ *       Controls whether write transactions record their changes so that 
+ *       they can be rolled back, reported as MDR Events and hidden from
+ *       concurrent read transactions.  Defaults to 
+ *       {@value #DEFAULT_TRANSACTIONAL}.
+ *     </td>
+ *   </tr>
  * </table>
  *
  * @author Stephan Zuercher
  */
-public class TransientMDRepository implements EnkiMDRepository
+public class TransientMDRepository 
+    implements 
+        EnkiMDRepository, 
+        EnkiChangeEventDispatcher.ListenerSource, 
+        SnapshotStorage
 {
     /**
      * Configuration file property that contains the name of the 
@@ -114,6 +143,23 @@ public class TransientMDRepository implements EnkiMDRepository
      */
     public static final boolean DEFAULT_WEAK = false;
 
+    /**
+     * Storage property that configures whether write transactions record
+     * their changes.  Recorded changes are undone if the transaction is
+     * rolled back and delivered as MDR Events if it commits.  Read 
+     * transactions see only committed changes and do not wait for writers.
+     * Values are converted to boolean via {@link Boolean#valueOf(String)}.
+     */
+    public static final String PROPERTY_TRANSACTIONAL =
+        "org.eigenbase.enki.trans.transactional";
+
+    /**
+     * Contains the default value for the 
+     * {@link #PROPERTY_TRANSACTIONAL} storage property.
+     * The default is {@value}.
+     */
+    public static final boolean DEFAULT_TRANSACTIONAL = false;
+
     private static final String MOF_EXTENT = "MOF";
     private static final Logger log = 
         Logger.getLogger(TransientMDRepository.class.getName());
@@ -134,6 +180,41 @@ public class TransientMDRepository implements EnkiMDRepository
 
     private boolean isWeak;
     
+    private final boolean isTransactional;
+    
+    /** 
+     * Map of {@link MDRChangeListener} instances to 
+     * {@link EnkiMaskedMDRChangeListener} instances.
+     */
+    private final Map<MDRChangeListener, EnkiMaskedMDRChangeListener> listeners;
+
+    /** 
+     * The {@link EnkiChangeEventDispatcher} for this repository.  Null 
+     * unless {@link #isTransactional}.
+     */
+    private final EnkiChangeEventDispatcher eventDispatcher;
+    
+    /** 
+     * Guards {@link #deltas}, {@link #committedVersion} and 
+     * {@link #snapshotCounts} updates.  Never held while waiting for 
+     * anything else.
+     */
+    private final Object versionLock = new Object();
+    
+    /** 
+     * Deltas of write transactions that are in progress or whose previous
+     * values may still be needed by a reader, oldest first.  Replaced, 
+     * never modified.  Always empty unless {@link #isTransactional}.
+     */
+    private volatile Delta[] deltas = new Delta[0];
+    
+    /** Version created by the last committed write transaction. */
+    private volatile long committedVersion = 0;
+    
+    /** Number of read transactions by snapshot version. */
+    private final SortedMap<Long, Integer> snapshotCounts = 
+        new TreeMap<Long, Integer>();
+    
     public TransientMDRepository(
         List<Properties> modelPropertiesList,
         Properties storageProps, 
@@ -156,6 +237,24 @@ public class TransientMDRepository implements EnkiMDRepository
             isWeak = Boolean.valueOf(weakProp);
         }
 
+        String transactionalProp = 
+            storageProps.getProperty(PROPERTY_TRANSACTIONAL);
+        if (transactionalProp == null) {
+            isTransactional = DEFAULT_TRANSACTIONAL;
+        } else {
+            isTransactional = Boolean.valueOf(transactionalProp);
+        }
+
+        this.listeners = 
+            new IdentityHashMap<MDRChangeListener, EnkiMaskedMDRChangeListener>();
+        if (isTransactional) {
+            this.eventDispatcher = 
+                new EnkiChangeEventDispatcher(
+                    this, 1, EnkiChangeEventDispatcher.DEFAULT_QUEUE_CAPACITY);
+        } else {
+            this.eventDispatcher = null;
+        }
+
         initModelMap();
         initModelExtent(MOF_EXTENT, false);
 
@@ -194,6 +293,21 @@ public class TransientMDRepository implements EnkiMDRepository
     {
         // TODO: unregister mbean
         
+        synchronized(listeners) {
+            listeners.clear();
+        }
+        
+        if (eventDispatcher != null) {
+            try {
+                eventDispatcher.shutdown();
+            } catch(InterruptedException e) {
+                log.log(
+                    Level.SEVERE, 
+                    "EnkiChangeEventDispatcher interrupted on shutdown",
+                    e);
+            }
+        }
+        
         synchronized(extentMap) {
             extentMap.clear();
             modelMap.clear();
@@ -343,6 +457,9 @@ public class TransientMDRepository implements EnkiMDRepository
         if (isOutermost) {
             if (write) {
                 mdrSession.obtainWriteLock();
+            } else if (isTransactional) {
+                // Read the committed snapshot without waiting for writers.
+                beginSnapshot(mdrSession);
             } else {
                 mdrSession.obtainReadLock();
             }
@@ -352,7 +469,17 @@ public class TransientMDRepository implements EnkiMDRepository
 
         contexts.add(context);
 
-        // TODO: begin trans event
+        if (isOutermost && write && isTransactional) {
+            mdrSession.changes = new ArrayList<Change>();
+            mdrSession.snapshots = 
+                new IdentityHashMap<Collection<?>, Boolean>();
+            beginDelta(mdrSession);
+            record(
+                mdrSession,
+                new EventChange(
+                    new TransactionEvent(
+                        this, TransactionEvent.EVENT_TRANSACTION_START)));
+        }
     }
 
     // Overrides 
@@ -393,10 +520,31 @@ public class TransientMDRepository implements EnkiMDRepository
 
         if (contexts.isEmpty()) {
             try {
-                // TODO: end trans event
-                // TODO: fire change events
-            } finally {                
-                mdrSession.releaseLock();
+                List<Change> changes = mdrSession.changes;
+                if (changes != null) {
+                    mdrSession.changes = null;
+                    mdrSession.snapshots = null;
+                    
+                    if (rollback) {
+                        // Readers don't see the changes while they are 
+                        // undone; the delta is discarded below.
+                        rollbackChanges(mdrSession, changes);
+                    } else {
+                        // Publish before listeners learn of the changes.
+                        publishDelta(mdrSession);
+                        commitChanges(changes);
+                    }
+                }
+            } finally {
+                if (mdrSession.delta != null) {
+                    discardDelta(mdrSession);
+                }
+                
+                if (mdrSession.snapshotVersion != MdrSession.NO_SNAPSHOT) {
+                    endSnapshot(mdrSession);
+                } else {
+                    mdrSession.releaseLock();
+                }
             }
         
             if (mdrSession.implicit) {
@@ -575,7 +723,49 @@ public class TransientMDRepository implements EnkiMDRepository
         // TODO: optimize this path (see what initializer does)
         Long mofIdLong = MofIdUtil.parseMofIdStr(mofId);
         
-        return byMofIdMap.get(mofIdLong);
+        RefObject obj = byMofIdMap.get(mofIdLong);
+        
+        Delta[] deltas = this.deltas;
+        if (deltas.length == 0) {
+            return obj;
+        }
+        
+        return getSnapshotObject(mofIdLong, obj, deltas);
+    }
+    
+    /**
+     * Finds the object with the given MOF ID as of the calling thread's 
+     * snapshot.
+     * 
+     * @param mofId MOF ID
+     * @param obj current object with the MOF ID, if any
+     * @param deltas deltas, read after obj
+     * @return the visible object with the MOF ID or null
+     */
+    private RefObject getSnapshotObject(
+        Long mofId, RefObject obj, Delta[] deltas)
+    {
+        long snapshot = getSnapshotVersion();
+        
+        RefObject candidate = obj;
+        for(int i = 0; i < deltas.length && candidate == null; i++) {
+            if (deltas[i].version > snapshot) {
+                candidate = deltas[i].objects.get(mofId);
+            }
+        }
+        if (candidate == null) {
+            return null;
+        }
+        
+        // Objects are registered with their class before they are 
+        // reachable by MOF ID, so obj is current if it is non-null.
+        Object exists = 
+            resolve(
+                deltas, 
+                snapshot, 
+                new FeatureKey(candidate.refClass(), candidate),
+                Boolean.valueOf(obj != null));
+        return ((Boolean)exists) ? candidate : null;
     }
 
     // Overrides 
@@ -594,28 +784,73 @@ public class TransientMDRepository implements EnkiMDRepository
         return null;
     }
 
+    // Implement EnkiMDRepository
+    public Map<String, RefBaseObject> getByMofId(Collection<String> mofIds)
+    {
+        Map<String, RefBaseObject> result = 
+            new LinkedHashMap<String, RefBaseObject>();
+        for(String mofId: mofIds) {
+            RefBaseObject obj = getByMofId(mofId);
+            if (obj != null) {
+                result.put(mofId, obj);
+            }
+        }
+        return result;
+    }
+
     // Overrides 
     public void addListener(MDRChangeListener listener)
     {
-        // TODO: implement
+        addListener(listener, MDRChangeEvent.EVENTMASK_ALL);
     }
 
     // Overrides 
     public void addListener(MDRChangeListener listener, int mask)
     {
-        // TODO: implement
+        synchronized(listeners) {
+            EnkiMaskedMDRChangeListener maskedListener = 
+                listeners.get(listener);
+            if (maskedListener != null) {
+                maskedListener.add(mask);
+                return;
+            }
+            
+            maskedListener = new EnkiMaskedMDRChangeListener(listener, mask);
+            listeners.put(listener, maskedListener);
+        }
     }
 
     // Overrides 
     public void removeListener(MDRChangeListener listener)
     {
-        // TODO: implement
+        synchronized(listeners) {
+            listeners.remove(listener);
+        }
     }
 
     // Overrides 
     public void removeListener(MDRChangeListener listener, int mask)
     {
-        // TODO: implement
+        synchronized(listeners) {
+            EnkiMaskedMDRChangeListener maskedListener = 
+                listeners.get(listener);
+            if (maskedListener != null) {
+                boolean removedAll = maskedListener.remove(mask);
+                
+                if (removedAll) {
+                    listeners.remove(listener);
+                }
+            }
+        }
+    }
+
+    // Implement EnkiChangeEventDispatcher.ListenerSource
+    public Collection<EnkiMaskedMDRChangeListener> getListeners()
+    {
+        synchronized(listeners) {
+            return new ArrayList<EnkiMaskedMDRChangeListener>(
+                listeners.values());
+        }
     }
 
 
@@ -643,6 +878,12 @@ public class TransientMDRepository implements EnkiMDRepository
             stream);
     }
 
+    // Overrides 
+    public StreamingXmiReader createStreamingXmiReader()
+    {
+        return new StreamingXmiReader(this);
+    }
+
     // Overrides 
     @Deprecated
     public void setRestoreExtentXmiFilter(Class<? extends InputStream> cls)
@@ -913,12 +1154,34 @@ public class TransientMDRepository implements EnkiMDRepository
 
     public void register(RefClass cls, RefObject instance)
     {
-        long mofId = nextMofId.getAndIncrement();
-
-        ((RefObjectBase)instance).setMofId(mofId);
+        MdrSession mdrSession = getTransactionalSession();
+        
+        long mofId;
+        if (mdrSession != null && mdrSession.rollingBack) {
+            // Restoring a deleted object: keep its MOF ID.
+            mofId = ((RefObjectBase)instance).getMofId();
+        } else {
+            mofId = nextMofId.getAndIncrement();
+            ((RefObjectBase)instance).setMofId(mofId);
+        }
+        
         if (!isWeak) {
+            if (isRecording(mdrSession)) {
+                // Hide the instance from readers before it is reachable.
+                mdrSession.delta.recordMembership(cls, instance, false);
+            }
             byMofIdMap.put(mofId, instance);
         }
+        
+        if (isRecording(mdrSession)) {
+            record(
+                mdrSession,
+                new InstanceChange(
+                    new InstanceEvent(
+                        cls, InstanceEvent.EVENT_INSTANCE_CREATE, null, 
+                        instance),
+                    true));
+        }
     }
     
     public void unregister(RefClass cls, RefObject instance)
@@ -927,6 +1190,541 @@ public class TransientMDRepository implements EnkiMDRepository
         if (!isWeak) {
             byMofIdMap.remove(mofId);
         }
+        
+        MdrSession mdrSession = getTransactionalSession();
+        if (isRecording(mdrSession)) {
+            record(
+                mdrSession,
+                new InstanceChange(
+                    new InstanceEvent(
+                        instance, InstanceEvent.EVENT_INSTANCE_DELETE, null,
+                        instance),
+                    false));
+        }
+    }
+
+    /**
+     * Records a change to a single-valued attribute.  Invoked by generated 
+     * code before the attribute is modified.  Does nothing unless 
+     * {@link #PROPERTY_TRANSACTIONAL} is set and a write transaction is in 
+     * progress.
+     * 
+     * @param obj object whose attribute is changing
+     * @param attribName attribute name
+     * @param oldValue current value of the attribute
+     * @param newValue new value of the attribute
+     */
+    public void recordAttributeChange(
+        RefObject obj, String attribName, Object oldValue, Object newValue)
+    {
+        MdrSession mdrSession = getTransactionalSession();
+        if (isRecording(mdrSession)) {
+            mdrSession.delta.recordValue(
+                new FeatureKey(obj, attribName), oldValue);
+            record(
+                mdrSession,
+                new AttributeChange(
+                    new AttributeEvent(
+                        obj, 
+                        AttributeEvent.EVENT_ATTRIBUTE_SET, 
+                        attribName, 
+                        oldValue,
+                        newValue,
+                        AttributeEvent.POSITION_NONE)));
+        }
+    }
+    
+    /**
+     * Records the values of a multi-valued attribute before they are 
+     * returned to the caller, who may modify them.  Invoked by generated
+     * code, which replaces the attribute's collection with the result.  
+     * Returns the given collection unless {@link #PROPERTY_TRANSACTIONAL} 
+     * is set and a write transaction is in progress.  The first call for a
+     * given attribute in each transaction returns a copy of the collection,
+     * leaving the original to readers.
+     * 
+     * @param obj object that owns the attribute
+     * @param attribName attribute name
+     * @param ordered true if the attribute is ordered
+     * @param values the attribute's collection of values
+     * @return the collection to modify and to store in the attribute
+     */
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<?>> C recordCollectionAccess(
+        RefObject obj, String attribName, boolean ordered, C values)
+    {
+        MdrSession mdrSession = getTransactionalSession();
+        if (!isRecording(mdrSession) || 
+            mdrSession.snapshots.containsKey(values))
+        {
+            return values;
+        }
+        
+        C copy = (C)copyValues(values);
+        mdrSession.delta.recordValue(new FeatureKey(obj, attribName), values);
+        mdrSession.snapshots.put(copy, Boolean.TRUE);
+        mdrSession.changes.add(
+            new CollectionChange(obj, attribName, ordered, copy));
+        return copy;
+    }
+    
+    private static Collection<?> copyValues(Collection<?> values)
+    {
+        if (values instanceof OwnedList) {
+            return ((OwnedList<?>)values).copy();
+        } else if (values instanceof OwnedCollection) {
+            return ((OwnedCollection<?>)values).copy();
+        } else if (values instanceof List) {
+            return new ArrayList<Object>(values);
+        } else {
+            return new HashSet<Object>(values);
+        }
+    }
+    
+    /**
+     * Records the addition or removal of a link.  Invoked by generated code
+     * after the link is modified.  Does nothing unless 
+     * {@link #PROPERTY_TRANSACTIONAL} is set and a write transaction is in 
+     * progress.
+     * 
+     * @param assoc association containing the link
+     * @param added true if the link was added, false if removed
+     * @param fixedEnd object at the fixed end of the link
+     * @param fixedEndName name of the fixed end
+     * @param otherEnd object at the other end of the link
+     * @param position position of otherEnd if the other end is ordered, 
+     *                 otherwise -1
+     */
+    public void recordLinkChange(
+        RefAssociation assoc, 
+        boolean added, 
+        RefObject fixedEnd, 
+        String fixedEndName,
+        RefObject otherEnd, 
+        int position)
+    {
+        MdrSession mdrSession = getTransactionalSession();
+        if (isRecording(mdrSession)) {
+            record(
+                mdrSession,
+                new LinkChange(
+                    new AssociationEvent(
+                        assoc,
+                        added 
+                            ? AssociationEvent.EVENT_ASSOCIATION_ADD
+                            : AssociationEvent.EVENT_ASSOCIATION_REMOVE,
+                        fixedEnd,
+                        fixedEndName,
+                        added ? null : otherEnd,
+                        added ? otherEnd : null,
+                        position >= 0 
+                            ? position : AssociationEvent.POSITION_NONE)));
+        }
+    }
+    
+    /**
+     * Tests whether changes are being recorded for the current thread, 
+     * i.e., whether {@link #PROPERTY_TRANSACTIONAL} is set and a write 
+     * transaction is in progress.  Generated code uses this to avoid 
+     * computing the arguments of {@link #recordLinkChange} otherwise.
+     * 
+     * @return true if changes are being recorded
+     */
+    public boolean isRecording()
+    {
+        return isRecording(getTransactionalSession());
+    }
+    
+    /**
+     * Returns the number of write transactions whose previous values are 
+     * retained, either because they are in progress or because a reader's
+     * snapshot predates them.
+     * 
+     * @return number of retained deltas
+     */
+    public int getRetainedDeltaCount()
+    {
+        return deltas.length;
+    }
+    
+    // Implement SnapshotStorage
+    public boolean isVersioned()
+    {
+        return isTransactional;
+    }
+    
+    // Implement SnapshotStorage
+    public Object getSnapshotValue(
+        Object owner, Object feature, Object currentValue)
+    {
+        Delta[] deltas = this.deltas;
+        if (deltas.length == 0) {
+            return currentValue;
+        }
+        
+        long snapshot = getSnapshotVersion();
+        if (snapshot == Long.MAX_VALUE) {
+            return currentValue;
+        }
+        
+        return resolve(
+            deltas, snapshot, new FeatureKey(owner, feature), currentValue);
+    }
+    
+    // Implement SnapshotStorage
+    public boolean recordValue(Object owner, Object feature, Object oldValue)
+    {
+        MdrSession mdrSession = getTransactionalSession();
+        if (!isRecording(mdrSession)) {
+            return false;
+        }
+        
+        return mdrSession.delta.recordValue(
+            new FeatureKey(owner, feature), oldValue);
+    }
+
+    // Implement SnapshotStorage
+    @SuppressWarnings("unchecked")
+    public <E> Collection<E> getSnapshotMembers(
+        Object container, Collection<E> currentMembers)
+    {
+        MdrSession mdrSession = sessionStack.peek(this);
+        if (mdrSession != null && mdrSession.delta != null) {
+            return currentMembers;
+        } else if (mdrSession != null && 
+            mdrSession.snapshotVersion != MdrSession.NO_SNAPSHOT)
+        {
+            // A writer may begin at any time, so resolve the members on 
+            // each use.  The pinned snapshot keeps the needed deltas.
+            return new SnapshotMembers<E>(
+                container, currentMembers, mdrSession.snapshotVersion);
+        }
+        
+        // Outside of transactions, return the live members unless they
+        // include uncommitted changes.
+        long snapshot = committedVersion;
+        if (getChangedMembers(container, snapshot, deltas) == null) {
+            return currentMembers;
+        }
+        return Collections.unmodifiableList(
+            copySnapshotMembers(container, currentMembers, snapshot));
+    }
+
+    /**
+     * Copies the members of a container as of the given version.
+     * 
+     * @param container a class proxy or association
+     * @param currentMembers current members of the container
+     * @param snapshot snapshot version
+     * @return the members as of the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    private <E> List<E> copySnapshotMembers(
+        Object container, Collection<E> currentMembers, long snapshot)
+    {
+        // Copy before looking for changes, which are recorded before they
+        // are made.  Anything copied that isn't part of the snapshot is 
+        // then known.
+        List<E> members = new ArrayList<E>(currentMembers);
+        Delta[] deltas = this.deltas;
+        
+        Set<Object> changed = getChangedMembers(container, snapshot, deltas);
+        if (changed == null) {
+            return members;
+        }
+        
+        members.removeAll(changed);
+        for(Object member: changed) {
+            Object wasMember = 
+                resolve(
+                    deltas, 
+                    snapshot, 
+                    new FeatureKey(container, member), 
+                    Boolean.FALSE);
+            if ((Boolean)wasMember) {
+                members.add((E)member);
+            }
+        }
+        return members;
+    }
+    
+    /**
+     * Finds the members of a container added or removed by deltas newer 
+     * than the given version.
+     * 
+     * @param container a class proxy or association
+     * @param snapshot snapshot version
+     * @param deltas deltas, read after any access to the current members
+     * @return changed members, or null if there are none
+     */
+    private static Set<Object> getChangedMembers(
+        Object container, long snapshot, Delta[] deltas)
+    {
+        FeatureKey membersKey = new FeatureKey(container, Delta.MEMBERS);
+        Set<Object> changed = null;
+        for(Delta delta: deltas) {
+            if (delta.version > snapshot) {
+                Set<Object> deltaMembers = delta.members.get(membersKey);
+                if (deltaMembers != null) {
+                    if (changed == null) {
+                        changed = new HashSet<Object>();
+                    }
+                    changed.addAll(deltaMembers);
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Implement SnapshotStorage
+    public void recordMembership(
+        Object container, Object member, boolean wasMember)
+    {
+        MdrSession mdrSession = getTransactionalSession();
+        if (isRecording(mdrSession)) {
+            mdrSession.delta.recordMembership(container, member, wasMember);
+        }
+    }
+    
+    /**
+     * Returns the version visible to the calling thread: 
+     * {@link Long#MAX_VALUE} for the writer, the snapshot version in read 
+     * transactions, and the last committed version otherwise.
+     */
+    private long getSnapshotVersion()
+    {
+        MdrSession mdrSession = sessionStack.peek(this);
+        if (mdrSession != null) {
+            if (mdrSession.delta != null) {
+                return Long.MAX_VALUE;
+            }
+            if (mdrSession.snapshotVersion != MdrSession.NO_SNAPSHOT) {
+                return mdrSession.snapshotVersion;
+            }
+        }
+        return committedVersion;
+    }
+    
+    /**
+     * Finds a value as of the given version.  The oldest delta newer than
+     * the version that modified the value holds the value as of that 
+     * version.
+     * 
+     * @param deltas deltas, oldest first
+     * @param version snapshot version
+     * @param key identifies the value
+     * @param currentValue value to return if no newer delta modified it
+     * @return the value as of the given version
+     */
+    private static Object resolve(
+        Delta[] deltas, long version, FeatureKey key, Object currentValue)
+    {
+        for(Delta delta: deltas) {
+            if (delta.version > version) {
+                Object oldValue = delta.oldValues.get(key);
+                if (oldValue != null) {
+                    return oldValue == Delta.NULL_VALUE ? null : oldValue;
+                }
+            }
+        }
+        return currentValue;
+    }
+    
+    private void beginSnapshot(MdrSession mdrSession)
+    {
+        synchronized(versionLock) {
+            long version = committedVersion;
+            Integer count = snapshotCounts.get(version);
+            snapshotCounts.put(version, count == null ? 1 : count + 1);
+            mdrSession.snapshotVersion = version;
+        }
+    }
+    
+    private void endSnapshot(MdrSession mdrSession)
+    {
+        synchronized(versionLock) {
+            long version = mdrSession.snapshotVersion;
+            mdrSession.snapshotVersion = MdrSession.NO_SNAPSHOT;
+            
+            int count = snapshotCounts.get(version);
+            if (count == 1) {
+                snapshotCounts.remove(version);
+            } else {
+                snapshotCounts.put(version, count - 1);
+            }
+            
+            pruneDeltas();
+        }
+    }
+    
+    private void beginDelta(MdrSession mdrSession)
+    {
+        Delta delta = new Delta();
+        synchronized(versionLock) {
+            Delta[] newDeltas = new Delta[deltas.length + 1];
+            System.arraycopy(deltas, 0, newDeltas, 0, deltas.length);
+            newDeltas[deltas.length] = delta;
+            deltas = newDeltas;
+        }
+        mdrSession.delta = delta;
+    }
+    
+    /**
+     * Makes the changes of the session's write transaction visible to 
+     * readers that begin afterwards.
+     */
+    private void publishDelta(MdrSession mdrSession)
+    {
+        synchronized(versionLock) {
+            Delta delta = mdrSession.delta;
+            mdrSession.delta = null;
+            
+            delta.version = committedVersion + 1;
+            committedVersion = delta.version;
+            
+            pruneDeltas();
+        }
+    }
+    
+    private void discardDelta(MdrSession mdrSession)
+    {
+        synchronized(versionLock) {
+            Delta delta = mdrSession.delta;
+            mdrSession.delta = null;
+            
+            List<Delta> newDeltas = new ArrayList<Delta>(Arrays.asList(deltas));
+            newDeltas.remove(delta);
+            deltas = newDeltas.toArray(new Delta[newDeltas.size()]);
+        }
+    }
+    
+    /**
+     * Discards committed deltas that no reader needs, i.e., those no newer
+     * than the oldest snapshot.  Must be called while holding 
+     * {@link #versionLock}.
+     */
+    private void pruneDeltas()
+    {
+        long oldest = 
+            snapshotCounts.isEmpty() 
+                ? committedVersion 
+                : snapshotCounts.firstKey();
+        
+        int count = 0;
+        while(count < deltas.length && deltas[count].version <= oldest) {
+            count++;
+        }
+        
+        if (count > 0) {
+            Delta[] newDeltas = new Delta[deltas.length - count];
+            System.arraycopy(deltas, count, newDeltas, 0, newDeltas.length);
+            deltas = newDeltas;
+        }
+    }
+    
+    private MdrSession getTransactionalSession()
+    {
+        if (!isTransactional) {
+            return null;
+        }
+        
+        return sessionStack.peek(this);
+    }
+    
+    private static boolean isRecording(MdrSession mdrSession)
+    {
+        return 
+            mdrSession != null && 
+            mdrSession.changes != null &&
+            !mdrSession.rollingBack;
+    }
+    
+    private void record(MdrSession mdrSession, Change change)
+    {
+        mdrSession.changes.add(change);
+        
+        // Fire as planned change immediately (and from this thread).
+        synchronized(listeners) {
+            for(EnkiMaskedMDRChangeListener listener: listeners.values()) {
+                listener.plannedChange(change.event);
+            }
+        }
+    }
+    
+    private void commitChanges(List<Change> changes)
+    {
+        List<MDRChangeEvent> events = new ArrayList<MDRChangeEvent>();
+        for(Change change: changes) {
+            if (change instanceof CollectionChange) {
+                // Collection events are only known now
+                int start = events.size();
+                ((CollectionChange)change).computeEvents(events);
+                firePlannedChanges(events.subList(start, events.size()));
+            } else {
+                events.add(change.event);
+            }
+        }
+        
+        MDRChangeEvent endEvent = 
+            new TransactionEvent(this, TransactionEvent.EVENT_TRANSACTION_END);
+        events.add(endEvent);
+        firePlannedChanges(Collections.singletonList(endEvent));
+        
+        synchronized(listeners) {
+            eventDispatcher.enqueueEvents(events);
+        }
+    }
+    
+    private void firePlannedChanges(List<MDRChangeEvent> events)
+    {
+        synchronized(listeners) {
+            for(MDRChangeEvent event: events) {
+                for(EnkiMaskedMDRChangeListener listener: listeners.values())
+                {
+                    listener.plannedChange(event);
+                }
+            }
+        }
+    }
+    
+    private void rollbackChanges(MdrSession mdrSession, List<Change> changes)
+    {
+        RuntimeException failure = null;
+        
+        mdrSession.rollingBack = true;
+        try {
+            ListIterator<Change> iter = changes.listIterator(changes.size());
+            while(iter.hasPrevious()) {
+                Change change = iter.previous();
+                try {
+                    change.undo();
+                } catch(RuntimeException e) {
+                    log.log(Level.SEVERE, "Error undoing change", e);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        } finally {
+            mdrSession.rollingBack = false;
+        }
+
+        synchronized(listeners) {
+            for(Change change: changes) {
+                if (change.event == null) {
+                    continue;
+                }
+                
+                for(EnkiMaskedMDRChangeListener listener: listeners.values())
+                {
+                    listener.changeCancelled(change.event);
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw new InternalMdrError("rollback incomplete", failure);
+        }
     }
     
     /**
@@ -1075,11 +1873,39 @@ public class TransientMDRepository implements EnkiMDRepository
 
     private class MdrSession implements EnkiMDSession
     {
+        /** Value of {@link #snapshotVersion} outside read transactions. */
+        private static final long NO_SNAPSHOT = -1L;
+        
         private final boolean implicit;
         private final LinkedList<Context> context;
         private Lock lock;
         private int refCount;
         
+        /** 
+         * Changes recorded by the current write transaction.  Null unless
+         * {@link #isTransactional} and a write transaction is in progress.
+         */
+        private List<Change> changes;
+        
+        /** Collections whose values have been recorded in changes. */
+        private Map<Collection<?>, Boolean> snapshots;
+        
+        /** True while changes are being undone. */
+        private boolean rollingBack;
+        
+        /** 
+         * Previous values of data modified by the current write 
+         * transaction.  Null unless {@link #isTransactional} and a write 
+         * transaction is in progress.
+         */
+        private Delta delta;
+        
+        /** 
+         * Version read by the current read transaction.  
+         * {@link #NO_SNAPSHOT} unless {@link #isTransactional} and a read
+         * transaction is in progress.
+         */
+        private long snapshotVersion = NO_SNAPSHOT;
 
         private MdrSession(boolean implicit)
         {
@@ -1152,6 +1978,421 @@ public class TransientMDRepository implements EnkiMDRepository
             this.isWrite = isWrite;
         }
     }
+    
+    /**
+     * Delta holds the previous values of data modified by a write 
+     * transaction, as of the first modification in the transaction, so 
+     * that readers of earlier versions can find them.  Only the writer
+     * modifies a delta.
+     */
+    private static class Delta
+    {
+        /** Stands in for null, which ConcurrentHashMap does not permit. */
+        private static final Object NULL_VALUE = new Object();
+        
+        /** Feature for the keys of {@link #members}. */
+        private static final Object MEMBERS = new Object();
+        
+        /** Version created by committing the delta, if committed. */
+        private volatile long version = Long.MAX_VALUE;
+        
+        /** Previous values. */
+        private final Map<FeatureKey, Object> oldValues = 
+            new ConcurrentHashMap<FeatureKey, Object>();
+        
+        /** Added or removed members, by container. */
+        private final Map<FeatureKey, Set<Object>> members = 
+            new ConcurrentHashMap<FeatureKey, Set<Object>>();
+        
+        /** Created or deleted objects, by MOF ID. */
+        private final Map<Long, RefObject> objects = 
+            new ConcurrentHashMap<Long, RefObject>();
+        
+        private boolean recordValue(FeatureKey key, Object oldValue)
+        {
+            return oldValues.putIfAbsent(
+                key, oldValue == null ? NULL_VALUE : oldValue) == null;
+        }
+        
+        private void recordMembership(
+            Object container, Object member, boolean wasMember)
+        {
+            if (!recordValue(
+                    new FeatureKey(container, member), 
+                    Boolean.valueOf(wasMember)))
+            {
+                return;
+            }
+            
+            FeatureKey membersKey = new FeatureKey(container, MEMBERS);
+            Set<Object> changed = members.get(membersKey);
+            if (changed == null) {
+                changed = 
+                    Collections.newSetFromMap(
+                        new ConcurrentHashMap<Object, Boolean>());
+                members.put(membersKey, changed);
+            }
+            changed.add(member);
+            
+            if (member instanceof RefObjectBase) {
+                objects.put(
+                    ((RefObjectBase)member).getMofId(), (RefObject)member);
+            }
+        }
+    }
+    
+    /**
+     * SnapshotMembers is a read-only view of a container's members as of
+     * a pinned snapshot.  Membership tests, size and emptiness consult the
+     * current members and then the deltas, which are recorded before the
+     * current members change, and copy nothing unless membership changed 
+     * since the snapshot.  Iteration always copies: a writer may remove 
+     * members the iterator has not yet reached.
+     */
+    private class SnapshotMembers<E> extends AbstractCollection<E>
+    {
+        private final Object container;
+        private final Collection<E> currentMembers;
+        private final long snapshot;
+        
+        private SnapshotMembers(
+            Object container, Collection<E> currentMembers, long snapshot)
+        {
+            this.container = container;
+            this.currentMembers = currentMembers;
+            this.snapshot = snapshot;
+        }
+        
+        @Override
+        public boolean contains(Object o)
+        {
+            Boolean isMember = Boolean.valueOf(currentMembers.contains(o));
+            Object wasMember = 
+                resolve(
+                    deltas, snapshot, new FeatureKey(container, o), isMember);
+            return (Boolean)wasMember;
+        }
+        
+        @Override
+        public boolean isEmpty()
+        {
+            boolean isEmpty = currentMembers.isEmpty();
+            if (!isChanged()) {
+                return isEmpty;
+            }
+            return getMembers().isEmpty();
+        }
+        
+        @Override
+        public int size()
+        {
+            int size = currentMembers.size();
+            if (!isChanged()) {
+                return size;
+            }
+            return getMembers().size();
+        }
+        
+        @Override
+        public Iterator<E> iterator()
+        {
+            return Collections.unmodifiableCollection(getMembers()).iterator();
+        }
+        
+        private boolean isChanged()
+        {
+            return getChangedMembers(container, snapshot, deltas) != null;
+        }
+        
+        private List<E> getMembers()
+        {
+            return copySnapshotMembers(container, currentMembers, snapshot);
+        }
+    }
+    
+    /**
+     * FeatureKey identifies a versioned value by its owner, compared by
+     * identity, and its feature, compared by equality.
+     */
+    private static final class FeatureKey
+    {
+        private final Object owner;
+        private final Object feature;
+        
+        private FeatureKey(Object owner, Object feature)
+        {
+            this.owner = owner;
+            this.feature = feature;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof FeatureKey)) {
+                return false;
+            }
+            
+            FeatureKey that = (FeatureKey)other;
+            return this.owner == that.owner && 
+                this.feature.equals(that.feature);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(owner) * 31 + feature.hashCode();
+        }
+    }
+    
+    /**
+     * Change represents a change recorded during a write transaction.  
+     */
+    private abstract static class Change
+    {
+        /** 
+         * Event describing the change.  Fired as a planned change when the
+         * change is recorded.
+         */
+        protected final MDRChangeEvent event;
+        
+        protected Change(MDRChangeEvent event)
+        {
+            this.event = event;
+        }
+        
+        /**
+         * Reverts the change.  Invoked during rollback, in reverse order of 
+         * recording.
+         */
+        protected abstract void undo();
+    }
+    
+    /**
+     * EventChange records an event that has no effect to undo.
+     */
+    private static class EventChange extends Change
+    {
+        private EventChange(MDRChangeEvent event)
+        {
+            super(event);
+        }
+        
+        protected void undo()
+        {
+        }
+    }
+    
+    /**
+     * InstanceChange records the creation or deletion of an object.
+     */
+    private static class InstanceChange extends Change
+    {
+        private final boolean created;
+        
+        private InstanceChange(InstanceEvent event, boolean created)
+        {
+            super(event);
+            
+            this.created = created;
+        }
+        
+        protected void undo()
+        {
+            TransientRefObject instance = 
+                (TransientRefObject)((InstanceEvent)event).getInstance();
+            if (created) {
+                instance.discard();
+            } else {
+                instance.restore();
+            }
+        }
+    }
+    
+    /**
+     * AttributeChange records a change to a single-valued attribute.
+     */
+    private static class AttributeChange extends Change
+    {
+        private AttributeChange(AttributeEvent event)
+        {
+            super(event);
+        }
+        
+        protected void undo()
+        {
+            AttributeEvent attribEvent = (AttributeEvent)event;
+            
+            ((RefFeatured)attribEvent.getSource()).refSetValue(
+                attribEvent.getAttributeName(), attribEvent.getOldElement());
+        }
+    }
+    
+    /**
+     * LinkChange records the addition or removal of an association link.
+     */
+    private static class LinkChange extends Change
+    {
+        private LinkChange(AssociationEvent event)
+        {
+            super(event);
+        }
+        
+        @SuppressWarnings("unchecked")
+        protected void undo()
+        {
+            AssociationEvent assocEvent = (AssociationEvent)event;
+            
+            Collection<RefObject> otherEnds =
+                ((RefAssociation)assocEvent.getSource()).refQuery(
+                    assocEvent.getEndName(), assocEvent.getFixedElement());
+            int position = assocEvent.getPosition();
+            
+            if (assocEvent.isOfType(AssociationEvent.EVENT_ASSOCIATION_ADD)) {
+                if (position != AssociationEvent.POSITION_NONE) {
+                    ((List<RefObject>)otherEnds).remove(position);
+                } else {
+                    otherEnds.remove(assocEvent.getNewElement());
+                }
+            } else {
+                if (position != AssociationEvent.POSITION_NONE) {
+                    ((List<RefObject>)otherEnds).add(
+                        position, assocEvent.getOldElement());
+                } else {
+                    otherEnds.add(assocEvent.getOldElement());
+                }
+            }
+        }
+    }
+    
+    /**
+     * CollectionChange records the values of a multi-valued attribute as of
+     * the first time the attribute was retrieved in a transaction.  Events
+     * are computed at commit by comparing the recorded values with the 
+     * attribute's final values.
+     */
+    private static class CollectionChange extends Change
+    {
+        private final RefObject owner;
+        private final String attribName;
+        private final boolean ordered;
+        private final Collection<?> values;
+        private final List<Object> oldValues;
+        
+        private CollectionChange(
+            RefObject owner, 
+            String attribName,
+            boolean ordered, 
+            Collection<?> values)
+        {
+            super(null);
+            
+            this.owner = owner;
+            this.attribName = attribName;
+            this.ordered = ordered;
+            this.values = values;
+            this.oldValues = new ArrayList<Object>(values);
+        }
+        
+        @SuppressWarnings("unchecked")
+        protected void undo()
+        {
+            // Bypass owned collections: restored values are already owned.
+            Collection<Object> target;
+            if (values instanceof OwnedCollection) {
+                target = ((OwnedCollection)values).getWrapped();
+            } else if (values instanceof OwnedList) {
+                target = ((OwnedList)values).getWrapped();
+            } else {
+                target = (Collection<Object>)values;
+            }
+            
+            target.clear();
+            target.addAll(oldValues);
+        }
+        
+        /**
+         * Appends events describing the difference between the recorded and
+         * current values to the given list.  For ordered attributes, the 
+         * differing range between the common prefix and suffix is reported 
+         * as removals followed by additions.
+         * 
+         * @param events list to which events are added
+         */
+        private void computeEvents(List<MDRChangeEvent> events)
+        {
+            List<Object> newValues = new ArrayList<Object>(values);
+
+            if (!ordered) {
+                Set<Object> oldSet = new HashSet<Object>(oldValues);
+                Set<Object> newSet = new HashSet<Object>(newValues);
+                for(Object value: oldValues) {
+                    if (!newSet.contains(value)) {
+                        events.add(
+                            makeEvent(
+                                AttributeEvent.EVENT_ATTRIBUTE_REMOVE, 
+                                value, 
+                                null,
+                                AttributeEvent.POSITION_NONE));
+                    }
+                }
+                for(Object value: newValues) {
+                    if (!oldSet.contains(value)) {
+                        events.add(
+                            makeEvent(
+                                AttributeEvent.EVENT_ATTRIBUTE_ADD, 
+                                null,
+                                value, 
+                                AttributeEvent.POSITION_NONE));
+                    }
+                }
+                return;
+            }
+            
+            int start = 0;
+            int oldEnd = oldValues.size();
+            int newEnd = newValues.size();
+            while(start < oldEnd && start < newEnd &&
+                  equal(oldValues.get(start), newValues.get(start)))
+            {
+                start++;
+            }
+            while(oldEnd > start && newEnd > start &&
+                  equal(oldValues.get(oldEnd - 1), newValues.get(newEnd - 1)))
+            {
+                oldEnd--;
+                newEnd--;
+            }
+            
+            for(int i = oldEnd - 1; i >= start; i--) {
+                events.add(
+                    makeEvent(
+                        AttributeEvent.EVENT_ATTRIBUTE_REMOVE, 
+                        oldValues.get(i), 
+                        null,
+                        i));
+            }
+            for(int i = start; i < newEnd; i++) {
+                events.add(
+                    makeEvent(
+                        AttributeEvent.EVENT_ATTRIBUTE_ADD, 
+                        null,
+                        newValues.get(i), 
+                        i));
+            }
+        }
+        
+        private AttributeEvent makeEvent(
+            int type, Object oldValue, Object newValue, int position)
+        {
+            return new AttributeEvent(
+                owner, type, attribName, oldValue, newValue, position);
+        }
+        
+        private static boolean equal(Object o1, Object o2)
+        {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+    }
 }
 
 // End TransientMDRepository.java
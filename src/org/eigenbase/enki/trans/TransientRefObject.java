@@ -36,7 +36,19 @@ public interface TransientRefObject
      * @param owner object which owns this object as an Attribute
      */
     public void markOwner(RefObject owner);
-    
+
+    /** Internal use only.  Re-registers this object with its class proxy
+     * when its deletion is rolled back.
+     */
+    public void restore();
+
+    /** Internal use only.  Unregisters this object when its creation is 
+     * rolled back.  Unlike {@link RefObject#refDelete()}, objects that are
+     * the values of this object's Attributes are not deleted, they are only
+     * released from ownership.
+     */
+    public void discard();
+
     /**
      * Annotates this object with the given String.
      * 
@@ -239,6 +239,32 @@ public class TransientHandler
             QUOTE, assoc.getName(), QUOTE, ");");
     }
 
+    @Override
+    protected void generateCustomAssociationMethods(Association assoc)
+    {
+        newLine();
+        startBlock("protected boolean isLinkChangeRecorded()");
+        writeln(
+            "return ((", TRANSIENT_REPOS_CLASS, 
+            ")getRepository()).isRecording();");
+        endBlock();
+        
+        newLine();
+        startBlock(
+            "protected void linkChanged(boolean added, ", 
+            REF_OBJECT_CLASS, " fixedEnd, boolean fixedIsFirstEnd, ",
+            REF_OBJECT_CLASS, " otherEnd, int position)");
+        writeln(
+            "((", TRANSIENT_REPOS_CLASS, 
+            ")getRepository()).recordLinkChange(");
+        increaseIndent();
+        writeln(
+            "this, added, fixedEnd, ", 
+            "fixedIsFirstEnd ? end1Name : end2Name, otherEnd, position);");
+        decreaseIndent();
+        endBlock();
+    }
+
     @Override
     protected void generateCustomClassProxyInit(MofClass cls)
     {
@@ -330,11 +356,54 @@ public class TransientHandler
             varName, ", this);");
     }
     
+    @Override
+    protected void generateCustomClassInstanceAccessor(
+        MofClass cls, Attribute attrib)
+    throws GenerationException
+    {
+        String name = CodeGenUtils.getClassFieldName(attrib.getName());
+        String type = CodeGenUtils.getTypeName(attrib);
+        if (Primitives.isPrimitiveType(type)) {
+            type = Primitives.convertPrimitiveToTypeName(type, true);
+        }
+        
+        writeSnapshotValue(attrib, name, type);
+    }
+    
+    /**
+     * Writes the declaration of a local variable that shadows an 
+     * attribute's field with the value visible to the caller.
+     */
+    private void writeSnapshotValue(Attribute attrib, String name, String type)
+    {
+        writeln(type, " ", name, " = ");
+        increaseIndent();
+        writeln(
+            "(", type, ")((", TRANSIENT_REPOS_CLASS, 
+            ")getRepository()).getSnapshotValue(");
+        increaseIndent();
+        writeln(
+            "this, ", QUOTE, attrib.getName(), QUOTE, ", this.", name, ");");
+        decreaseIndent();
+        decreaseIndent();
+    }
+    
     @Override
     protected void generateCustomClassInstanceMutator(
         MofClass cls, Attribute attrib)
     throws GenerationException
     {
+        writeln(
+            "((", TRANSIENT_REPOS_CLASS, 
+            ")getRepository()).recordAttributeChange(");
+        increaseIndent();
+        writeln(
+            "this, ", QUOTE, attrib.getName(), QUOTE, ", ", 
+            CodeGenUtils.getAccessorName(generator, attrib), 
+            "(), newValue);");
+        decreaseIndent();
+        newLine();
+        
         Classifier type = attrib.getType();
         if (type instanceof AliasType) {
             type = ((AliasType)type).getType();
@@ -354,6 +423,30 @@ public class TransientHandler
         }
     }
     
+    @Override
+    protected void generateCustomClassInstanceCollectionAccessor(
+        MofClass cls, Attribute attrib)
+    throws GenerationException
+    {
+        String name = CodeGenUtils.getClassFieldName(attrib.getName());
+
+        // Only the writer may replace the collection.
+        startConditionalBlock(
+            CondType.IF, 
+            "((", TRANSIENT_REPOS_CLASS, ")getRepository()).isRecording()");
+        writeln(
+            "this.", name, " = ((", TRANSIENT_REPOS_CLASS, 
+            ")getRepository()).recordCollectionAccess(");
+        increaseIndent();
+        writeln(
+            "this, ", QUOTE, attrib.getName(), QUOTE, ", ", 
+            attrib.getMultiplicity().isOrdered(), ", this.", name, ");");
+        decreaseIndent();
+        endBlock();
+        
+        writeSnapshotValue(attrib, name, CodeGenUtils.getTypeName(attrib));
+    }
+    
     @Override
     protected void generateCustomClassInstanceMethods(
         MofClass cls,
@@ -501,6 +594,44 @@ public class TransientHandler
         writeln("this.", OWNER_FIELD, " = newOwner;");
         endBlock();
         
+        // Implement restore
+        newLine();
+        startBlock("public void restore()");
+        writeln("super.reregister();");
+        endBlock();
+        
+        // Implement discard
+        newLine();
+        startBlock("public void discard()");
+        writeln("super.unregister();");
+        for(Attribute attrib: instanceAttributes) {
+            if (attrib.isDerived()) {
+                continue;
+            }
+            
+            Classifier type = attrib.getType();
+            if (type instanceof AliasType) {
+                type = ((AliasType)type).getType();
+            }
+            
+            if (!(type instanceof MofClass)) {
+                continue;
+            }
+
+            String name = CodeGenUtils.getClassFieldName(attrib.getName());
+            
+            if (attrib.getMultiplicity().getUpper() == 1) {
+                startConditionalBlock(CondType.IF, name, " != null");
+                writeMarkOwnerCall(attrib, name, true);
+                endBlock();
+            } else {
+                startBlock("for(", REF_OBJECT_CLASS, " obj: ", name, ")");
+                writeMarkOwnerCall(attrib, "obj", true);
+                endBlock();
+            }
+        }
+        endBlock();
+        
         // Implement annotate
         newLine();
         startBlock("public void annotate(String annotation)");
@@ -0,0 +1,427 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.util;
+
+/**
+ * BoundedLongKeyCache is a thread-safe, size-bounded cache keyed by 
+ * primitive <code>long</code> values.  Keys are never boxed.  The cache is 
+ * divided into independently locked segments, each of which is an 
+ * open-addressed hash table with linear probing.  When a segment is full,
+ * an entry is evicted using the CLOCK (second-chance) algorithm, which 
+ * approximates least-recently-used eviction without maintaining a list.
+ * 
+ * <p>Null values are not permitted.
+ * 
+ * @author Stephan Zuercher
+ */
+public class BoundedLongKeyCache<V>
+{
+    private static final int DEFAULT_NUM_SEGMENTS = 16;
+    private static final int MIN_TABLE_SIZE = 16;
+    
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+    private final int maxSize;
+    
+    /**
+     * Constructs a new BoundedLongKeyCache.
+     * 
+     * @param maxSize maximum number of entries to retain (must be positive)
+     */
+    public BoundedLongKeyCache(int maxSize)
+    {
+        this(maxSize, DEFAULT_NUM_SEGMENTS);
+    }
+    
+    /**
+     * Constructs a new BoundedLongKeyCache.
+     * 
+     * @param maxSize maximum number of entries to retain (must be positive;
+     *                rounded up to a multiple of the number of segments)
+     * @param numSegments number of independently locked segments (rounded
+     *                    up to a power of 2)
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedLongKeyCache(int maxSize, int numSegments)
+    {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        
+        int n = 1;
+        int shift = 32;
+        while(n < numSegments && n < maxSize) {
+            n <<= 1;
+            shift--;
+        }
+        
+        int perSegment = (maxSize + n - 1) / n;
+
+        this.maxSize = perSegment * n;
+        this.segmentShift = shift;
+        @SuppressWarnings("unchecked")
+        Segment<V>[] segments = (Segment<V>[])new Segment<?>[n];
+        this.segments = segments;
+
+        for(int i = 0; i < n; i++) {
+            segments[i] = new Segment<V>(perSegment);
+        }
+    }
+    
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+    
+    private Segment<V> segmentFor(int hash)
+    {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        return segments[hash >>> segmentShift];
+    }
+    
+    /**
+     * Retrieves the value associated with the given key.
+     * 
+     * @param key a key
+     * @return the associated value or null if not present
+     */
+    public V get(long key)
+    {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+    
+    /**
+     * Associates the given value with the given key, possibly evicting some
+     * other entry.
+     * 
+     * @param key a key
+     * @param value a value (must not be null)
+     */
+    public void put(long key, V value)
+    {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+        
+        int h = hash(key);
+        segmentFor(h).put(key, h, value);
+    }
+    
+    /**
+     * Removes the given key.
+     * 
+     * @param key a key
+     * @return the value previously associated with the key or null
+     */
+    public V remove(long key)
+    {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+    
+    /**
+     * Removes all entries from the cache.  Statistics are not reset.
+     */
+    public void clear()
+    {
+        for(Segment<V> segment: segments) {
+            segment.clear();
+        }
+    }
+    
+    /**
+     * @return the number of entries currently in the cache
+     */
+    public int size()
+    {
+        int size = 0;
+        for(Segment<V> segment: segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the maximum number of entries this cache will retain (may be
+     *         slightly larger than the size given at construction)
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+    
+    /**
+     * @return number of calls to {@link #get(long)} that found a value
+     */
+    public long getHitCount()
+    {
+        long count = 0;
+        for(Segment<V> segment: segments) {
+            count += segment.hits();
+        }
+        return count;
+    }
+    
+    /**
+     * @return number of calls to {@link #get(long)} that found no value
+     */
+    public long getMissCount()
+    {
+        long count = 0;
+        for(Segment<V> segment: segments) {
+            count += segment.misses();
+        }
+        return count;
+    }
+    
+    /**
+     * @return number of entries evicted to make room for others
+     */
+    public long getEvictionCount()
+    {
+        long count = 0;
+        for(Segment<V> segment: segments) {
+            count += segment.evictions();
+        }
+        return count;
+    }
+    
+    /**
+     * Segment is a single open-addressed hash table.  The table grows until
+     * it can hold its maximum number of entries at a 75% load factor, after
+     * which insertions evict existing entries.
+     */
+    private static class Segment<V>
+    {
+        private final int capacity;
+        private final int maxTableSize;
+        
+        private long[] keys;
+        private Object[] values;
+        private boolean[] referenced;
+        private int size;
+        private int hand;
+        
+        private long hits;
+        private long misses;
+        private long evictions;
+        
+        private Segment(int capacity)
+        {
+            this.capacity = capacity;
+            
+            int tableSize = MIN_TABLE_SIZE;
+            while(tableSize * 3L / 4L < capacity) {
+                tableSize <<= 1;
+            }
+            this.maxTableSize = tableSize;
+            
+            allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+        }
+        
+        private void allocate(int tableSize)
+        {
+            keys = new long[tableSize];
+            values = new Object[tableSize];
+            referenced = new boolean[tableSize];
+            size = 0;
+            hand = 0;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private synchronized V get(long key, int hash)
+        {
+            int mask = values.length - 1;
+            for(int i = hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    referenced[i] = true;
+                    hits++;
+                    return (V)values[i];
+                }
+            }
+            
+            misses++;
+            return null;
+        }
+        
+        private synchronized void put(long key, int hash, V value)
+        {
+            int mask = values.length - 1;
+            int i = hash & mask;
+            for(; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    referenced[i] = true;
+                    return;
+                }
+            }
+            
+            if (size >= capacity) {
+                evict();
+                insert(key, hash, value);
+            } else if ((size + 1) * 4 > values.length * 3) {
+                resize(values.length << 1);
+                insert(key, hash, value);
+            } else {
+                keys[i] = key;
+                values[i] = value;
+                referenced[i] = false;
+                size++;
+            }
+        }
+        
+        private int insert(long key, int hash, Object value)
+        {
+            int mask = values.length - 1;
+            int i = hash & mask;
+            while(values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            referenced[i] = false;
+            size++;
+            return i;
+        }
+        
+        private void resize(int tableSize)
+        {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            boolean[] oldReferenced = referenced;
+            
+            allocate(Math.min(tableSize, maxTableSize));
+            
+            for(int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    long key = oldKeys[i];
+                    int j = insert(key, hash(key), oldValues[i]);
+                    referenced[j] = oldReferenced[i];
+                }
+            }
+        }
+        
+        private void evict()
+        {
+            int mask = values.length - 1;
+            while(true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                
+                if (values[i] == null) {
+                    continue;
+                }
+                
+                if (referenced[i]) {
+                    referenced[i] = false;
+                    continue;
+                }
+                
+                removeAt(i);
+                evictions++;
+                return;
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private synchronized V remove(long key, int hash)
+        {
+            int mask = values.length - 1;
+            for(int i = hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    V value = (V)values[i];
+                    removeAt(i);
+                    return value;
+                }
+            }
+            
+            return null;
+        }
+        
+        /**
+         * Removes the entry at the given slot, shifting subsequent entries
+         * in the same probe sequence backwards to fill the gap.
+         */
+        private void removeAt(int i)
+        {
+            int mask = values.length - 1;
+            values[i] = null;
+            referenced[i] = false;
+            size--;
+            
+            int j = i;
+            while(true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    return;
+                }
+                
+                int k = hash(keys[j]) & mask;
+                
+                // Leave entries whose home slot lies cyclically in (i, j].
+                boolean inRange = 
+                    (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+                if (inRange) {
+                    continue;
+                }
+                
+                keys[i] = keys[j];
+                values[i] = values[j];
+                referenced[i] = referenced[j];
+                values[j] = null;
+                referenced[j] = false;
+                i = j;
+            }
+        }
+        
+        private synchronized void clear()
+        {
+            allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+        }
+        
+        private synchronized int size()
+        {
+            return size;
+        }
+        
+        private synchronized long hits()
+        {
+            return hits;
+        }
+        
+        private synchronized long misses()
+        {
+            return misses;
+        }
+        
+        private synchronized long evictions()
+        {
+            return evictions;
+        }
+    }
+}
+
+// End BoundedLongKeyCache.java
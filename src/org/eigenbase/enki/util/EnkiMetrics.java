@@ -0,0 +1,521 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * EnkiMetrics is a registry of named counters and latency histograms used
+ * to instrument repository hot paths.  Counters are striped across several
+ * padded cells to avoid contention between threads.  Histograms use
+ * log-linear buckets (16 sub-buckets per power of 2), so recorded values
+ * are reported to within about 6% of their actual value regardless of 
+ * magnitude.
+ * 
+ * <p>Recording is a no-op unless the registry is 
+ * {@link #setEnabled(boolean) enabled}, in which case the cost of a
+ * counter increment or histogram sample is one or two uncontended atomic 
+ * updates.  Callers on hot paths should look up their {@link Counter} and 
+ * {@link Histogram} instances once and retain them.
+ * 
+ * @author Stephan Zuercher
+ */
+public class EnkiMetrics
+{
+    private static final int NUM_STRIPES;
+    static {
+        int n = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while(n < cpus && n < 64) {
+            n <<= 1;
+        }
+        NUM_STRIPES = n;
+    }
+    
+    /** Number of longs between stripes; keeps stripes on separate lines. */
+    private static final int STRIPE_PAD = 8;
+    
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+    
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+    
+    private final ConcurrentMap<String, Counter> counters;
+    private final ConcurrentMap<String, Histogram> histograms;
+    
+    private volatile boolean enabled;
+    
+    /**
+     * Constructs a new, disabled EnkiMetrics.
+     */
+    public EnkiMetrics()
+    {
+        this.counters = new ConcurrentHashMap<String, Counter>();
+        this.histograms = new ConcurrentHashMap<String, Histogram>();
+    }
+    
+    /**
+     * @return true if counters and histograms are currently recording
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+    
+    /**
+     * Enables or disables recording.  Previously recorded values are 
+     * retained.
+     * 
+     * @param enabled if true, begin recording; if false, stop
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Finds or creates the named counter.
+     * 
+     * @param name counter name
+     * @return the named counter
+     */
+    public Counter counter(String name)
+    {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+    
+    /**
+     * Finds or creates the named histogram.  Histogram values are recorded
+     * in nanoseconds and reported in microseconds.
+     * 
+     * @param name histogram name
+     * @return the named histogram
+     */
+    public Histogram histogram(String name)
+    {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+    
+    /**
+     * Returns a start time for a later call to 
+     * {@link Histogram#recordSince(long)}.
+     * 
+     * @return {@link System#nanoTime()} if recording is enabled, 0 otherwise
+     */
+    public long startTimer()
+    {
+        if (!enabled) {
+            return 0L;
+        }
+        
+        long now = System.nanoTime();
+        return now == 0L ? 1L : now;
+    }
+    
+    /**
+     * Resets all counters and histograms to zero.
+     */
+    public void reset()
+    {
+        for(Counter counter: counters.values()) {
+            counter.reset();
+        }
+        for(Histogram histogram: histograms.values()) {
+            histogram.reset();
+        }
+    }
+    
+    /**
+     * Adds the current value of every counter and a summary of every 
+     * histogram to the given map.  Entries are added in name order.  Each
+     * histogram contributes its count, mean, 50th, 90th and 99th 
+     * percentile and maximum.
+     * 
+     * @param data map to which entries are added
+     */
+    public void snapshot(Map<String, Object> data)
+    {
+        for(Map.Entry<String, Counter> entry: 
+                new TreeMap<String, Counter>(counters).entrySet())
+        {
+            data.put(entry.getKey(), entry.getValue().get());
+        }
+        
+        for(Map.Entry<String, Histogram> entry:
+                new TreeMap<String, Histogram>(histograms).entrySet())
+        {
+            String prefix = entry.getKey() + ": ";
+            Histogram.Snapshot snapshot = entry.getValue().snapshot();
+            data.put(prefix + "count", snapshot.getCount());
+            data.put(prefix + "mean (us)", toMicros(snapshot.getMean()));
+            for(double p: PERCENTILES) {
+                data.put(
+                    prefix + "p" + (int)p + " (us)", 
+                    toMicros(snapshot.getPercentile(p)));
+            }
+            data.put(prefix + "max (us)", toMicros(snapshot.getMax()));
+        }
+    }
+    
+    /**
+     * Logs every counter and histogram at {@link Level#INFO}, one message
+     * per metric.  Metrics with no recorded values are skipped.
+     * 
+     * @param log logger to write to
+     * @param prefix prefix for each log message
+     */
+    public void log(Logger log, String prefix)
+    {
+        if (!log.isLoggable(Level.INFO)) {
+            return;
+        }
+        
+        StringBuilder b = new StringBuilder();
+        for(Map.Entry<String, Counter> entry: 
+                new TreeMap<String, Counter>(counters).entrySet())
+        {
+            long value = entry.getValue().get();
+            if (value == 0L) {
+                continue;
+            }
+            
+            b.setLength(0);
+            b
+                .append(prefix)
+                .append(entry.getKey())
+                .append(": ")
+                .append(value);
+            log.info(b.toString());
+        }
+        
+        for(Map.Entry<String, Histogram> entry:
+                new TreeMap<String, Histogram>(histograms).entrySet())
+        {
+            Histogram.Snapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.getCount() == 0L) {
+                continue;
+            }
+            
+            b.setLength(0);
+            b
+                .append(prefix)
+                .append(entry.getKey())
+                .append(": count: ")
+                .append(snapshot.getCount())
+                .append(" mean (us): ")
+                .append(toMicros(snapshot.getMean()));
+            for(double p: PERCENTILES) {
+                b
+                    .append(" p")
+                    .append((int)p)
+                    .append(" (us): ")
+                    .append(toMicros(snapshot.getPercentile(p)));
+            }
+            b
+                .append(" max (us): ")
+                .append(toMicros(snapshot.getMax()));
+            log.info(b.toString());
+        }
+    }
+    
+    private static long toMicros(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+    
+    private static int stripeIndex()
+    {
+        int h = (int)Thread.currentThread().getId();
+        h ^= (h >>> 16);
+        return (h & (NUM_STRIPES - 1)) * STRIPE_PAD;
+    }
+    
+    /**
+     * Computes the histogram bucket for the given non-negative value.
+     * Values below {@link #SUB_BUCKETS} have their own bucket.  Larger values
+     * are bucketed by the position of their highest bit and the next 
+     * {@link #SUB_BUCKET_BITS} bits.
+     */
+    static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        return 
+            ((shift + 1) << SUB_BUCKET_BITS) + 
+            (int)((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+    
+    /**
+     * Computes the smallest value that falls into the given bucket.
+     */
+    static long bucketLowerBound(int index)
+    {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long sub = index & (SUB_BUCKETS - 1);
+        return (SUB_BUCKETS + sub) << shift;
+    }
+    
+    /**
+     * Counter is a striped, monotonically increasing counter.
+     */
+    public class Counter
+    {
+        private final AtomicLongArray cells;
+        
+        private Counter()
+        {
+            this.cells = new AtomicLongArray(NUM_STRIPES * STRIPE_PAD);
+        }
+        
+        /**
+         * Adds one to this counter if recording is enabled.
+         */
+        public void increment()
+        {
+            if (enabled) {
+                cells.getAndIncrement(stripeIndex());
+            }
+        }
+        
+        /**
+         * Adds the given amount to this counter if recording is enabled.
+         * 
+         * @param amount amount to add
+         */
+        public void add(long amount)
+        {
+            if (enabled) {
+                cells.getAndAdd(stripeIndex(), amount);
+            }
+        }
+        
+        /**
+         * @return the sum of all stripes; not an atomic snapshot if the 
+         *         counter is concurrently updated
+         */
+        public long get()
+        {
+            long sum = 0L;
+            for(int i = 0; i < NUM_STRIPES; i++) {
+                sum += cells.get(i * STRIPE_PAD);
+            }
+            return sum;
+        }
+        
+        private void reset()
+        {
+            for(int i = 0; i < NUM_STRIPES; i++) {
+                cells.set(i * STRIPE_PAD, 0L);
+            }
+        }
+    }
+    
+    /**
+     * Histogram records the distribution of non-negative values (normally 
+     * latencies in nanoseconds) in log-linear buckets.
+     */
+    public class Histogram
+    {
+        private final AtomicLongArray buckets;
+        private final AtomicLong sum;
+        private final AtomicLong max;
+        
+        private Histogram()
+        {
+            this.buckets = new AtomicLongArray(NUM_BUCKETS);
+            this.sum = new AtomicLong();
+            this.max = new AtomicLong();
+        }
+        
+        /**
+         * Records the given value if recording is enabled.  Negative values
+         * are recorded as 0.
+         * 
+         * @param value value to record
+         */
+        public void record(long value)
+        {
+            if (!enabled) {
+                return;
+            }
+            
+            if (value < 0L) {
+                value = 0L;
+            }
+            
+            buckets.getAndIncrement(bucketIndex(value));
+            sum.getAndAdd(value);
+            
+            long currMax = max.get();
+            while(value > currMax) {
+                if (max.compareAndSet(currMax, value)) {
+                    break;
+                }
+                currMax = max.get();
+            }
+        }
+        
+        /**
+         * Records the time elapsed since a call to 
+         * {@link EnkiMetrics#startTimer()}.  Does nothing if the start time 
+         * is 0 (recording was disabled when the timer started).
+         * 
+         * @param startNanos value returned by 
+         *                   {@link EnkiMetrics#startTimer()}
+         */
+        public void recordSince(long startNanos)
+        {
+            if (startNanos != 0L) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+        
+        /**
+         * @return a snapshot of this histogram's current state
+         */
+        public Snapshot snapshot()
+        {
+            long[] counts = new long[NUM_BUCKETS];
+            long count = 0L;
+            for(int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+            
+            return new Snapshot(counts, count, sum.get(), max.get());
+        }
+        
+        private void reset()
+        {
+            for(int i = 0; i < NUM_BUCKETS; i++) {
+                buckets.set(i, 0L);
+            }
+            sum.set(0L);
+            max.set(0L);
+        }
+        
+        /**
+         * Snapshot is an immutable copy of a Histogram's state.  Because
+         * buckets are read individually, a snapshot taken during concurrent
+         * updates may be slightly inconsistent.
+         */
+        public class Snapshot
+        {
+            private final long[] counts;
+            private final long count;
+            private final long sum;
+            private final long max;
+            
+            private Snapshot(long[] counts, long count, long sum, long max)
+            {
+                this.counts = counts;
+                this.count = count;
+                this.sum = sum;
+                this.max = max;
+            }
+            
+            /** @return number of recorded values */
+            public long getCount()
+            {
+                return count;
+            }
+            
+            /** @return mean of recorded values, or 0 if there are none */
+            public long getMean()
+            {
+                return count == 0L ? 0L : sum / count;
+            }
+            
+            /** @return the largest recorded value */
+            public long getMax()
+            {
+                return max;
+            }
+            
+            /**
+             * Estimates the given percentile.  The result is the largest 
+             * value in the bucket containing the percentile, but never more
+             * than {@link #getMax()}.
+             * 
+             * @param percentile percentile to estimate, between 0 and 100
+             * @return estimated value at the percentile, or 0 if there are
+             *         no recorded values
+             */
+            public long getPercentile(double percentile)
+            {
+                if (count == 0L) {
+                    return 0L;
+                }
+                
+                long rank = (long)Math.ceil(count * percentile / 100.0);
+                if (rank < 1L) {
+                    rank = 1L;
+                }
+                
+                long seen = 0L;
+                for(int i = 0; i < NUM_BUCKETS; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        long upper = bucketLowerBound(i + 1) - 1L;
+                        if (upper < 0L || upper > max) {
+                            // Overflow in the last buckets
+                            return max;
+                        }
+                        return upper;
+                    }
+                }
+                
+                return max;
+            }
+        }
+    }
+}
+
+// End EnkiMetrics.java
@@ -0,0 +1,170 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.util;
+
+/**
+ * LongKeyIndex is a map keyed by primitive <code>long</code> values, 
+ * intended to be populated once and then read concurrently.  Keys are never
+ * boxed.  The index is an open-addressed hash table with linear probing.
+ * 
+ * <p>LongKeyIndex is not synchronized.  Once populated, an instance may be
+ * read by any number of threads without locking provided that it is not
+ * modified further and that it was safely published (for instance, via a
+ * volatile or final field).
+ * 
+ * <p>Null values are not permitted.
+ * 
+ * @author Stephan Zuercher
+ */
+public class LongKeyIndex<V>
+{
+    private static final int MIN_TABLE_SIZE = 16;
+    
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    
+    /**
+     * Constructs a new, empty LongKeyIndex.
+     */
+    public LongKeyIndex()
+    {
+        this(MIN_TABLE_SIZE);
+    }
+    
+    /**
+     * Constructs a new, empty LongKeyIndex.
+     * 
+     * @param expectedSize expected number of entries
+     */
+    public LongKeyIndex(int expectedSize)
+    {
+        int tableSize = MIN_TABLE_SIZE;
+        while(tableSize * 3L / 4L < expectedSize) {
+            tableSize <<= 1;
+        }
+        
+        this.keys = new long[tableSize];
+        this.values = new Object[tableSize];
+    }
+    
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+    
+    /**
+     * Retrieves the value for the given key.
+     * 
+     * @param key a key
+     * @return the value associated with key or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        Object[] values = this.values;
+        long[] keys = this.keys;
+        
+        int mask = values.length - 1;
+        for(int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V)values[i];
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Associates the given value with the given key unless the key already
+     * has a value.
+     * 
+     * @param key a key
+     * @param value a value (may not be null)
+     * @return the existing value for key, or null if value was stored
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value)
+    {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        
+        int mask = values.length - 1;
+        int i = hash(key) & mask;
+        for(; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V)values[i];
+            }
+        }
+        
+        if ((size + 1) * 4 > values.length * 3) {
+            resize(values.length << 1);
+            
+            mask = values.length - 1;
+            i = hash(key) & mask;
+            while(values[i] != null) {
+                i = (i + 1) & mask;
+            }
+        }
+        
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        
+        return null;
+    }
+    
+    /**
+     * @return the number of entries in this index
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    private void resize(int tableSize)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        
+        long[] newKeys = new long[tableSize];
+        Object[] newValues = new Object[tableSize];
+        int mask = tableSize - 1;
+        for(int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while(newValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = oldKeys[j];
+                newValues[i] = oldValues[j];
+            }
+        }
+        
+        keys = newKeys;
+        values = newValues;
+    }
+}
+
+// End LongKeyIndex.java
@@ -0,0 +1,1138 @@
+/*
+// $Id$
+// Enki generates and implements the JMI and MDR APIs for MOF metamodels.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package org.eigenbase.enki.util;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.logging.*;
+
+import javax.jmi.model.*;
+import javax.jmi.reflect.*;
+import javax.jmi.xmi.*;
+import javax.xml.stream.*;
+
+import org.eigenbase.enki.mdr.*;
+
+/**
+ * StreamingXmiReader imports XMI 1.2 documents into an existing extent.
+ * Unlike the NetBeans XmiReader, it reads its input with a StAX stream
+ * reader and never builds an element tree.  Each object is created as soon 
+ * as its element is read and its feature values are set as they arrive.
+ * 
+ * <p>XMI identifiers are mapped to <code>long</code> object handles (see 
+ * {@link #getHandle(RefObject)}) in a primitive hash table, so the reader
+ * need not retain the objects it has created.  References to objects that
+ * have not yet been read are recorded and resolved when the document ends.
+ * 
+ * <p>Objects are created in batches of roughly 
+ * {@link #setBatchSize(int) batch size} objects.  A batch only ends between
+ * top-level elements of <code>XMI.content</code>, so the objects of a 
+ * composite tree always belong to the same batch.  Subclasses may override
+ * {@link #beginBatch(int)} and {@link #endBatch()} to pre-allocate storage
+ * or to write out and release completed objects.
+ * 
+ * <p>Structure-typed values, <code>XMI.difference</code> elements and
+ * references into other documents (<code>href</code>) are not supported.
+ * <code>XMI.header</code> and <code>XMI.extension</code> elements are 
+ * ignored.
+ * 
+ * <p>Instances should be obtained from 
+ * {@link EnkiMDRepository#createStreamingXmiReader()} and used from a
+ * single thread within a write transaction.
+ * 
+ * @author Stephan Zuercher
+ */
+public class StreamingXmiReader
+{
+    /** Default value for {@link #setBatchSize(int)}. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    
+    private static final Logger log = 
+        Logger.getLogger(StreamingXmiReader.class.getName());
+    
+    private static final String TAGID_XMI_NAMESPACE = "org.omg.xmi.namespace";
+    
+    private static final String XMI_CONTENT = "XMI.content";
+    private static final String XMI_HEADER = "XMI.header";
+    private static final String XMI_EXTENSION = "XMI.extension";
+    private static final String XMI_EXTENSIONS = "XMI.extensions";
+    private static final String XMI_DIFFERENCE = "XMI.difference";
+    private static final String XMI_FIELD = "XMI.field";
+    
+    private static final String ATTR_ID = "xmi.id";
+    private static final String ATTR_IDREF = "xmi.idref";
+    private static final String ATTR_VALUE = "xmi.value";
+    private static final String ATTR_HREF = "href";
+    private static final String ATTR_XMI_PREFIX = "xmi.";
+    
+    protected final EnkiMDRepository repos;
+    
+    private int batchSize;
+    
+    /** Extent for which {@link #classesByName} etc. were built. */
+    private RefPackage indexedExtent;
+    private final List<ClassInfo> classInfos;
+    private final Map<String, ClassInfo> classesByName;
+    private final Map<String, RefAssociation> assocsByName;
+    private final Map<RefObject, RefBaseObject> enumScopes;
+    private final Map<RefObject, Map<String, RefEnum>> enumCache;
+
+    /** Objects by handle, used only by the default handle implementation. */
+    private final List<RefObject> objects;
+    
+    // Per-read state.
+    private XmiIdMap idMap;
+    private List<Pending> pending;
+    private LinkedList<Frame> stack;
+    private long objectCount;
+    private int batchCount;
+    private boolean inBatch;
+    
+    public StreamingXmiReader(EnkiMDRepository repos)
+    {
+        this.repos = repos;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.classInfos = new ArrayList<ClassInfo>();
+        this.classesByName = new HashMap<String, ClassInfo>();
+        this.assocsByName = new HashMap<String, RefAssociation>();
+        this.enumScopes = new HashMap<RefObject, RefBaseObject>();
+        this.enumCache = new HashMap<RefObject, Map<String, RefEnum>>();
+        this.objects = new ArrayList<RefObject>();
+    }
+    
+    /**
+     * Sets the approximate number of objects created per batch.  
+     * 
+     * @param batchSize batch size, must be positive
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize <= 0");
+        }
+        
+        this.batchSize = batchSize;
+    }
+    
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+    
+    /**
+     * Imports the XMI document at the given URI into the given extent.
+     * 
+     * @param uri URI of an XMI document
+     * @param extent extent into which objects are imported
+     * @return the number of objects created
+     * @throws IOException if the document cannot be read
+     * @throws MalformedXMIException if the document is malformed or does
+     *                               not match the extent's metamodel
+     */
+    public long read(String uri, RefPackage extent)
+        throws IOException, MalformedXMIException
+    {
+        InputStream in = 
+            new BufferedInputStream(new URL(uri).openStream());
+        try {
+            return read(in, extent);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Imports the XMI document read from the given stream into the given 
+     * extent.  The stream is not closed.
+     * 
+     * @param in stream containing an XMI document
+     * @param extent extent into which objects are imported
+     * @return the number of objects created
+     * @throws IOException if the document cannot be read
+     * @throws MalformedXMIException if the document is malformed or does
+     *                               not match the extent's metamodel
+     */
+    public long read(InputStream in, RefPackage extent)
+        throws IOException, MalformedXMIException
+    {
+        if (indexedExtent != extent) {
+            buildIndex(extent);
+        }
+        
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        
+        idMap = new XmiIdMap();
+        pending = new ArrayList<Pending>();
+        stack = new LinkedList<Frame>();
+        objectCount = 0L;
+        batchCount = 0;
+        inBatch = false;
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                parse(xml);
+            } finally {
+                xml.close();
+            }
+            
+            resolvePending();
+            
+            if (inBatch) {
+                inBatch = false;
+                endBatch();
+            }
+            
+            log.fine("Imported " + objectCount + " objects");
+            
+            return objectCount;
+        } catch(XMLStreamException e) {
+            MalformedXMIException ex = 
+                new MalformedXMIException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            idMap = null;
+            pending = null;
+            stack = null;
+            objects.clear();
+        }
+    }
+    
+    /**
+     * Called before the first object of each batch is created.  This 
+     * implementation does nothing.
+     * 
+     * @param expectedObjects approximate number of objects the batch will
+     *                        contain
+     */
+    protected void beginBatch(int expectedObjects)
+    {
+    }
+    
+    /**
+     * Called after the last object of each batch is complete.  No object
+     * created or modified by this reader is referenced after this method is
+     * called; objects are re-obtained via 
+     * {@link #resolveHandle(long, RefClass)}.  This implementation does
+     * nothing.
+     */
+    protected void endBatch()
+    {
+    }
+    
+    /**
+     * Returns a handle for the given newly created object.  The default 
+     * implementation retains the object and returns its index.  Subclasses
+     * should return a value from which the object can be re-read, such as 
+     * a numeric MOF ID.
+     * 
+     * @param obj a newly created object
+     * @return a handle for obj
+     */
+    protected long getHandle(RefObject obj)
+    {
+        objects.add(obj);
+        return objects.size() - 1;
+    }
+    
+    /**
+     * Retrieves the object for a handle returned by 
+     * {@link #getHandle(RefObject)}.
+     * 
+     * @param handle an object handle
+     * @param refClass class proxy for the object's exact type
+     * @return the object
+     */
+    protected RefObject resolveHandle(long handle, RefClass refClass)
+    {
+        return objects.get((int)handle);
+    }
+    
+    private void parse(XMLStreamReader xml)
+        throws XMLStreamException, MalformedXMIException
+    {
+        boolean inContent = false;
+        int skipDepth = 0;
+        
+        while(xml.hasNext()) {
+            int event = xml.next();
+            
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (skipDepth > 0) {
+                    skipDepth++;
+                    continue;
+                }
+                
+                String name = getName(xml);
+                if (!inContent) {
+                    if (name.equals(XMI_CONTENT)) {
+                        inContent = true;
+                    } else if (name.equals(XMI_HEADER) ||
+                        name.equals(XMI_EXTENSIONS))
+                    {
+                        skipDepth = 1;
+                    }
+                    continue;
+                }
+                
+                if (name.equals(XMI_EXTENSION)) {
+                    skipDepth = 1;
+                } else if (name.equals(XMI_DIFFERENCE) || 
+                    name.equals(XMI_FIELD))
+                {
+                    throw new MalformedXMIException(
+                        "Unsupported XMI element: " + name);
+                } else {
+                    Frame top = stack.isEmpty() ? null : stack.getLast();
+                    if (top instanceof ObjectFrame) {
+                        startFeature((ObjectFrame)top, name, xml);
+                    } else {
+                        skipDepth = startObject(top, name, xml);
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (skipDepth > 0) {
+                    skipDepth--;
+                    continue;
+                }
+                
+                if (!inContent) {
+                    continue;
+                }
+                
+                if (stack.isEmpty()) {
+                    // End of XMI.content
+                    inContent = false;
+                    continue;
+                }
+                
+                endFrame(stack.removeLast());
+            } else if (event == XMLStreamConstants.CHARACTERS ||
+                event == XMLStreamConstants.CDATA)
+            {
+                if (skipDepth == 0 && 
+                    !stack.isEmpty() && 
+                    stack.getLast() instanceof FeatureFrame)
+                {
+                    FeatureFrame frame = (FeatureFrame)stack.getLast();
+                    if (!frame.feature.isObjectValued) {
+                        frame.appendText(xml.getText());
+                    }
+                }
+            }
+        }
+    }
+    
+    private static String getName(XMLStreamReader xml)
+    {
+        String prefix = xml.getPrefix();
+        String localName = xml.getLocalName();
+        if (prefix == null || prefix.length() == 0) {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+    
+    /**
+     * Handles an element that names an object: either a new object, a 
+     * reference to an object or an association link.
+     * 
+     * @return 1 if the element's content should be skipped, 0 otherwise
+     */
+    private int startObject(Frame container, String name, XMLStreamReader xml)
+        throws MalformedXMIException
+    {
+        String idref = xml.getAttributeValue(null, ATTR_IDREF);
+        if (idref != null) {
+            if (container == null) {
+                throw new MalformedXMIException(
+                    "Unexpected top-level reference: " + name);
+            }
+            ((ValueFrame)container).addId(idref);
+            return 1;
+        }
+        
+        if (xml.getAttributeValue(null, ATTR_HREF) != null) {
+            throw new MalformedXMIException(
+                "Unsupported external reference in " + name);
+        }
+        
+        if (container == null) {
+            if (!inBatch) {
+                inBatch = true;
+                batchCount = 0;
+                beginBatch(batchSize);
+            }
+            
+            RefAssociation assoc = assocsByName.get(name);
+            if (assoc != null) {
+                stack.add(new LinkFrame(assoc));
+                return 0;
+            }
+        }
+        
+        ClassInfo classInfo = classesByName.get(name);
+        if (classInfo == null) {
+            throw new MalformedXMIException("Unknown XMI element: " + name);
+        }
+        
+        RefObject obj = classInfo.refClass.refCreateInstance(null);
+        long handle = getHandle(obj);
+        objectCount++;
+        batchCount++;
+        
+        String id = xml.getAttributeValue(null, ATTR_ID);
+        if (id != null) {
+            idMap.put(id, handle, classInfo.index);
+        }
+        
+        if (container != null) {
+            ((ValueFrame)container).addObject(obj, handle, classInfo.index);
+        }
+        
+        ObjectFrame frame = new ObjectFrame(classInfo, obj, handle);
+        stack.add(frame);
+
+        int numAttribs = xml.getAttributeCount();
+        for(int i = 0; i < numAttribs; i++) {
+            String prefix = xml.getAttributePrefix(i);
+            if (prefix != null && prefix.length() > 0) {
+                continue;
+            }
+            
+            String attribName = xml.getAttributeLocalName(i);
+            if (attribName.startsWith(ATTR_XMI_PREFIX)) {
+                continue;
+            }
+            
+            FeatureInfo feature = classInfo.getFeature(attribName);
+            if (feature == null) {
+                throw new MalformedXMIException(
+                    "Unknown feature '" + attribName + "' in " + name);
+            }
+            
+            FeatureFrame featureFrame = new FeatureFrame(frame, feature);
+            String value = xml.getAttributeValue(i);
+            if (feature.isObjectValued) {
+                for(String ref: value.trim().split("\\s+")) {
+                    if (ref.length() > 0) {
+                        featureFrame.addId(ref);
+                    }
+                }
+            } else {
+                featureFrame.appendText(value);
+            }
+            endFrame(featureFrame);
+        }
+        
+        return 0;
+    }
+    
+    private void startFeature(ObjectFrame owner, String name, XMLStreamReader xml)
+        throws MalformedXMIException
+    {
+        String featureName = name.substring(name.lastIndexOf('.') + 1);
+        
+        FeatureInfo feature = owner.classInfo.getFeature(featureName);
+        if (feature == null) {
+            throw new MalformedXMIException(
+                "Unknown feature element '" + name + "'");
+        }
+        
+        FeatureFrame frame = new FeatureFrame(owner, feature);
+        
+        String value = xml.getAttributeValue(null, ATTR_VALUE);
+        if (value != null) {
+            frame.appendText(value);
+        }
+        
+        stack.add(frame);
+    }
+    
+    private void endFrame(Frame frame) throws MalformedXMIException
+    {
+        if (frame instanceof ObjectFrame) {
+            if (stack.isEmpty() && batchCount >= batchSize) {
+                // Top-level object complete.
+                inBatch = false;
+                endBatch();
+            }
+            return;
+        }
+        
+        if (frame instanceof LinkFrame) {
+            LinkFrame linkFrame = (LinkFrame)frame;
+            if (linkFrame.size() != 2) {
+                throw new MalformedXMIException(
+                    "Link must have exactly two ends");
+            }
+            
+            if (linkFrame.isResolved()) {
+                applyLink(linkFrame.assoc, linkFrame.resolve());
+            } else {
+                pending.add(
+                    new Pending(linkFrame, null, null, linkFrame.assoc));
+            }
+            
+            if (stack.isEmpty() && batchCount >= batchSize) {
+                inBatch = false;
+                endBatch();
+            }
+            return;
+        }
+        
+        FeatureFrame featureFrame = (FeatureFrame)frame;
+        FeatureInfo feature = featureFrame.feature;
+        RefObject owner = featureFrame.owner.obj;
+        
+        if (!feature.isObjectValued) {
+            String text = featureFrame.getText();
+            if (text == null) {
+                // Empty element (e.g., empty string or missing value)
+                text = "";
+            }
+            
+            Object value = convert(feature, text);
+            if (feature.isMultiValued) {
+                getCollection(owner, feature).add(value);
+            } else {
+                owner.refSetValue(feature.name, value);
+            }
+        } else if (featureFrame.isResolved()) {
+            applyValues(owner, feature, featureFrame.resolve());
+        } else {
+            pending.add(
+                new Pending(
+                    featureFrame, feature, featureFrame.owner, null));
+        }
+    }
+    
+    private void resolvePending() throws MalformedXMIException
+    {
+        for(Pending p: pending) {
+            if (!inBatch) {
+                inBatch = true;
+                batchCount = 0;
+                beginBatch(0);
+            }
+            
+            List<RefObject> values = new ArrayList<RefObject>(p.size());
+            for(int i = 0; i < p.size(); i++) {
+                long handle;
+                int classIndex;
+                String id = p.ids[i];
+                if (id == null) {
+                    handle = p.handles[i];
+                    classIndex = p.classIndices[i];
+                } else {
+                    int slot = idMap.find(id);
+                    if (slot < 0) {
+                        throw new MalformedXMIException(
+                            "Unresolved reference to '" + id + "'");
+                    }
+                    handle = idMap.handleAt(slot);
+                    classIndex = idMap.classIndexAt(slot);
+                }
+                values.add(resolve(handle, classIndex));
+            }
+            
+            if (p.feature == null) {
+                applyLink(p.assoc, values);
+            } else {
+                RefObject owner = resolve(p.ownerHandle, p.ownerClassIndex);
+                applyValues(owner, p.feature, values);
+            }
+            
+            if (++batchCount >= batchSize) {
+                inBatch = false;
+                endBatch();
+            }
+        }
+        
+        pending.clear();
+    }
+    
+    private RefObject resolve(long handle, int classIndex)
+    {
+        return resolveHandle(handle, classInfos.get(classIndex).refClass);
+    }
+    
+    private void applyValues(
+        RefObject owner, FeatureInfo feature, List<RefObject> values)
+    {
+        if (feature.isMultiValued) {
+            Collection<RefObject> coll = getCollection(owner, feature);
+            for(RefObject value: values) {
+                // Both ends of a link may be written as references.
+                if (!coll.contains(value)) {
+                    coll.add(value);
+                }
+            }
+        } else {
+            for(RefObject value: values) {
+                owner.refSetValue(feature.name, value);
+            }
+        }
+    }
+    
+    private void applyLink(RefAssociation assoc, List<RefObject> ends)
+    {
+        RefObject end1 = ends.get(0);
+        RefObject end2 = ends.get(1);
+        if (!assoc.refLinkExists(end1, end2)) {
+            assoc.refAddLink(end1, end2);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <E> Collection<E> getCollection(
+        RefObject owner, FeatureInfo feature)
+    {
+        return (Collection<E>)owner.refGetValue(feature.name);
+    }
+    
+    private Object convert(FeatureInfo feature, String text)
+        throws MalformedXMIException
+    {
+        Classifier type = feature.type;
+        try {
+            if (type instanceof EnumerationType) {
+                return getEnum(type, text.trim());
+            }
+            
+            if (type instanceof PrimitiveType) {
+                String typeName = type.getName();
+                if (typeName.equals("String")) {
+                    return text;
+                } else if (typeName.equals("Boolean")) {
+                    return Boolean.valueOf(text.trim());
+                } else if (typeName.equals("Integer")) {
+                    return Integer.valueOf(text.trim());
+                } else if (typeName.equals("Long")) {
+                    return Long.valueOf(text.trim());
+                } else if (typeName.equals("Float")) {
+                    return Float.valueOf(text.trim());
+                } else if (typeName.equals("Double")) {
+                    return Double.valueOf(text.trim());
+                }
+            }
+        } catch(NumberFormatException e) {
+            throw new MalformedXMIException(
+                "Invalid value '" + text + "' for feature '" 
+                + feature.name + "'");
+        }
+        
+        throw new MalformedXMIException(
+            "Unsupported type '" + type.getName() + "' for feature '" 
+            + feature.name + "'");
+    }
+    
+    private RefEnum getEnum(Classifier enumType, String literal)
+        throws MalformedXMIException
+    {
+        Map<String, RefEnum> literals = enumCache.get(enumType);
+        if (literals == null) {
+            literals = new HashMap<String, RefEnum>();
+            enumCache.put(enumType, literals);
+        }
+        
+        RefEnum refEnum = literals.get(literal);
+        if (refEnum == null) {
+            RefBaseObject scope = enumScopes.get(enumType.getContainer());
+            if (scope instanceof RefPackage) {
+                refEnum = ((RefPackage)scope).refGetEnum(enumType, literal);
+            } else if (scope instanceof RefClass) {
+                refEnum = ((RefClass)scope).refGetEnum(enumType, literal);
+            } else {
+                throw new MalformedXMIException(
+                    "Enumeration '" + enumType.getName() 
+                    + "' is not defined in the target extent");
+            }
+            literals.put(literal, refEnum);
+        }
+        
+        return refEnum;
+    }
+    
+    private void buildIndex(RefPackage extent)
+    {
+        classInfos.clear();
+        classesByName.clear();
+        assocsByName.clear();
+        enumScopes.clear();
+        enumCache.clear();
+        
+        indexPackage(extent, null);
+        
+        indexedExtent = extent;
+    }
+    
+    private void indexPackage(RefPackage pkg, String namespacePrefix)
+    {
+        MofPackage mofPkg = (MofPackage)pkg.refMetaObject();
+        if (!enumScopes.containsKey(mofPkg)) {
+            enumScopes.put(mofPkg, pkg);
+        }
+        
+        String prefix = TagUtil.getTagValue(mofPkg, TAGID_XMI_NAMESPACE);
+        if (prefix == null) {
+            prefix = namespacePrefix;
+        }
+        
+        for(RefClass refClass: 
+                GenericCollections.asTypedCollection(
+                    pkg.refAllClasses(), RefClass.class))
+        {
+            MofClass mofClass = (MofClass)refClass.refMetaObject();
+            if (enumScopes.containsKey(mofClass)) {
+                // Clustered or imported package: already indexed.
+                continue;
+            }
+            enumScopes.put(mofClass, refClass);
+            
+            ClassInfo classInfo = 
+                new ClassInfo(refClass, mofClass, classInfos.size());
+            classInfos.add(classInfo);
+            
+            register(classesByName, qualifiedName(mofClass), classInfo);
+            if (prefix != null) {
+                register(
+                    classesByName, 
+                    prefix + ":" + mofClass.getName(), 
+                    classInfo);
+            }
+        }
+        
+        for(RefAssociation refAssoc:
+                GenericCollections.asTypedCollection(
+                    pkg.refAllAssociations(), RefAssociation.class))
+        {
+            Association assoc = (Association)refAssoc.refMetaObject();
+            
+            register(assocsByName, qualifiedName(assoc), refAssoc);
+            if (prefix != null) {
+                register(
+                    assocsByName, prefix + ":" + assoc.getName(), refAssoc);
+            }
+        }
+        
+        for(RefPackage subPkg: 
+                GenericCollections.asTypedCollection(
+                    pkg.refAllPackages(), RefPackage.class))
+        {
+            indexPackage(subPkg, prefix);
+        }
+    }
+    
+    private static <V> void register(Map<String, V> map, String name, V value)
+    {
+        if (!map.containsKey(name)) {
+            map.put(name, value);
+        }
+    }
+    
+    private static String qualifiedName(ModelElement elem)
+    {
+        StringBuilder b = new StringBuilder();
+        for(Object part: elem.getQualifiedName()) {
+            if (b.length() > 0) {
+                b.append('.');
+            }
+            b.append(part);
+        }
+        return b.toString();
+    }
+    
+    /**
+     * ClassInfo describes a class proxy and, once needed, the features of
+     * its instances.
+     */
+    private static class ClassInfo
+    {
+        private final RefClass refClass;
+        private final MofClass mofClass;
+        private final int index;
+        private Map<String, FeatureInfo> features;
+        
+        private ClassInfo(RefClass refClass, MofClass mofClass, int index)
+        {
+            this.refClass = refClass;
+            this.mofClass = mofClass;
+            this.index = index;
+        }
+        
+        private FeatureInfo getFeature(String name)
+        {
+            if (features == null) {
+                features = new HashMap<String, FeatureInfo>();
+                
+                List<GeneralizableElement> types = 
+                    new ArrayList<GeneralizableElement>(
+                        GenericCollections.asTypedList(
+                            mofClass.allSupertypes(),
+                            GeneralizableElement.class));
+                types.add(mofClass);
+                
+                for(GeneralizableElement type: types) {
+                    for(ModelElement elem: 
+                            GenericCollections.asTypedList(
+                                type.getContents(), ModelElement.class))
+                    {
+                        if (elem instanceof Attribute) {
+                            Attribute attrib = (Attribute)elem;
+                            if (attrib.isDerived() ||
+                                !ScopeKindEnum.INSTANCE_LEVEL.equals(
+                                    attrib.getScope()))
+                            {
+                                continue;
+                            }
+                            features.put(
+                                attrib.getName(), 
+                                new FeatureInfo(
+                                    attrib.getName(), 
+                                    attrib.getMultiplicity(), 
+                                    attrib.getType(),
+                                    false));
+                        } else if (elem instanceof Reference) {
+                            Reference ref = (Reference)elem;
+                            features.put(
+                                ref.getName(), 
+                                new FeatureInfo(
+                                    ref.getName(),
+                                    ref.getMultiplicity(),
+                                    ref.getType(),
+                                    true));
+                        }
+                    }
+                }
+            }
+            
+            return features.get(name);
+        }
+    }
+    
+    /**
+     * FeatureInfo describes an attribute or reference.
+     */
+    private static class FeatureInfo
+    {
+        private final String name;
+        private final boolean isMultiValued;
+        private final boolean isObjectValued;
+        
+        /** Feature type with aliases removed. */
+        private final Classifier type;
+        
+        private FeatureInfo(
+            String name,
+            MultiplicityType multiplicity, 
+            Classifier type, 
+            boolean isReference)
+        {
+            while(type instanceof AliasType) {
+                type = ((AliasType)type).getType();
+            }
+            
+            this.name = name;
+            this.isMultiValued = multiplicity.getUpper() != 1;
+            this.isObjectValued = isReference || type instanceof MofClass;
+            this.type = type;
+        }
+    }
+    
+    /**
+     * Frame is an open element in the XMI content.
+     */
+    private static abstract class Frame
+    {
+    }
+    
+    /**
+     * ObjectFrame is an open element for a newly created object.
+     */
+    private static class ObjectFrame extends Frame
+    {
+        private final ClassInfo classInfo;
+        private final RefObject obj;
+        private final long handle;
+        
+        private ObjectFrame(ClassInfo classInfo, RefObject obj, long handle)
+        {
+            this.classInfo = classInfo;
+            this.obj = obj;
+            this.handle = handle;
+        }
+    }
+    
+    /**
+     * ValueFrame is an open element whose content is a sequence of objects,
+     * given either as nested objects or by reference.
+     */
+    private abstract class ValueFrame extends Frame
+    {
+        private final List<RefObject> objs = new ArrayList<RefObject>();
+        private final List<String> ids = new ArrayList<String>();
+        private long[] handles = new long[2];
+        private int[] classIndices = new int[2];
+        private boolean resolved = true;
+        
+        void addId(String id)
+        {
+            int slot = idMap.find(id);
+            if (slot < 0) {
+                add(null, 0L, -1, id);
+                resolved = false;
+            } else {
+                add(null, idMap.handleAt(slot), idMap.classIndexAt(slot), null);
+            }
+        }
+        
+        void addObject(RefObject obj, long handle, int classIndex)
+        {
+            add(obj, handle, classIndex, null);
+        }
+        
+        private void add(RefObject obj, long handle, int classIndex, String id)
+        {
+            int n = objs.size();
+            if (n == handles.length) {
+                handles = Arrays.copyOf(handles, n * 2);
+                classIndices = Arrays.copyOf(classIndices, n * 2);
+            }
+            handles[n] = handle;
+            classIndices[n] = classIndex;
+            objs.add(obj);
+            ids.add(id);
+        }
+        
+        int size()
+        {
+            return objs.size();
+        }
+        
+        boolean isResolved()
+        {
+            return resolved;
+        }
+        
+        List<RefObject> resolve()
+        {
+            List<RefObject> result = new ArrayList<RefObject>(objs.size());
+            for(int i = 0; i < objs.size(); i++) {
+                RefObject obj = objs.get(i);
+                if (obj == null) {
+                    obj = StreamingXmiReader.this.resolve(
+                        handles[i], classIndices[i]);
+                }
+                result.add(obj);
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * FeatureFrame is an open element holding the value(s) of an object's
+     * feature.
+     */
+    private class FeatureFrame extends ValueFrame
+    {
+        private final ObjectFrame owner;
+        private final FeatureInfo feature;
+        private StringBuilder text;
+        
+        private FeatureFrame(ObjectFrame owner, FeatureInfo feature)
+        {
+            this.owner = owner;
+            this.feature = feature;
+        }
+        
+        void appendText(String s)
+        {
+            if (text == null) {
+                text = new StringBuilder();
+            }
+            text.append(s);
+        }
+        
+        String getText()
+        {
+            return text == null ? null : text.toString();
+        }
+    }
+    
+    /**
+     * LinkFrame is an open association link element.
+     */
+    private class LinkFrame extends ValueFrame
+    {
+        private final RefAssociation assoc;
+        
+        private LinkFrame(RefAssociation assoc)
+        {
+            this.assoc = assoc;
+        }
+    }
+    
+    /**
+     * Pending holds a feature value or link that refers to objects that
+     * had not been read when it was parsed.  Objects are held by handle 
+     * or XMI identifier.
+     */
+    private static class Pending
+    {
+        private final FeatureInfo feature;
+        private final RefAssociation assoc;
+        private final long ownerHandle;
+        private final int ownerClassIndex;
+        private final long[] handles;
+        private final int[] classIndices;
+        private final String[] ids;
+        
+        private Pending(
+            ValueFrame values,
+            FeatureInfo feature, 
+            ObjectFrame owner, 
+            RefAssociation assoc)
+        {
+            int n = values.size();
+            
+            this.feature = feature;
+            this.assoc = assoc;
+            this.ownerHandle = owner == null ? 0L : owner.handle;
+            this.ownerClassIndex = owner == null ? -1 : owner.classInfo.index;
+            this.handles = Arrays.copyOf(values.handles, n);
+            this.classIndices = Arrays.copyOf(values.classIndices, n);
+            this.ids = values.ids.toArray(new String[n]);
+        }
+        
+        private int size()
+        {
+            return ids.length;
+        }
+    }
+    
+    /**
+     * XmiIdMap maps XMI identifiers to object handles and class indices 
+     * without boxing.  It is an open-addressed hash table with linear 
+     * probing.
+     */
+    private static class XmiIdMap
+    {
+        private static final int MIN_TABLE_SIZE = 1024;
+        
+        private String[] keys;
+        private long[] handles;
+        private int[] classIndices;
+        private int size;
+        
+        private XmiIdMap()
+        {
+            this.keys = new String[MIN_TABLE_SIZE];
+            this.handles = new long[MIN_TABLE_SIZE];
+            this.classIndices = new int[MIN_TABLE_SIZE];
+        }
+        
+        private static int hash(String key)
+        {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+        
+        /**
+         * @return the slot holding id or -1 if not found
+         */
+        private int find(String id)
+        {
+            int mask = keys.length - 1;
+            for(int i = hash(id) & mask; keys[i] != null; i = (i + 1) & mask)
+            {
+                if (keys[i].equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        private long handleAt(int slot)
+        {
+            return handles[slot];
+        }
+        
+        private int classIndexAt(int slot)
+        {
+            return classIndices[slot];
+        }
+        
+        private void put(String id, long handle, int classIndex)
+            throws MalformedXMIException
+        {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length << 1);
+            }
+            
+            int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            for(; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(id)) {
+                    throw new MalformedXMIException(
+                        "Duplicate XMI identifier '" + id + "'");
+                }
+            }
+            
+            keys[i] = id;
+            handles[i] = handle;
+            classIndices[i] = classIndex;
+            size++;
+        }
+        
+        private void resize(int tableSize)
+        {
+            String[] oldKeys = keys;
+            long[] oldHandles = handles;
+            int[] oldClassIndices = classIndices;
+            
+            keys = new String[tableSize];
+            handles = new long[tableSize];
+            classIndices = new int[tableSize];
+            
+            int mask = tableSize - 1;
+            for(int j = 0; j < oldKeys.length; j++) {
+                String key = oldKeys[j];
+                if (key == null) {
+                    continue;
+                }
+                
+                int i = hash(key) & mask;
+                while(keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                handles[i] = oldHandles[j];
+                classIndices[i] = oldClassIndices[j];
+            }
+        }
+    }
+}
+
+// End StreamingXmiReader.java